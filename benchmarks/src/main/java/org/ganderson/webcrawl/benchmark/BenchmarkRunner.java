@@ -0,0 +1,47 @@
+package org.ganderson.webcrawl.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled, so every result comes with its allocation rate in bytes
+ * per operation alongside its throughput.
+ *
+ * <p>
+ * Accepts the same arguments as JMH's own main class, e.g. a regular expression to select benchmarks, "-p" to fix
+ * parameters or "-rf json" to write machine-readable results for comparing runs.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Suppress public constructor.
+     */
+    private BenchmarkRunner() {
+        // No op
+    }
+
+    /**
+     * @param args The JMH command line arguments.
+     * @throws CommandLineOptionException If the arguments are invalid.
+     * @throws RunnerException If a benchmark fails.
+     * @throws IOException If the help or benchmark list couldn't be printed.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList()) {
+            // Let JMH print the help or benchmark list rather than running anything
+            Main.main(args);
+            return;
+        }
+
+        new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
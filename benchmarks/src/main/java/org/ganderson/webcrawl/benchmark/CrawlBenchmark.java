@@ -0,0 +1,95 @@
+package org.ganderson.webcrawl.benchmark;
+
+import org.ganderson.webcrawl.service.CrawlConfig;
+import org.ganderson.webcrawl.service.CrawlUrl;
+import org.ganderson.webcrawl.service.WebCrawler;
+import org.ganderson.webcrawl.synthetic.SyntheticSite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete crawl of a {@link SyntheticSite} served from this process, from the home page until every
+ * page has been visited.
+ *
+ * <p>
+ * The crawler's console output is discarded while measuring, so the results show the cost of fetching, parsing and
+ * queuing rather than of the terminal. Larger sites, e.g. {@code -p pages=100000}, show how throughput and
+ * allocation hold up as the visited set and frontier grow, and a latency shows how well each mode overlaps requests.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CrawlBenchmark {
+
+    @Param({"1000"})
+    public int pages;
+
+    @Param({"10"})
+    public int fanOut;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    @Param({"1", "8"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean asyncFetching;
+
+    @Param({"false", "true"})
+    public boolean pipelined;
+
+    private SyntheticSite site;
+    private CrawlUrl homePage;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setup() throws IOException {
+        Duration latency = Duration.ofMillis(this.latencyMillis);
+        this.site = SyntheticSite.builder()
+            .pageCount(this.pages)
+            .fanOut(this.fanOut)
+            .latency(latency, latency.multipliedBy(4))
+            .start();
+        this.homePage = CrawlUrl.parse(this.site.homePage());
+        this.originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(this.originalOut);
+        this.site.close();
+    }
+
+    @Benchmark
+    public void crawl() {
+        CrawlConfig config = CrawlConfig.builder()
+            .parallelism(this.parallelism)
+            .asyncFetching(this.asyncFetching)
+            .pipelined(this.pipelined)
+            .expectedPages(this.site.pageCount())
+            .build();
+        new WebCrawler(this.homePage, config).crawl();
+    }
+}
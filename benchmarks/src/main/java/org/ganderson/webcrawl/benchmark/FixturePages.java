@@ -0,0 +1,56 @@
+package org.ganderson.webcrawl.benchmark;
+
+/**
+ * Builds HTML pages shaped like real ones, with a head full of scripts and styles and links scattered through text.
+ */
+final class FixturePages {
+
+    /**
+     * Suppress public constructor.
+     */
+    private FixturePages() {
+        // No op
+    }
+
+    /**
+     * @param links The number of links on the page.
+     * @param distinctTargets The number of different pages linked to, so links repeat once this is exceeded.
+     * @return The HTML of the page.
+     */
+    static String page(int links, int distinctTargets) {
+        return page(links, i -> "/section/page-" + (i % distinctTargets));
+    }
+
+    /**
+     * @param links The number of links on the page.
+     * @param hrefs Gives the href of each link.
+     * @return The HTML of the page.
+     */
+    static String page(int links, java.util.function.IntFunction<String> hrefs) {
+        StringBuilder builder = new StringBuilder(links * 160 + 1024);
+        builder.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+            .append("<meta charset=\"utf-8\"><title>Fixture page</title>\n")
+            .append("<link rel=\"stylesheet\" href=\"/assets/site.css\">\n")
+            .append("<style>body { font-family: sans-serif; } a[href^=\"http\"] { color: red; }</style>\n")
+            .append("<script>window.dataLayer = []; function track(a) { return '<a href=\"' + a + '\">'; }</script>\n")
+            .append("</head>\n<body>\n<!-- navigation -->\n<nav><ul>\n");
+
+        for (int i = 0; i < links; i++) {
+            if (i % 20 == 0) {
+                builder.append("</ul></nav>\n<p class=\"intro\">Lorem ipsum dolor sit amet, consectetur adipiscing ")
+                    .append("elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.</p>\n<nav><ul>\n");
+            }
+            builder.append("<li class=\"item\"><a class=\"link\" href=\"")
+                .append(hrefs.apply(i))
+                .append("\" title=\"Item ")
+                .append(i)
+                .append(" &amp; more\">Item ")
+                .append(i)
+                .append("</a></li>\n");
+        }
+
+        builder.append("</ul></nav>\n<a href=\"https://off-domain.example/\">Elsewhere</a>\n")
+            .append("<a href=\"mailto:someone@bench.example\">Contact</a>\n</body>\n</html>\n");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package org.ganderson.webcrawl.benchmark;
+
+import org.ganderson.webcrawl.service.CrawlUrl;
+import org.ganderson.webcrawl.service.ExactVisitedSet;
+import org.ganderson.webcrawl.service.FingerprintVisitedSet;
+import org.ganderson.webcrawl.service.InMemoryFrontierStore;
+import org.ganderson.webcrawl.service.NonDuplicateQueue;
+import org.ganderson.webcrawl.service.VisitedSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures offering pages to and polling pages from the {@link NonDuplicateQueue}, on one thread and shared between
+ * several.
+ *
+ * <p>
+ * Most links a crawler finds have already been seen, so offers of pages which are already known are measured
+ * separately from offers of new pages. The URLs are parsed up front so only the queue itself is measured, and
+ * queues of new pages are replaced once every page has been offered so the visited set never holds more than
+ * {@value #PAGES} pages.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NonDuplicateQueueBenchmark {
+
+    /**
+     * The number of distinct pages offered before the queue is replaced with an empty one.
+     */
+    private static final int PAGES = 1 << 20;
+
+    /**
+     * The pages to offer, shared by every benchmark so they're only parsed once.
+     */
+    @State(Scope.Benchmark)
+    public static class Pages {
+        CrawlUrl[] urls;
+
+        @Setup
+        public void setup() throws MalformedURLException {
+            this.urls = new CrawlUrl[PAGES];
+            for (int i = 0; i < PAGES; i++) {
+                this.urls[i] = CrawlUrl.parse("http://bench.example/section-" + (i % 97) + "/page-" + i);
+            }
+        }
+    }
+
+    /**
+     * A queue shared by every thread in a group, which is replaced with an empty one each time every page has been
+     * offered so that offers keep finding new pages.
+     */
+    @State(Scope.Group)
+    public static class SharedQueue {
+        @Param({"EXACT", "FINGERPRINT"})
+        public String visitedSet;
+
+        volatile NonDuplicateQueue queue;
+        final AtomicLong offered = new AtomicLong();
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            this.queue = newQueue(this.visitedSet);
+            this.offered.set(0);
+        }
+
+        /**
+         * @param pages The pages to offer.
+         * @param copies The number of times each page is offered before moving on to the next.
+         * @return The next page to offer, replacing the queue if every page has been offered.
+         */
+        CrawlUrl nextPage(Pages pages, int copies) {
+            long count = this.offered.getAndIncrement();
+            if (count > 0 && count % ((long) PAGES * copies) == 0) {
+                // Only one thread sees each multiple. Pages still waiting in the old queue are simply dropped, as are
+                // offers racing with the swap
+                this.queue = newQueue(this.visitedSet);
+            }
+            return pages.urls[(int) ((count / copies) & (PAGES - 1))];
+        }
+    }
+
+    /**
+     * A queue used by a single thread, pre-filled so every page offered has already been seen.
+     */
+    @State(Scope.Thread)
+    public static class SeenQueue {
+        @Param({"EXACT", "FINGERPRINT"})
+        public String visitedSet;
+
+        NonDuplicateQueue queue;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(Pages pages) {
+            this.queue = newQueue(this.visitedSet);
+            for (int i = 0; i < PAGES; i++) {
+                this.queue.offer(pages.urls[i]);
+                this.queue.poll();
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("singleThreadOfferPoll")
+    @GroupThreads(1)
+    public CrawlUrl singleThreadOfferPoll(SharedQueue shared, Pages pages) {
+        NonDuplicateQueue queue = shared.queue;
+        queue.offer(shared.nextPage(pages, 1));
+        return queue.poll();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean singleThreadOfferSeen(SeenQueue seen, Pages pages) {
+        return seen.queue.offer(pages.urls[seen.next++ & (PAGES - 1)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public boolean contendedOffer(SharedQueue shared, Pages pages) {
+        // Every page is offered twice, so half of the offers find a page which has already been seen
+        return shared.queue.offer(shared.nextPage(pages, 2));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public CrawlUrl contendedPoll(SharedQueue shared) {
+        return shared.queue.poll();
+    }
+
+    /**
+     * @param visitedSet The name of the visited set to use.
+     * @return A new, empty queue.
+     */
+    private static NonDuplicateQueue newQueue(String visitedSet) {
+        VisitedSet visited = "EXACT".equals(visitedSet)
+            ? new ExactVisitedSet()
+            : new FingerprintVisitedSet(PAGES, false);
+        return new NonDuplicateQueue(visited, new InMemoryFrontierStore());
+    }
+}
@@ -0,0 +1,71 @@
+package org.ganderson.webcrawl.benchmark;
+
+import org.ganderson.webcrawl.service.CrawlUrl;
+import org.ganderson.webcrawl.service.PageScraper;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scraping the links from a page, both from a parsed document and by streaming the HTML.
+ *
+ * <p>
+ * A small page is typical of a hand-written site, a huge page is an index or archive page with tens of thousands of
+ * links buried in markup, scripts and styles. Parsing is included in the document benchmark as the crawler always
+ * parses a page before scraping it, {@link #scrapeParsedDocument} shows the cost of the query on its own.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageScraperBenchmark {
+
+    private static final String PAGE_URL = "http://bench.example/section/page";
+
+    @Param({"small", "huge"})
+    public String pageSize;
+
+    private PageScraper scraper;
+    private String html;
+    private Document document;
+
+    @Setup
+    public void setup() throws MalformedURLException {
+        this.scraper = new PageScraper(CrawlUrl.parse("http://bench.example"));
+        this.html = "huge".equals(this.pageSize) ? FixturePages.page(20_000, 5_000) : FixturePages.page(40, 10);
+        this.document = Jsoup.parse(this.html, PAGE_URL);
+    }
+
+    @Benchmark
+    public void parseAndScrapeDocument(Blackhole blackhole) {
+        this.scraper.scrapeForLinks(Jsoup.parse(this.html, PAGE_URL)).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void scrapeParsedDocument(Blackhole blackhole) {
+        this.scraper.scrapeForLinks(this.document).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void scrapeStream(Blackhole blackhole) {
+        this.scraper.scrapeForLinks(new StringReader(this.html), PAGE_URL).forEach(blackhole::consume);
+    }
+}
@@ -1,17 +1,33 @@
 package org.ganderson.webcrawl;
 
+import org.ganderson.webcrawl.service.CrawlConfig;
+import org.ganderson.webcrawl.service.CrawlUrl;
 import org.ganderson.webcrawl.service.WebCrawler;
 
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.Scanner;
 
 /**
  * Entry point of the app.
+ *
+ * <p>
+ * An optional first argument sets the number of pages which will be fetched in parallel, defaulting to 1.
+ * </p>
  */
 public class App {
 
     public static void main(String[] args) {
+        CrawlConfig config;
+        try {
+            config = CrawlConfig.builder()
+                .parallelism(args.length > 0 ? Integer.parseInt(args[0]) : 1)
+                .build();
+        } catch (IllegalArgumentException ex) {
+            // NumberFormatException is an IllegalArgumentException, so this also covers a non numeric argument
+            System.out.println("Usage: webcrawl [parallelism], where parallelism is a positive number of pages to fetch at once");
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         while (true) {
             System.out.println("Please enter the full URL that you want to crawl (e.g. https://monzo.com) or q to quit");
@@ -22,8 +38,7 @@ public class App {
             }
 
             try {
-                new URL(value);
-                new WebCrawler(new URL(value)).crawl();
+                new WebCrawler(CrawlUrl.parse(value), config).crawl();
             } catch (MalformedURLException ex) {
                 System.out.println("The provided URL was not valid, please be sure to provide the full path including the protocol (http://monzo.com instead of monzo.com)");
             }
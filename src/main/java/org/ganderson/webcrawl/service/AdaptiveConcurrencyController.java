@@ -0,0 +1,257 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tunes how many requests may be in flight to each host from how the host is responding, using additive increase
+ * and multiplicative decrease (AIMD).
+ *
+ * <p>
+ * Each host starts with a limit of one. Every response which arrives promptly raises the limit by one over the
+ * course of a full window of responses, i.e. by {@code 1 / limit} per response. A sign that the host is overloaded
+ * halves the limit instead: a 429 or 503 response, a timeout, or a response taking more than twice as long as the
+ * host's baseline. The baseline follows the fastest responses seen, drifting slowly upwards so that a host which
+ * simply got slower isn't throttled forever. At most one decrease is applied per window, so a burst of errors from
+ * requests which were all sent at the old limit only halves it once.
+ * </p>
+ *
+ * <p>
+ * The current limits can be read at any time with {@link #getLimits()}, every change is logged along with its reason
+ * and passed to any registered {@link LimitListener}, which is how the limits are actually enforced.
+ * </p>
+ */
+public class AdaptiveConcurrencyController implements FetchListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyController.class);
+
+    /**
+     * The limit a host starts at and is never reduced below.
+     */
+    static final int MIN_LIMIT = 1;
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * How many times slower than its baseline a host has to get before it is treated as overloaded.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Weight of each new sample in the smoothed latency.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Fraction of the gap to a slower sample which the baseline moves by.
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int maxLimit;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final List<LimitListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maxLimit The highest limit any host can reach, must be at least 1.
+     */
+    public AdaptiveConcurrencyController(int maxLimit) {
+        if (maxLimit < MIN_LIMIT) {
+            throw new IllegalArgumentException("Max limit must be at least " + MIN_LIMIT + " but was " + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param listener Told whenever the limit of a host changes.
+     */
+    public void addListener(LimitListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+     * @return The current limit of the host, which is the starting limit for hosts which haven't been seen yet.
+     */
+    public int getLimit(String origin) {
+        HostState host = this.hosts.get(origin);
+        if (host == null) {
+            return MIN_LIMIT;
+        }
+        synchronized (host) {
+            return host.currentLimit();
+        }
+    }
+
+    /**
+     * @return A snapshot of the current limit of every host which has been seen, sorted by origin.
+     */
+    public Map<String, Integer> getLimits() {
+        Map<String, Integer> limits = new TreeMap<>();
+        this.hosts.keySet().forEach(origin -> limits.put(origin, getLimit(origin)));
+        return limits;
+    }
+
+    /**
+     * @return The highest limit any host can reach.
+     */
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    @Override
+    public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+        if (statusCode == 429 || statusCode == 503) {
+            decrease(url.getOrigin(), "status " + statusCode);
+            return;
+        }
+
+        String origin = url.getOrigin();
+        HostState host = hostState(origin);
+        long nanos = Math.max(1, elapsed.toNanos());
+        boolean slow;
+        synchronized (host) {
+            host.observeLatency(nanos);
+            slow = host.smoothedNanos > host.baselineNanos * LATENCY_TOLERANCE;
+        }
+
+        if (slow) {
+            decrease(origin, "latency");
+        } else {
+            increase(origin);
+        }
+    }
+
+    @Override
+    public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+        if (isTimeout(cause)) {
+            decrease(url.getOrigin(), "timeout");
+        }
+    }
+
+    /**
+     * @param origin The origin of the host.
+     */
+    private void increase(String origin) {
+        HostState host = hostState(origin);
+        int before;
+        int after;
+        synchronized (host) {
+            before = host.currentLimit();
+            host.responsesSinceDecrease++;
+            host.limit = Math.min(this.maxLimit, host.limit + 1.0 / host.limit);
+            after = host.currentLimit();
+        }
+
+        if (after != before) {
+            limitChanged(origin, before, after, "responding promptly");
+        }
+    }
+
+    /**
+     * @param origin The origin of the host.
+     * @param reason Why the host is thought to be overloaded, for the log.
+     */
+    private void decrease(String origin, String reason) {
+        HostState host = hostState(origin);
+        int before;
+        int after;
+        synchronized (host) {
+            before = host.currentLimit();
+            host.responsesSinceDecrease++;
+            if (host.responsesSinceDecrease < before) {
+                // Still seeing the responses to requests sent before the last decrease
+                return;
+            }
+            host.responsesSinceDecrease = 0;
+            host.limit = Math.max(MIN_LIMIT, host.limit * DECREASE_FACTOR);
+            after = host.currentLimit();
+        }
+
+        if (after != before) {
+            limitChanged(origin, before, after, reason);
+        }
+    }
+
+    private HostState hostState(String origin) {
+        return this.hosts.computeIfAbsent(origin, ignored -> new HostState());
+    }
+
+    /**
+     * @param origin The origin of the host.
+     * @param before The old limit.
+     * @param after The new limit.
+     * @param reason Why the limit changed, for the log.
+     */
+    private void limitChanged(String origin, int before, int after, String reason) {
+        logger.info("Concurrency limit for [{}] changed from {} to {} ({}).", origin, before, after, reason);
+        this.listeners.forEach(listener -> listener.limitChanged(origin, after));
+    }
+
+    /**
+     * @param cause Why a request failed, possibly wrapped by a future.
+     * @return True if the request timed out.
+     */
+    static boolean isTimeout(Throwable cause) {
+        Throwable unwrapped = cause;
+        while ((unwrapped instanceof CompletionException || unwrapped instanceof ExecutionException)
+            && unwrapped.getCause() != null) {
+            unwrapped = unwrapped.getCause();
+        }
+        // Covers both the socket timeouts thrown by jsoup and those thrown by the JDK's HTTP client
+        return unwrapped instanceof InterruptedIOException || unwrapped instanceof HttpTimeoutException;
+    }
+
+    /**
+     * Told whenever the limit of a host changes.
+     */
+    public interface LimitListener {
+        /**
+         * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+         * @param limit The new maximum number of requests in flight to the host.
+         */
+        void limitChanged(String origin, int limit);
+    }
+
+    /**
+     * The limit and latency statistics of a single host, only accessed while synchronized on the instance.
+     */
+    private static final class HostState {
+        private double limit = MIN_LIMIT;
+        private int responsesSinceDecrease = Integer.MAX_VALUE / 2;
+        private double smoothedNanos;
+        private double baselineNanos;
+
+        private int currentLimit() {
+            return (int) this.limit;
+        }
+
+        /**
+         * @param nanos The latency of a response.
+         */
+        private void observeLatency(long nanos) {
+            if (this.baselineNanos == 0) {
+                this.baselineNanos = nanos;
+                this.smoothedNanos = nanos;
+                return;
+            }
+
+            this.smoothedNanos += (nanos - this.smoothedNanos) * SMOOTHING;
+            if (nanos < this.baselineNanos) {
+                this.baselineNanos = nanos;
+            } else {
+                this.baselineNanos += (nanos - this.baselineNanos) * BASELINE_DRIFT;
+            }
+        }
+    }
+}
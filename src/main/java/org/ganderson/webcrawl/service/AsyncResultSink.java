@@ -0,0 +1,163 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Hands results over to a single writer thread, so that workers never wait on a slow sink such as a terminal or a
+ * file.
+ *
+ * <p>
+ * Results are queued and the writer passes them on to the delegate in batches, flushing the delegate whenever it has
+ * caught up with the queue. The queue is bounded, so a sink which can't keep up slows the crawl down rather than
+ * using up memory. If the delegate fails then later results are discarded and the failure is thrown from the next
+ * call to the sink.
+ * </p>
+ *
+ * <p>
+ * Closing this sink writes out everything queued and stops the writer, but leaves the delegate open.
+ * </p>
+ */
+public class AsyncResultSink implements CrawlResultSink {
+
+    private static final int MAX_BATCH = 256;
+
+    private final CrawlResultSink delegate;
+    private final BlockingQueue<Result> queue;
+    private final Thread writer;
+    private volatile RuntimeException failure;
+    private volatile boolean closed;
+
+    /**
+     * @param delegate The sink to pass the results on to, which is only ever called from the writer thread.
+     * @param capacity The number of results which can be queued before callers have to wait, must be at least 1.
+     */
+    public AsyncResultSink(CrawlResultSink delegate, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::write, "result-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void accept(CrawlUrl page, List<CrawlUrl> links) {
+        enqueue(new Result(page, links, null));
+    }
+
+    /**
+     * Waits until everything queued so far has been passed on to the delegate and the delegate has been flushed.
+     */
+    @Override
+    public void flush() {
+        CountDownLatch flushed = new CountDownLatch(1);
+        enqueue(new Result(null, null, flushed));
+        try {
+            flushed.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        throwIfFailed();
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        flush();
+        this.closed = true;
+        this.writer.interrupt();
+        try {
+            this.writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Result result) {
+        if (this.closed) {
+            throw new IllegalStateException("Result sink is closed");
+        }
+        throwIfFailed();
+        try {
+            this.queue.put(result);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing result for " + result.page, ex);
+        }
+    }
+
+    private void throwIfFailed() {
+        RuntimeException cause = this.failure;
+        if (cause != null) {
+            throw new IllegalStateException("Result sink failed", cause);
+        }
+    }
+
+    /**
+     * The writer thread's loop, passing batches of results on to the delegate until the sink is closed.
+     */
+    private void write() {
+        List<Result> batch = new ArrayList<>(MAX_BATCH);
+        while (!this.closed) {
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException ex) {
+                // Only interrupted once closed, after the final flush
+                continue;
+            }
+            this.queue.drainTo(batch, MAX_BATCH - 1);
+
+            for (Result result : batch) {
+                if (result.flushed != null) {
+                    flushDelegate();
+                    result.flushed.countDown();
+                } else if (this.failure == null) {
+                    try {
+                        this.delegate.accept(result.page, result.links);
+                    } catch (RuntimeException ex) {
+                        this.failure = ex;
+                    }
+                }
+            }
+            batch.clear();
+
+            if (this.queue.isEmpty()) {
+                flushDelegate();
+            }
+        }
+    }
+
+    private void flushDelegate() {
+        if (this.failure != null) {
+            return;
+        }
+        try {
+            this.delegate.flush();
+        } catch (RuntimeException ex) {
+            this.failure = ex;
+        }
+    }
+
+    /**
+     * A queued result, or a request to flush when {@code flushed} is set.
+     */
+    private static final class Result {
+        private final CrawlUrl page;
+        private final List<CrawlUrl> links;
+        private final CountDownLatch flushed;
+
+        private Result(CrawlUrl page, List<CrawlUrl> links, CountDownLatch flushed) {
+            this.page = page;
+            this.links = links;
+            this.flushed = flushed;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.ganderson.webcrawl.service;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Prints each page followed by its links, one per line and prefixed with "- ", which is the crawler's original
+ * output format.
+ *
+ * <p>
+ * Each page is formatted up front and printed with a single write, rather than a write per line, which also stops
+ * the output from different workers being interleaved.
+ * </p>
+ */
+public class ConsoleResultSink implements CrawlResultSink {
+
+    private final PrintStream out;
+
+    /**
+     * @param out The stream to print to.
+     */
+    public ConsoleResultSink(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates a sink which prints to whatever {@link System#out} is at the time each page is printed.
+     */
+    public ConsoleResultSink() {
+        this(null);
+    }
+
+    @Override
+    public void accept(CrawlUrl page, List<CrawlUrl> links) {
+        String lineSeparator = System.lineSeparator();
+        StringBuilder builder = new StringBuilder(64 * (links.size() + 1));
+        builder.append(page).append(lineSeparator);
+        for (CrawlUrl link : links) {
+            builder.append("- ").append(link).append(lineSeparator);
+        }
+
+        PrintStream target = target();
+        synchronized (target) {
+            target.print(builder);
+        }
+    }
+
+    @Override
+    public void flush() {
+        target().flush();
+    }
+
+    private PrintStream target() {
+        return this.out != null ? this.out : System.out;
+    }
+}
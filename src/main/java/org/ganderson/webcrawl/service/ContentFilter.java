@@ -0,0 +1,184 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides as early as possible whether a page is worth downloading, so a fetcher can give up on binaries and huge
+ * bodies before they cost bandwidth.
+ *
+ * <p>
+ * There are three checks, each made as soon as its information is known. Before a request is sent, a URL whose path
+ * ends in the extension of a format which is never HTML, such as ".pdf" or ".jpg", is skipped. Once the response
+ * headers arrive, a response which isn't HTML, or which declares a Content-Length over the maximum body size, is
+ * abandoned without reading its body. While the body streams in, it is abandoned as soon as it passes the maximum
+ * size, which catches bodies without a Content-Length.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ * </p>
+ */
+public class ContentFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentFilter.class);
+
+    /**
+     * The largest body downloaded by default, 10 MB.
+     */
+    public static final int DEFAULT_MAX_BODY_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Extensions of formats which are never HTML, compared without case.
+     */
+    static final Set<String> BINARY_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "7z", "apk", "avi", "bin", "bmp", "bz2", "css", "csv", "deb", "dmg", "doc", "docx", "eot", "epub", "exe",
+        "flac", "flv", "gif", "gz", "ico", "iso", "jar", "jpeg", "jpg", "js", "m4a", "m4v", "mkv", "mov", "mp3",
+        "mp4", "mpeg", "mpg", "msi", "odp", "ods", "odt", "ogg", "otf", "pdf", "png", "ppt", "pptx", "rar", "rpm",
+        "svg", "tar", "tgz", "tif", "tiff", "ttf", "wav", "webm", "webp", "wmv", "woff", "woff2", "xls", "xlsx", "xz",
+        "zip")));
+
+    private static final ContentFilter DEFAULTS = new ContentFilter(DEFAULT_MAX_BODY_SIZE, true);
+
+    private final int maxBodySize;
+    private final boolean skipBinaryExtensions;
+
+    /**
+     * @param maxBodySize The largest body downloaded in bytes, must be positive.
+     * @param skipBinaryExtensions True to skip URLs with the extension of a format which is never HTML without
+     *     requesting them.
+     */
+    public ContentFilter(int maxBodySize, boolean skipBinaryExtensions) {
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("Max body size must be positive but was " + maxBodySize);
+        }
+
+        this.maxBodySize = maxBodySize;
+        this.skipBinaryExtensions = skipBinaryExtensions;
+    }
+
+    /**
+     * @return A filter with the default max body size which skips binary extensions.
+     */
+    public static ContentFilter defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return The largest body downloaded in bytes.
+     */
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * @return True if URLs with the extension of a format which is never HTML are skipped without requesting them.
+     */
+    public boolean isSkipBinaryExtensions() {
+        return skipBinaryExtensions;
+    }
+
+    /**
+     * @param url A page about to be requested.
+     * @return Why the page shouldn't be requested, or null if it should.
+     */
+    public Rejection checkUrl(CrawlUrl url) {
+        if (!this.skipBinaryExtensions) {
+            return null;
+        }
+        String path = url.getPath();
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return null;
+        }
+        String extension = path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return BINARY_EXTENSIONS.contains(extension) ? Rejection.EXTENSION : null;
+    }
+
+    /**
+     * @param contentType The Content-Type header of a successful response, or null if there wasn't one.
+     * @param contentLength The Content-Length header of the response, or -1 if there wasn't one.
+     * @return Why the body of the response shouldn't be read, or null if it should.
+     */
+    public Rejection checkHeaders(String contentType, long contentLength) {
+        if (!isHtml(contentType)) {
+            return Rejection.CONTENT_TYPE;
+        }
+        return contentLength > this.maxBodySize ? Rejection.TOO_LARGE : null;
+    }
+
+    /**
+     * Tells a listener that a page won't be downloaded, and logs why.
+     *
+     * @param url The page which was rejected.
+     * @param rejection Why it was rejected.
+     * @param listener The listener of the fetcher which rejected it.
+     */
+    void reject(CrawlUrl url, Rejection rejection, FetchListener listener) {
+        listener.onRejected(url, rejection);
+        switch (rejection) {
+            case EXTENSION:
+                logger.debug("Skipping page [{}] which isn't HTML judging by its extension.", url);
+                break;
+            case CONTENT_TYPE:
+                logger.warn("Non HTML page encountered [{}].", url);
+                break;
+            default:
+                logger.warn("Page [{}] is over the max body size of {} bytes.", url, this.maxBodySize);
+                break;
+        }
+    }
+
+    /**
+     * @param contentLength The value of a Content-Length header, possibly null.
+     * @return The length, or -1 if it is missing or not a valid length.
+     */
+    static long parseContentLength(String contentLength) {
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param contentType The Content-Type header, possibly null.
+     * @return True if the content type is one we can parse, a missing header is given the benefit of the doubt.
+     */
+    static boolean isHtml(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String mimeType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return mimeType.equals("text/html") || mimeType.equals("application/xhtml+xml") || mimeType.isEmpty();
+    }
+
+    /**
+     * Why a page wasn't downloaded.
+     */
+    public enum Rejection {
+        /**
+         * Its URL has the extension of a format which is never HTML, so it wasn't requested.
+         */
+        EXTENSION,
+
+        /**
+         * The response wasn't HTML, so its body wasn't read.
+         */
+        CONTENT_TYPE,
+
+        /**
+         * The body was over the max body size, either declared in the headers or found while reading it.
+         */
+        TOO_LARGE
+    }
+}
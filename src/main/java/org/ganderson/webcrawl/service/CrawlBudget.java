@@ -0,0 +1,232 @@
+package org.ganderson.webcrawl.service;
+
+/**
+ * Limits on how much of a site a crawl will queue, which keep crawl traps such as infinite calendars and faceted
+ * search from keeping the crawler busy forever. Links over a limit are dropped as they are offered to the
+ * {@link NonDuplicateQueue}, before they cost a fetch, see {@link CrawlBudgetTracker}.
+ *
+ * <p>
+ * Instances are immutable, use {@link #builder()} to create one. Every budget is unlimited by default, while the two
+ * trap heuristics, on URL length and on path segments repeated within a URL, start at limits which real pages rarely
+ * reach.
+ * </p>
+ */
+public class CrawlBudget {
+
+    /**
+     * The value of a limit which isn't set.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int maxDepth;
+    private final int maxPagesPerHost;
+    private final int maxPagesPerPathPrefix;
+    private final int maxQueryVariants;
+    private final int maxUrlLength;
+    private final int maxRepeatedSegments;
+
+    /**
+     * @param builder The builder holding the values for this budget.
+     */
+    private CrawlBudget(Builder builder) {
+        this.maxDepth = builder.maxDepth;
+        this.maxPagesPerHost = builder.maxPagesPerHost;
+        this.maxPagesPerPathPrefix = builder.maxPagesPerPathPrefix;
+        this.maxQueryVariants = builder.maxQueryVariants;
+        this.maxUrlLength = builder.maxUrlLength;
+        this.maxRepeatedSegments = builder.maxRepeatedSegments;
+    }
+
+    /**
+     * @return A new builder, initialised with the default values.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The most links followed from the first page to any page queued.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return The most pages queued from each host.
+     */
+    public int getMaxPagesPerHost() {
+        return maxPagesPerHost;
+    }
+
+    /**
+     * @return The most pages queued under each top level directory of each host, e.g. "/calendar/".
+     */
+    public int getMaxPagesPerPathPrefix() {
+        return maxPagesPerPathPrefix;
+    }
+
+    /**
+     * @return The most pages queued with a query for each path of each host.
+     */
+    public int getMaxQueryVariants() {
+        return maxQueryVariants;
+    }
+
+    /**
+     * @return The longest URL queued.
+     */
+    public int getMaxUrlLength() {
+        return maxUrlLength;
+    }
+
+    /**
+     * @return The most times any one path segment may appear in the path of a URL queued.
+     */
+    public int getMaxRepeatedSegments() {
+        return maxRepeatedSegments;
+    }
+
+    /**
+     * The limit a link was dropped for.
+     */
+    public enum Rejection {
+        /**
+         * Too many links from the first page, see {@link #getMaxDepth()}.
+         */
+        DEPTH,
+
+        /**
+         * Too many pages from its host, see {@link #getMaxPagesPerHost()}.
+         */
+        HOST,
+
+        /**
+         * Too many pages under its top level directory, see {@link #getMaxPagesPerPathPrefix()}.
+         */
+        PATH_PREFIX,
+
+        /**
+         * Too many queries on its path, see {@link #getMaxQueryVariants()}.
+         */
+        QUERY_VARIANTS,
+
+        /**
+         * A URL too long to be a real page, see {@link #getMaxUrlLength()}.
+         */
+        URL_LENGTH,
+
+        /**
+         * A path which repeats itself, such as relative links resolved against the wrong page, see
+         * {@link #getMaxRepeatedSegments()}.
+         */
+        REPEATED_SEGMENTS
+    }
+
+    /**
+     * Builds a {@link CrawlBudget}.
+     */
+    public static class Builder {
+        private int maxDepth = UNLIMITED;
+        private int maxPagesPerHost = UNLIMITED;
+        private int maxPagesPerPathPrefix = UNLIMITED;
+        private int maxQueryVariants = UNLIMITED;
+        private int maxUrlLength = 2048;
+        private int maxRepeatedSegments = 3;
+
+        /**
+         * Hidden, use {@link CrawlBudget#builder()}.
+         */
+        private Builder() {
+            // No op
+        }
+
+        /**
+         * Sets the most links which may be followed from the first page to reach any page, so 0 only crawls the first
+         * page and 1 also crawls the pages it links to. Unlimited by default.
+         *
+         * @param maxDepth The max depth, must not be negative.
+         * @return This builder.
+         */
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("Max depth must not be negative but was " + maxDepth);
+            }
+
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Sets the most pages which will be queued from each host. Unlimited by default.
+         *
+         * @param maxPagesPerHost The max pages, must be positive.
+         * @return This builder.
+         */
+        public Builder maxPagesPerHost(int maxPagesPerHost) {
+            this.maxPagesPerHost = requirePositive("Max pages per host", maxPagesPerHost);
+            return this;
+        }
+
+        /**
+         * Sets the most pages which will be queued under each top level directory of each host, such as
+         * "/calendar/" or "/search/", with pages directly under the root sharing one budget. Unlimited by default.
+         *
+         * @param maxPagesPerPathPrefix The max pages, must be positive.
+         * @return This builder.
+         */
+        public Builder maxPagesPerPathPrefix(int maxPagesPerPathPrefix) {
+            this.maxPagesPerPathPrefix = requirePositive("Max pages per path prefix", maxPagesPerPathPrefix);
+            return this;
+        }
+
+        /**
+         * Sets the most pages with a query which will be queued for each path of each host, which bounds the
+         * combinations of parameters explored on faceted search pages. The page without a query doesn't count.
+         * Unlimited by default.
+         *
+         * @param maxQueryVariants The max pages, must be positive.
+         * @return This builder.
+         */
+        public Builder maxQueryVariants(int maxQueryVariants) {
+            this.maxQueryVariants = requirePositive("Max query variants", maxQueryVariants);
+            return this;
+        }
+
+        /**
+         * Sets the length of the longest URL which will be queued, 2048 characters by default.
+         *
+         * @param maxUrlLength The max length, must be positive.
+         * @return This builder.
+         */
+        public Builder maxUrlLength(int maxUrlLength) {
+            this.maxUrlLength = requirePositive("Max URL length", maxUrlLength);
+            return this;
+        }
+
+        /**
+         * Sets the most times any one path segment may appear in a URL which will be queued, 3 by default. Paths
+         * such as "/a/b/a/b/a/b/" usually come from relative links which keep resolving deeper into the same pages.
+         *
+         * @param maxRepeatedSegments The max repeats, must be positive.
+         * @return This builder.
+         */
+        public Builder maxRepeatedSegments(int maxRepeatedSegments) {
+            this.maxRepeatedSegments = requirePositive("Max repeated segments", maxRepeatedSegments);
+            return this;
+        }
+
+        /**
+         * @return The budget built from the values set on this builder.
+         */
+        public CrawlBudget build() {
+            return new CrawlBudget(this);
+        }
+
+        private static int requirePositive(String name, int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive but was " + value);
+            }
+            return value;
+        }
+    }
+}
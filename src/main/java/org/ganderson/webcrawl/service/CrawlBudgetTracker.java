@@ -0,0 +1,262 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Enforces a {@link CrawlBudget} on the pages of one crawl, deciding for each new page offered to the
+ * {@link NonDuplicateQueue} whether it may be queued.
+ *
+ * <p>
+ * The trap heuristics only look at the URL itself. The budgets count the pages queued so far per host, per top level
+ * directory and per path with a query, and track the depth of every page queued, each in a primitive table keyed by
+ * fingerprint, so the cost is a few bytes per page and per distinct path rather than a copy of every URL. Counts start
+ * from zero when a crawl is resumed, so a resumed crawl gets a fresh budget. All methods are synchronized, so pages
+ * can be offered by many workers at once.
+ * </p>
+ *
+ * <p>
+ * The depth of a page is the fewest links it has been found from the first page so far. The max depth can be checked
+ * on its own before a page is recorded as seen, see {@link #isWithinDepth(CrawlUrl)}, so a page too deep along one
+ * path is still queued if found along a shorter one. A queued page found again along a shorter path before it has
+ * been visited has its depth lowered, see {@link #reachedAgain(CrawlUrl, CrawlUrl)}, so the pages it links to are held
+ * to the shorter depth. A page which has already been visited isn't visited again though, so if parallel workers
+ * reach it along a longer path first, the links it had that were too deep along that path stay dropped.
+ * </p>
+ */
+public class CrawlBudgetTracker {
+
+    private final CrawlBudget budget;
+    private final FingerprintCounts depths = new FingerprintCounts();
+    private final FingerprintCounts pagesPerHost = new FingerprintCounts();
+    private final FingerprintCounts pagesPerPathPrefix = new FingerprintCounts();
+    private final FingerprintCounts queryVariants = new FingerprintCounts();
+    private final Map<CrawlBudget.Rejection, Long> rejections = new EnumMap<>(CrawlBudget.Rejection.class);
+
+    /**
+     * @param budget The limits to enforce.
+     */
+    public CrawlBudgetTracker(CrawlBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Decides whether a page which hasn't been offered before may be queued, counting it against the budgets if so.
+     *
+     * @param page The page being offered.
+     * @param source The page it was linked from, or null if it is the first page.
+     * @return True if the page may be queued, false if it has been dropped.
+     */
+    public synchronized boolean admit(CrawlUrl page, CrawlUrl source) {
+        CrawlBudget.Rejection rejection = check(page, source);
+        if (rejection != null) {
+            this.rejections.merge(rejection, 1L, Long::sum);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the pages linked from a page are within the max depth, without counting anything. A page which
+     * is too deep along this path can still be admitted if it is found again along a shorter one.
+     *
+     * @param source The page they were linked from, or null if they are first pages.
+     * @return True if the pages may be queued as far as the max depth goes.
+     */
+    public synchronized boolean isWithinDepth(CrawlUrl source) {
+        return depthOf(source) <= this.budget.getMaxDepth();
+    }
+
+    /**
+     * Counts a page which hasn't been queued as dropped for being too deep, see {@link #isWithinDepth(CrawlUrl)}.
+     */
+    public synchronized void dropTooDeep() {
+        this.rejections.merge(CrawlBudget.Rejection.DEPTH, 1L, Long::sum);
+    }
+
+    /**
+     * Lowers the depth of a page which has already been queued if it has now been found along a shorter path, so
+     * the pages it links to are held to the shorter depth if it hasn't been visited yet.
+     *
+     * @param page The page being offered again.
+     * @param source The page it was linked from this time, or null if it is a first page.
+     */
+    public void reachedAgain(CrawlUrl page, CrawlUrl source) {
+        if (this.budget.getMaxDepth() == CrawlBudget.UNLIMITED) {
+            return;
+        }
+        synchronized (this) {
+            long fingerprint = page.fingerprint();
+            int depth = depthOf(source);
+            // Pages without a recorded depth are first pages, or weren't queued
+            if (this.depths.get(fingerprint) > depth) {
+                this.depths.put(fingerprint, depth);
+            }
+        }
+    }
+
+    /**
+     * @return The total number of pages dropped for any reason.
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejections.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return The number of pages dropped for each limit, keyed by {@link CrawlBudget.Rejection} name.
+     */
+    public synchronized Map<String, Long> getRejections() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        this.rejections.forEach((rejection, count) -> snapshot.put(rejection.name(), count));
+        return snapshot;
+    }
+
+    /**
+     * Checks every limit, only counting the page once it is known to be within all of them.
+     *
+     * @param page The page being offered.
+     * @param source The page it was linked from, or null.
+     * @return The limit the page is over, or null if it may be queued.
+     */
+    private CrawlBudget.Rejection check(CrawlUrl page, CrawlUrl source) {
+        if (page.toString().length() > this.budget.getMaxUrlLength()) {
+            return CrawlBudget.Rejection.URL_LENGTH;
+        }
+        String path = page.getPath();
+        if (maxSegmentRepeats(path) > this.budget.getMaxRepeatedSegments()) {
+            return CrawlBudget.Rejection.REPEATED_SEGMENTS;
+        }
+
+        int depth = depthOf(source);
+        if (depth > this.budget.getMaxDepth()) {
+            return CrawlBudget.Rejection.DEPTH;
+        }
+
+        String origin = page.getOrigin();
+        long host = UrlFingerprint.of(origin);
+        if (this.pagesPerHost.get(host) >= this.budget.getMaxPagesPerHost()) {
+            return CrawlBudget.Rejection.HOST;
+        }
+        long prefix = UrlFingerprint.of(origin + pathPrefixOf(path));
+        if (this.pagesPerPathPrefix.get(prefix) >= this.budget.getMaxPagesPerPathPrefix()) {
+            return CrawlBudget.Rejection.PATH_PREFIX;
+        }
+        long pathWithQuery = page.getQuery() == null ? 0 : UrlFingerprint.of(origin + path);
+        if (pathWithQuery != 0 && this.queryVariants.get(pathWithQuery) >= this.budget.getMaxQueryVariants()) {
+            return CrawlBudget.Rejection.QUERY_VARIANTS;
+        }
+
+        if (this.budget.getMaxDepth() != CrawlBudget.UNLIMITED && depth > 0) {
+            this.depths.put(page.fingerprint(), depth);
+        }
+        if (this.budget.getMaxPagesPerHost() != CrawlBudget.UNLIMITED) {
+            this.pagesPerHost.increment(host);
+        }
+        if (this.budget.getMaxPagesPerPathPrefix() != CrawlBudget.UNLIMITED) {
+            this.pagesPerPathPrefix.increment(prefix);
+        }
+        if (pathWithQuery != 0 && this.budget.getMaxQueryVariants() != CrawlBudget.UNLIMITED) {
+            this.queryVariants.increment(pathWithQuery);
+        }
+        return null;
+    }
+
+    /**
+     * @param source The page a link was found on, or null if it is a first page.
+     * @return The depth of the pages it links to.
+     */
+    private int depthOf(CrawlUrl source) {
+        return source == null ? 0 : this.depths.get(source.fingerprint()) + 1;
+    }
+
+    /**
+     * @param path The path of a URL.
+     * @return The top level directory of the path, e.g. "/calendar/" for "/calendar/2024/01", or "/" if the path is
+     *     directly under the root.
+     */
+    static String pathPrefixOf(String path) {
+        int end = path.indexOf('/', 1);
+        return end < 0 ? "/" : path.substring(0, end + 1);
+    }
+
+    /**
+     * @param path The path of a URL.
+     * @return The most times any one non-empty segment appears in the path.
+     */
+    static int maxSegmentRepeats(String path) {
+        String[] segments = path.split("/");
+        int max = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty()) {
+                continue;
+            }
+            int repeats = 1;
+            for (int j = i + 1; j < segments.length; j++) {
+                if (segments[i].equals(segments[j])) {
+                    repeats++;
+                }
+            }
+            max = Math.max(max, repeats);
+        }
+        return max;
+    }
+
+    /**
+     * Open-addressing table of counts keyed by non-zero fingerprint, where a missing key counts as zero.
+     */
+    private static final class FingerprintCounts {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        int get(long key) {
+            int slot = slotOf(key);
+            return this.keys[slot] == key ? this.values[slot] : 0;
+        }
+
+        void put(long key, int value) {
+            int slot = slotOf(key);
+            if (this.keys[slot] == 0) {
+                this.keys[slot] = key;
+                this.size++;
+            }
+            this.values[slot] = value;
+            if (this.size * 2 > this.keys.length) {
+                grow();
+            }
+        }
+
+        void increment(long key) {
+            put(key, get(key) + 1);
+        }
+
+        /**
+         * @return The slot holding the key, or the empty slot where it belongs.
+         */
+        private int slotOf(long key) {
+            int mask = this.keys.length - 1;
+            int slot = (int) key & mask;
+            while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = this.keys;
+            int[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new int[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slotOf(oldKeys[i]);
+                    this.keys[slot] = oldKeys[i];
+                    this.values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,946 @@
+package org.ganderson.webcrawl.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * Settings which control how a {@link WebCrawler} performs its crawl.
+ *
+ * <p>
+ * Instances are immutable, use {@link #builder()} to create one or {@link #defaults()} for the original single
+ * threaded behaviour.
+ * </p>
+ */
+public class CrawlConfig {
+
+    /**
+     * The number of results which can wait for an asynchronous result sink before workers are held up.
+     */
+    private static final int RESULT_QUEUE_CAPACITY = 1024;
+
+    private final int parallelism;
+    private final VisitedSetMode visitedSetMode;
+    private final long expectedPages;
+    private final Path frontierSpillDirectory;
+    private final UrlCanonicalizer canonicalizer;
+    private final boolean asyncFetching;
+    private final int maxRequestsPerHost;
+    private final boolean politeness;
+    private final Duration crawlDelay;
+    private final int maxPagesPerHost;
+    private final boolean adaptiveConcurrency;
+    private final int adaptiveMaxPagesPerHost;
+    private final boolean pipelined;
+    private final int parserThreads;
+    private final boolean streamingExtraction;
+    private final Path checkpointFile;
+    private final Duration checkpointInterval;
+    private final boolean resume;
+    private final CrawlResultSink resultSink;
+    private final boolean asyncResults;
+    private final boolean linkGraph;
+    private final Duration metricsLogInterval;
+    private final Path responseCacheDirectory;
+    private final int nearDuplicateDistance;
+    private final CrawlBudget budget;
+    private final CrawlScope scope;
+    private final Duration robotsExpiry;
+    private final RobotsCache.Fetcher robotsFetcher;
+    private final boolean sitemaps;
+    private final SitemapReader.Opener sitemapOpener;
+    private final ContentFilter contentFilter;
+
+    /**
+     * @param builder The builder holding the values for this config.
+     */
+    private CrawlConfig(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.visitedSetMode = builder.visitedSetMode;
+        this.expectedPages = builder.expectedPages;
+        this.frontierSpillDirectory = builder.frontierSpillDirectory;
+        this.canonicalizer = builder.canonicalizer;
+        this.asyncFetching = builder.asyncFetching;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.politeness = builder.politeness;
+        this.crawlDelay = builder.crawlDelay;
+        this.maxPagesPerHost = builder.maxPagesPerHost;
+        this.adaptiveConcurrency = builder.adaptiveConcurrency;
+        this.adaptiveMaxPagesPerHost = builder.adaptiveMaxPagesPerHost;
+        this.pipelined = builder.pipelined;
+        this.parserThreads = builder.parserThreads;
+        this.streamingExtraction = builder.streamingExtraction;
+        this.checkpointFile = builder.checkpointFile;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.resume = builder.resume;
+        this.resultSink = builder.resultSink;
+        this.asyncResults = builder.asyncResults;
+        this.linkGraph = builder.linkGraph;
+        this.metricsLogInterval = builder.metricsLogInterval;
+        this.responseCacheDirectory = builder.responseCacheDirectory;
+        this.nearDuplicateDistance = builder.nearDuplicateDistance;
+        this.budget = builder.budget;
+        this.scope = builder.scope;
+        this.robotsExpiry = builder.robotsExpiry;
+        this.robotsFetcher = builder.robotsFetcher;
+        this.sitemaps = builder.sitemaps;
+        this.sitemapOpener = builder.sitemapOpener;
+        this.contentFilter = new ContentFilter(builder.maxBodySize, builder.skipBinaryExtensions);
+    }
+
+    /**
+     * @return A config which crawls one page at a time on the calling thread.
+     */
+    public static CrawlConfig defaults() {
+        return builder().build();
+    }
+
+    /**
+     * @return A new builder, initialised with the default values.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The maximum number of pages which will be fetched at the same time.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return How the crawl remembers which pages it has already seen.
+     */
+    public VisitedSetMode getVisitedSetMode() {
+        return visitedSetMode;
+    }
+
+    /**
+     * @return Roughly how many pages the crawl is expected to find, used to size data structures up front.
+     */
+    public long getExpectedPages() {
+        return expectedPages;
+    }
+
+    /**
+     * @return The directory which waiting pages are spilled to, or null if they are all kept in memory.
+     */
+    public Path getFrontierSpillDirectory() {
+        return frontierSpillDirectory;
+    }
+
+    /**
+     * @return The rules used to rewrite links into their canonical form before they're de-duplicated.
+     */
+    public UrlCanonicalizer getCanonicalizer() {
+        return canonicalizer;
+    }
+
+    /**
+     * @return True if pages are fetched with non-blocking requests rather than a thread per request.
+     */
+    public boolean isAsyncFetching() {
+        return asyncFetching;
+    }
+
+    /**
+     * @return The maximum number of requests in flight to any single host when fetching asynchronously.
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @return True if waiting pages are queued per host and handed out according to each host's limits.
+     */
+    public boolean isPoliteness() {
+        return politeness;
+    }
+
+    /**
+     * @return The minimum time between visiting two pages from the same host, when politeness is enabled.
+     */
+    public Duration getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    /**
+     * @return The maximum number of pages from the same host visited at once, when politeness is enabled.
+     */
+    public int getMaxPagesPerHost() {
+        return maxPagesPerHost;
+    }
+
+    /**
+     * @return True if the number of pages visited at once from each host is tuned from how the host responds.
+     */
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * @return The highest number of pages from the same host visited at once, when concurrency is adaptive.
+     */
+    public int getAdaptiveMaxPagesPerHost() {
+        return adaptiveMaxPagesPerHost;
+    }
+
+    /**
+     * @return True if pages are fetched, parsed and queued by separate stages with their own threads.
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * @return The number of pages parsed at once in a pipelined crawl.
+     */
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    /**
+     * @return True if links are read from each page's HTML as it is decoded, without parsing it into a document.
+     */
+    public boolean isStreamingExtraction() {
+        return streamingExtraction;
+    }
+
+    /**
+     * @return The file the progress of the crawl is recorded in, or null if it isn't recorded.
+     */
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @return How often the recorded progress is forced to disk.
+     */
+    public Duration getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return True if a crawl picks up from the progress already recorded in the checkpoint file.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @return Where the result of each visited page is sent.
+     */
+    public CrawlResultSink getResultSink() {
+        return resultSink;
+    }
+
+    /**
+     * @return True if results are handed to the result sink on its own thread.
+     */
+    public boolean isAsyncResults() {
+        return asyncResults;
+    }
+
+    /**
+     * @return True if the crawl keeps the graph of links between pages, see {@link WebCrawler#getLinkGraph()}.
+     */
+    public boolean isLinkGraph() {
+        return linkGraph;
+    }
+
+    /**
+     * @return True if the crawl's metrics are published over JMX and logged periodically.
+     */
+    public boolean isMetrics() {
+        return metricsLogInterval != null;
+    }
+
+    /**
+     * @return How often the crawl's metrics are logged, or null if metrics aren't enabled.
+     */
+    public Duration getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
+    /**
+     * @return The directory responses are cached in for revalidating on a recrawl, or null if they aren't cached.
+     */
+    public Path getResponseCacheDirectory() {
+        return responseCacheDirectory;
+    }
+
+    /**
+     * @return The most bits two pages' fingerprints may differ in for them to be near duplicates, or -1 if near
+     *     duplicates aren't detected.
+     */
+    public int getNearDuplicateDistance() {
+        return nearDuplicateDistance;
+    }
+
+    /**
+     * @return The rules for which links are part of the crawl, or null if the crawl stays on the first page's host
+     *     and under its path, see {@link CrawlScope#of(CrawlUrl)}.
+     */
+    public CrawlScope getScope() {
+        return scope;
+    }
+
+    /**
+     * @param url The page the crawl starts from.
+     * @return The rules for which links are part of the crawl.
+     */
+    CrawlScope scopeFor(CrawlUrl url) {
+        return this.scope != null ? this.scope : CrawlScope.of(this.canonicalizer.canonicalize(url));
+    }
+
+    /**
+     * @return How long the robots.txt of each host is kept before it is fetched again, or null if robots.txt is
+     *     ignored.
+     */
+    public Duration getRobotsExpiry() {
+        return robotsExpiry;
+    }
+
+    /**
+     * @param frontierStore The frontier store of the crawl, which is told the crawl-delay of each host if it
+     *     schedules hosts.
+     * @return A new cache of each host's robots.txt, or null if robots.txt is ignored.
+     */
+    RobotsCache createRobotsCache(FrontierStore frontierStore) {
+        if (this.robotsExpiry == null) {
+            return null;
+        }
+        BiConsumer<String, Duration> crawlDelayListener = null;
+        if (frontierStore instanceof HostScheduledFrontierStore) {
+            // A host can ask for a longer delay than configured, but never a shorter one
+            HostScheduledFrontierStore scheduled = (HostScheduledFrontierStore) frontierStore;
+            crawlDelayListener = (origin, delay) -> scheduled.setCrawlDelay(
+                origin, delay.compareTo(this.crawlDelay) > 0 ? delay : this.crawlDelay);
+        }
+        RobotsCache.Fetcher fetcher = this.robotsFetcher != null ? this.robotsFetcher : RobotsCache.httpFetcher();
+        return new RobotsCache(fetcher, this.robotsExpiry, crawlDelayListener);
+    }
+
+    /**
+     * @return Decides which pages the default fetchers download, from their URL, headers and body size.
+     */
+    public ContentFilter getContentFilter() {
+        return contentFilter;
+    }
+
+    /**
+     * @return True if the crawl is seeded with the pages listed in the first page's sitemaps.
+     */
+    public boolean isSitemaps() {
+        return sitemaps;
+    }
+
+    /**
+     * @return A new reader of sitemaps, or null if the crawl isn't seeded from sitemaps.
+     */
+    SitemapReader createSitemapReader() {
+        if (!this.sitemaps) {
+            return null;
+        }
+        return new SitemapReader(this.sitemapOpener != null ? this.sitemapOpener : SitemapReader.httpOpener());
+    }
+
+    /**
+     * @return The limits on which pages the crawl will queue, or null if every page found is queued.
+     */
+    public CrawlBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return A new tracker of the crawl's budget, or null if there isn't a budget.
+     */
+    CrawlBudgetTracker createBudgetTracker() {
+        return this.budget == null ? null : new CrawlBudgetTracker(this.budget);
+    }
+
+    /**
+     * @return A new detector of near duplicate pages, or null if near duplicates aren't detected.
+     */
+    NearDuplicateDetector createNearDuplicateDetector() {
+        return this.nearDuplicateDistance < 0 ? null : new NearDuplicateDetector(this.nearDuplicateDistance);
+    }
+
+    /**
+     * @return The sink a crawl should send its results to, which is the configured sink wrapped in a new
+     *     {@link AsyncResultSink} if results are written asynchronously.
+     */
+    CrawlResultSink createResultSink() {
+        if (!this.asyncResults) {
+            return this.resultSink;
+        }
+        return new AsyncResultSink(this.resultSink, RESULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @return A cache of the crawled pages' responses, or null if a response cache directory hasn't been set.
+     */
+    ResponseCache createResponseCache() {
+        return this.responseCacheDirectory == null ? null : new ResponseCache(this.responseCacheDirectory);
+    }
+
+    /**
+     * @return A journal for recording the progress of the crawl, or null if a checkpoint file hasn't been set.
+     */
+    CrawlJournal openJournal() {
+        if (this.checkpointFile == null) {
+            return null;
+        }
+        try {
+            return CrawlJournal.open(this.checkpointFile, this.checkpointInterval, this.resume);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return A new, empty frontier store, scheduled per host if politeness or adaptive concurrency is enabled or
+     *     spilling to disk if a directory has been configured.
+     */
+    FrontierStore createFrontierStore() {
+        if (this.adaptiveConcurrency) {
+            return new HostScheduledFrontierStore(this.crawlDelay, AdaptiveConcurrencyController.MIN_LIMIT);
+        }
+        if (this.politeness) {
+            return new HostScheduledFrontierStore(this.crawlDelay, this.maxPagesPerHost);
+        }
+        if (this.frontierSpillDirectory == null) {
+            return new InMemoryFrontierStore();
+        }
+        return new SpillingFrontierStore(this.frontierSpillDirectory);
+    }
+
+    /**
+     * @return A new controller for tuning per-host concurrency, or null if concurrency isn't adaptive.
+     */
+    AdaptiveConcurrencyController createConcurrencyController() {
+        if (!this.adaptiveConcurrency) {
+            return null;
+        }
+        return new AdaptiveConcurrencyController(this.adaptiveMaxPagesPerHost);
+    }
+
+    /**
+     * @return A new, empty visited set of the configured mode.
+     */
+    VisitedSet createVisitedSet() {
+        switch (this.visitedSetMode) {
+            case FINGERPRINT:
+                return new FingerprintVisitedSet(this.expectedPages, false);
+            case FINGERPRINT_OFF_HEAP:
+                return new FingerprintVisitedSet(this.expectedPages, true);
+            default:
+                return new ExactVisitedSet();
+        }
+    }
+
+    /**
+     * The ways in which the crawl can remember which pages it has already seen.
+     */
+    public enum VisitedSetMode {
+        /**
+         * Keep the full URL of every page, see {@link ExactVisitedSet}.
+         */
+        EXACT,
+
+        /**
+         * Keep a 64-bit fingerprint of each page on the heap, see {@link FingerprintVisitedSet}.
+         */
+        FINGERPRINT,
+
+        /**
+         * Keep a 64-bit fingerprint of each page in direct memory, see {@link FingerprintVisitedSet}.
+         */
+        FINGERPRINT_OFF_HEAP
+    }
+
+    /**
+     * Builder for {@link CrawlConfig}.
+     */
+    public static class Builder {
+
+        private int parallelism = 1;
+        private VisitedSetMode visitedSetMode = VisitedSetMode.EXACT;
+        private long expectedPages = 0;
+        private Path frontierSpillDirectory;
+        private UrlCanonicalizer canonicalizer = UrlCanonicalizer.defaults();
+        private boolean asyncFetching = false;
+        private int maxRequestsPerHost = 8;
+        private boolean politeness = false;
+        private Duration crawlDelay = Duration.ZERO;
+        private int maxPagesPerHost = Integer.MAX_VALUE;
+        private boolean adaptiveConcurrency = false;
+        private int adaptiveMaxPagesPerHost = Integer.MAX_VALUE;
+        private boolean pipelined = false;
+        private boolean streamingExtraction = false;
+        private int parserThreads = Runtime.getRuntime().availableProcessors();
+        private Path checkpointFile;
+        private Duration checkpointInterval = Duration.ofSeconds(10);
+        private boolean resume = false;
+        private CrawlResultSink resultSink = new ConsoleResultSink();
+        private boolean asyncResults = false;
+        private boolean linkGraph = false;
+        private Duration metricsLogInterval;
+        private Path responseCacheDirectory;
+        private int nearDuplicateDistance = -1;
+        private CrawlBudget budget;
+        private CrawlScope scope;
+        private Duration robotsExpiry;
+        private RobotsCache.Fetcher robotsFetcher;
+        private boolean sitemaps;
+        private SitemapReader.Opener sitemapOpener;
+        private int maxBodySize = ContentFilter.DEFAULT_MAX_BODY_SIZE;
+        private boolean skipBinaryExtensions = true;
+
+        /**
+         * Hidden, use {@link CrawlConfig#builder()}.
+         */
+        private Builder() {
+            // No op
+        }
+
+        /**
+         * Sets the number of pages which may be fetched at the same time. A value of 1 crawls on the calling thread.
+         *
+         * @param parallelism The maximum number of in-flight fetches, must be at least 1.
+         * @return This builder.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1 but was " + parallelism);
+            }
+
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets how the crawl remembers which pages it has already seen. Fingerprints use a fraction of the memory of
+         * full URLs on large crawls at the cost of a very small chance of skipping a page.
+         *
+         * @param visitedSetMode The mode to use.
+         * @return This builder.
+         */
+        public Builder visitedSetMode(VisitedSetMode visitedSetMode) {
+            this.visitedSetMode = visitedSetMode;
+            return this;
+        }
+
+        /**
+         * Sets roughly how many pages the crawl is expected to find, so that data structures can be sized up front
+         * rather than grown as the crawl progresses.
+         *
+         * @param expectedPages The expected number of pages, zero if unknown.
+         * @return This builder.
+         */
+        public Builder expectedPages(long expectedPages) {
+            if (expectedPages < 0) {
+                throw new IllegalArgumentException("Expected pages must not be negative but was " + expectedPages);
+            }
+
+            this.expectedPages = expectedPages;
+            return this;
+        }
+
+        /**
+         * Keeps only the front and back of the frontier in memory, spilling the pages in between to segment files in
+         * the given directory. See {@link SpillingFrontierStore}.
+         *
+         * @param frontierSpillDirectory An existing directory to write segment files to, or null to keep every
+         *     waiting page in memory.
+         * @return This builder.
+         */
+        public Builder frontierSpillDirectory(Path frontierSpillDirectory) {
+            this.frontierSpillDirectory = frontierSpillDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the rules used to rewrite links into their canonical form, so that different spellings of the same
+         * page are only fetched once.
+         *
+         * @param canonicalizer The canonicalization rules for this crawl.
+         * @return This builder.
+         */
+        public Builder canonicalizer(UrlCanonicalizer canonicalizer) {
+            this.canonicalizer = canonicalizer;
+            return this;
+        }
+
+        /**
+         * Fetches pages with non-blocking requests over pooled, keep-alive connections, see {@link HttpPageFetcher}.
+         * The parallelism then sets the number of requests in flight rather than the number of threads.
+         *
+         * @param asyncFetching True to fetch asynchronously.
+         * @return This builder.
+         */
+        public Builder asyncFetching(boolean asyncFetching) {
+            this.asyncFetching = asyncFetching;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight to any single host when fetching asynchronously. With
+         * {@link #adaptiveConcurrency(int)} the requests to each host are also held to the limit it is tuned to.
+         *
+         * @param maxRequestsPerHost The maximum, must be at least 1.
+         * @return This builder.
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException(
+                    "Max requests per host must be at least 1 but was " + maxRequestsPerHost);
+            }
+
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Queues waiting pages per host and only visits a page once its host is ready, see
+         * {@link HostScheduledFrontierStore}. A slow host then only holds up its own pages, and no host is sent
+         * requests faster than these limits allow. Waiting pages are kept in memory, so this can't be combined with
+         * a frontier spill directory.
+         *
+         * @param crawlDelay The minimum time between visiting two pages from the same host, must not be negative.
+         * @param maxPagesPerHost The maximum number of pages from the same host visited at once, must be at least 1.
+         * @return This builder.
+         */
+        public Builder politeness(Duration crawlDelay, int maxPagesPerHost) {
+            if (crawlDelay.isNegative()) {
+                throw new IllegalArgumentException("Crawl delay must not be negative but was " + crawlDelay);
+            }
+            if (maxPagesPerHost < 1) {
+                throw new IllegalArgumentException(
+                    "Max pages per host must be at least 1 but was " + maxPagesPerHost);
+            }
+
+            this.politeness = true;
+            this.crawlDelay = crawlDelay;
+            this.maxPagesPerHost = maxPagesPerHost;
+            return this;
+        }
+
+        /**
+         * Tunes the number of pages visited at once from each host while crawling, see
+         * {@link AdaptiveConcurrencyController}. Each host starts at one page at a time, which is raised while it
+         * responds promptly and halved when it slows down, times out or responds with a 429 or 503. This replaces the
+         * fixed maximum set by {@link #politeness(Duration, int)}, although any crawl delay still applies. As with
+         * politeness, this can't be combined with a frontier spill directory.
+         *
+         * @param maxPagesPerHost The highest number of pages from the same host visited at once, must be at least 1.
+         * @return This builder.
+         */
+        public Builder adaptiveConcurrency(int maxPagesPerHost) {
+            if (maxPagesPerHost < 1) {
+                throw new IllegalArgumentException(
+                    "Max pages per host must be at least 1 but was " + maxPagesPerHost);
+            }
+
+            this.adaptiveConcurrency = true;
+            this.adaptiveMaxPagesPerHost = maxPagesPerHost;
+            return this;
+        }
+
+        /**
+         * Fetches, parses and queues pages in separate stages connected by bounded queues, see
+         * {@link WebCrawler#crawl()}. The parallelism then sets the number of pages fetched at once on an I/O pool,
+         * while parsing runs on its own pool of {@link #parserThreads(int)} threads.
+         *
+         * @param pipelined True to crawl with a pipeline.
+         * @return This builder.
+         */
+        public Builder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        /**
+         * Sets the number of pages parsed at once in a pipelined crawl, by default one per available processor as
+         * parsing is bound by the CPU.
+         *
+         * @param parserThreads The number of parser threads, must be at least 1.
+         * @return This builder.
+         */
+        public Builder parserThreads(int parserThreads) {
+            if (parserThreads < 1) {
+                throw new IllegalArgumentException("Parser threads must be at least 1 but was " + parserThreads);
+            }
+
+            this.parserThreads = parserThreads;
+            return this;
+        }
+
+        /**
+         * Reads the links on each page straight from its HTML as the body is decoded, with a
+         * {@link StreamingLinkExtractor}, rather than parsing the page into a document and querying it. This applies
+         * to every kind of crawl, and saves building a DOM which would only be queried once. Near duplicate detection
+         * needs the parsed page, so can't be combined with this.
+         *
+         * @param streamingExtraction True to extract links without parsing pages.
+         * @return This builder.
+         */
+        public Builder streamingExtraction(boolean streamingExtraction) {
+            this.streamingExtraction = streamingExtraction;
+            return this;
+        }
+
+        /**
+         * Records the progress of the crawl in a file, so that it can be resumed if interrupted, see
+         * {@link CrawlJournal}. Progress is appended to the file as the crawl goes and forced to disk at each
+         * checkpoint, so an interrupted crawl only loses the progress made since the last checkpoint.
+         *
+         * @param checkpointFile The file to record progress in, or null to not record it.
+         * @param checkpointInterval How often recorded progress is forced to disk, must not be negative.
+         * @return This builder.
+         */
+        public Builder checkpoint(Path checkpointFile, Duration checkpointInterval) {
+            if (checkpointInterval.isNegative()) {
+                throw new IllegalArgumentException(
+                    "Checkpoint interval must not be negative but was " + checkpointInterval);
+            }
+
+            this.checkpointFile = checkpointFile;
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * Picks up from the progress already recorded in the checkpoint file, rather than starting the crawl again
+         * from the first page. Pages which were visited before are not fetched again.
+         *
+         * @param resume True to resume from the checkpoint file if it exists.
+         * @return This builder.
+         */
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Sets where the result of each visited page is sent, by default printing it to the console with
+         * {@link ConsoleResultSink}. The sink is flushed once the crawl has finished but isn't closed.
+         *
+         * @param resultSink The sink for the results of the crawl.
+         * @return This builder.
+         */
+        public Builder resultSink(CrawlResultSink resultSink) {
+            if (resultSink == null) {
+                throw new IllegalArgumentException("Result sink must not be null");
+            }
+
+            this.resultSink = resultSink;
+            return this;
+        }
+
+        /**
+         * Hands results to the result sink on a writer thread of its own, see {@link AsyncResultSink}, so that
+         * workers don't wait on slow output.
+         *
+         * @param asyncResults True to write results asynchronously.
+         * @return This builder.
+         */
+        public Builder asyncResults(boolean asyncResults) {
+            this.asyncResults = asyncResults;
+            return this;
+        }
+
+        /**
+         * Keeps the graph of links between the pages crawled in a compressed {@link LinkGraph}, which can be queried
+         * for in-links, out-links and click depths through {@link WebCrawler#getLinkGraph()}.
+         *
+         * @param linkGraph True to keep the link graph.
+         * @return This builder.
+         */
+        public Builder linkGraph(boolean linkGraph) {
+            this.linkGraph = linkGraph;
+            return this;
+        }
+
+        /**
+         * Publishes the crawl's {@link CrawlMetrics} over JMX while it runs, and logs a summary of them at info level
+         * every interval and once the crawl has finished. The metrics are recorded either way and can always be read
+         * from {@link WebCrawler#getMetrics()}.
+         *
+         * @param logInterval How often to log the metrics, must be positive, or null to not publish them.
+         * @return This builder.
+         */
+        public Builder metrics(Duration logInterval) {
+            if (logInterval != null && (logInterval.isZero() || logInterval.isNegative())) {
+                throw new IllegalArgumentException("Metrics log interval must be positive but was " + logInterval);
+            }
+
+            this.metricsLogInterval = logInterval;
+            return this;
+        }
+
+        /**
+         * Caches the {@code ETag} and {@code Last-Modified} validators and the links of each page crawled in a
+         * {@link ResponseCache}, so that crawling the same site again sends conditional requests and reuses the cached
+         * links of pages which haven't changed, without downloading or parsing them. Can't be combined with
+         * asynchronous fetching unless the crawl is pipelined.
+         *
+         * @param directory The directory to keep the cache in, or null to not cache responses.
+         * @return This builder.
+         */
+        public Builder responseCache(Path directory) {
+            this.responseCacheDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Skips scraping pages whose visible text is a near duplicate of a page already crawled, as found by a
+         * {@link NearDuplicateDetector}. Such pages are still reported, but without links, so the crawl doesn't
+         * expand the same links again for every copy of a page.
+         *
+         * @param maxDistance The most bits two pages' fingerprints may differ in for them to be near duplicates, from
+         *     0 for identical text to {@link NearDuplicateDetector#MAX_DISTANCE}, or -1 to not detect them.
+         * @return This builder.
+         */
+        public Builder nearDuplicateDistance(int maxDistance) {
+            if (maxDistance < -1 || maxDistance > NearDuplicateDetector.MAX_DISTANCE) {
+                throw new IllegalArgumentException(
+                    "Near duplicate distance must be between -1 and " + NearDuplicateDetector.MAX_DISTANCE
+                        + " but was " + maxDistance);
+            }
+
+            this.nearDuplicateDistance = maxDistance;
+            return this;
+        }
+
+        /**
+         * Limits which pages the crawl will queue, by depth, by pages per host, directory and path, and with
+         * heuristics for crawl traps. Pages outside the budget are dropped as they are found, before they are
+         * fetched, and counted by {@link WebCrawler#getBudgetTracker()}.
+         *
+         * @param budget The crawl budget, or null to queue every page found.
+         * @return This builder.
+         */
+        public Builder budget(CrawlBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Sets which links are part of the crawl, for crawls which span several hosts or need to include or exclude
+         * parts of a site. By default the crawl stays on the first page's host and under its path.
+         *
+         * @param scope The crawl scope, or null for the default.
+         * @return This builder.
+         */
+        public Builder scope(CrawlScope scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        /**
+         * Obeys the robots.txt of every host crawled, see {@link RobotsCache}. Each host's robots.txt is fetched the
+         * first time one of its pages is found, and pages it disallows are dropped before they are queued. With
+         * politeness or adaptive concurrency, a crawl-delay longer than the configured delay is used for its host.
+         *
+         * @param cacheExpiry How long each robots.txt is kept before it is fetched again, must be positive, or null
+         *     to ignore robots.txt.
+         * @return This builder.
+         */
+        public Builder robotsTxt(Duration cacheExpiry) {
+            if (cacheExpiry != null && (cacheExpiry.isZero() || cacheExpiry.isNegative())) {
+                throw new IllegalArgumentException("Robots.txt expiry must be positive but was " + cacheExpiry);
+            }
+
+            this.robotsExpiry = cacheExpiry;
+            return this;
+        }
+
+        /**
+         * Sets how robots.txt is fetched when it is obeyed, by default with a client of its own.
+         *
+         * @param robotsFetcher The fetcher, or null for the default.
+         * @return This builder.
+         */
+        public Builder robotsFetcher(RobotsCache.Fetcher robotsFetcher) {
+            this.robotsFetcher = robotsFetcher;
+            return this;
+        }
+
+        /**
+         * Seeds the crawl with the pages listed in the first page's sitemaps, see {@link SitemapReader}, which are
+         * those listed in its host's robots.txt when robots.txt is obeyed, and "/sitemap.xml". Sitemaps are read on
+         * a thread of their own while the crawl runs, or before it starts with a parallelism of 1, their pages queued
+         * in batches as they are read. Pages outside the crawl scope are dropped like any other link. Off by default.
+         *
+         * @param sitemaps True to seed the crawl from sitemaps.
+         * @return This builder.
+         */
+        public Builder sitemaps(boolean sitemaps) {
+            this.sitemaps = sitemaps;
+            return this;
+        }
+
+        /**
+         * Sets how sitemaps are downloaded when the crawl is seeded from them, by default with a client of its own.
+         *
+         * @param sitemapOpener The opener, or null for the default.
+         * @return This builder.
+         */
+        public Builder sitemapOpener(SitemapReader.Opener sitemapOpener) {
+            this.sitemapOpener = sitemapOpener;
+            return this;
+        }
+
+        /**
+         * Sets the largest body the default fetchers download, 10 MB by default. A page declaring a longer
+         * Content-Length isn't read at all, and one without is abandoned as soon as it passes the limit, see
+         * {@link ContentFilter}.
+         *
+         * @param maxBodySize The max body size in bytes, must be positive.
+         * @return This builder.
+         */
+        public Builder maxBodySize(int maxBodySize) {
+            if (maxBodySize <= 0) {
+                throw new IllegalArgumentException("Max body size must be positive but was " + maxBodySize);
+            }
+
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        /**
+         * Sets whether the default fetchers skip pages whose URL has the extension of a format which is never HTML,
+         * such as ".pdf" or ".jpg", without requesting them. On by default.
+         *
+         * @param skipBinaryExtensions True to skip them.
+         * @return This builder.
+         */
+        public Builder skipBinaryExtensions(boolean skipBinaryExtensions) {
+            this.skipBinaryExtensions = skipBinaryExtensions;
+            return this;
+        }
+
+        /**
+         * @return The config built from the values set on this builder.
+         */
+        public CrawlConfig build() {
+            if ((this.politeness || this.adaptiveConcurrency) && this.frontierSpillDirectory != null) {
+                throw new IllegalStateException(
+                    "Politeness and adaptive concurrency can't be combined with a frontier spill directory");
+            }
+            if (this.asyncFetching && !this.pipelined && this.responseCacheDirectory != null) {
+                throw new IllegalStateException(
+                    "A response cache can't be combined with asynchronous fetching unless the crawl is pipelined");
+            }
+            if (this.streamingExtraction && this.nearDuplicateDistance >= 0) {
+                throw new IllegalStateException(
+                    "Near duplicate detection can't be combined with streaming extraction, as it needs parsed pages");
+            }
+            return new CrawlConfig(this);
+        }
+    }
+}
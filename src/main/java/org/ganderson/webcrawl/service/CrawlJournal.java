@@ -0,0 +1,505 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Append-only record of the progress of a crawl, from which the visited set and frontier can be rebuilt if the crawl
+ * is interrupted.
+ *
+ * <p>
+ * Two kinds of record are written. A page is recorded as discovered, with its full URL, when it is first queued, and
+ * as visited, with just its 64-bit {@link CrawlUrl#fingerprint() fingerprint}, once its links have been queued. On
+ * resume every discovered page is seen again, and those which weren't visited are queued again in the order they
+ * were discovered. A page which was part way through being visited is simply visited again.
+ * </p>
+ *
+ * <p>
+ * Records are buffered in memory and only written to the file at each checkpoint, which happens once the checkpoint
+ * interval has passed since the last one, when the buffer fills up and when the journal is closed. A checkpoint
+ * appends the buffer and forces it to disk, so the file is never rewritten and an interrupted crawl loses at most one
+ * interval of progress. A record cut short by a crash is discarded when the journal is next opened.
+ * </p>
+ *
+ * <p>
+ * Records are put in the buffer under the journal's monitor, but a full or due buffer is only swapped for an empty
+ * one there. It is written and forced to disk under a separate lock once the monitor has been released, so threads
+ * recording pages never wait for the disk while holding the monitor. Buffers are always written in the order they
+ * were filled.
+ * </p>
+ *
+ * <p>
+ * The file starts with a four byte magic number, followed by records which each start with a type byte. Discovered
+ * records then have the length of the URL as a variable length integer followed by its UTF-8 bytes, visited records
+ * have the eight byte fingerprint.
+ * </p>
+ */
+public class CrawlJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlJournal.class);
+
+    private static final int MAGIC = 0x574A4E31;
+    private static final byte DISCOVERED = 1;
+    private static final byte VISITED = 2;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long checkpointIntervalNanos;
+    private final Object writeLock = new Object();
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+    private final Queue<ByteBuffer> spare = new ArrayDeque<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private boolean forceDue;
+    private long lastCheckpointNanos = System.nanoTime();
+    private boolean closed;
+
+    /**
+     * @param file The journal file.
+     * @param channel The channel to append to, positioned after the last complete record.
+     * @param checkpointInterval How often buffered records are forced to disk.
+     */
+    private CrawlJournal(Path file, FileChannel channel, Duration checkpointInterval) {
+        this.file = file;
+        this.channel = channel;
+        this.checkpointIntervalNanos = checkpointInterval.toNanos();
+    }
+
+    /**
+     * Opens a journal, creating the file if it doesn't exist.
+     *
+     * @param file The journal file.
+     * @param checkpointInterval How often buffered records are forced to disk.
+     * @param resume True to keep the records already in the file so the crawl can be resumed from them, false to
+     *     discard them and start again.
+     * @return The open journal, ready to have records appended.
+     * @throws IOException If the file couldn't be opened or isn't a journal.
+     */
+    public static CrawlJournal open(Path file, Duration checkpointInterval, boolean resume) throws IOException {
+        if (checkpointInterval.isNegative()) {
+            throw new IllegalArgumentException(
+                "Checkpoint interval must not be negative but was " + checkpointInterval);
+        }
+
+        FileChannel channel = FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = resume ? validLength(file) : 0;
+            if (end == 0) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC), 0);
+                end = Integer.BYTES;
+            } else {
+                // Drop any record which was only partly written before the crawl stopped
+                channel.truncate(end);
+            }
+            channel.position(end);
+            return new CrawlJournal(file, channel, checkpointInterval);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Rebuilds the state of an interrupted crawl from this journal's file. This must be called before any records
+     * are appended.
+     *
+     * @param visitedPages Every discovered page is added to this.
+     * @param frontierStore Every discovered page which wasn't visited is added to this, in the order discovered.
+     * @return The number of pages added to the frontier.
+     */
+    public long restore(VisitedSet visitedPages, FrontierStore frontierStore) {
+        try {
+            long[] visited = readVisitedFingerprints();
+            long queued = 0;
+            try (DataInputStream in = openForRead()) {
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) {
+                        break;
+                    }
+                    if (type == VISITED) {
+                        skipFully(in, Long.BYTES);
+                        continue;
+                    }
+
+                    CrawlUrl page = readUrl(in);
+                    if (page == null) {
+                        continue;
+                    }
+                    visitedPages.add(page);
+                    if (Arrays.binarySearch(visited, page.fingerprint()) < 0) {
+                        frontierStore.add(page);
+                        queued++;
+                    }
+                }
+            }
+
+            logger.info("Restored crawl from [{}], {} pages seen and {} still to visit.",
+                this.file, visitedPages.size(), queued);
+            return queued;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Records that a page has been queued for the first time.
+     *
+     * @param page The page.
+     */
+    void discovered(CrawlUrl page) {
+        recordDiscovered(List.of(page));
+        writePending();
+    }
+
+    /**
+     * Records that several pages have been queued for the first time.
+     *
+     * @param pages The pages, in the order they were queued.
+     */
+    void discoveredAll(Collection<CrawlUrl> pages) {
+        recordDiscovered(pages);
+        writePending();
+    }
+
+    /**
+     * Records that a page has been visited and all of its links have been queued.
+     *
+     * @param page The page.
+     */
+    public void visited(CrawlUrl page) {
+        synchronized (this) {
+            ensureSpace(1 + Long.BYTES);
+            this.buffer.put(VISITED).putLong(page.fingerprint());
+            swapIfDue();
+        }
+        writePending();
+    }
+
+    /**
+     * Puts discovered records in the buffer without writing anything, so that it can be done while holding the
+     * journal's monitor. {@link #writePending()} must be called once the monitor has been released.
+     *
+     * @param pages The pages, in the order they were queued.
+     */
+    synchronized void recordDiscovered(Collection<CrawlUrl> pages) {
+        for (CrawlUrl page : pages) {
+            byte[] bytes = page.toString().getBytes(StandardCharsets.UTF_8);
+            ensureSpace(1 + 5 + bytes.length);
+            this.buffer.put(DISCOVERED);
+            putVarInt(bytes.length);
+            if (bytes.length > this.buffer.remaining()) {
+                // Longer than the whole buffer, which only happens for absurd URLs
+                swapBuffer();
+                this.pending.add(ByteBuffer.wrap(bytes));
+            } else {
+                this.buffer.put(bytes);
+            }
+        }
+        swapIfDue();
+    }
+
+    /**
+     * Writes every buffer which has been swapped out to the file, forcing it to disk if a checkpoint is due. This
+     * must not be called while holding the journal's monitor.
+     */
+    void writePending() {
+        synchronized (this.writeLock) {
+            List<ByteBuffer> toWrite;
+            boolean force;
+            synchronized (this) {
+                if (this.pending.isEmpty() && !this.forceDue) {
+                    return;
+                }
+                toWrite = new ArrayList<>(this.pending);
+                this.pending.clear();
+                force = this.forceDue;
+                this.forceDue = false;
+            }
+
+            toWrite.forEach(this::writeFully);
+            if (force) {
+                try {
+                    this.channel.force(false);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            synchronized (this) {
+                for (ByteBuffer written : toWrite) {
+                    if (written.capacity() == BUFFER_BYTES) {
+                        this.spare.add(written.clear());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every buffered record to the file and forces it to disk.
+     */
+    public void checkpoint() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            swapForCheckpoint();
+        }
+        writePending();
+    }
+
+    /**
+     * Checkpoints and closes the file, which is kept so that it can be resumed from.
+     */
+    @Override
+    public void close() {
+        synchronized (this.writeLock) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+            }
+            try {
+                checkpoint();
+            } finally {
+                synchronized (this) {
+                    this.closed = true;
+                }
+                try {
+                    this.channel.close();
+                } catch (IOException ex) {
+                    logger.warn("Unable to close crawl journal [{}].", this.file, ex);
+                }
+            }
+        }
+    }
+
+    private void swapIfDue() {
+        if (System.nanoTime() - this.lastCheckpointNanos >= this.checkpointIntervalNanos) {
+            swapForCheckpoint();
+        }
+    }
+
+    private void swapForCheckpoint() {
+        swapBuffer();
+        this.forceDue = true;
+        this.lastCheckpointNanos = System.nanoTime();
+    }
+
+    /**
+     * @param bytes The number of bytes about to be put in the buffer.
+     */
+    private void ensureSpace(int bytes) {
+        if (this.closed) {
+            throw new IllegalStateException("Crawl journal [" + this.file + "] has been closed");
+        }
+        if (this.buffer.remaining() < bytes) {
+            swapBuffer();
+        }
+    }
+
+    /**
+     * Queues the buffer to be written if it holds any records, replacing it with an empty one.
+     */
+    private void swapBuffer() {
+        if (this.buffer.position() == 0) {
+            return;
+        }
+        this.pending.add(this.buffer.flip());
+        ByteBuffer empty = this.spare.poll();
+        this.buffer = empty != null ? empty : ByteBuffer.allocate(BUFFER_BYTES);
+    }
+
+    private void writeFully(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining()) {
+                this.channel.write(bytes);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void putVarInt(int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            this.buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        this.buffer.put((byte) remaining);
+    }
+
+    /**
+     * @return The sorted fingerprints of every visited page.
+     * @throws IOException If the file couldn't be read.
+     */
+    private long[] readVisitedFingerprints() throws IOException {
+        long[] fingerprints = new long[1024];
+        int count = 0;
+        try (DataInputStream in = openForRead()) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == DISCOVERED) {
+                    skipFully(in, readVarInt(in));
+                    continue;
+                }
+
+                if (count == fingerprints.length) {
+                    fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                }
+                fingerprints[count++] = in.readLong();
+            }
+        }
+
+        long[] sorted = Arrays.copyOf(fingerprints, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @return A stream over the records in the file, positioned after the magic number.
+     * @throws IOException If the file couldn't be read.
+     */
+    private DataInputStream openForRead() throws IOException {
+        FileChannel readChannel = FileChannel.open(this.file, StandardOpenOption.READ);
+        readChannel.position(Integer.BYTES);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(readChannel), BUFFER_BYTES));
+    }
+
+    /**
+     * @param in The stream, positioned after the type byte of a discovered record.
+     * @return The URL, or null if it can no longer be parsed.
+     * @throws IOException If the file couldn't be read.
+     */
+    private static CrawlUrl readUrl(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        try {
+            return CrawlUrl.parse(value);
+        } catch (MalformedURLException ex) {
+            logger.warn("Skipping invalid URL [{}] in crawl journal.", value);
+            return null;
+        }
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length in crawl journal");
+    }
+
+    /**
+     * Finds the end of the last complete record in a journal file.
+     *
+     * @param file The journal file.
+     * @return The length of the file up to the end of its last complete record, or zero if it doesn't exist or is
+     *     empty.
+     * @throws IOException If the file couldn't be read or isn't a journal.
+     */
+    private static long validLength(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return 0;
+        }
+
+        InputStream fileStream = Files.newInputStream(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream, BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a crawl journal: " + file);
+            }
+
+            long valid = Integer.BYTES;
+            try {
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) {
+                        return valid;
+                    }
+
+                    long recordBytes;
+                    if (type == DISCOVERED) {
+                        int length = readVarInt(in);
+                        skipFully(in, length);
+                        recordBytes = 1 + varIntBytes(length) + length;
+                    } else if (type == VISITED) {
+                        skipFully(in, Long.BYTES);
+                        recordBytes = 1 + Long.BYTES;
+                    } else {
+                        logger.warn("Unknown record type {} in crawl journal [{}], ignoring the rest.", type, file);
+                        return valid;
+                    }
+                    valid += recordBytes;
+                }
+            } catch (EOFException ex) {
+                logger.warn("Discarding partly written record at the end of crawl journal [{}].", file);
+                return valid;
+            }
+        } catch (EOFException ex) {
+            throw new IOException("Not a crawl journal: " + file, ex);
+        }
+    }
+
+    /**
+     * @param in The stream.
+     * @param bytes The number of bytes to skip.
+     * @throws EOFException If the stream ends first.
+     * @throws IOException If the file couldn't be read.
+     */
+    private static void skipFully(DataInputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            int skipped = in.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+            if (skipped == 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static int varIntBytes(int value) {
+        int bytes = 1;
+        int remaining = value >>> 7;
+        while (remaining != 0) {
+            bytes++;
+            remaining >>>= 7;
+        }
+        return bytes;
+    }
+}
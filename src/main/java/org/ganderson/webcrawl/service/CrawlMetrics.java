@@ -0,0 +1,477 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms describing where the time of a crawl goes.
+ *
+ * <p>
+ * Every page is timed through each {@link Stage} it passes through, into a {@link LatencyHistogram} per stage, along
+ * with counts of pages, bytes and errors overall and per host. Recording is lock-free so every worker records
+ * directly, and the counters can be read at any time while the crawl runs. The fetch stage, and with it the per-host
+ * and error statistics, is fed by the metrics acting as the {@link FetchListener} of the fetcher.
+ * </p>
+ *
+ * <p>
+ * The metrics can be published over JMX with {@link #register(String)}, and {@link #summary()} gives a single line
+ * which the crawl logs periodically, see {@link CrawlConfig.Builder#metrics(Duration)}.
+ * </p>
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean, FetchListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlMetrics.class);
+
+    private static final String DOMAIN = "org.ganderson.webcrawl";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder nearDuplicates = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, HostCounters> hosts = new ConcurrentHashMap<>();
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile LongSupplier frontierSize = () -> 0;
+    private volatile LongSupplier visitedSetSize = () -> 0;
+    private volatile ObjectName objectName;
+
+    /**
+     * Creates metrics with nothing recorded, timed from now.
+     */
+    public CrawlMetrics() {
+        for (Stage stage : Stage.values()) {
+            this.stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Restarts the clock which the rates are measured from, without clearing anything recorded.
+     */
+    void start() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param frontierSize Reads the number of pages waiting in the frontier.
+     * @param visitedSetSize Reads the number of pages in the visited set.
+     */
+    void setQueueGauges(LongSupplier frontierSize, LongSupplier visitedSetSize) {
+        this.frontierSize = frontierSize;
+        this.visitedSetSize = visitedSetSize;
+    }
+
+    /**
+     * @param stage A stage of visiting a page.
+     * @return The histogram of the latencies recorded for the stage.
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return this.stages.get(stage);
+    }
+
+    /**
+     * @param stage The stage which took the time.
+     * @param nanos How long the stage took.
+     */
+    public void record(Stage stage, long nanos) {
+        this.stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Runs a stage, recording how long it took whether it completes or throws.
+     *
+     * @param stage The stage being run.
+     * @param task The work of the stage.
+     * @param <T> The type of the result of the stage.
+     * @return The result of the stage.
+     */
+    public <T> T time(Stage stage, Supplier<T> task) {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts a page as visited.
+     */
+    public void pageVisited() {
+        this.pages.increment();
+    }
+
+    /**
+     * Counts a page whose cached copy was still current, so it wasn't downloaded or parsed again.
+     */
+    public void pageNotModified() {
+        this.notModified.increment();
+    }
+
+    /**
+     * Counts a page which was a near duplicate of one already crawled, so it wasn't scraped.
+     */
+    public void pageNearDuplicate() {
+        this.nearDuplicates.increment();
+    }
+
+    /**
+     * @param cause An error from any stage of visiting a page, counted by its class.
+     */
+    public void recordError(Throwable cause) {
+        Throwable unwrapped = cause;
+        while ((unwrapped instanceof CompletionException || unwrapped instanceof ExecutionException)
+            && unwrapped.getCause() != null) {
+            unwrapped = unwrapped.getCause();
+        }
+        countError(unwrapped.getClass().getSimpleName());
+    }
+
+    @Override
+    public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+        record(Stage.FETCH, elapsed.toNanos());
+        HostCounters host = host(url);
+        host.requests.increment();
+        host.fetchNanos.add(elapsed.toNanos());
+        if (statusCode >= 400) {
+            host.errors.increment();
+            countError("HTTP " + statusCode);
+        }
+    }
+
+    @Override
+    public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+        record(Stage.FETCH, elapsed.toNanos());
+        HostCounters host = host(url);
+        host.requests.increment();
+        host.fetchNanos.add(elapsed.toNanos());
+        host.errors.increment();
+        recordError(cause);
+    }
+
+    @Override
+    public void onBody(CrawlUrl url, int length, Duration elapsed) {
+        if (!elapsed.isZero()) {
+            record(Stage.DOWNLOAD, elapsed.toNanos());
+        }
+        this.bytes.add(length);
+        host(url).bytes.add(length);
+    }
+
+    @Override
+    public void onRejected(CrawlUrl url, ContentFilter.Rejection rejection) {
+        this.rejected.increment();
+    }
+
+    @Override
+    public long getPages() {
+        return this.pages.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    @Override
+    public long getNotModifiedPages() {
+        return this.notModified.sum();
+    }
+
+    @Override
+    public long getNearDuplicatePages() {
+        return this.nearDuplicates.sum();
+    }
+
+    @Override
+    public long getRejectedPages() {
+        return this.rejected.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return perSecond(getPages());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    @Override
+    public long getFrontierSize() {
+        return this.frontierSize.getAsLong();
+    }
+
+    @Override
+    public long getVisitedSetSize() {
+        return this.visitedSetSize.getAsLong();
+    }
+
+    /**
+     * @return The total number of errors of every kind.
+     */
+    public long getErrorCount() {
+        return this.errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        this.errors.forEach((kind, count) -> snapshot.put(kind, count.sum()));
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, StageStatistics> getStages() {
+        Map<String, StageStatistics> snapshot = new TreeMap<>();
+        this.stages.forEach((stage, histogram) -> snapshot.put(stage.name(), new StageStatistics(histogram)));
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, HostStatistics> getHosts() {
+        Map<String, HostStatistics> snapshot = new TreeMap<>();
+        this.hosts.forEach((origin, counters) -> snapshot.put(origin, new HostStatistics(counters)));
+        return snapshot;
+    }
+
+    /**
+     * @return A single line summarising the crawl so far, with the median and 99th percentile latency of each stage.
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder(256);
+        line.append(String.format(
+            Locale.ROOT,
+            "%d pages (%.1f/s, %d not modified, %d near duplicates, %d rejected), %.1f MB (%.2f MB/s),"
+                + " frontier %d, visited set %d, errors %d; p50/p99 ms",
+            getPages(),
+            getPagesPerSecond(),
+            getNotModifiedPages(),
+            getNearDuplicatePages(),
+            getRejectedPages(),
+            getBytes() / 1e6,
+            getBytesPerSecond() / 1e6,
+            getFrontierSize(),
+            getVisitedSetSize(),
+            getErrorCount()));
+        this.stages.forEach((stage, histogram) -> line.append(String.format(
+            Locale.ROOT,
+            " %s %.2f/%.2f",
+            stage.name().toLowerCase(Locale.ROOT),
+            histogram.getPercentileNanos(50) / NANOS_PER_MILLI,
+            histogram.getPercentileNanos(99) / NANOS_PER_MILLI)));
+        return line.toString();
+    }
+
+    /**
+     * Publishes the metrics over JMX on the platform MBean server, logging rather than failing if they can't be.
+     *
+     * @param name The name to register the metrics under, alongside their type, e.g. the URL being crawled.
+     */
+    public void register(String name) {
+        try {
+            ObjectName newName = new ObjectName(DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+            this.objectName = newName;
+        } catch (JMException ex) {
+            logger.warn("Unable to publish crawl metrics for [{}] over JMX.", name, ex);
+        }
+    }
+
+    /**
+     * Stops publishing the metrics over JMX, if they were published.
+     */
+    public void unregister() {
+        ObjectName name = this.objectName;
+        if (name == null) {
+            return;
+        }
+        this.objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(name);
+        } catch (JMException ex) {
+            logger.warn("Unable to remove crawl metrics [{}] from JMX.", name, ex);
+        }
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - this.startNanos;
+        return elapsed <= 0 ? 0 : count * NANOS_PER_SECOND / elapsed;
+    }
+
+    private void countError(String kind) {
+        this.errors.computeIfAbsent(kind, ignored -> new LongAdder()).increment();
+    }
+
+    private HostCounters host(CrawlUrl url) {
+        return this.hosts.computeIfAbsent(url.getOrigin(), ignored -> new HostCounters());
+    }
+
+    /**
+     * The stages of visiting a page which are timed.
+     */
+    public enum Stage {
+        /**
+         * Sending a request until its response starts to arrive, including resolving the host and connecting when
+         * a pooled connection isn't available. Neither HTTP client used reports those separately.
+         */
+        FETCH,
+        /**
+         * Reading the body of a response, only timed separately from fetching when pages are fetched with jsoup.
+         */
+        DOWNLOAD,
+        /**
+         * Parsing a fetched body into a document.
+         */
+        PARSE,
+        /**
+         * Extracting the links from a parsed document.
+         */
+        SCRAPE,
+        /**
+         * Adding the links of a visited page to the frontier and marking the page as visited.
+         */
+        FRONTIER
+    }
+
+    /**
+     * The latency statistics of a stage at the time it was read, in milliseconds.
+     */
+    public static final class StageStatistics {
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        private StageStatistics(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.meanMillis = histogram.getMeanNanos() / NANOS_PER_MILLI;
+            this.p50Millis = histogram.getPercentileNanos(50) / NANOS_PER_MILLI;
+            this.p90Millis = histogram.getPercentileNanos(90) / NANOS_PER_MILLI;
+            this.p99Millis = histogram.getPercentileNanos(99) / NANOS_PER_MILLI;
+            this.maxMillis = histogram.getMaxNanos() / NANOS_PER_MILLI;
+        }
+
+        /**
+         * @return The number of latencies recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The mean latency.
+         */
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        /**
+         * @return The median latency.
+         */
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        /**
+         * @return The 90th percentile latency.
+         */
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        /**
+         * @return The 99th percentile latency.
+         */
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        /**
+         * @return The largest latency.
+         */
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+    }
+
+    /**
+     * The statistics of a host at the time they were read.
+     */
+    public static final class HostStatistics {
+        private final long requests;
+        private final long errors;
+        private final long bytes;
+        private final double meanFetchMillis;
+
+        private HostStatistics(HostCounters counters) {
+            this.requests = counters.requests.sum();
+            this.errors = counters.errors.sum();
+            this.bytes = counters.bytes.sum();
+            this.meanFetchMillis = this.requests == 0 ? 0 : counters.fetchNanos.sum() / NANOS_PER_MILLI / this.requests;
+        }
+
+        /**
+         * @return The number of requests sent to the host, whether or not they were answered.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return The number of requests which failed or were answered with an error status.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return The number of bytes of page bodies downloaded from the host.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The mean time taken to fetch a page from the host.
+         */
+        public double getMeanFetchMillis() {
+            return meanFetchMillis;
+        }
+    }
+
+    /**
+     * The running counters of a single host.
+     */
+    private static final class HostCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,70 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link CrawlMetrics}, which is how a running crawl's metrics are published over JMX.
+ */
+public interface CrawlMetricsMXBean {
+
+    /**
+     * @return The number of pages visited.
+     */
+    long getPages();
+
+    /**
+     * @return The number of bytes of page bodies downloaded.
+     */
+    long getBytes();
+
+    /**
+     * @return The number of pages whose cached copy was still current, so they weren't downloaded or parsed again.
+     */
+    long getNotModifiedPages();
+
+    /**
+     * @return The number of pages which were near duplicates of pages already crawled, so weren't scraped.
+     */
+    long getNearDuplicatePages();
+
+    /**
+     * @return The number of pages which weren't downloaded, or were abandoned part way, for not being HTML or being
+     *     too large.
+     */
+    long getRejectedPages();
+
+    /**
+     * @return The mean number of pages visited per second since the crawl started.
+     */
+    double getPagesPerSecond();
+
+    /**
+     * @return The mean number of bytes downloaded per second since the crawl started.
+     */
+    double getBytesPerSecond();
+
+    /**
+     * @return The number of pages waiting in the frontier.
+     */
+    long getFrontierSize();
+
+    /**
+     * @return The number of pages in the visited set, which includes those still waiting in the frontier.
+     */
+    long getVisitedSetSize();
+
+    /**
+     * @return The number of errors of each kind, keyed by exception class or by HTTP status for error responses.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * @return The latency statistics of each stage of visiting a page, keyed by stage name.
+     */
+    Map<String, CrawlMetrics.StageStatistics> getStages();
+
+    /**
+     * @return The statistics of each host which has been requested, keyed by origin.
+     */
+    Map<String, CrawlMetrics.HostStatistics> getHosts();
+}
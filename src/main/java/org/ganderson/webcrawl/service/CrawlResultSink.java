@@ -0,0 +1,38 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.List;
+
+/**
+ * Receives the result of every page visited by a crawl, i.e. the page and the links found on it.
+ *
+ * <p>
+ * Results may be passed in from many threads at once, so implementations must be thread-safe unless they're wrapped
+ * in an {@link AsyncResultSink}, which only ever calls its delegate from its own writer thread. The crawl flushes the
+ * sink once it has finished but never closes it, that's left to whoever created the sink.
+ * </p>
+ */
+public interface CrawlResultSink extends AutoCloseable {
+
+    /**
+     * Records a visited page.
+     *
+     * @param page The page which was visited.
+     * @param links The canonical links found on the page which are on the crawled domain, in the order found.
+     */
+    void accept(CrawlUrl page, List<CrawlUrl> links);
+
+    /**
+     * Writes out anything which has been buffered, by default there is nothing.
+     */
+    default void flush() {
+        // No op
+    }
+
+    /**
+     * Flushes and releases anything held by the sink, by default just flushing.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+}
@@ -0,0 +1,437 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Decides which links are part of a crawl, from rules on hosts, path prefixes and text which excluded URLs contain.
+ *
+ * <p>
+ * A host pattern is either an exact host such as "example.com" or "[::1]", or "*.example.com" for every subdomain of
+ * "example.com" but not "example.com" itself, either optionally followed by a port such as ":8080". Without a port
+ * the pattern matches the host on any port. An IPv6 address is written in brackets, as in a URL, and is matched as a
+ * whole rather than label by label. Each host pattern carries path prefixes which are allowed or excluded,
+ * where the longest prefix matching a URL's path decides. The most specific host pattern with a prefix matching the
+ * path wins: an exact host before a wildcard, a deeper wildcard before a shallower one, and a pattern with a port
+ * before the same pattern without one. URLs containing any excluded text, such as "/print/" or "sessionid=", are out
+ * of scope whatever the host rules say.
+ * </p>
+ *
+ * <p>
+ * The rules are compiled when the scope is built into a trie of host labels, read from the top level domain down, a
+ * trie of path characters for each host pattern, and one Aho-Corasick automaton over all excluded text. Checking a
+ * URL therefore reads its host once, its path once per matching host pattern, which is at most one more than the
+ * number of labels in the host, and the whole URL once, however many rules there are. Instances are immutable and
+ * safe to share between threads.
+ * </p>
+ */
+public final class CrawlScope {
+
+    private static final int ANY_PORT = -1;
+
+    private final HostNode hosts;
+    private final TextMatcher excludedText;
+
+    /**
+     * @param builder The builder holding the rules for this scope.
+     */
+    private CrawlScope(Builder builder) {
+        this.hosts = builder.hosts;
+        this.excludedText = new TextMatcher(builder.excludedText);
+    }
+
+    /**
+     * @param base The page a crawl starts from.
+     * @return The scope holding every page on the same host as the base page, and on its port if it has an explicit
+     *     one, whose path starts with the base page's path, which is what a crawl uses unless told otherwise.
+     */
+    public static CrawlScope of(CrawlUrl base) {
+        String host = base.getPort() < 0 ? base.getHost() : base.getHost() + ":" + base.getPort();
+        return builder().allow(host, base.getPath()).build();
+    }
+
+    /**
+     * @return A new builder without any rules.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param url A canonical URL.
+     * @return True if the URL is part of the crawl.
+     */
+    public boolean contains(CrawlUrl url) {
+        if (this.excludedText.foundIn(url.toString())) {
+            return false;
+        }
+
+        // Walk from the top level domain down, remembering the most specific wildcard passed on the way
+        String host = url.getHost();
+        int port = url.getEffectivePort();
+        String path = url.getPath();
+        List<HostNode> wildcards = new ArrayList<>(4);
+        HostNode node = this.hosts;
+        int end = host.length();
+        while (node != null) {
+            if (node.wildcardPaths != null) {
+                wildcards.add(node);
+            }
+            if (end < 0) {
+                break;
+            }
+            int start = isLiteral(host) ? 0 : host.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(host.substring(start, end));
+            end = start - 1;
+        }
+
+        if (node != null) {
+            int decision = decide(node.paths, port, path);
+            if (decision != PathNode.NONE) {
+                return decision == PathNode.ALLOW;
+            }
+        }
+        for (int i = wildcards.size() - 1; i >= 0; i--) {
+            HostNode wildcard = wildcards.get(i);
+            // A wildcard only covers the subdomains below it, never the host it was found at
+            if (wildcard == node) {
+                continue;
+            }
+            int decision = decide(wildcard.wildcardPaths, port, path);
+            if (decision != PathNode.NONE) {
+                return decision == PathNode.ALLOW;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param pathsByPort The path rules of a host pattern for each port, or null if there aren't any.
+     * @param port The port of the URL.
+     * @param path The path of the URL.
+     * @return Whether the longest matching prefix allows or excludes the path, trying rules for the port before
+     *     rules for any port.
+     */
+    private static int decide(Map<Integer, PathNode> pathsByPort, int port, String path) {
+        if (pathsByPort == null) {
+            return PathNode.NONE;
+        }
+        PathNode forPort = pathsByPort.get(port);
+        int decision = forPort == null ? PathNode.NONE : forPort.longestPrefix(path);
+        if (decision == PathNode.NONE) {
+            PathNode forAnyPort = pathsByPort.get(ANY_PORT);
+            decision = forAnyPort == null ? PathNode.NONE : forAnyPort.longestPrefix(path);
+        }
+        return decision;
+    }
+
+    /**
+     * @param host A host, or a host pattern without a wildcard.
+     * @return True if the host is a bracketed IPv6 address, which is a single label however many dots it contains.
+     */
+    private static boolean isLiteral(String host) {
+        return host.startsWith("[");
+    }
+
+    /**
+     * A label of a host pattern, with the path rules of the host ending at this label and of its wildcard.
+     */
+    private static final class HostNode {
+        private final Map<String, HostNode> children = new HashMap<>();
+        private Map<Integer, PathNode> paths;
+        private Map<Integer, PathNode> wildcardPaths;
+    }
+
+    /**
+     * A character of a path prefix, with the decision of the rule ending at this character if there is one.
+     */
+    private static final class PathNode {
+        private static final int NONE = 0;
+        private static final int ALLOW = 1;
+        private static final int EXCLUDE = 2;
+
+        private char[] keys = new char[0];
+        private PathNode[] children = new PathNode[0];
+        private int decision = NONE;
+
+        private PathNode child(char key) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] == key) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        private void add(String prefix, int prefixDecision) {
+            PathNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                PathNode next = node.child(prefix.charAt(i));
+                if (next == null) {
+                    next = new PathNode();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = prefix.charAt(i);
+                    node.children[node.children.length - 1] = next;
+                }
+                node = next;
+            }
+            node.decision = prefixDecision;
+        }
+
+        private int longestPrefix(String path) {
+            int decision = this.decision;
+            PathNode node = this;
+            for (int i = 0; i < path.length() && node != null; i++) {
+                node = node.child(path.charAt(i));
+                if (node != null && node.decision != NONE) {
+                    decision = node.decision;
+                }
+            }
+            return decision;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton finding whether any of a set of strings occurs in a text, in a single pass over the text.
+     */
+    private static final class TextMatcher {
+        private final char[][] keys;
+        private final int[][] targets;
+        private final int[] failures;
+        private final boolean[] matches;
+
+        private TextMatcher(List<String> texts) {
+            List<char[]> stateKeys = new ArrayList<>();
+            List<int[]> stateTargets = new ArrayList<>();
+            List<Boolean> stateMatches = new ArrayList<>();
+            stateKeys.add(new char[0]);
+            stateTargets.add(new int[0]);
+            stateMatches.add(false);
+
+            for (String text : texts) {
+                int state = 0;
+                for (int i = 0; i < text.length(); i++) {
+                    int next = find(stateKeys.get(state), stateTargets.get(state), text.charAt(i));
+                    if (next < 0) {
+                        next = stateKeys.size();
+                        stateKeys.add(new char[0]);
+                        stateTargets.add(new int[0]);
+                        stateMatches.add(false);
+                        char[] keys = Arrays.copyOf(stateKeys.get(state), stateKeys.get(state).length + 1);
+                        int[] targets = Arrays.copyOf(stateTargets.get(state), keys.length);
+                        keys[keys.length - 1] = text.charAt(i);
+                        targets[targets.length - 1] = next;
+                        stateKeys.set(state, keys);
+                        stateTargets.set(state, targets);
+                    }
+                    state = next;
+                }
+                stateMatches.set(state, true);
+            }
+
+            this.keys = stateKeys.toArray(new char[0][]);
+            this.targets = stateTargets.toArray(new int[0][]);
+            this.matches = new boolean[this.keys.length];
+            for (int i = 0; i < this.matches.length; i++) {
+                this.matches[i] = stateMatches.get(i);
+            }
+
+            // Breadth-first, so the failure of each state's parent is known before the state itself
+            this.failures = new int[this.keys.length];
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (int target : this.targets[0]) {
+                queue.add(target);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.remove();
+                for (int i = 0; i < this.keys[state].length; i++) {
+                    int target = this.targets[state][i];
+                    this.failures[target] = step(this.failures[state], this.keys[state][i]);
+                    this.matches[target] |= this.matches[this.failures[target]];
+                    queue.add(target);
+                }
+            }
+        }
+
+        private boolean foundIn(String text) {
+            if (this.keys.length == 1) {
+                return false;
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                state = step(state, text.charAt(i));
+                if (this.matches[state]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return The state reached from the given state on the given character, following failures as needed.
+         */
+        private int step(int state, char key) {
+            while (true) {
+                int next = find(this.keys[state], this.targets[state], key);
+                if (next >= 0) {
+                    return next;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = this.failures[state];
+            }
+        }
+
+        private static int find(char[] keys, int[] targets, char key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return targets[i];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Builds a {@link CrawlScope}.
+     */
+    public static class Builder {
+        private final HostNode hosts = new HostNode();
+        private final List<String> excludedText = new ArrayList<>();
+        private boolean anyAllowed;
+
+        /**
+         * Hidden, use {@link CrawlScope#builder()}.
+         */
+        private Builder() {
+            // No op
+        }
+
+        /**
+         * Allows every page on the hosts matching a pattern.
+         *
+         * @param hostPattern A host such as "example.com" or "*.example.com", optionally followed by a port.
+         * @return This builder.
+         */
+        public Builder allowHost(String hostPattern) {
+            return allow(hostPattern, "");
+        }
+
+        /**
+         * Allows the pages on the hosts matching a pattern whose paths start with a prefix.
+         *
+         * @param hostPattern A host such as "example.com" or "*.example.com", optionally followed by a port.
+         * @param pathPrefix The start of the paths allowed, e.g. "/docs/", or empty for every path.
+         * @return This builder.
+         */
+        public Builder allow(String hostPattern, String pathPrefix) {
+            add(hostPattern, pathPrefix, PathNode.ALLOW);
+            this.anyAllowed = true;
+            return this;
+        }
+
+        /**
+         * Excludes the pages on the hosts matching a pattern whose paths start with a prefix, unless a longer prefix
+         * allows them.
+         *
+         * @param hostPattern A host such as "example.com" or "*.example.com", optionally followed by a port.
+         * @param pathPrefix The start of the paths excluded, e.g. "/calendar/".
+         * @return This builder.
+         */
+        public Builder exclude(String hostPattern, String pathPrefix) {
+            add(hostPattern, pathPrefix, PathNode.EXCLUDE);
+            return this;
+        }
+
+        /**
+         * Excludes every URL containing some text, on any host.
+         *
+         * @param text The text, e.g. "/print/" or "sessionid=".
+         * @return This builder.
+         */
+        public Builder excludeContaining(String text) {
+            if (text == null || text.isEmpty()) {
+                throw new IllegalArgumentException("Excluded text must not be empty");
+            }
+
+            this.excludedText.add(text);
+            return this;
+        }
+
+        /**
+         * @return The scope compiled from the rules added to this builder.
+         */
+        public CrawlScope build() {
+            if (!this.anyAllowed) {
+                throw new IllegalStateException("A crawl scope must allow at least one host");
+            }
+            return new CrawlScope(this);
+        }
+
+        private void add(String hostPattern, String pathPrefix, int decision) {
+            if (hostPattern == null || pathPrefix == null) {
+                throw new IllegalArgumentException("Host pattern and path prefix must not be null");
+            }
+
+            String host = hostPattern.toLowerCase(Locale.ROOT);
+            boolean wildcard = host.startsWith("*.");
+            if (wildcard) {
+                host = host.substring(2);
+            }
+            // An IPv6 address contains colons itself, so its port can only follow the closing bracket
+            int hostEnd = isLiteral(host) ? host.indexOf(']') + 1 : host.indexOf(':');
+            if (hostEnd == 0 || (wildcard && isLiteral(host))) {
+                throw new IllegalArgumentException("Invalid host pattern " + hostPattern);
+            }
+            int port = ANY_PORT;
+            if (hostEnd >= 0 && hostEnd < host.length()) {
+                if (host.charAt(hostEnd) != ':') {
+                    throw new IllegalArgumentException("Invalid host pattern " + hostPattern);
+                }
+                port = parsePort(hostPattern, host.substring(hostEnd + 1));
+                host = host.substring(0, hostEnd);
+            }
+
+            HostNode node = this.hosts;
+            String[] labels = isLiteral(host) ? new String[] {host} : host.split("\\.", -1);
+            for (int i = labels.length - 1; i >= 0; i--) {
+                if (labels[i].isEmpty() || labels[i].contains("*")) {
+                    throw new IllegalArgumentException("Invalid host pattern " + hostPattern);
+                }
+                node = node.children.computeIfAbsent(labels[i], ignored -> new HostNode());
+            }
+
+            if (wildcard) {
+                if (node.wildcardPaths == null) {
+                    node.wildcardPaths = new HashMap<>();
+                }
+                node.wildcardPaths.computeIfAbsent(port, ignored -> new PathNode()).add(pathPrefix, decision);
+            } else {
+                if (node.paths == null) {
+                    node.paths = new HashMap<>();
+                }
+                node.paths.computeIfAbsent(port, ignored -> new PathNode()).add(pathPrefix, decision);
+            }
+        }
+
+        private static int parsePort(String hostPattern, String port) {
+            try {
+                int value = Integer.parseInt(port);
+                if (value > 0 && value <= 65535) {
+                    return value;
+                }
+            } catch (NumberFormatException ex) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Invalid port in host pattern " + hostPattern);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package org.ganderson.webcrawl.service;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Optional;
+
+/**
+ * Immutable, lightweight URL used to identify pages throughout the crawl.
+ *
+ * <p>
+ * Unlike {@link URL}, equality and hashing are based purely on the text of the URL and never do any I/O, so
+ * instances are safe to use in sets and as map keys on hot paths. Parsing records the offsets of each component
+ * within the original string rather than splitting it up, and the scheme and host, which are case-insensitive, are
+ * lower-cased so that differently cased links to the same page are equal. A new string is only allocated when the
+ * input actually contains upper-case characters in those components.
+ * </p>
+ *
+ * <p>
+ * Only hierarchical URLs with an authority are accepted, e.g. {@code https://host:port/path?query#fragment}.
+ * </p>
+ */
+public final class CrawlUrl {
+
+    private final String value;
+    private final int schemeEnd;
+    private final int hostStart;
+    private final int hostEnd;
+    private final int port;
+    private final int pathStart;
+    private final int queryStart;
+    private final int fragmentStart;
+
+    /**
+     * Lazily computed, zero until first requested as a real fingerprint is never zero.
+     */
+    private long fingerprint;
+
+    /**
+     * @param value The full text of the URL.
+     * @param schemeEnd The index of the colon following the scheme.
+     * @param hostStart The index of the first character of the host.
+     * @param hostEnd The index following the last character of the host.
+     * @param port The explicit port, or -1 if there isn't one.
+     * @param pathStart The index of the first character of the path, which may be the end of the URL.
+     * @param queryStart The index of the question mark starting the query, or -1 if there isn't one.
+     * @param fragmentStart The index of the hash starting the fragment, or -1 if there isn't one.
+     */
+    private CrawlUrl(
+        String value,
+        int schemeEnd,
+        int hostStart,
+        int hostEnd,
+        int port,
+        int pathStart,
+        int queryStart,
+        int fragmentStart) {
+        this.value = value;
+        this.schemeEnd = schemeEnd;
+        this.hostStart = hostStart;
+        this.hostEnd = hostEnd;
+        this.port = port;
+        this.pathStart = pathStart;
+        this.queryStart = queryStart;
+        this.fragmentStart = fragmentStart;
+    }
+
+    /**
+     * Parses an absolute URL.
+     *
+     * @param rawUrl The text of the URL.
+     * @return The parsed URL.
+     * @throws MalformedURLException If the text isn't an absolute, hierarchical URL.
+     */
+    public static CrawlUrl parse(String rawUrl) throws MalformedURLException {
+        int length = rawUrl.length();
+
+        int schemeEnd = rawUrl.indexOf(':');
+        if (schemeEnd <= 0 || !isScheme(rawUrl, schemeEnd)) {
+            throw new MalformedURLException("No valid scheme in URL: " + rawUrl);
+        }
+        if (!rawUrl.startsWith("//", schemeEnd + 1)) {
+            throw new MalformedURLException("URL has no authority: " + rawUrl);
+        }
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < length && "/?#".indexOf(rawUrl.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+
+        int userInfoEnd = rawUrl.lastIndexOf('@', authorityEnd - 1);
+        int hostStart = userInfoEnd >= authorityStart ? userInfoEnd + 1 : authorityStart;
+        int hostEnd;
+        if (hostStart < authorityEnd && rawUrl.charAt(hostStart) == '[') {
+            int literalEnd = rawUrl.indexOf(']', hostStart);
+            if (literalEnd < 0 || literalEnd >= authorityEnd) {
+                throw new MalformedURLException("Unterminated IPv6 address in URL: " + rawUrl);
+            }
+            hostEnd = literalEnd + 1;
+        } else {
+            hostEnd = hostStart;
+            while (hostEnd < authorityEnd && rawUrl.charAt(hostEnd) != ':') {
+                hostEnd++;
+            }
+        }
+
+        if (hostEnd == hostStart) {
+            throw new MalformedURLException("URL has no host: " + rawUrl);
+        }
+
+        int port = -1;
+        if (hostEnd < authorityEnd) {
+            if (rawUrl.charAt(hostEnd) != ':') {
+                throw new MalformedURLException("Unexpected character after host in URL: " + rawUrl);
+            }
+            port = parsePort(rawUrl, hostEnd + 1, authorityEnd);
+        }
+
+        int fragmentStart = rawUrl.indexOf('#', authorityEnd);
+        int queryStart = rawUrl.indexOf('?', authorityEnd);
+        if (fragmentStart >= 0 && queryStart > fragmentStart) {
+            queryStart = -1;
+        }
+
+        String value = lowerCaseRanges(rawUrl, schemeEnd, hostStart, hostEnd);
+        return new CrawlUrl(value, schemeEnd, hostStart, hostEnd, port, authorityEnd, queryStart, fragmentStart);
+    }
+
+    /**
+     * Parses an absolute URL, for use where an invalid URL should simply be skipped.
+     *
+     * @param rawUrl The text of the URL.
+     * @return The parsed URL, or empty if it isn't an absolute, hierarchical URL.
+     */
+    public static Optional<CrawlUrl> tryParse(String rawUrl) {
+        try {
+            return Optional.of(parse(rawUrl));
+        } catch (MalformedURLException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param url The URL to convert.
+     * @return The equivalent crawl URL.
+     * @throws MalformedURLException If the URL isn't hierarchical, e.g. a mailto link.
+     */
+    public static CrawlUrl of(URL url) throws MalformedURLException {
+        return parse(url.toString());
+    }
+
+    /**
+     * @return The lower-case scheme, e.g. "https".
+     */
+    public String getScheme() {
+        return this.value.substring(0, this.schemeEnd);
+    }
+
+    /**
+     * @return The user information preceding the host, or null if there isn't any.
+     */
+    public String getUserInfo() {
+        int authorityStart = this.schemeEnd + 3;
+        if (this.hostStart == authorityStart) {
+            return null;
+        }
+        return this.value.substring(authorityStart, this.hostStart - 1);
+    }
+
+    /**
+     * @return The lower-case host, including the brackets of an IPv6 address.
+     */
+    public String getHost() {
+        return this.value.substring(this.hostStart, this.hostEnd);
+    }
+
+    /**
+     * @return The explicit port, or -1 if the URL doesn't have one.
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return The port which will actually be connected to, using the scheme's default if there isn't an explicit
+     *     port, or -1 if the scheme has no known default.
+     */
+    public int getEffectivePort() {
+        if (this.port >= 0) {
+            return this.port;
+        }
+        return getDefaultPort();
+    }
+
+    /**
+     * @return The default port for the scheme, or -1 if it doesn't have a well known one.
+     */
+    public int getDefaultPort() {
+        if (this.schemeEnd == 4 && this.value.startsWith("http")) {
+            return 80;
+        }
+        if (this.schemeEnd == 5 && this.value.startsWith("https")) {
+            return 443;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The scheme, host and effective port, e.g. "https://host:443", which identifies the server the page is
+     *     hosted on.
+     */
+    public String getOrigin() {
+        return getScheme() + "://" + getHost() + ":" + getEffectivePort();
+    }
+
+    /**
+     * @return The path, which is empty rather than "/" if the URL has no path.
+     */
+    public String getPath() {
+        return this.value.substring(this.pathStart, endOfPath());
+    }
+
+    /**
+     * @return The query without the leading question mark, or null if there isn't one.
+     */
+    public String getQuery() {
+        if (this.queryStart < 0) {
+            return null;
+        }
+        int queryEnd = this.fragmentStart < 0 ? this.value.length() : this.fragmentStart;
+        return this.value.substring(this.queryStart + 1, queryEnd);
+    }
+
+    /**
+     * @return The fragment without the leading hash, or null if there isn't one.
+     */
+    public String getFragment() {
+        if (this.fragmentStart < 0) {
+            return null;
+        }
+        return this.value.substring(this.fragmentStart + 1);
+    }
+
+    /**
+     * @return A 64-bit fingerprint of this URL, see {@link UrlFingerprint}.
+     */
+    public long fingerprint() {
+        long result = this.fingerprint;
+        if (result == 0) {
+            result = UrlFingerprint.of(this.value);
+            this.fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return The equivalent {@link URL}, for interacting with libraries which require one.
+     * @throws MalformedURLException If the scheme isn't one which {@link URL} supports.
+     */
+    public URL toUrl() throws MalformedURLException {
+        return new URL(this.value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        return other instanceof CrawlUrl && this.value.equals(((CrawlUrl) other).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.value;
+    }
+
+    /**
+     * @return The index following the last character of the path.
+     */
+    private int endOfPath() {
+        if (this.queryStart >= 0) {
+            return this.queryStart;
+        }
+        return this.fragmentStart >= 0 ? this.fragmentStart : this.value.length();
+    }
+
+    /**
+     * @param rawUrl The text of the URL.
+     * @param schemeEnd The index of the colon following the scheme.
+     * @return True if everything before the colon is a valid scheme.
+     */
+    private static boolean isScheme(String rawUrl, int schemeEnd) {
+        if (!isAsciiLetter(rawUrl.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < schemeEnd; i++) {
+            char c = rawUrl.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param rawUrl The text of the URL.
+     * @param start The index of the first digit.
+     * @param end The index following the last digit.
+     * @return The port, or -1 if there are no digits.
+     * @throws MalformedURLException If the port isn't a number in the valid range.
+     */
+    private static int parsePort(String rawUrl, int start, int end) throws MalformedURLException {
+        if (start == end) {
+            return -1;
+        }
+
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            char c = rawUrl.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new MalformedURLException("Invalid port in URL: " + rawUrl);
+            }
+            port = port * 10 + (c - '0');
+            if (port > 65535) {
+                throw new MalformedURLException("Port out of range in URL: " + rawUrl);
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Lower-cases the scheme and host, only copying the string if either contains an upper-case character.
+     *
+     * @param rawUrl The text of the URL.
+     * @param schemeEnd The index following the scheme.
+     * @param hostStart The index of the first character of the host.
+     * @param hostEnd The index following the host.
+     * @return The URL with its scheme and host lower-cased.
+     */
+    private static String lowerCaseRanges(String rawUrl, int schemeEnd, int hostStart, int hostEnd) {
+        if (!hasUpperCase(rawUrl, 0, schemeEnd) && !hasUpperCase(rawUrl, hostStart, hostEnd)) {
+            return rawUrl;
+        }
+
+        char[] chars = rawUrl.toCharArray();
+        toLowerCase(chars, 0, schemeEnd);
+        toLowerCase(chars, hostStart, hostEnd);
+        return new String(chars);
+    }
+
+    private static boolean hasUpperCase(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void toLowerCase(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] = (char) (chars[i] + ('a' - 'A'));
+            }
+        }
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,169 @@
+package org.ganderson.webcrawl.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes the crawled link graph as a compact binary edge list, where each URL is written once and then referred to by
+ * a small integer id.
+ *
+ * <p>
+ * The output starts with a four byte magic number, followed by records which each start with a type byte. Node
+ * records give the next id to a URL, written as its length as a variable length integer followed by its UTF-8 bytes,
+ * and are always written before the first record using the id. Page records have the id of the page, the number of
+ * links and then the id of each link, all as variable length integers. Ids count up from zero in the order the URLs
+ * were first seen, so a typical edge costs one or two bytes. {@link #read(InputStream, BiConsumer)} reads the pages
+ * back.
+ * </p>
+ *
+ * <p>
+ * Output is buffered, so nothing is guaranteed to have been written until the sink is flushed or closed. Closing the
+ * sink closes the underlying stream. URLs are told apart by their {@link CrawlUrl#fingerprint() fingerprint}.
+ * </p>
+ */
+public class EdgeListResultSink implements CrawlResultSink {
+
+    private static final int MAGIC = 0x57454C31;
+    private static final byte NODE = 1;
+    private static final byte PAGE = 2;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final Map<Long, Integer> ids = new HashMap<>();
+
+    /**
+     * @param out The stream to write the edge list to.
+     */
+    public EdgeListResultSink(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_BYTES));
+        try {
+            this.out.writeInt(MAGIC);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void accept(CrawlUrl page, List<CrawlUrl> links) {
+        try {
+            int pageId = idOf(page);
+            int[] linkIds = new int[links.size()];
+            for (int i = 0; i < linkIds.length; i++) {
+                linkIds[i] = idOf(links.get(i));
+            }
+
+            this.out.writeByte(PAGE);
+            writeVarInt(this.out, pageId);
+            writeVarInt(this.out, linkIds.length);
+            for (int linkId : linkIds) {
+                writeVarInt(this.out, linkId);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            this.out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            this.out.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads an edge list written by this sink.
+     *
+     * @param in The stream to read, which is read to the end but not closed.
+     * @param consumer Given the URL of each page and the URLs of its links, in the order written.
+     * @throws IOException If the stream couldn't be read or isn't an edge list.
+     */
+    public static void read(InputStream in, BiConsumer<String, List<String>> consumer) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_BYTES));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not an edge list");
+        }
+
+        List<String> urls = new ArrayList<>();
+        int type;
+        while ((type = data.read()) != -1) {
+            if (type == NODE) {
+                byte[] bytes = new byte[readVarInt(data)];
+                data.readFully(bytes);
+                urls.add(new String(bytes, StandardCharsets.UTF_8));
+            } else if (type == PAGE) {
+                String page = urls.get(readVarInt(data));
+                int count = readVarInt(data);
+                List<String> links = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    links.add(urls.get(readVarInt(data)));
+                }
+                consumer.accept(page, links);
+            } else {
+                throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    /**
+     * @param url The URL to look up.
+     * @return The id of the URL, writing a node record for it first if it hasn't been seen before.
+     */
+    private int idOf(CrawlUrl url) throws IOException {
+        Integer id = this.ids.get(url.fingerprint());
+        if (id != null) {
+            return id;
+        }
+
+        int newId = this.ids.size();
+        this.ids.put(url.fingerprint(), newId);
+        byte[] bytes = url.toString().getBytes(StandardCharsets.UTF_8);
+        this.out.writeByte(NODE);
+        writeVarInt(this.out, bytes.length);
+        this.out.write(bytes);
+        return newId;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer in edge list");
+    }
+}
@@ -0,0 +1,28 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Visited set which keeps the full URL of every page, it never confuses two pages but every entry costs the size of
+ * the string plus the overhead of a hash map node.
+ */
+public class ExactVisitedSet implements VisitedSet {
+
+    private final Set<String> visitedPages = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean add(CrawlUrl pageUrl) {
+        return this.visitedPages.add(pageUrl.toString());
+    }
+
+    @Override
+    public boolean contains(CrawlUrl pageUrl) {
+        return this.visitedPages.contains(pageUrl.toString());
+    }
+
+    @Override
+    public long size() {
+        return this.visitedPages.size();
+    }
+}
@@ -0,0 +1,106 @@
+package org.ganderson.webcrawl.service;
+
+import java.time.Duration;
+
+/**
+ * Told about the outcome of every request a fetcher sends, so that the crawl can react to how each host is coping.
+ *
+ * <p>
+ * Listeners are called on whichever thread completed the request, so must be safe to call from many threads at once
+ * and should return quickly.
+ * </p>
+ */
+public interface FetchListener {
+
+    /**
+     * A listener which ignores every outcome.
+     */
+    FetchListener NONE = new FetchListener() {
+        @Override
+        public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+            // No op
+        }
+
+        @Override
+        public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+            // No op
+        }
+    };
+
+    /**
+     * Called when the server answered the request, whatever the status.
+     *
+     * @param url The page which was requested.
+     * @param statusCode The HTTP status of the response.
+     * @param elapsed The time from sending the request to receiving the response.
+     */
+    void onResponse(CrawlUrl url, int statusCode, Duration elapsed);
+
+    /**
+     * Called when no response was received, e.g. the connection was refused or the request timed out.
+     *
+     * @param url The page which was requested.
+     * @param cause Why the request failed.
+     * @param elapsed The time from sending the request to it failing.
+     */
+    void onFailure(CrawlUrl url, Throwable cause, Duration elapsed);
+
+    /**
+     * Called once the body of a response has been read, by default doing nothing.
+     *
+     * @param url The page which was requested.
+     * @param length The length of the body in bytes.
+     * @param elapsed The time taken to read the body after the response arrived, or zero if the fetcher reads the
+     *     body before passing on the response.
+     */
+    default void onBody(CrawlUrl url, int length, Duration elapsed) {
+        // No op
+    }
+
+    /**
+     * Called when a page wasn't downloaded because of its URL or headers, or was abandoned part way through its body,
+     * by default doing nothing.
+     *
+     * @param url The page which was requested.
+     * @param rejection Why the page wasn't downloaded.
+     */
+    default void onRejected(CrawlUrl url, ContentFilter.Rejection rejection) {
+        // No op
+    }
+
+    /**
+     * @param listeners The listeners to tell.
+     * @return A listener which passes every outcome on to each of the given listeners in turn.
+     */
+    static FetchListener all(FetchListener... listeners) {
+        return new FetchListener() {
+            @Override
+            public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+                for (FetchListener listener : listeners) {
+                    listener.onResponse(url, statusCode, elapsed);
+                }
+            }
+
+            @Override
+            public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+                for (FetchListener listener : listeners) {
+                    listener.onFailure(url, cause, elapsed);
+                }
+            }
+
+            @Override
+            public void onBody(CrawlUrl url, int length, Duration elapsed) {
+                for (FetchListener listener : listeners) {
+                    listener.onBody(url, length, elapsed);
+                }
+            }
+
+            @Override
+            public void onRejected(CrawlUrl url, ContentFilter.Rejection rejection) {
+                for (FetchListener listener : listeners) {
+                    listener.onRejected(url, rejection);
+                }
+            }
+        };
+    }
+}
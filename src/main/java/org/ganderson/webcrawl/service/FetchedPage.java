@@ -0,0 +1,437 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The raw response for a page which has been successfully fetched, before it has been parsed.
+ *
+ * <p>
+ * This can also be a {@code 304 Not Modified} response to a conditional request for a cached page, see
+ * {@link #isNotModified()}, in which case it has no body and the page's cached links should be used instead.
+ * </p>
+ *
+ * <p>
+ * The body is kept as it was sent, so a page served with a gzip or deflate Content-Encoding stays compressed in
+ * memory until it is parsed, when it is decoded as a stream straight into the parser, see {@link #openBody()}.
+ * </p>
+ */
+public class FetchedPage {
+
+    /**
+     * The most a body may grow when it is decoded, which no real page comes near, to stop a small compressed body
+     * expanding into gigabytes.
+     */
+    static final int MAX_COMPRESSION_RATIO = 100;
+
+    /**
+     * How much of the start of a body is searched for a charset declaration, the same as jsoup searches.
+     */
+    private static final int CHARSET_SEARCH_LENGTH = 5 * 1024;
+
+    /**
+     * A charset declared by a meta tag, in either its own attribute or the content of a Content-Type http-equiv, or
+     * by an XML declaration.
+     */
+    private static final Pattern DECLARED_CHARSET = Pattern.compile(
+        "<meta[^>]*?charset\\s*=\\s*[\"']?([\\w.:-]+)|<\\?xml[^>]*?encoding\\s*=\\s*[\"']([\\w.:-]+)",
+        Pattern.CASE_INSENSITIVE);
+
+    private final CrawlUrl url;
+    private final String location;
+    private final int statusCode;
+    private final String contentType;
+    private final byte[] body;
+    private final String eTag;
+    private final String lastModified;
+    private final String contentEncoding;
+    private final long maxDecodedSize;
+
+    /**
+     * @param url The URL which was requested.
+     * @param location The URL the body was finally served from, after following any redirects.
+     * @param statusCode The HTTP status of the response.
+     * @param contentType The value of the Content-Type header, or null if there wasn't one.
+     * @param body The body of the response.
+     * @param eTag The value of the ETag header, or null if there wasn't one.
+     * @param lastModified The value of the Last-Modified header, or null if there wasn't one.
+     * @param contentEncoding The value of the Content-Encoding header which the body is still encoded with, or
+     *     null if it has already been decoded.
+     * @param maxDecodedSize The most bytes the body may hold once it is decoded, usually the max body size.
+     */
+    public FetchedPage(
+        CrawlUrl url,
+        String location,
+        int statusCode,
+        String contentType,
+        byte[] body,
+        String eTag,
+        String lastModified,
+        String contentEncoding,
+        long maxDecodedSize) {
+        this.url = url;
+        this.location = location;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+        this.maxDecodedSize = maxDecodedSize;
+    }
+
+    /**
+     * @param url The URL which was requested.
+     * @param location The URL the body was finally served from, after following any redirects.
+     * @param statusCode The HTTP status of the response.
+     * @param contentType The value of the Content-Type header, or null if there wasn't one.
+     * @param body The body of the response.
+     * @param eTag The value of the ETag header, or null if there wasn't one.
+     * @param lastModified The value of the Last-Modified header, or null if there wasn't one.
+     * @param contentEncoding The value of the Content-Encoding header which the body is still encoded with, or
+     *     null if it has already been decoded.
+     */
+    public FetchedPage(
+        CrawlUrl url,
+        String location,
+        int statusCode,
+        String contentType,
+        byte[] body,
+        String eTag,
+        String lastModified,
+        String contentEncoding) {
+        this(url, location, statusCode, contentType, body, eTag, lastModified, contentEncoding, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param url The URL which was requested.
+     * @param location The URL the body was finally served from, after following any redirects.
+     * @param statusCode The HTTP status of the response.
+     * @param contentType The value of the Content-Type header, or null if there wasn't one.
+     * @param body The decoded body of the response.
+     * @param eTag The value of the ETag header, or null if there wasn't one.
+     * @param lastModified The value of the Last-Modified header, or null if there wasn't one.
+     */
+    public FetchedPage(
+        CrawlUrl url,
+        String location,
+        int statusCode,
+        String contentType,
+        byte[] body,
+        String eTag,
+        String lastModified) {
+        this(url, location, statusCode, contentType, body, eTag, lastModified, null);
+    }
+
+    /**
+     * @param url The URL which was requested.
+     * @param location The URL the body was finally served from, after following any redirects.
+     * @param statusCode The HTTP status of the response.
+     * @param contentType The value of the Content-Type header, or null if there wasn't one.
+     * @param body The decoded body of the response.
+     */
+    public FetchedPage(CrawlUrl url, String location, int statusCode, String contentType, byte[] body) {
+        this(url, location, statusCode, contentType, body, null, null);
+    }
+
+    /**
+     * @param url The URL which was requested.
+     * @return A {@code 304 Not Modified} response to a conditional request for the page.
+     */
+    public static FetchedPage notModified(CrawlUrl url) {
+        return new FetchedPage(url, url.toString(), 304, null, new byte[0]);
+    }
+
+    /**
+     * @return The URL which was requested.
+     */
+    public CrawlUrl getUrl() {
+        return url;
+    }
+
+    /**
+     * @return The URL the body was finally served from, which relative links should be resolved against.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The HTTP status of the response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The value of the Content-Type header, or null if there wasn't one.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return The body of the response as it was sent, which is still encoded if there is a
+     *     {@link #getContentEncoding() content encoding}.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return The value of the ETag header, or null if there wasn't one.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @return The value of the Last-Modified header, or null if there wasn't one.
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The Content-Encoding the body is still encoded with, or null if it isn't encoded.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * Opens the body, decoding it as it is read if it is still encoded.
+     *
+     * @return The decoded body, which is limited to the max decoded size and to {@value #MAX_COMPRESSION_RATIO} times
+     *     the length of the encoded body, failing with an IOException if it is any longer.
+     * @throws IOException If the body is encoded with an encoding which isn't supported, or isn't valid.
+     */
+    public InputStream openBody() throws IOException {
+        InputStream encoded = new ByteArrayInputStream(this.body);
+        String encoding = this.contentEncoding == null ? "" : this.contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return encoded;
+            case "gzip":
+            case "x-gzip":
+                return new LimitedInputStream(new GZIPInputStream(encoded), maxDecodedLength());
+            case "deflate":
+                // Meant to be zlib wrapped, but some servers send a raw deflate stream
+                boolean zlib = this.body.length >= 2
+                    && (this.body[0] & 0x0F) == 8
+                    && ((this.body[0] & 0xFF) << 8 | this.body[1] & 0xFF) % 31 == 0;
+                return new LimitedInputStream(new EndingInflaterInputStream(encoded, !zlib), maxDecodedLength());
+            default:
+                throw new IOException("Unsupported content encoding [" + this.contentEncoding + "] for " + this.url);
+        }
+    }
+
+    private long maxDecodedLength() {
+        return Math.min((long) Math.max(this.body.length, 1) * MAX_COMPRESSION_RATIO, this.maxDecodedSize);
+    }
+
+    /**
+     * @return True if this is a {@code 304 Not Modified} response, meaning the cached copy of the page is still
+     *     current.
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    /**
+     * @return The charset declared in the Content-Type header, or null if it should be detected from the body, which
+     *     includes a charset which isn't supported.
+     */
+    public String getCharset() {
+        if (this.contentType == null) {
+            return null;
+        }
+
+        for (String parameter : this.contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                String charset = trimmed.substring("charset=".length()).replace("\"", "").trim();
+                return isSupported(charset) ? charset : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the body as HTML, decoding it as a stream straight into the parser.
+     *
+     * <p>
+     * A byte order mark takes precedence over everything else, then the charset declared in the Content-Type header.
+     * Without either, the charset is detected from a meta tag or XML declaration in the first few kilobytes of the
+     * page, which is the only part of the body read twice.
+     * </p>
+     *
+     * @return The parsed document.
+     * @throws UncheckedIOException If the body couldn't be decoded.
+     */
+    public Document parse() {
+        try (InputStream decoded = openBody()) {
+            return Jsoup.parse(decoded, getCharset(), this.location);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Opens the body as text, decoding it as it is read, for reading links without parsing the page.
+     *
+     * <p>
+     * The charset is found the same way as by {@link #parse()}: a byte order mark, then the Content-Type header, then
+     * a meta tag or XML declaration in the first few kilobytes of the page, falling back to UTF-8.
+     * </p>
+     *
+     * @return The decoded body, which the caller is responsible for closing.
+     * @throws IOException If the body couldn't be decoded, see {@link #openBody()}.
+     */
+    public Reader openReader() throws IOException {
+        BufferedInputStream decoded = new BufferedInputStream(openBody(), CHARSET_SEARCH_LENGTH);
+        byte[] start;
+        try {
+            decoded.mark(CHARSET_SEARCH_LENGTH);
+            start = decoded.readNBytes(CHARSET_SEARCH_LENGTH);
+            decoded.reset();
+        } catch (IOException ex) {
+            decoded.close();
+            throw ex;
+        }
+
+        Charset charset;
+        if (start.length >= 3 && (start[0] & 0xFF) == 0xEF && (start[1] & 0xFF) == 0xBB && (start[2] & 0xFF) == 0xBF) {
+            charset = StandardCharsets.UTF_8;
+            decoded.skip(3);
+        } else if (start.length >= 2 && (start[0] & 0xFF) == 0xFE && (start[1] & 0xFF) == 0xFF) {
+            charset = StandardCharsets.UTF_16BE;
+            decoded.skip(2);
+        } else if (start.length >= 2 && (start[0] & 0xFF) == 0xFF && (start[1] & 0xFF) == 0xFE) {
+            charset = StandardCharsets.UTF_16LE;
+            decoded.skip(2);
+        } else if (getCharset() != null) {
+            charset = Charset.forName(getCharset());
+        } else {
+            charset = declaredCharset(start);
+        }
+        return new InputStreamReader(decoded, charset);
+    }
+
+    /**
+     * @param start The start of the body.
+     * @return The charset declared in the body if it is supported, otherwise UTF-8.
+     */
+    private static Charset declaredCharset(byte[] start) {
+        // Every charset a declaration can be read from agrees with ISO-8859-1 on the characters of the declaration
+        Matcher matcher = DECLARED_CHARSET.matcher(new String(start, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
+            String declared = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            if (isSupported(declared)) {
+                return Charset.forName(declared);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @param charset The name of a charset.
+     * @return True if the charset is one the JVM can decode.
+     */
+    private static boolean isSupported(String charset) {
+        try {
+            return !charset.isEmpty() && Charset.isSupported(charset);
+        } catch (IllegalCharsetNameException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Inflates with an inflater of its own, which is ended when the stream is closed rather than left for the garbage
+     * collector to free its native memory.
+     */
+    private static final class EndingInflaterInputStream extends InflaterInputStream {
+
+        private EndingInflaterInputStream(InputStream in, boolean nowrap) {
+            super(in, new Inflater(nowrap));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                this.inf.end();
+            }
+        }
+    }
+
+    /**
+     * Fails once more than a limited number of bytes have been read, rather than quietly stopping.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long read) throws IOException {
+            this.count += read;
+            if (this.count > this.limit) {
+                throw new IOException("Decoded body is over the limit of " + this.limit + " bytes");
+            }
+        }
+    }
+}
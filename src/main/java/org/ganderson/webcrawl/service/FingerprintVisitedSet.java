@@ -0,0 +1,241 @@
+package org.ganderson.webcrawl.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Visited set which only keeps a 64-bit {@link UrlFingerprint} of each page, held in primitive open-addressing tables
+ * either on the heap or in direct memory.
+ *
+ * <p>
+ * Tables are grown by half once they are three quarters full, so each entry costs between 10.7 and 16 bytes
+ * regardless of the length of the URL, with no per-entry objects for the garbage collector to trace. The set is
+ * split into independently locked segments, chosen by the low bits of the fingerprint, so threads adding different
+ * pages rarely contend.
+ * </p>
+ *
+ * <p>
+ * The trade-off is that two different URLs with the same fingerprint are treated as the same page, and the second
+ * will never be crawled. Assuming fingerprints are uniformly distributed, a new URL is wrongly reported as visited
+ * with probability n / 2^64 when n pages have been recorded, so the expected number of pages skipped over a whole
+ * crawl of n pages is about n^2 / 2^65: roughly 3 in a hundred million crawls of a million pages, or 3 in ten
+ * thousand crawls of a hundred million pages.
+ * </p>
+ */
+public class FingerprintVisitedSet implements VisitedSet {
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    /**
+     * @param expectedPages Roughly how many pages will be recorded, used to size the tables up front.
+     * @param offHeap True to keep the tables in direct memory rather than on the heap.
+     */
+    public FingerprintVisitedSet(long expectedPages, boolean offHeap) {
+        long perSegment = (long) Math.ceil(expectedPages / (double) SEGMENT_COUNT / MAX_LOAD_FACTOR);
+        int initialCapacity = (int) Math.min(
+            Integer.MAX_VALUE / Long.BYTES,
+            Math.max(MIN_SEGMENT_CAPACITY, perSegment));
+
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment(initialCapacity, offHeap);
+        }
+    }
+
+    /**
+     * Creates an on-heap set with a small initial size.
+     */
+    public FingerprintVisitedSet() {
+        this(0, false);
+    }
+
+    @Override
+    public boolean add(CrawlUrl pageUrl) {
+        long fingerprint = pageUrl.fingerprint();
+        return segmentFor(fingerprint).add(fingerprint);
+    }
+
+    @Override
+    public boolean contains(CrawlUrl pageUrl) {
+        long fingerprint = pageUrl.fingerprint();
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of bytes currently reserved for the tables, for monitoring memory use.
+     */
+    public long capacityInBytes() {
+        long bytes = 0;
+        for (Segment segment : this.segments) {
+            bytes += segment.capacityInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @param fingerprint The fingerprint to locate.
+     * @return The segment which holds the fingerprint.
+     */
+    private Segment segmentFor(long fingerprint) {
+        return this.segments[(int) fingerprint & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * A single open-addressing table using linear probing, where a zero slot is empty.
+     */
+    private static class Segment {
+
+        private final boolean offHeap;
+        private Slots slots;
+        private int size;
+
+        /**
+         * @param capacity The initial number of slots.
+         * @param offHeap True to allocate the slots in direct memory.
+         */
+        Segment(int capacity, boolean offHeap) {
+            this.offHeap = offHeap;
+            this.slots = Slots.allocate(capacity, offHeap);
+        }
+
+        synchronized boolean add(long fingerprint) {
+            int slot = findSlot(this.slots, fingerprint);
+            if (this.slots.get(slot) == fingerprint) {
+                return false;
+            }
+
+            this.slots.set(slot, fingerprint);
+            this.size++;
+            if (this.size > this.slots.capacity() * MAX_LOAD_FACTOR) {
+                grow();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            return this.slots.get(findSlot(this.slots, fingerprint)) == fingerprint;
+        }
+
+        synchronized int size() {
+            return this.size;
+        }
+
+        synchronized long capacityInBytes() {
+            return (long) this.slots.capacity() * Long.BYTES;
+        }
+
+        /**
+         * Moves every entry into a table half as large again.
+         */
+        private void grow() {
+            Slots old = this.slots;
+            int capacity = Math.min(Integer.MAX_VALUE / Long.BYTES, old.capacity() + (old.capacity() >> 1));
+            if (capacity == old.capacity()) {
+                throw new IllegalStateException("Visited set segment is full");
+            }
+
+            Slots grown = Slots.allocate(capacity, this.offHeap);
+            for (int i = 0; i < old.capacity(); i++) {
+                long fingerprint = old.get(i);
+                if (fingerprint != 0) {
+                    grown.set(findSlot(grown, fingerprint), fingerprint);
+                }
+            }
+            this.slots = grown;
+        }
+
+        /**
+         * Finds the slot holding the fingerprint, or the empty slot where it would be inserted.
+         *
+         * @param slots The table to search.
+         * @param fingerprint The non-zero fingerprint to find.
+         * @return The index of the slot.
+         */
+        private static int findSlot(Slots slots, long fingerprint) {
+            int capacity = slots.capacity();
+
+            // Map the high half of the fingerprint onto the table without needing a power of two capacity
+            int slot = (int) (((fingerprint >>> 32) * capacity) >>> 32);
+            while (true) {
+                long current = slots.get(slot);
+                if (current == 0 || current == fingerprint) {
+                    return slot;
+                }
+                slot = slot + 1 == capacity ? 0 : slot + 1;
+            }
+        }
+    }
+
+    /**
+     * Fixed size array of longs, held either on the heap or in direct memory.
+     */
+    private interface Slots {
+
+        long get(int index);
+
+        void set(int index, long value);
+
+        int capacity();
+
+        /**
+         * @param capacity The number of slots, all initially zero.
+         * @param offHeap True to allocate the slots in direct memory.
+         * @return The new slots.
+         */
+        static Slots allocate(int capacity, boolean offHeap) {
+            if (!offHeap) {
+                long[] values = new long[capacity];
+                return new Slots() {
+                    @Override
+                    public long get(int index) {
+                        return values[index];
+                    }
+
+                    @Override
+                    public void set(int index, long value) {
+                        values[index] = value;
+                    }
+
+                    @Override
+                    public int capacity() {
+                        return values.length;
+                    }
+                };
+            }
+
+            LongBuffer values = ByteBuffer
+                .allocateDirect(capacity * Long.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+            return new Slots() {
+                @Override
+                public long get(int index) {
+                    return values.get(index);
+                }
+
+                @Override
+                public void set(int index, long value) {
+                    values.put(index, value);
+                }
+
+                @Override
+                public int capacity() {
+                    return values.capacity();
+                }
+            };
+        }
+    }
+}
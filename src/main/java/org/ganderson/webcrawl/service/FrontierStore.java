@@ -0,0 +1,82 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the pages which are waiting to be crawled, in the order they should be visited.
+ *
+ * <p>
+ * Implementations must be safe to use from multiple threads at the same time. A store does no de-duplication of its
+ * own, that's handled by the {@link NonDuplicateQueue} in front of it.
+ * </p>
+ *
+ * <p>
+ * Every page which is polled is passed back to {@link #release(CrawlUrl)} once it has been visited, which lets a
+ * store such as {@link HostScheduledFrontierStore} limit how many pages are being visited at once. A store which does
+ * that may return null from a poll while it isn't empty.
+ * </p>
+ */
+public interface FrontierStore extends AutoCloseable {
+
+    /**
+     * Adds a page to the back of the store.
+     *
+     * @param pageUrl The page to add.
+     */
+    void add(CrawlUrl pageUrl);
+
+    /**
+     * Adds several pages to the back of the store, in order. By default they are simply added one at a time, stores
+     * which lock or wake pollers should override this to do so once for the whole batch.
+     *
+     * @param pageUrls The pages to add.
+     */
+    default void addAll(Collection<CrawlUrl> pageUrls) {
+        pageUrls.forEach(this::add);
+    }
+
+    /**
+     * Removes the page at the front of the store.
+     *
+     * @return The next page, or null if the store is empty.
+     */
+    CrawlUrl poll();
+
+    /**
+     * Removes the page at the front of the store, waiting up to the given time for one to be added if it is empty.
+     *
+     * @param timeout How long to wait before giving up.
+     * @param unit The unit of the timeout.
+     * @return The next page, or null if the store was still empty once the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    CrawlUrl poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Signals that a polled page has been visited, by default this does nothing.
+     *
+     * @param pageUrl The page which was visited.
+     */
+    default void release(CrawlUrl pageUrl) {
+        // No op
+    }
+
+    /**
+     * @return True if there are no pages in the store.
+     */
+    boolean isEmpty();
+
+    /**
+     * @return The number of pages in the store.
+     */
+    long size();
+
+    /**
+     * Releases any resources held by the store, by default there are none.
+     */
+    @Override
+    default void close() {
+        // No op
+    }
+}
@@ -0,0 +1,145 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits how many requests may be in flight to each host at the same time, without blocking any threads.
+ *
+ * <p>
+ * Callers are handed a future which completes once a permit is free. Waiters for a host are served in the order they
+ * asked, and a permit released by one request is passed straight to the next waiter.
+ * </p>
+ *
+ * <p>
+ * The limit of each host can be lowered below the maximum while crawling, see {@link #setLimit(String, int)}, such as
+ * by an {@link AdaptiveConcurrencyController}.
+ * </p>
+ */
+public class HostConcurrencyLimiter {
+
+    private final int maxPerHost;
+    private final Map<String, HostPermits> permitsByHost = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxPerHost The maximum number of concurrent requests to any single host.
+     */
+    public HostConcurrencyLimiter(int maxPerHost) {
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException("Max requests per host must be at least 1 but was " + maxPerHost);
+        }
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Asks for a permit to send a request to the host.
+     *
+     * @param host The host the request is for.
+     * @return A future which completes once a permit has been granted, after which {@link #release(String)} must be
+     *     called exactly once.
+     */
+    public CompletableFuture<Void> acquire(String host) {
+        HostPermits permits = permitsFor(host);
+        CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        synchronized (permits) {
+            if (permits.inUse < permits.limit) {
+                permits.inUse++;
+                return CompletableFuture.completedFuture(null);
+            }
+            permits.waiters.add(granted);
+        }
+        return granted;
+    }
+
+    /**
+     * Releases a permit for the host, handing it to the next waiter if there is one.
+     *
+     * @param host The host the permit was acquired for.
+     */
+    public void release(String host) {
+        HostPermits permits = this.permitsByHost.get(host);
+        if (permits == null) {
+            throw new IllegalStateException("No permits acquired for host " + host);
+        }
+
+        CompletableFuture<Void> next = null;
+        synchronized (permits) {
+            // A permit over a lowered limit is given up rather than passed on
+            if (permits.inUse <= permits.limit) {
+                next = permits.waiters.poll();
+            }
+            if (next == null) {
+                permits.inUse--;
+            }
+        }
+
+        // Completed outside the lock as this runs the waiter's continuation on this thread
+        if (next != null) {
+            next.complete(null);
+        }
+    }
+
+    /**
+     * Changes how many requests may be in flight to the host, never above the maximum this was created with.
+     * Raising the limit grants permits to waiters straight away, while lowering it takes effect as permits which are
+     * already held are released.
+     *
+     * @param host The host to change the limit of.
+     * @param limit The new limit, must be at least 1.
+     */
+    public void setLimit(String host, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1 but was " + limit);
+        }
+
+        HostPermits permits = permitsFor(host);
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (permits) {
+            permits.limit = Math.min(limit, this.maxPerHost);
+            while (permits.inUse < permits.limit && !permits.waiters.isEmpty()) {
+                permits.inUse++;
+                granted.add(permits.waiters.poll());
+            }
+        }
+
+        // Completed outside the lock as this runs the waiters' continuations on this thread
+        granted.forEach(waiter -> waiter.complete(null));
+    }
+
+    /**
+     * @param host The host to check.
+     * @return The number of permits currently held for the host.
+     */
+    public int inUse(String host) {
+        HostPermits permits = this.permitsByHost.get(host);
+        if (permits == null) {
+            return 0;
+        }
+        synchronized (permits) {
+            return permits.inUse;
+        }
+    }
+
+    private HostPermits permitsFor(String host) {
+        return this.permitsByHost.computeIfAbsent(host, ignored -> new HostPermits(this.maxPerHost));
+    }
+
+    /**
+     * The permits in use and the requests waiting for one on a single host, guarded by its own monitor.
+     */
+    private static class HostPermits {
+        private int limit;
+        private int inUse;
+        private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+        private HostPermits(int limit) {
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.ganderson.webcrawl.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store which keeps a separate queue of waiting pages for each host and only hands out a page once its host is ready
+ * for another request.
+ *
+ * <p>
+ * A host is ready when fewer than its maximum number of its pages are being visited and its crawl delay has passed
+ * since its last page was handed out. Ready hosts take turns, so a host with thousands of waiting pages can't starve
+ * one with a handful, and a slow or rate-limited host only holds up its own pages rather than every worker in the
+ * crawl. Hosts are identified by their {@link CrawlUrl#getOrigin() origin}.
+ * </p>
+ *
+ * <p>
+ * Pages count against their host's concurrency from the moment they are polled until they are passed to
+ * {@link #release(CrawlUrl)}, so the crawl must release every page it polls. Because of that a poll can return null
+ * while the store isn't empty, if every waiting page belongs to a host which isn't ready yet.
+ * </p>
+ *
+ * <p>
+ * Every operation takes a single lock, which is only ever held for a few map and queue operations.
+ * </p>
+ */
+public class HostScheduledFrontierStore implements FrontierStore {
+
+    private final long defaultCrawlDelayNanos;
+    private final int defaultMaxConcurrency;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hostReady = this.lock.newCondition();
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /**
+     * Hosts which have waiting pages and may be handed out now, in the order they became ready.
+     */
+    private final ArrayDeque<HostQueue> readyHosts = new ArrayDeque<>();
+
+    /**
+     * Hosts which have waiting pages but are within their crawl delay, earliest first.
+     */
+    private final PriorityQueue<HostQueue> delayedHosts =
+        new PriorityQueue<>(Comparator.comparingLong(host -> host.nextAllowedNanos));
+
+    private long size;
+
+    /**
+     * @param crawlDelay The minimum time between handing out two pages from the same host, unless overridden.
+     * @param maxConcurrency The maximum number of pages from the same host being visited at once, unless
+     *     overridden.
+     */
+    public HostScheduledFrontierStore(Duration crawlDelay, int maxConcurrency) {
+        if (crawlDelay.isNegative()) {
+            throw new IllegalArgumentException("Crawl delay must not be negative but was " + crawlDelay);
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1 but was " + maxConcurrency);
+        }
+
+        this.defaultCrawlDelayNanos = crawlDelay.toNanos();
+        this.defaultMaxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void add(CrawlUrl pageUrl) {
+        this.lock.lock();
+        try {
+            HostQueue host = this.hosts.computeIfAbsent(pageUrl.getOrigin(), origin -> new HostQueue());
+            host.pages.add(pageUrl);
+            this.size++;
+            if (host.state == HostState.IDLE) {
+                schedule(host, System.nanoTime());
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAll(Collection<CrawlUrl> pageUrls) {
+        this.lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (CrawlUrl pageUrl : pageUrls) {
+                HostQueue host = this.hosts.computeIfAbsent(pageUrl.getOrigin(), origin -> new HostQueue());
+                host.pages.add(pageUrl);
+                this.size++;
+                if (host.state == HostState.IDLE) {
+                    schedule(host, now);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CrawlUrl poll() {
+        this.lock.lock();
+        try {
+            return take(System.nanoTime());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CrawlUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                CrawlUrl pageUrl = take(now);
+                if (pageUrl != null) {
+                    return pageUrl;
+                }
+
+                long waitNanos = deadline - now;
+                if (waitNanos <= 0) {
+                    return null;
+                }
+                HostQueue nextDelayed = this.delayedHosts.peek();
+                if (nextDelayed != null) {
+                    waitNanos = Math.min(waitNanos, nextDelayed.nextAllowedNanos - now);
+                }
+                this.hostReady.awaitNanos(waitNanos);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot the page was holding against its host's concurrency, making the host ready again if it has
+     * more pages waiting.
+     *
+     * @param pageUrl A page which was previously polled from this store.
+     */
+    @Override
+    public void release(CrawlUrl pageUrl) {
+        this.lock.lock();
+        try {
+            HostQueue host = this.hosts.get(pageUrl.getOrigin());
+            if (host == null || host.inFlight == 0) {
+                return;
+            }
+
+            host.inFlight--;
+            if (host.state == HostState.BUSY) {
+                schedule(host, System.nanoTime());
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public long size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Overrides the crawl delay of a single host, e.g. with the delay it asks for in its robots.txt.
+     *
+     * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+     * @param crawlDelay The minimum time between handing out two of its pages.
+     */
+    public void setCrawlDelay(String origin, Duration crawlDelay) {
+        if (crawlDelay.isNegative()) {
+            throw new IllegalArgumentException("Crawl delay must not be negative but was " + crawlDelay);
+        }
+
+        this.lock.lock();
+        try {
+            HostQueue host = this.hosts.computeIfAbsent(origin, key -> new HostQueue());
+            host.crawlDelayNanos = crawlDelay.toNanos();
+            if (host.lastTakenNanos != null) {
+                host.nextAllowedNanos = host.lastTakenNanos + host.crawlDelayNanos;
+            }
+            reschedule(host);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Overrides the maximum number of pages from a single host which are visited at once.
+     *
+     * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+     * @param maxConcurrency The maximum, must be at least 1.
+     */
+    public void setMaxConcurrency(String origin, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be at least 1 but was " + maxConcurrency);
+        }
+
+        this.lock.lock();
+        try {
+            HostQueue host = this.hosts.computeIfAbsent(origin, key -> new HostQueue());
+            host.maxConcurrency = maxConcurrency;
+            reschedule(host);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+     * @return The number of pages from the host which have been polled but not yet released.
+     */
+    public int inFlight(String origin) {
+        this.lock.lock();
+        try {
+            HostQueue host = this.hosts.get(origin);
+            return host == null ? 0 : host.inFlight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of distinct hosts which have had pages added.
+     */
+    public int hostCount() {
+        this.lock.lock();
+        try {
+            return this.hosts.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next page from the first ready host, then puts the host back wherever it now belongs. Must be
+     * called holding the lock.
+     *
+     * @param now The current value of {@link System#nanoTime()}.
+     * @return The page, or null if no host is ready.
+     */
+    private CrawlUrl take(long now) {
+        while (!this.delayedHosts.isEmpty() && this.delayedHosts.peek().nextAllowedNanos - now <= 0) {
+            HostQueue host = this.delayedHosts.poll();
+            host.state = HostState.READY;
+            this.readyHosts.add(host);
+        }
+
+        HostQueue host = this.readyHosts.poll();
+        if (host == null) {
+            return null;
+        }
+
+        CrawlUrl pageUrl = host.pages.poll();
+        this.size--;
+        host.inFlight++;
+        host.lastTakenNanos = now;
+        host.nextAllowedNanos = now + host.crawlDelayNanos;
+        schedule(host, now);
+        return pageUrl;
+    }
+
+    /**
+     * Moves a host which isn't currently queued into the queue matching its state. Must be called holding the lock.
+     *
+     * @param host The host, which must not be in either the ready or delayed queues.
+     * @param now The current value of {@link System#nanoTime()}.
+     */
+    private void schedule(HostQueue host, long now) {
+        if (host.pages.isEmpty()) {
+            host.state = HostState.IDLE;
+        } else if (host.inFlight >= host.maxConcurrency) {
+            host.state = HostState.BUSY;
+        } else if (host.nextAllowedNanos - now > 0) {
+            host.state = HostState.DELAYED;
+            this.delayedHosts.add(host);
+            this.hostReady.signal();
+        } else {
+            host.state = HostState.READY;
+            this.readyHosts.add(host);
+            this.hostReady.signal();
+        }
+    }
+
+    /**
+     * Re-evaluates the state of a host whose limits have changed. Must be called holding the lock.
+     *
+     * @param host The host, which may be in either the ready or delayed queues.
+     */
+    private void reschedule(HostQueue host) {
+        if (host.state == HostState.READY) {
+            this.readyHosts.remove(host);
+        } else if (host.state == HostState.DELAYED) {
+            this.delayedHosts.remove(host);
+        }
+        schedule(host, System.nanoTime());
+    }
+
+    /**
+     * Where a host is in the schedule.
+     */
+    private enum HostState {
+        /**
+         * No pages waiting, in neither queue.
+         */
+        IDLE,
+
+        /**
+         * In the ready queue.
+         */
+        READY,
+
+        /**
+         * In the delayed queue.
+         */
+        DELAYED,
+
+        /**
+         * Has pages waiting but is at its maximum concurrency, in neither queue until a page is released.
+         */
+        BUSY
+    }
+
+    /**
+     * The waiting pages and limits of a single host, only accessed while holding the lock.
+     */
+    private final class HostQueue {
+        private final ArrayDeque<CrawlUrl> pages = new ArrayDeque<>();
+        private long crawlDelayNanos = defaultCrawlDelayNanos;
+        private int maxConcurrency = defaultMaxConcurrency;
+        private long nextAllowedNanos = System.nanoTime();
+        private Long lastTakenNanos;
+        private int inFlight;
+        private HostState state = HostState.IDLE;
+    }
+}
@@ -0,0 +1,396 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Fetches pages over HTTP without blocking a thread per request.
+ *
+ * <p>
+ * A single {@link HttpClient} is shared by every request, so connections are pooled and kept alive between requests
+ * to the same host, and HTTPS hosts which support HTTP/2 have their requests multiplexed over one connection. Plain
+ * HTTP requests stick to HTTP/1.1 to avoid the upgrade handshake which some servers mishandle. The number of
+ * requests in flight to each host is bounded by a {@link HostConcurrencyLimiter}, requests over the limit wait for
+ * a permit without holding a thread. The outcome of every request is passed to a {@link FetchListener}. Given a
+ * {@link ResponseCache.Entry}, a request is sent with the cached validators so that an unchanged page is answered
+ * with {@code 304 Not Modified} rather than its body.
+ * </p>
+ *
+ * <p>
+ * A {@link ContentFilter} decides which pages are worth downloading. A URL it rejects is never requested, a response
+ * it rejects on its headers has its body cancelled before any of it is read, and a body is cancelled as soon as it
+ * passes the max body size, so only the start of an oversized page is ever downloaded.
+ * </p>
+ *
+ * <p>
+ * Requests ask for gzip or deflate compression. A compressed body is kept as it arrived, so the max body size limits
+ * the bytes transferred, and is only decoded as it is parsed, when the max body size limits the decoded bytes too,
+ * see {@link FetchedPage#openBody()}.
+ * </p>
+ *
+ * <p>
+ * This can be used directly as a {@link WebCrawler.AsyncDocumentParser}, or as a blocking
+ * {@link WebCrawler.DocumentParser} or {@link WebCrawler.PageFetcher} which simply waits for each future.
+ * </p>
+ */
+public class HttpPageFetcher
+    implements WebCrawler.AsyncDocumentParser, WebCrawler.DocumentParser, WebCrawler.PageFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpPageFetcher.class);
+    static final String USER_AGENT = "webcrawler/1.0";
+
+    /**
+     * The compressions asked for, which are those the JDK can decode. Brotli would need a native decoder.
+     */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final HostConcurrencyLimiter hostLimiter;
+    private final FetchListener listener;
+    private final ContentFilter contentFilter;
+
+    /**
+     * @param client The client to send requests with.
+     * @param hostLimiter Bounds the number of requests in flight to each host.
+     * @param listener Told the outcome of every request.
+     * @param contentFilter Decides which pages are worth downloading.
+     */
+    public HttpPageFetcher(
+        HttpClient client,
+        HostConcurrencyLimiter hostLimiter,
+        FetchListener listener,
+        ContentFilter contentFilter) {
+        this.client = client;
+        this.hostLimiter = hostLimiter;
+        this.listener = listener;
+        this.contentFilter = contentFilter;
+    }
+
+    /**
+     * @param client The client to send requests with.
+     * @param hostLimiter Bounds the number of requests in flight to each host.
+     * @param listener Told the outcome of every request.
+     */
+    public HttpPageFetcher(HttpClient client, HostConcurrencyLimiter hostLimiter, FetchListener listener) {
+        this(client, hostLimiter, listener, ContentFilter.defaults());
+    }
+
+    /**
+     * @param client The client to send requests with.
+     * @param hostLimiter Bounds the number of requests in flight to each host.
+     */
+    public HttpPageFetcher(HttpClient client, HostConcurrencyLimiter hostLimiter) {
+        this(client, hostLimiter, FetchListener.NONE);
+    }
+
+    /**
+     * Creates a fetcher with its own client, which follows redirects and prefers HTTP/2.
+     *
+     * @param maxRequestsPerHost The maximum number of requests in flight to any single host.
+     * @param listener Told the outcome of every request.
+     * @param contentFilter Decides which pages are worth downloading.
+     */
+    public HttpPageFetcher(int maxRequestsPerHost, FetchListener listener, ContentFilter contentFilter) {
+        this(
+            HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build(),
+            new HostConcurrencyLimiter(maxRequestsPerHost),
+            listener,
+            contentFilter);
+    }
+
+    /**
+     * Creates a fetcher with its own client, which follows redirects and prefers HTTP/2.
+     *
+     * @param maxRequestsPerHost The maximum number of requests in flight to any single host.
+     * @param listener Told the outcome of every request.
+     */
+    public HttpPageFetcher(int maxRequestsPerHost, FetchListener listener) {
+        this(maxRequestsPerHost, listener, ContentFilter.defaults());
+    }
+
+    /**
+     * Creates a fetcher with its own client, which follows redirects and prefers HTTP/2.
+     *
+     * @param maxRequestsPerHost The maximum number of requests in flight to any single host.
+     */
+    public HttpPageFetcher(int maxRequestsPerHost) {
+        this(maxRequestsPerHost, FetchListener.NONE);
+    }
+
+    /**
+     * Changes how many requests may be in flight to a host, which can't be raised above the maximum the fetcher was
+     * created with, so that an {@link AdaptiveConcurrencyController} can tune it.
+     *
+     * @param origin The origin of the host, see {@link CrawlUrl#getOrigin()}.
+     * @param maxConcurrency The new maximum, must be at least 1.
+     */
+    public void setMaxConcurrency(String origin, int maxConcurrency) {
+        this.hostLimiter.setLimit(origin, maxConcurrency);
+    }
+
+    /**
+     * Fetches the page at the URL once a permit for its host is free.
+     *
+     * @param url The URL of the page.
+     * @return A future of the page, which is empty if it couldn't be fetched or wasn't HTML. The future never
+     *     completes exceptionally.
+     */
+    public CompletableFuture<Optional<FetchedPage>> fetch(CrawlUrl url) {
+        return fetch(url, null);
+    }
+
+    /**
+     * Fetches the page at the URL once a permit for its host is free, only if it has changed since it was cached.
+     *
+     * @param url The URL of the page.
+     * @param cached The cached entry of the page whose validators are sent with the request, or null to always
+     *     fetch the page in full.
+     * @return A future of the page, which is empty if it couldn't be fetched or was rejected by the content filter,
+     *     or is {@link FetchedPage#isNotModified() not modified} if the cached entry is still current. The future
+     *     never completes exceptionally.
+     */
+    public CompletableFuture<Optional<FetchedPage>> fetch(CrawlUrl url, ResponseCache.Entry cached) {
+        ContentFilter.Rejection rejection = this.contentFilter.checkUrl(url);
+        if (rejection != null) {
+            reject(url, rejection);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        String host = url.getOrigin();
+        return this.hostLimiter
+            .acquire(host)
+            .thenCompose(ignored -> send(url, cached))
+            .whenComplete((page, ex) -> this.hostLimiter.release(host))
+            .exceptionally(ex -> {
+                logger.warn("Unable to fetch page [{}].", url, ex);
+                return Optional.empty();
+            });
+    }
+
+    @Override
+    public CompletableFuture<Optional<Document>> parseDocumentAsync(CrawlUrl url) {
+        return fetch(url).thenApply(page -> page.map(FetchedPage::parse));
+    }
+
+    @Override
+    public Optional<Document> parseDocument(CrawlUrl url) {
+        return parseDocumentAsync(url).join();
+    }
+
+    @Override
+    public Optional<FetchedPage> fetchPage(CrawlUrl url) {
+        return fetch(url).join();
+    }
+
+    @Override
+    public Optional<FetchedPage> fetchPage(CrawlUrl url, ResponseCache.Entry cached) {
+        return fetch(url, cached).join();
+    }
+
+    /**
+     * @param url The URL of the page.
+     * @param cached The cached entry of the page, or null if it isn't cached.
+     * @return A future of the page, empty if the response wasn't a successful HTML or not modified response.
+     */
+    private CompletableFuture<Optional<FetchedPage>> send(CrawlUrl url, ResponseCache.Entry cached) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url.toString()))
+            .timeout(REQUEST_TIMEOUT)
+            .header("User-Agent", USER_AGENT)
+            .header("Accept", "text/html,application/xhtml+xml")
+            .header("Accept-Encoding", ACCEPT_ENCODING)
+            .GET();
+        if ("http".equals(url.getScheme())) {
+            request.version(HttpClient.Version.HTTP_1_1);
+        }
+        if (cached != null && cached.getETag() != null) {
+            request.header("If-None-Match", cached.getETag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            request.header("If-Modified-Since", cached.getLastModified());
+        }
+
+        long start = System.nanoTime();
+        return this.client
+            .sendAsync(request.build(), this::subscribeToBody)
+            .whenComplete((response, ex) -> {
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                if (ex != null) {
+                    this.listener.onFailure(url, ex, elapsed);
+                } else {
+                    this.listener.onResponse(url, response.statusCode(), elapsed);
+                    // The client reads the whole body before completing, so its time is part of the response's
+                    this.listener.onBody(url, response.body() == null ? 0 : response.body().length, Duration.ZERO);
+                }
+            })
+            .thenApply(response -> toPage(url, response, cached != null));
+    }
+
+    /**
+     * Decides from the headers of a response whether its body is worth reading. A successful response the content
+     * filter rejects has its body cancelled straight away, any other body is read up to the max body size.
+     *
+     * @param response The status and headers of the response.
+     * @return The subscriber to read the body with, whose body is null if it was cancelled.
+     */
+    private HttpResponse.BodySubscriber<byte[]> subscribeToBody(HttpResponse.ResponseInfo response) {
+        boolean rejected = isSuccessful(response.statusCode()) && checkHeaders(response.headers()) != null;
+        return new LimitedBodySubscriber(rejected ? -1 : this.contentFilter.getMaxBodySize());
+    }
+
+    /**
+     * @param url The URL which was requested.
+     * @param response The response received.
+     * @param conditional True if the request was conditional, so may have been answered with not modified.
+     * @return The page, or empty if the response wasn't a successful HTML or not modified response.
+     */
+    private Optional<FetchedPage> toPage(CrawlUrl url, HttpResponse<byte[]> response, boolean conditional) {
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+
+        if (conditional && response.statusCode() == 304) {
+            return Optional.of(FetchedPage.notModified(url));
+        }
+        if (!isSuccessful(response.statusCode())) {
+            logger.warn("Unsuccessful response [{}] for page [{}].", response.statusCode(), url);
+            return Optional.empty();
+        }
+        ContentFilter.Rejection rejection = checkHeaders(response.headers());
+        if (rejection == null && response.body() == null) {
+            rejection = ContentFilter.Rejection.TOO_LARGE;
+        }
+        if (rejection != null) {
+            reject(url, rejection);
+            return Optional.empty();
+        }
+
+        return Optional.of(new FetchedPage(
+            url,
+            response.uri().toString(),
+            response.statusCode(),
+            contentType,
+            response.body(),
+            response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null),
+            response.headers().firstValue("Content-Encoding").orElse(null),
+            this.contentFilter.getMaxBodySize()));
+    }
+
+    /**
+     * @param headers The headers of a successful response.
+     * @return Why the content filter rejects the response, or null if its body should be read.
+     */
+    private ContentFilter.Rejection checkHeaders(HttpHeaders headers) {
+        return this.contentFilter.checkHeaders(
+            headers.firstValue("Content-Type").orElse(null),
+            headers.firstValueAsLong("Content-Length").orElse(-1));
+    }
+
+    /**
+     * @param url A page which won't be downloaded.
+     * @param rejection Why it won't be.
+     */
+    private void reject(CrawlUrl url, ContentFilter.Rejection rejection) {
+        this.contentFilter.reject(url, rejection, this.listener);
+    }
+
+    /**
+     * @param statusCode The HTTP status of a response.
+     * @return True if the status is a success.
+     */
+    private static boolean isSuccessful(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * Reads a body into memory as it arrives, unless it passes a limit, in which case the rest of the response is
+     * cancelled and the body is null.
+     */
+    private static final class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final int maxBytes;
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private long length;
+        private Flow.Subscription subscription;
+
+        /**
+         * @param maxBytes The most bytes to read, or -1 to cancel the body without reading any of it.
+         */
+        private LimitedBodySubscriber(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return this.body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (this.maxBytes < 0) {
+                subscription.cancel();
+                this.body.complete(null);
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (this.body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                this.length += item.remaining();
+                this.buffers.add(item);
+            }
+            if (this.length > this.maxBytes) {
+                this.subscription.cancel();
+                this.buffers.clear();
+                this.body.complete(null);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.buffers.clear();
+            this.body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (this.body.isDone()) {
+                return;
+            }
+            byte[] bytes = new byte[(int) this.length];
+            int position = 0;
+            for (ByteBuffer buffer : this.buffers) {
+                int remaining = buffer.remaining();
+                buffer.get(bytes, position, remaining);
+                position += remaining;
+            }
+            this.buffers.clear();
+            this.body.complete(bytes);
+        }
+    }
+}
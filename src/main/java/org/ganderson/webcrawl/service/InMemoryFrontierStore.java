@@ -0,0 +1,117 @@
+package org.ganderson.webcrawl.service;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded store which keeps every waiting page on the heap.
+ *
+ * <p>
+ * Adding and polling are lock-free, a lock is only taken by a timed poll which finds the store empty and by an add
+ * which has a poller to wake up.
+ * </p>
+ */
+public class InMemoryFrontierStore implements FrontierStore {
+
+    private final ConcurrentLinkedQueue<CrawlUrl> internalQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Tracked separately as the size of the queue is only available by walking it.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = this.waitLock.newCondition();
+
+    /**
+     * The number of pollers waiting for a page, raised before they last check the queue so an add can't be missed.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    @Override
+    public void add(CrawlUrl pageUrl) {
+        this.size.incrementAndGet();
+        this.internalQueue.offer(pageUrl);
+
+        if (this.waiters.get() > 0) {
+            this.waitLock.lock();
+            try {
+                this.notEmpty.signal();
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void addAll(Collection<CrawlUrl> pageUrls) {
+        if (pageUrls.isEmpty()) {
+            return;
+        }
+        this.size.addAndGet(pageUrls.size());
+        this.internalQueue.addAll(pageUrls);
+
+        if (this.waiters.get() > 0) {
+            this.waitLock.lock();
+            try {
+                this.notEmpty.signalAll();
+            } finally {
+                this.waitLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public CrawlUrl poll() {
+        return taken(this.internalQueue.poll());
+    }
+
+    @Override
+    public CrawlUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        CrawlUrl pageUrl = this.internalQueue.poll();
+        if (pageUrl != null) {
+            return taken(pageUrl);
+        }
+
+        long remainingNanos = unit.toNanos(timeout);
+        this.waitLock.lockInterruptibly();
+        this.waiters.incrementAndGet();
+        try {
+            pageUrl = this.internalQueue.poll();
+            while (pageUrl == null && remainingNanos > 0) {
+                remainingNanos = this.notEmpty.awaitNanos(remainingNanos);
+                pageUrl = this.internalQueue.poll();
+            }
+        } finally {
+            this.waiters.decrementAndGet();
+            this.waitLock.unlock();
+        }
+        return taken(pageUrl);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.internalQueue.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return Math.max(0, this.size.get());
+    }
+
+    /**
+     * @param pageUrl The page which was polled, possibly null.
+     * @return The same page, having updated the size if one was taken.
+     */
+    private CrawlUrl taken(CrawlUrl pageUrl) {
+        if (pageUrl != null) {
+            this.size.decrementAndGet();
+        }
+        return pageUrl;
+    }
+}
@@ -0,0 +1,108 @@
+package org.ganderson.webcrawl.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes each page as a line of JSON, e.g. {@code {"page":"https://host/","links":["https://host/a"]}}, which can
+ * be streamed into most data processing tools a line at a time.
+ *
+ * <p>
+ * Output is buffered, so nothing is guaranteed to have been written until the sink is flushed or closed. Closing the
+ * sink closes the underlying stream.
+ * </p>
+ */
+public class JsonLinesResultSink implements CrawlResultSink {
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param out The stream to write UTF-8 JSON to.
+     */
+    public JsonLinesResultSink(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_CHARS);
+    }
+
+    @Override
+    public synchronized void accept(CrawlUrl page, List<CrawlUrl> links) {
+        this.line.setLength(0);
+        this.line.append("{\"page\":");
+        appendString(page.toString());
+        this.line.append(",\"links\":[");
+        for (int i = 0; i < links.size(); i++) {
+            if (i > 0) {
+                this.line.append(',');
+            }
+            appendString(links.get(i).toString());
+        }
+        this.line.append("]}\n");
+
+        try {
+            this.writer.append(this.line);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            this.writer.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            this.writer.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param value The string to append as a quoted, escaped JSON string.
+     */
+    private void appendString(String value) {
+        this.line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    this.line.append("\\\"");
+                    break;
+                case '\\':
+                    this.line.append("\\\\");
+                    break;
+                case '\n':
+                    this.line.append("\\n");
+                    break;
+                case '\r':
+                    this.line.append("\\r");
+                    break;
+                case '\t':
+                    this.line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        this.line.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        this.line.append(c);
+                    }
+            }
+        }
+        this.line.append('"');
+    }
+}
@@ -0,0 +1,370 @@
+package org.ganderson.webcrawl.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * The graph of links between the pages of a crawl, held in compressed form so that graphs with millions of edges fit
+ * comfortably in memory.
+ *
+ * <p>
+ * Every URL seen, whether as a visited page or as a link, is given a dense integer id in the order it was first
+ * seen, found by its {@link CrawlUrl#fingerprint() fingerprint} in a primitive open-addressing table. The URLs
+ * themselves are kept as UTF-8 in a single byte array. The links of each page are sorted by id, with duplicates
+ * removed, and stored as the gaps between consecutive ids written as variable length integers, so links to pages
+ * found around the same time, which is most of them in a breadth-first crawl, cost a single byte each.
+ * </p>
+ *
+ * <p>
+ * The reverse index for {@link #getInLinks(CrawlUrl)} and the click depths for {@link #getClickDepth(CrawlUrl)} are
+ * built in one pass the first time they are asked for, in compressed sparse row form for the in-links, and rebuilt
+ * if pages have been added since. All methods are synchronized, so pages can be added by many workers at once.
+ * </p>
+ */
+public class LinkGraph {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_LINKS = -1;
+
+    /**
+     * Open-addressing table from fingerprint to id, where a slot holding an id of zero is empty, so ids are stored
+     * plus one.
+     */
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private int[] slotIds = new int[INITIAL_CAPACITY];
+
+    private byte[] urlBytes = new byte[INITIAL_CAPACITY * 32];
+    private int urlBytesSize;
+    private int[] urlStarts = new int[INITIAL_CAPACITY + 1];
+    private int nodeCount;
+
+    private byte[] outLinks = new byte[INITIAL_CAPACITY * 4];
+    private int outLinksSize;
+    private int[] outLinkStarts = new int[INITIAL_CAPACITY];
+    private int[] outLinkCounts = new int[INITIAL_CAPACITY];
+    private long edgeCount;
+
+    /**
+     * The id of the first page added, which click depths are measured from.
+     */
+    private int rootId = NO_LINKS;
+
+    /**
+     * The in-links and click depths, or null if they need to be built again.
+     */
+    private ReverseIndex reverseIndex;
+
+    /**
+     * Records the links of a visited page. If the page has already been added its links are replaced.
+     *
+     * @param page The page which was visited.
+     * @param links The links found on the page.
+     */
+    public synchronized void addPage(CrawlUrl page, List<CrawlUrl> links) {
+        int pageId = idOf(page, true);
+        if (this.rootId == NO_LINKS) {
+            this.rootId = pageId;
+        }
+
+        int[] linkIds = new int[links.size()];
+        for (int i = 0; i < linkIds.length; i++) {
+            linkIds[i] = idOf(links.get(i), true);
+        }
+        Arrays.sort(linkIds);
+
+        if (this.outLinkCounts[pageId] != NO_LINKS) {
+            this.edgeCount -= this.outLinkCounts[pageId];
+        }
+        this.outLinkStarts[pageId] = this.outLinksSize;
+        int count = 0;
+        int previous = 0;
+        for (int i = 0; i < linkIds.length; i++) {
+            if (i > 0 && linkIds[i] == linkIds[i - 1]) {
+                continue;
+            }
+            writeVarInt(linkIds[i] - previous);
+            previous = linkIds[i];
+            count++;
+        }
+        this.outLinkCounts[pageId] = count;
+        this.edgeCount += count;
+        this.reverseIndex = null;
+    }
+
+    /**
+     * @return The number of distinct URLs seen, as pages or links.
+     */
+    public synchronized int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @return The number of distinct links between pages.
+     */
+    public synchronized long getEdgeCount() {
+        return this.edgeCount;
+    }
+
+    /**
+     * @return The number of bytes used by the encoded links of every page, for monitoring memory use.
+     */
+    public synchronized long getEdgeBytes() {
+        return this.outLinksSize;
+    }
+
+    /**
+     * @param page The page to look up.
+     * @return True if the page's links have been added, rather than it only having been seen as a link.
+     */
+    public synchronized boolean isVisited(CrawlUrl page) {
+        int id = idOf(page, false);
+        return id >= 0 && this.outLinkCounts[id] != NO_LINKS;
+    }
+
+    /**
+     * @param page The page to look up.
+     * @return The distinct links on the page in the order they were first seen by the graph, or an empty list if the
+     *     page hasn't been visited.
+     */
+    public synchronized List<CrawlUrl> getOutLinks(CrawlUrl page) {
+        int id = idOf(page, false);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+
+        int[] linkIds = decodeOutLinks(id);
+        List<CrawlUrl> links = new ArrayList<>(linkIds.length);
+        for (int linkId : linkIds) {
+            links.add(urlOf(linkId));
+        }
+        return links;
+    }
+
+    /**
+     * @param page The page to look up.
+     * @return The visited pages which link to the page, in the order they were first seen by the graph.
+     */
+    public synchronized List<CrawlUrl> getInLinks(CrawlUrl page) {
+        int id = idOf(page, false);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+
+        ReverseIndex index = reverseIndex();
+        List<CrawlUrl> links = new ArrayList<>(index.inLinkStarts[id + 1] - index.inLinkStarts[id]);
+        for (int i = index.inLinkStarts[id]; i < index.inLinkStarts[id + 1]; i++) {
+            links.add(urlOf(index.inLinks[i]));
+        }
+        return links;
+    }
+
+    /**
+     * @param page The page to look up.
+     * @return The fewest links which have to be followed from the first page added to reach the page, or empty if
+     *     it can't be reached through the pages visited so far.
+     */
+    public synchronized OptionalInt getClickDepth(CrawlUrl page) {
+        int id = idOf(page, false);
+        if (id < 0) {
+            return OptionalInt.empty();
+        }
+
+        int depth = reverseIndex().clickDepths[id];
+        return depth == NO_LINKS ? OptionalInt.empty() : OptionalInt.of(depth);
+    }
+
+    /**
+     * @param url The URL to look up.
+     * @param add True to give the URL a new id if it hasn't been seen before.
+     * @return The id of the URL, or -1 if it hasn't been seen and isn't being added.
+     */
+    private int idOf(CrawlUrl url, boolean add) {
+        long fingerprint = url.fingerprint();
+        int mask = this.fingerprints.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (this.slotIds[slot] != 0) {
+            if (this.fingerprints[slot] == fingerprint) {
+                return this.slotIds[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!add) {
+            return -1;
+        }
+
+        int id = this.nodeCount++;
+        this.fingerprints[slot] = fingerprint;
+        this.slotIds[slot] = id + 1;
+        addUrl(id, url.toString().getBytes(StandardCharsets.UTF_8));
+        if (this.nodeCount * 4L > this.fingerprints.length * 3L) {
+            growTable();
+        }
+        return id;
+    }
+
+    /**
+     * @param id The id of a new URL.
+     * @param bytes The UTF-8 bytes of the URL.
+     */
+    private void addUrl(int id, byte[] bytes) {
+        if (id + 1 >= this.urlStarts.length) {
+            int capacity = this.urlStarts.length * 2;
+            this.urlStarts = Arrays.copyOf(this.urlStarts, capacity);
+            this.outLinkStarts = Arrays.copyOf(this.outLinkStarts, capacity);
+            this.outLinkCounts = Arrays.copyOf(this.outLinkCounts, capacity);
+        }
+        this.urlBytes = ensureCapacity(this.urlBytes, this.urlBytesSize + bytes.length);
+        System.arraycopy(bytes, 0, this.urlBytes, this.urlBytesSize, bytes.length);
+        this.urlBytesSize += bytes.length;
+        this.urlStarts[id + 1] = this.urlBytesSize;
+        this.outLinkCounts[id] = NO_LINKS;
+    }
+
+    /**
+     * @param id The id of a URL.
+     * @return The URL.
+     */
+    private CrawlUrl urlOf(int id) {
+        int start = this.urlStarts[id];
+        String value = new String(this.urlBytes, start, this.urlStarts[id + 1] - start, StandardCharsets.UTF_8);
+        // Only URLs which were already canonical are stored, so they always parse again
+        return CrawlUrl.tryParse(value).orElseThrow();
+    }
+
+    /**
+     * @param id The id of a page.
+     * @return The ids of the links on the page in ascending order, empty if it hasn't been visited.
+     */
+    private int[] decodeOutLinks(int id) {
+        int count = this.outLinkCounts[id];
+        if (count == NO_LINKS) {
+            return new int[0];
+        }
+
+        int[] ids = new int[count];
+        int position = this.outLinkStarts[id];
+        int linkId = 0;
+        for (int i = 0; i < count; i++) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = this.outLinks[position++];
+                gap |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            linkId += gap;
+            ids[i] = linkId;
+        }
+        return ids;
+    }
+
+    private void growTable() {
+        long[] oldFingerprints = this.fingerprints;
+        int[] oldSlotIds = this.slotIds;
+        this.fingerprints = new long[oldFingerprints.length * 2];
+        this.slotIds = new int[oldSlotIds.length * 2];
+
+        int mask = this.fingerprints.length - 1;
+        for (int i = 0; i < oldFingerprints.length; i++) {
+            if (oldSlotIds[i] == 0) {
+                continue;
+            }
+            long fingerprint = oldFingerprints[i];
+            int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            while (this.slotIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.fingerprints[slot] = fingerprint;
+            this.slotIds[slot] = oldSlotIds[i];
+        }
+    }
+
+    private void writeVarInt(int value) {
+        this.outLinks = ensureCapacity(this.outLinks, this.outLinksSize + 5);
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            this.outLinks[this.outLinksSize++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        this.outLinks[this.outLinksSize++] = (byte) remaining;
+    }
+
+    /**
+     * @param array The array to grow.
+     * @param minCapacity The number of bytes needed.
+     * @return The array, or a copy of it with at least the given capacity.
+     */
+    private static byte[] ensureCapacity(byte[] array, int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalStateException("Link graph has grown past 2GB");
+        }
+        if (minCapacity <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, array.length * 2L)));
+    }
+
+    /**
+     * @return The reverse index, building it first if pages have been added since it was last built.
+     */
+    private ReverseIndex reverseIndex() {
+        if (this.reverseIndex == null) {
+            this.reverseIndex = new ReverseIndex();
+        }
+        return this.reverseIndex;
+    }
+
+    /**
+     * The in-links of every URL, as the ids of the linking pages in compressed sparse row form, along with the click
+     * depth of every URL from a breadth-first search over the out-links. The out-links are decoded a page at a time
+     * as they're needed, so building the index needs little memory beyond the index itself.
+     */
+    private final class ReverseIndex {
+        private final int[] inLinkStarts = new int[nodeCount + 1];
+        private final int[] inLinks = new int[Math.toIntExact(edgeCount)];
+        private final int[] clickDepths = new int[nodeCount];
+
+        private ReverseIndex() {
+            for (int id = 0; id < nodeCount; id++) {
+                for (int linkId : decodeOutLinks(id)) {
+                    this.inLinkStarts[linkId + 1]++;
+                }
+            }
+            for (int id = 0; id < nodeCount; id++) {
+                this.inLinkStarts[id + 1] += this.inLinkStarts[id];
+            }
+
+            // Filling in source order keeps each list of in-links sorted by id
+            int[] next = Arrays.copyOf(this.inLinkStarts, nodeCount);
+            for (int id = 0; id < nodeCount; id++) {
+                for (int linkId : decodeOutLinks(id)) {
+                    this.inLinks[next[linkId]++] = id;
+                }
+            }
+
+            Arrays.fill(this.clickDepths, NO_LINKS);
+            if (rootId == NO_LINKS) {
+                return;
+            }
+            int[] frontier = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+            frontier[tail++] = rootId;
+            this.clickDepths[rootId] = 0;
+            while (head < tail) {
+                int id = frontier[head++];
+                for (int linkId : decodeOutLinks(id)) {
+                    if (this.clickDepths[linkId] == NO_LINKS) {
+                        this.clickDepths[linkId] = this.clickDepths[id] + 1;
+                        frontier[tail++] = linkId;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.Arrays;
+
+/**
+ * Detects pages whose visible text is the same, or nearly the same, as a page seen before, such as print views or
+ * copies of a page served under tracking parameters or session ids.
+ *
+ * <p>
+ * Each page is fingerprinted with a 64-bit SimHash of its text, built from the hashes of every run of three
+ * consecutive words, so pages which only differ in a few words have fingerprints which only differ in a few bits.
+ * Two pages are near duplicates if their fingerprints differ in at most the configured number of bits, up to three.
+ * </p>
+ *
+ * <p>
+ * By the pigeonhole principle, fingerprints within three bits of each other must match exactly on at least one of
+ * their four 16-bit quarters, so every fingerprint is indexed under each of its quarters and a lookup only compares
+ * the fingerprints sharing one of them. The index is a primitive hash chain per quarter, costing a fixed 1 MB plus
+ * 24 bytes a page. Pages with too little text to tell apart, such as pages of nothing but links, are never treated
+ * as duplicates. All methods are synchronized, so pages can be checked by many workers at once.
+ * </p>
+ */
+public class NearDuplicateDetector {
+
+    /**
+     * The largest distance which the four quarter index can find.
+     */
+    public static final int MAX_DISTANCE = 3;
+
+    /**
+     * The fewest words a page needs before it is fingerprinted.
+     */
+    static final int MIN_WORDS = 8;
+
+    private static final int SHINGLE_WORDS = 3;
+    private static final int BANDS = MAX_DISTANCE + 1;
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+    private static final int BAND_MASK = (1 << BAND_BITS) - 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxDistance;
+
+    /**
+     * The first fingerprint in each band's chain for each value of the band, stored plus one so zero is empty.
+     */
+    private final int[][] heads = new int[BANDS][1 << BAND_BITS];
+
+    /**
+     * The next fingerprint in each band's chain after each fingerprint, stored plus one so zero is the end.
+     */
+    private final int[][] next = new int[BANDS][INITIAL_CAPACITY];
+
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param maxDistance The most bits two pages' fingerprints may differ in for them to be near duplicates, from 0
+     *     to {@link #MAX_DISTANCE}.
+     */
+    public NearDuplicateDetector(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException(
+                "Max distance must be between 0 and " + MAX_DISTANCE + " but was " + maxDistance);
+        }
+
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Checks whether a page is a near duplicate of any page checked before, remembering it if it isn't.
+     *
+     * @param document The parsed page.
+     * @return True if the page is a near duplicate of a page checked before.
+     */
+    public boolean isNearDuplicate(Element document) {
+        Element content = document instanceof Document && ((Document) document).body() != null
+            ? ((Document) document).body()
+            : document;
+        String text = content.text();
+        if (countWords(text) < MIN_WORDS) {
+            return false;
+        }
+        return isNearDuplicate(fingerprint(text));
+    }
+
+    /**
+     * Checks whether a fingerprint is within the max distance of any fingerprint checked before, remembering it if it
+     * isn't.
+     *
+     * @param fingerprint The SimHash fingerprint of a page.
+     * @return True if a near duplicate of the fingerprint was checked before.
+     */
+    public synchronized boolean isNearDuplicate(long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            for (int i = this.heads[band][bandOf(fingerprint, band)]; i != 0; i = this.next[band][i - 1]) {
+                if (Long.bitCount(this.fingerprints[i - 1] ^ fingerprint) <= this.maxDistance) {
+                    return true;
+                }
+            }
+        }
+
+        add(fingerprint);
+        return false;
+    }
+
+    /**
+     * @return The number of distinct pages remembered.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @param text The visible text of a page.
+     * @return The 64-bit SimHash of the text's overlapping three word shingles, or of its words if it is shorter.
+     */
+    static long fingerprint(CharSequence text) {
+        int[] votes = new int[Long.SIZE];
+        long[] window = new long[SHINGLE_WORDS];
+        int words = 0;
+
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == text.length()) {
+                break;
+            }
+
+            long word = UrlFingerprint.FNV_OFFSET_BASIS;
+            while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+                word ^= Character.toLowerCase(text.charAt(i++));
+                word *= UrlFingerprint.FNV_PRIME;
+            }
+            window[words % SHINGLE_WORDS] = word;
+            words++;
+            if (words >= SHINGLE_WORDS) {
+                vote(votes, shingle(window, words));
+            }
+        }
+        if (words > 0 && words < SHINGLE_WORDS) {
+            vote(votes, shingle(window, words));
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param window The hashes of the most recent words, in a ring.
+     * @param words The number of words seen so far.
+     * @return The hash of the most recent words in order.
+     */
+    private static long shingle(long[] window, int words) {
+        long hash = 0;
+        for (int w = Math.max(0, words - SHINGLE_WORDS); w < words; w++) {
+            hash = Long.rotateLeft(hash, 21) ^ window[w % SHINGLE_WORDS];
+        }
+        return UrlFingerprint.mix(hash);
+    }
+
+    /**
+     * Adds one to the vote of each bit set in the hash and takes one from the vote of each bit which isn't.
+     */
+    private static void vote(int[] votes, long hash) {
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            votes[bit] += (hash >>> bit & 1) == 0 ? -1 : 1;
+        }
+    }
+
+    /**
+     * @param text Some text.
+     * @return The number of words in the text, stopping once there are enough to fingerprint it.
+     */
+    private static int countWords(CharSequence text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length() && words < MIN_WORDS; i++) {
+            boolean letter = Character.isLetterOrDigit(text.charAt(i));
+            if (letter && !inWord) {
+                words++;
+            }
+            inWord = letter;
+        }
+        return words;
+    }
+
+    private void add(long fingerprint) {
+        if (this.size == this.fingerprints.length) {
+            int capacity = this.size * 2;
+            this.fingerprints = Arrays.copyOf(this.fingerprints, capacity);
+            for (int band = 0; band < BANDS; band++) {
+                this.next[band] = Arrays.copyOf(this.next[band], capacity);
+            }
+        }
+
+        int index = this.size++;
+        this.fingerprints[index] = fingerprint;
+        for (int band = 0; band < BANDS; band++) {
+            int value = bandOf(fingerprint, band);
+            this.next[band][index] = this.heads[band][value];
+            this.heads[band][value] = index + 1;
+        }
+    }
+
+    private static int bandOf(long fingerprint, int band) {
+        return (int) (fingerprint >>> (band * BAND_BITS)) & BAND_MASK;
+    }
+}
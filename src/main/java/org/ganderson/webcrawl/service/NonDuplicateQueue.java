@@ -1,30 +1,219 @@
 package org.ganderson.webcrawl.service;
 
-import java.net.URL;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple queue wrapper, will only enqueue URLs which are new to the queue.
+ *
+ * <p>
+ * This is safe to share between any number of producing and consuming threads without external locking. The
+ * "seen-or-enqueue" check is a single atomic insert into a concurrent set, so two threads offering the same page will
+ * only ever queue it once. When progress is recorded in a {@link CrawlJournal}, the check and the page's journal record
+ * are made together under the journal's monitor instead, which serialises discovering pages across every thread,
+ * although the journal is only written to disk once the monitor has been released.
+ * </p>
+ *
+ * <p>
+ * How pages are remembered is up to the {@link VisitedSet} and where waiting pages are held is up to the
+ * {@link FrontierStore}. By default the full URL of every page is kept and waiting pages are held in a lock-free
+ * in-memory queue. Progress can also be recorded in a {@link CrawlJournal} so that an interrupted crawl can be
+ * resumed, and new pages can be checked against a {@link CrawlBudget} so that crawl traps are dropped before they are
+ * ever queued.
+ * </p>
  */
-public class NonDuplicateQueue {
+public class NonDuplicateQueue implements AutoCloseable {
 
-    private final LinkedList<URL> internalQueue = new LinkedList<>();
-    private final Set<String> visitedPages = new HashSet<>();
+    private final FrontierStore internalQueue;
+    private final VisitedSet visitedPages;
+    private final CrawlJournal journal;
+    private final CrawlBudgetTracker budgetTracker;
+
+    /**
+     * Creates a queue which only queues new pages within a crawl budget and records its progress in a journal, first
+     * restoring any progress already recorded there.
+     *
+     * @param visitedPages Records the pages which have been offered to this queue.
+     * @param frontierStore Holds the pages which are waiting to be polled.
+     * @param journal Records each new page and each visited page, or null if progress isn't recorded.
+     * @param budgetTracker Decides which new pages may be queued, or null to queue every new page.
+     */
+    public NonDuplicateQueue(
+        VisitedSet visitedPages,
+        FrontierStore frontierStore,
+        CrawlJournal journal,
+        CrawlBudgetTracker budgetTracker) {
+        this.visitedPages = visitedPages;
+        this.internalQueue = frontierStore;
+        this.journal = journal;
+        this.budgetTracker = budgetTracker;
+        if (journal != null) {
+            journal.restore(visitedPages, frontierStore);
+        }
+    }
+
+    /**
+     * Creates a queue which records its progress in a journal, first restoring any progress already recorded there.
+     *
+     * @param visitedPages Records the pages which have been offered to this queue.
+     * @param frontierStore Holds the pages which are waiting to be polled.
+     * @param journal Records each new page and each visited page, or null if progress isn't recorded.
+     */
+    public NonDuplicateQueue(VisitedSet visitedPages, FrontierStore frontierStore, CrawlJournal journal) {
+        this(visitedPages, frontierStore, journal, null);
+    }
+
+    /**
+     * @param visitedPages Records the pages which have been offered to this queue.
+     * @param frontierStore Holds the pages which are waiting to be polled.
+     */
+    public NonDuplicateQueue(VisitedSet visitedPages, FrontierStore frontierStore) {
+        this(visitedPages, frontierStore, null);
+    }
+
+    /**
+     * @param visitedPages Records the pages which have been offered to this queue.
+     */
+    public NonDuplicateQueue(VisitedSet visitedPages) {
+        this(visitedPages, new InMemoryFrontierStore());
+    }
+
+    /**
+     * Creates a queue which remembers the full URL of every page offered to it.
+     */
+    public NonDuplicateQueue() {
+        this(new ExactVisitedSet());
+    }
 
     /**
      * Offers a new page to the queue.
      *
      * @param pageUrl The URL of the page we're offering.
+     * @return True if the page was new and has been queued, false if it has been offered before.
      */
-    public void offer(URL pageUrl) {
-        if (visitedPages.contains(pageUrl.toString())) {
-            return;
+    public boolean offer(CrawlUrl pageUrl) {
+        return offer(pageUrl, null);
+    }
+
+    /**
+     * Offers a new page found on another page to the queue.
+     *
+     * @param pageUrl The URL of the page we're offering.
+     * @param source The page it was linked from, or null if it is the first page.
+     * @return True if the page was new and has been queued, false if it has been offered before or is outside the
+     *     crawl budget.
+     */
+    public boolean offer(CrawlUrl pageUrl, CrawlUrl source) {
+        if (this.journal != null) {
+            // Journal the page before anyone else can see it, so its record is always ahead of the visited record of
+            // any other page which links to it
+            synchronized (this.journal) {
+                if (!isNew(pageUrl, source)) {
+                    return false;
+                }
+                this.journal.recordDiscovered(List.of(pageUrl));
+            }
+            this.journal.writePending();
+        } else if (!isNew(pageUrl, source)) {
+            return false;
         }
 
-        this.visitedPages.add(pageUrl.toString());
-        this.internalQueue.offer(pageUrl);
+        this.internalQueue.add(pageUrl);
+        return true;
+    }
+
+    /**
+     * Offers several pages to the queue, adding all of those which are new to the frontier store as one batch.
+     *
+     * @param pageUrls The URLs of the pages we're offering.
+     * @return The number of pages which were new and have been queued.
+     */
+    public int offerAll(Collection<CrawlUrl> pageUrls) {
+        return offerAll(pageUrls, null);
+    }
+
+    /**
+     * Offers several pages found on another page to the queue, adding all of those which are new and within the
+     * crawl budget to the frontier store as one batch.
+     *
+     * @param pageUrls The URLs of the pages we're offering.
+     * @param source The page they were linked from, or null if they weren't linked from a page.
+     * @return The number of pages which were new and have been queued.
+     */
+    public int offerAll(Collection<CrawlUrl> pageUrls, CrawlUrl source) {
+        List<CrawlUrl> newPages = new ArrayList<>(pageUrls.size());
+        if (this.journal != null) {
+            synchronized (this.journal) {
+                addNewPages(pageUrls, source, newPages);
+                this.journal.recordDiscovered(newPages);
+            }
+            this.journal.writePending();
+        } else {
+            addNewPages(pageUrls, source, newPages);
+        }
+
+        this.internalQueue.addAll(newPages);
+        return newPages.size();
+    }
+
+    /**
+     * @param pageUrls The pages being offered.
+     * @param source The page they were linked from, or null.
+     * @param newPages Where the pages which weren't already in the visited set, and are within budget, are
+     *     collected.
+     */
+    private void addNewPages(Collection<CrawlUrl> pageUrls, CrawlUrl source, List<CrawlUrl> newPages) {
+        for (CrawlUrl pageUrl : pageUrls) {
+            if (isNew(pageUrl, source)) {
+                newPages.add(pageUrl);
+            }
+        }
+    }
+
+    /**
+     * Records a page in the visited set, then checks it against the crawl budget if it is new. A page which is over
+     * budget stays in the visited set, so it is dropped without being checked again when it is next offered.
+     *
+     * <p>
+     * The exception is the max depth, which is checked before the page is recorded. A page which is too deep along
+     * the path it was found on is left out of the visited set, so it is still queued if it is found along a shorter
+     * path, however the workers happen to be ordered.
+     * </p>
+     *
+     * @param pageUrl The page being offered.
+     * @param source The page it was linked from, or null.
+     * @return True if the page is new and within budget.
+     */
+    private boolean isNew(CrawlUrl pageUrl, CrawlUrl source) {
+        if (this.budgetTracker == null) {
+            return this.visitedPages.add(pageUrl);
+        }
+
+        if (!this.budgetTracker.isWithinDepth(source)) {
+            if (!this.visitedPages.contains(pageUrl)) {
+                this.budgetTracker.dropTooDeep();
+            }
+            return false;
+        }
+        if (!this.visitedPages.add(pageUrl)) {
+            this.budgetTracker.reachedAgain(pageUrl, source);
+            return false;
+        }
+        return this.budgetTracker.admit(pageUrl, source);
+    }
+
+    /**
+     * Records that a polled page has been visited and all of its links offered, so it isn't visited again if the
+     * crawl is resumed. This does nothing if progress isn't being recorded.
+     *
+     * @param pageUrl The page which was visited.
+     */
+    public void markVisited(CrawlUrl pageUrl) {
+        if (this.journal != null) {
+            this.journal.visited(pageUrl);
+        }
     }
 
     /**
@@ -33,15 +222,65 @@ public class NonDuplicateQueue {
      * @return True if the queue is empty, else false.
      */
     public boolean isEmpty() {
-        return this.internalQueue.size() == 0;
+        return this.internalQueue.isEmpty();
+    }
+
+    /**
+     * @return The number of pages waiting to be polled.
+     */
+    public long size() {
+        return this.internalQueue.size();
+    }
+
+    /**
+     * @return The number of distinct pages which have ever been offered to this queue.
+     */
+    public long visitedCount() {
+        return this.visitedPages.size();
     }
 
     /**
      * Polls the queue, de-queuing as we go.
      *
-     * @return Empty if the queue is empty, otherwise the next page to visit.
+     * @return Null if the queue is empty, otherwise the next page to visit.
+     */
+    public CrawlUrl poll() {
+        return this.internalQueue.poll();
+    }
+
+    /**
+     * Polls the queue, waiting up to the given time for a page to be offered if it is currently empty.
+     *
+     * @param timeout How long to wait before giving up.
+     * @param unit The unit of the timeout.
+     * @return Null if the queue was still empty once the timeout elapsed, otherwise the next page to visit.
+     * @throws InterruptedException If interrupted while waiting.
      */
-    public URL poll() {
-        return internalQueue.poll();
+    public CrawlUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.internalQueue.poll(timeout, unit);
+    }
+
+    /**
+     * Signals that a polled page has been visited, so the frontier store can hand out more pages from its host.
+     *
+     * @param pageUrl The page which was visited.
+     */
+    public void release(CrawlUrl pageUrl) {
+        this.internalQueue.release(pageUrl);
+    }
+
+    /**
+     * Releases any resources held by the frontier store, such as files which pages have been spilled to, and
+     * checkpoints and closes the journal.
+     */
+    @Override
+    public void close() {
+        try {
+            this.internalQueue.close();
+        } finally {
+            if (this.journal != null) {
+                this.journal.close();
+            }
+        }
     }
 }
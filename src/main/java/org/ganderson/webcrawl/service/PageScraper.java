@@ -6,47 +6,118 @@ import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Reader;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.Collection;
 import java.util.stream.Stream;
 
 /**
- * Given a base domain, provides functionality for scraping the HTML of a web page and identifying any links which
- * are contained within this domain.
+ * Given a crawl scope, provides functionality for scraping the HTML of a web page and identifying any links which
+ * are contained within this scope.
+ *
+ * <p>
+ * Links are canonicalised before they're matched against the {@link CrawlScope} and de-duplicated, so different
+ * spellings of the same page are only returned once.
+ * </p>
+ *
+ * <p>
+ * Links can be scraped either from a parsed document, or straight from the HTML as it is read with a
+ * {@link StreamingLinkExtractor}, which avoids building a DOM we would only ever query once.
+ * </p>
  */
 public class PageScraper {
 
     private static final Logger logger = LoggerFactory.getLogger(PageScraper.class);
-    private final URL baseDomain;
+    private final CrawlScope scope;
+    private final UrlCanonicalizer canonicalizer;
+
+    /**
+     * @param scope Decides which links are part of the crawl.
+     * @param canonicalizer Rewrites links into their canonical form.
+     */
+    public PageScraper(CrawlScope scope, UrlCanonicalizer canonicalizer) {
+        this.scope = scope;
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * @param baseDomain The domain which we're going to be looking for links on, see {@link CrawlScope#of(CrawlUrl)}.
+     * @param canonicalizer Rewrites links into their canonical form.
+     */
+    public PageScraper(CrawlUrl baseDomain, UrlCanonicalizer canonicalizer) {
+        this(CrawlScope.of(canonicalizer.canonicalize(baseDomain)), canonicalizer);
+    }
 
     /**
      * @param baseDomain The domain which we're going to be looking for links on.
      */
-    public PageScraper(URL baseDomain) {
-        this.baseDomain = baseDomain;
+    public PageScraper(CrawlUrl baseDomain) {
+        this(baseDomain, UrlCanonicalizer.defaults());
     }
 
     /**
-     * Scrapes the page for any links which are matched to the provided base domain for this instance.
+     * Scrapes the page for any links which are within the scope of this instance.
      *
      * @param document The document to scrape.
-     * @return The stream of links which we've discovered on the page, filtered to those only on the base domain.
-     */
-    public Stream<URL> scrapeForLinks(Element document) {
-        return StreamEx
-            .of(document.select("a[href]"))
-            .map(hyperlink -> hyperlink.absUrl("href"))
-            .filter(rawUrl -> rawUrl.startsWith(this.baseDomain.toString()))
-            .map(rawUrl -> {
-                try {
-                    return new URL(rawUrl);
-                } catch (MalformedURLException exception) {
-                    logger.warn("Unhandled url on page, this is most likely an issue within the HTML.", exception);
-                    return null;
-                }
-            })
-            .distinct()
-            .nonNull();
+     * @return The stream of canonical links which we've discovered on the page, filtered to those in scope.
+     */
+    public Stream<CrawlUrl> scrapeForLinks(Element document) {
+        // Resolved the same way as when streaming, as jsoup drops any user info from the URL it resolves against
+        return toLinksOnDomain(StreamEx.of(document.select("a[href]"))
+            .map(hyperlink -> StreamingLinkExtractor.resolve(hyperlink.baseUri(), hyperlink.attr("href"))));
+    }
+
+    /**
+     * Scrapes the HTML of a page for any links which are within the scope of this instance, reading the HTML lazily
+     * as the stream is consumed.
+     *
+     * @param html The HTML of the page, which the caller is responsible for closing.
+     * @param location The URL the page was served from, which relative links are resolved against.
+     * @return The stream of canonical links which we've discovered on the page, filtered to those in scope. Errors
+     *     reading the HTML are thrown as {@link java.io.UncheckedIOException}.
+     */
+    public Stream<CrawlUrl> scrapeForLinks(Reader html, String location) {
+        return toLinksOnDomain(StreamEx.of(new StreamingLinkExtractor(html, location).links()));
+    }
+
+    /**
+     * Filters links found somewhere other than a page, such as in a sitemap, in the same way as links scraped from
+     * a page.
+     *
+     * @param absoluteUrls The absolute URLs of the links.
+     * @return The stream of distinct, canonical links which are in scope.
+     */
+    public Stream<CrawlUrl> filterLinks(Collection<String> absoluteUrls) {
+        return toLinksOnDomain(StreamEx.of(absoluteUrls));
+    }
+
+    /**
+     * @param absoluteUrls The absolute URLs of every link on a page.
+     * @return The distinct, canonical links which are in scope.
+     */
+    private Stream<CrawlUrl> toLinksOnDomain(StreamEx<String> absoluteUrls) {
+        return absoluteUrls
+            .map(this::parseLink)
+            .nonNull()
+            .map(this.canonicalizer::canonicalize)
+            .filter(this.scope::contains)
+            .distinct();
+    }
+
+    /**
+     * @param rawUrl The absolute URL of a link.
+     * @return The parsed link, or null if it isn't a URL we could crawl.
+     */
+    private CrawlUrl parseLink(String rawUrl) {
+        try {
+            return CrawlUrl.parse(rawUrl);
+        } catch (MalformedURLException exception) {
+            // Links such as mailto: are expected, only those claiming to be web pages point to broken HTML
+            if (rawUrl.startsWith("http")) {
+                logger.warn("Unhandled url on page, this is most likely an issue within the HTML.", exception);
+            }
+            return null;
+        }
     }
 }
 
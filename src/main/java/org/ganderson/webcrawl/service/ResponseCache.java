@@ -0,0 +1,190 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * On-disk cache of the validators and links of pages, so that a recrawl can ask whether each page has changed and
+ * reuse its links when it hasn't, without downloading or parsing it again.
+ *
+ * <p>
+ * Each page's entry is a small file named after the page's {@link CrawlUrl#fingerprint() fingerprint}, spread over
+ * 256 subdirectories to keep directories small. An entry holds the page's URL, which guards against two pages
+ * sharing a fingerprint, its {@code ETag} and {@code Last-Modified} validators, and the canonical links found on it.
+ * Entries are written to a temporary file and moved into place, so a crash can never leave a partly written entry
+ * behind, and there is nothing to load up front, so the cache can be far larger than memory.
+ * </p>
+ *
+ * <p>
+ * The cache is best effort. An entry which can't be read is treated as missing and one which can't be written is
+ * skipped, both with a warning, as the worst outcome is fetching a page in full.
+ * </p>
+ */
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int MAGIC = 0x57524331;
+
+    private final Path directory;
+
+    /**
+     * @param directory The directory to keep the cache in, which is created if it doesn't exist.
+     */
+    public ResponseCache(Path directory) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param url The page to look up.
+     * @return The cached entry of the page, or empty if there isn't one.
+     */
+    public Optional<Entry> get(CrawlUrl url) {
+        Path file = fileFor(url);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(url.toString())) {
+                return Optional.empty();
+            }
+
+            String eTag = in.readBoolean() ? in.readUTF() : null;
+            String lastModified = in.readBoolean() ? in.readUTF() : null;
+            int linkCount = in.readInt();
+            List<CrawlUrl> links = new ArrayList<>(linkCount);
+            for (int i = 0; i < linkCount; i++) {
+                // Links were canonical when they were cached, so always parse again
+                CrawlUrl.tryParse(in.readUTF()).ifPresent(links::add);
+            }
+            return Optional.of(new Entry(eTag, lastModified, links));
+        } catch (NoSuchFileException ex) {
+            return Optional.empty();
+        } catch (IOException ex) {
+            logger.warn("Unable to read cached response [{}] for page [{}].", file, url, ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Caches a page which has at least one validator, replacing any existing entry. Pages without a validator can't
+     * be revalidated, so they are not cached.
+     *
+     * @param url The page which was fetched.
+     * @param eTag The {@code ETag} of the response, or null if there wasn't one.
+     * @param lastModified The {@code Last-Modified} date of the response, or null if there wasn't one.
+     * @param links The links found on the page.
+     */
+    public void put(CrawlUrl url, String eTag, String lastModified, List<CrawlUrl> links) {
+        if (eTag == null && lastModified == null) {
+            return;
+        }
+
+        Path file = fileFor(url);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out =
+                         new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    out.writeInt(MAGIC);
+                    out.writeUTF(url.toString());
+                    writeOptional(out, eTag);
+                    writeOptional(out, lastModified);
+                    out.writeInt(links.size());
+                    for (CrawlUrl link : links) {
+                        out.writeUTF(link.toString());
+                    }
+                }
+                moveIntoPlace(temporary, file);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ex) {
+            logger.warn("Unable to cache response for page [{}].", url, ex);
+        }
+    }
+
+    /**
+     * @param url A page.
+     * @return The file the page's entry is kept in.
+     */
+    private Path fileFor(CrawlUrl url) {
+        String name = String.format("%016x", url.fingerprint());
+        return this.directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void moveIntoPlace(Path temporary, Path file) throws IOException {
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The cached validators and links of a page.
+     */
+    public static final class Entry {
+        private final String eTag;
+        private final String lastModified;
+        private final List<CrawlUrl> links;
+
+        /**
+         * @param eTag The {@code ETag} of the page, or null if it didn't have one.
+         * @param lastModified The {@code Last-Modified} date of the page, or null if it didn't have one.
+         * @param links The links found on the page.
+         */
+        public Entry(String eTag, String lastModified, List<CrawlUrl> links) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.links = Collections.unmodifiableList(links);
+        }
+
+        /**
+         * @return The {@code ETag} of the page, sent as {@code If-None-Match}, or null if it didn't have one.
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return The {@code Last-Modified} date of the page, sent as {@code If-Modified-Since}, or null if it didn't
+         *     have one.
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return The links found on the page when it was cached.
+         */
+        public List<CrawlUrl> getLinks() {
+            return links;
+        }
+    }
+}
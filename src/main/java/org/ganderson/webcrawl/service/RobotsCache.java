@@ -0,0 +1,224 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Fetches the robots.txt of each host the first time one of its pages is checked, and keeps the compiled
+ * {@link RobotsRules} until they expire.
+ *
+ * <p>
+ * Following RFC 9309, a robots.txt which doesn't exist, or any other client error, allows every page, while a server
+ * error or a host which can't be reached disallows every page until the robots.txt is fetched again, which happens
+ * after a few minutes rather than the full expiry. Only one thread fetches the robots.txt of a host at a time, the
+ * others checking pages on the same host wait for its rules, while pages on other hosts carry on. The crawl-delay of
+ * each host is passed on as soon as its rules are fetched, so it can be used when scheduling the host's pages.
+ * </p>
+ */
+public class RobotsCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RobotsCache.class);
+
+    /**
+     * The name the crawler obeys robots.txt groups for.
+     */
+    public static final String PRODUCT_TOKEN = "webcrawler";
+
+    /**
+     * The longest a failure to fetch a robots.txt is remembered before trying again.
+     */
+    private static final Duration FAILURE_RETRY = Duration.ofMinutes(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Fetcher fetcher;
+    private final long expiryNanos;
+    private final BiConsumer<String, Duration> crawlDelayListener;
+    private final LongSupplier clock;
+    private final Map<String, CachedRules> rules = new ConcurrentHashMap<>();
+    private final Map<String, Object> fetchLocks = new ConcurrentHashMap<>();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder disallowed = new LongAdder();
+
+    /**
+     * @param fetcher Fetches a robots.txt.
+     * @param expiry How long the rules of a host are kept before fetching them again.
+     * @param crawlDelayListener Told the origin and crawl-delay of each host which asks for one, or null.
+     * @param clock The current time in nanoseconds.
+     */
+    RobotsCache(
+        Fetcher fetcher,
+        Duration expiry,
+        BiConsumer<String, Duration> crawlDelayListener,
+        LongSupplier clock) {
+        if (expiry.isZero() || expiry.isNegative()) {
+            throw new IllegalArgumentException("Robots.txt expiry must be positive but was " + expiry);
+        }
+
+        this.fetcher = fetcher;
+        this.expiryNanos = expiry.toNanos();
+        this.crawlDelayListener = crawlDelayListener;
+        this.clock = clock;
+    }
+
+    /**
+     * @param fetcher Fetches a robots.txt.
+     * @param expiry How long the rules of a host are kept before fetching them again.
+     * @param crawlDelayListener Told the origin and crawl-delay of each host which asks for one, or null.
+     */
+    public RobotsCache(Fetcher fetcher, Duration expiry, BiConsumer<String, Duration> crawlDelayListener) {
+        this(fetcher, expiry, crawlDelayListener, System::nanoTime);
+    }
+
+    /**
+     * @param url A page.
+     * @return True if the robots.txt of the page's host allows the crawler to fetch it.
+     */
+    public boolean isAllowed(CrawlUrl url) {
+        boolean allowed = getRules(url).isAllowed(url);
+        if (!allowed) {
+            this.disallowed.increment();
+        }
+        return allowed;
+    }
+
+    /**
+     * @param url A page.
+     * @return The rules of the page's host, fetching them if they haven't been yet or have expired.
+     */
+    public RobotsRules getRules(CrawlUrl url) {
+        String origin = url.getOrigin();
+        CachedRules cached = this.rules.get(origin);
+        if (cached != null && !cached.isExpired(this.clock.getAsLong())) {
+            return cached.rules;
+        }
+
+        synchronized (this.fetchLocks.computeIfAbsent(origin, ignored -> new Object())) {
+            cached = this.rules.get(origin);
+            if (cached == null || cached.isExpired(this.clock.getAsLong())) {
+                cached = fetch(url);
+                this.rules.put(origin, cached);
+                if (this.crawlDelayListener != null && cached.rules.getCrawlDelay() != null) {
+                    this.crawlDelayListener.accept(origin, cached.rules.getCrawlDelay());
+                }
+            }
+            return cached.rules;
+        }
+    }
+
+    /**
+     * @return The number of robots.txt fetched.
+     */
+    public long getFetchCount() {
+        return this.fetches.sum();
+    }
+
+    /**
+     * @return The number of pages checked which were disallowed.
+     */
+    public long getDisallowedCount() {
+        return this.disallowed.sum();
+    }
+
+    /**
+     * @param url A page on the host whose robots.txt should be fetched.
+     * @return The rules of the host, with when they expire.
+     */
+    private CachedRules fetch(CrawlUrl url) {
+        this.fetches.increment();
+        String authority = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        CrawlUrl robotsUrl = CrawlUrl.tryParse(url.getScheme() + "://" + authority + "/robots.txt").orElseThrow();
+        long now = this.clock.getAsLong();
+        long failureExpiry = now + Math.min(this.expiryNanos, FAILURE_RETRY.toNanos());
+        FetchedPage response;
+        try {
+            response = this.fetcher.fetch(robotsUrl);
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Unable to fetch [{}], disallowing the host for now.", robotsUrl, ex);
+            return new CachedRules(RobotsRules.disallowAll(), failureExpiry);
+        }
+
+        int status = response.getStatusCode();
+        if (status >= 200 && status < 300) {
+            String content = new String(response.getBody(), StandardCharsets.UTF_8);
+            return new CachedRules(RobotsRules.parse(content, PRODUCT_TOKEN), now + this.expiryNanos);
+        }
+        if (status >= 400 && status < 500) {
+            return new CachedRules(RobotsRules.allowAll(), now + this.expiryNanos);
+        }
+        logger.warn("Unsuccessful response [{}] for [{}], disallowing the host for now.", status, robotsUrl);
+        return new CachedRules(RobotsRules.disallowAll(), failureExpiry);
+    }
+
+    /**
+     * @return A fetcher which requests robots.txt with its own client, following redirects.
+     */
+    public static Fetcher httpFetcher() {
+        HttpClient client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+        return robotsUrl -> {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(robotsUrl.toString()))
+                .timeout(REQUEST_TIMEOUT)
+                .header("User-Agent", HttpPageFetcher.USER_AGENT)
+                .GET()
+                .build();
+            try {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                return new FetchedPage(
+                    robotsUrl,
+                    response.uri().toString(),
+                    response.statusCode(),
+                    response.headers().firstValue("Content-Type").orElse(null),
+                    response.body());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted fetching " + robotsUrl, ex);
+            }
+        };
+    }
+
+    /**
+     * Fetches a robots.txt.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+        /**
+         * @param robotsUrl The URL of the robots.txt.
+         * @return The response, whatever its status.
+         * @throws IOException If the host couldn't be reached.
+         */
+        FetchedPage fetch(CrawlUrl robotsUrl) throws IOException;
+    }
+
+    /**
+     * The rules of a host with when they expire.
+     */
+    private static final class CachedRules {
+        private final RobotsRules rules;
+        private final long expiresAtNanos;
+
+        private CachedRules(RobotsRules rules, long expiresAtNanos) {
+            this.rules = rules;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            return nowNanos - this.expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.ganderson.webcrawl.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of a site's robots.txt which apply to one crawler, compiled for fast matching.
+ *
+ * <p>
+ * Parsing follows RFC 9309. The crawler obeys the groups naming its product token, or the "*" groups if none do, with
+ * several matching groups merged. The longest matching rule decides whether a path is allowed, with allow winning
+ * a tie, and a path matching no rule is allowed. The non-standard crawl-delay of the chosen groups is also kept, as
+ * are the sitemaps listed, which don't belong to any group.
+ * </p>
+ *
+ * <p>
+ * Rules without a wildcard, which are nearly all of them, are compiled into a trie of their characters, so finding
+ * the longest such rule reads the path once however many rules there are. Rules with a "*" are matched one by one
+ * afterwards. Instances are immutable and safe to share between threads.
+ * </p>
+ */
+public final class RobotsRules {
+
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(new ArrayList<>(), null, List.of());
+    private static final RobotsRules DISALLOW_ALL = new RobotsRules(List.of(new Rule("/", false)), null, List.of());
+
+    private final RuleNode literals = new RuleNode();
+    private final List<Rule> wildcards = new ArrayList<>();
+    private final Duration crawlDelay;
+    private final List<String> sitemaps;
+
+    /**
+     * @param rules The allow and disallow rules which apply.
+     * @param crawlDelay The crawl-delay which applies, or null if there isn't one.
+     * @param sitemaps The locations of the sitemaps listed.
+     */
+    private RobotsRules(List<Rule> rules, Duration crawlDelay, List<String> sitemaps) {
+        for (Rule rule : rules) {
+            if (rule.pattern.indexOf('*') >= 0) {
+                this.wildcards.add(rule);
+            } else {
+                this.literals.add(rule);
+            }
+        }
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = List.copyOf(sitemaps);
+    }
+
+    /**
+     * @return Rules which allow every path, used when a site has no robots.txt.
+     */
+    public static RobotsRules allowAll() {
+        return ALLOW_ALL;
+    }
+
+    /**
+     * @return Rules which disallow every path, used when a site's robots.txt can't be fetched.
+     */
+    public static RobotsRules disallowAll() {
+        return DISALLOW_ALL;
+    }
+
+    /**
+     * @param content The content of a robots.txt.
+     * @param productToken The name the crawler identifies itself by, e.g. "webcrawler".
+     * @return The rules of the robots.txt which apply to the crawler.
+     */
+    public static RobotsRules parse(String content, String productToken) {
+        List<Rule> ownRules = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Duration ownDelay = null;
+        Duration wildcardDelay = null;
+        boolean ownGroupFound = false;
+
+        boolean inOwnGroup = false;
+        boolean inWildcardGroup = false;
+        boolean readingAgents = false;
+        for (String line : content.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            String trimmed = (comment < 0 ? line : line.substring(0, comment)).trim();
+            int colon = trimmed.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = trimmed.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = trimmed.substring(colon + 1).trim();
+
+            // Sitemaps apply to every crawler, so neither belong to a group nor end one
+            if (key.equals("sitemap")) {
+                if (!value.isEmpty()) {
+                    sitemaps.add(value);
+                }
+                continue;
+            }
+
+            if (key.equals("user-agent")) {
+                // Consecutive user-agent lines share one group, a user-agent after any rule starts a new group
+                if (!readingAgents) {
+                    inOwnGroup = false;
+                    inWildcardGroup = false;
+                    readingAgents = true;
+                }
+                if (value.equalsIgnoreCase(productToken)) {
+                    inOwnGroup = true;
+                    ownGroupFound = true;
+                } else if (value.equals("*")) {
+                    inWildcardGroup = true;
+                }
+                continue;
+            }
+            readingAgents = false;
+
+            if (key.equals("allow") || key.equals("disallow")) {
+                // An empty disallow allows everything, which is the same as having no rule at all
+                if (!value.isEmpty()) {
+                    Rule rule = new Rule(value, key.equals("allow"));
+                    if (inOwnGroup) {
+                        ownRules.add(rule);
+                    }
+                    if (inWildcardGroup) {
+                        wildcardRules.add(rule);
+                    }
+                }
+            } else if (key.equals("crawl-delay")) {
+                Duration delay = parseDelay(value);
+                if (inOwnGroup && delay != null) {
+                    ownDelay = delay;
+                }
+                if (inWildcardGroup && delay != null) {
+                    wildcardDelay = delay;
+                }
+            }
+        }
+
+        return ownGroupFound
+            ? new RobotsRules(ownRules, ownDelay, sitemaps)
+            : new RobotsRules(wildcardRules, wildcardDelay, sitemaps);
+    }
+
+    /**
+     * @param url A page on the site.
+     * @return True if the crawler may fetch the page.
+     */
+    public boolean isAllowed(CrawlUrl url) {
+        String path = url.getPath().isEmpty() ? "/" : url.getPath();
+        String query = url.getQuery();
+        return isAllowed(query == null ? path : path + "?" + query);
+    }
+
+    /**
+     * @param pathAndQuery The path of a page followed by its query, if it has one.
+     * @return True if the crawler may fetch the page.
+     */
+    public boolean isAllowed(String pathAndQuery) {
+        int bestLength = -1;
+        boolean allowed = true;
+
+        RuleNode node = this.literals;
+        for (int i = 0; node != null; i++) {
+            if (node.length > bestLength || node.length == bestLength && node.allowed) {
+                bestLength = node.length;
+                allowed = node.allowed;
+            }
+            if (i == pathAndQuery.length()) {
+                if (node.endLength > bestLength || node.endLength == bestLength && node.endAllowed) {
+                    bestLength = node.endLength;
+                    allowed = node.endAllowed;
+                }
+                break;
+            }
+            node = node.child(pathAndQuery.charAt(i));
+        }
+
+        for (Rule rule : this.wildcards) {
+            int length = rule.pattern.length();
+            if ((length > bestLength || length == bestLength && rule.allowed) && rule.matches(pathAndQuery)) {
+                bestLength = length;
+                allowed = rule.allowed;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * @return The delay the site asks for between requests, or null if it doesn't ask for one.
+     */
+    public Duration getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    /**
+     * @return The locations of the sitemaps the robots.txt lists, in the order listed.
+     */
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    /**
+     * @param value The value of a crawl-delay line, in seconds.
+     * @return The delay, or null if it isn't a valid non-negative number.
+     */
+    private static Duration parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (seconds >= 0 && !Double.isInfinite(seconds)) {
+                return Duration.ofMillis((long) (seconds * 1000));
+            }
+        } catch (NumberFormatException ex) {
+            // Ignored like any other line we can't make sense of
+        }
+        return null;
+    }
+
+    /**
+     * An allow or disallow rule.
+     */
+    private static final class Rule {
+        private final String pattern;
+        private final boolean allowed;
+
+        private Rule(String pattern, boolean allowed) {
+            this.pattern = pattern;
+            this.allowed = allowed;
+        }
+
+        /**
+         * @param path A path and query.
+         * @return True if this rule's pattern, with "*" matching any characters and a trailing "$" anchoring it to
+         *     the end, matches the start of the path.
+         */
+        private boolean matches(String path) {
+            boolean anchored = this.pattern.endsWith("$");
+            String body = anchored ? this.pattern.substring(0, this.pattern.length() - 1) : this.pattern;
+
+            // Greedy wildcard matching, backtracking to just after the last star when a literal run fails
+            int p = 0;
+            int s = 0;
+            int star = -1;
+            int starMatch = 0;
+            while (s < path.length()) {
+                if (p == body.length() && !anchored) {
+                    return true;
+                }
+                if (p < body.length() && body.charAt(p) == '*') {
+                    star = p++;
+                    starMatch = s;
+                } else if (p < body.length() && body.charAt(p) == path.charAt(s)) {
+                    p++;
+                    s++;
+                } else if (star >= 0) {
+                    p = star + 1;
+                    s = ++starMatch;
+                } else {
+                    return false;
+                }
+            }
+            while (p < body.length() && body.charAt(p) == '*') {
+                p++;
+            }
+            return p == body.length();
+        }
+    }
+
+    /**
+     * A character of the literal rules, with the longest rule ending at this character, either as a prefix or
+     * anchored to the end of the path.
+     */
+    private static final class RuleNode {
+        private char[] keys = new char[0];
+        private RuleNode[] children = new RuleNode[0];
+        private int length = -1;
+        private boolean allowed;
+        private int endLength = -1;
+        private boolean endAllowed;
+
+        private RuleNode child(char key) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] == key) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        private void add(Rule rule) {
+            boolean anchored = rule.pattern.endsWith("$");
+            int end = anchored ? rule.pattern.length() - 1 : rule.pattern.length();
+            RuleNode node = this;
+            for (int i = 0; i < end; i++) {
+                char key = rule.pattern.charAt(i);
+                RuleNode next = node.child(key);
+                if (next == null) {
+                    next = new RuleNode();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = key;
+                    node.children[node.children.length - 1] = next;
+                }
+                node = next;
+            }
+
+            // Of two rules with the same pattern, allow wins
+            if (anchored) {
+                node.endLength = rule.pattern.length();
+                node.endAllowed |= rule.allowed;
+            } else {
+                node.length = rule.pattern.length();
+                node.allowed |= rule.allowed;
+            }
+        }
+    }
+}
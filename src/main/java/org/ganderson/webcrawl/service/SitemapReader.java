@@ -0,0 +1,348 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the pages listed in a site's sitemaps, so a crawl can queue them up front rather than discovering them one
+ * link at a time.
+ *
+ * <p>
+ * Sitemaps are read with a StAX parser as they are downloaded and the page URLs are handed on in fixed size batches,
+ * so a sitemap with millions of entries never has more than one batch in memory. Sitemaps may be gzipped, which is
+ * recognised from the content itself rather than the file name. A sitemap index is read the same way, with the
+ * sitemaps it lists read once it has been, which only keeps their locations, at most 50,000 by the sitemap protocol,
+ * with any past that ignored. Each sitemap is read once however many times it is listed, and an index listed by
+ * another index is followed, but no deeper than that. A sitemap fetched with the {@link #httpOpener()} must arrive
+ * within a few minutes.
+ * </p>
+ *
+ * <p>
+ * A sitemap which can't be fetched or parsed is skipped with a warning, keeping any pages read from it before the
+ * error, as the crawl still finds the pages by following links. DTDs and external entities are never read.
+ * </p>
+ */
+public class SitemapReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SitemapReader.class);
+
+    /**
+     * The number of page URLs handed on at a time by default.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * How many sitemap indexes may be followed from the first sitemap read.
+     */
+    private static final int MAX_INDEX_DEPTH = 2;
+
+    /**
+     * The most sitemaps a sitemap index may list by the sitemap protocol.
+     */
+    static final int MAX_SITEMAPS_PER_INDEX = 50_000;
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * How long a sitemap may take to download in full, which is generous as one may be 50 MB uncompressed.
+     */
+    private static final Duration READ_TIMEOUT = Duration.ofMinutes(5);
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private final Opener opener;
+    private final int batchSize;
+    private final XMLInputFactory xmlInputFactory;
+    private final Set<String> sitemapsRead = new HashSet<>();
+    private final LongAdder sitemaps = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+
+    /**
+     * @param opener Opens the content of a sitemap.
+     * @param batchSize The number of page URLs handed on at a time, must be positive.
+     */
+    public SitemapReader(Opener opener, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive but was " + batchSize);
+        }
+
+        this.opener = opener;
+        this.batchSize = batchSize;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @param opener Opens the content of a sitemap.
+     */
+    public SitemapReader(Opener opener) {
+        this(opener, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Reads a sitemap, or every sitemap listed by a sitemap index, unless it has already been read.
+     *
+     * @param sitemapUrl The location of the sitemap or sitemap index.
+     * @param batches Told the page URLs listed, as they appear in the sitemaps, a batch at a time.
+     */
+    public void read(CrawlUrl sitemapUrl, Consumer<List<String>> batches) {
+        read(sitemapUrl, batches, 0);
+    }
+
+    /**
+     * @return The number of sitemaps and sitemap indexes read so far, including any which failed part way.
+     */
+    public long getSitemapCount() {
+        return this.sitemaps.sum();
+    }
+
+    /**
+     * @return The number of page URLs handed on so far.
+     */
+    public long getPageCount() {
+        return this.pages.sum();
+    }
+
+    /**
+     * @param sitemapUrl The location of the sitemap or sitemap index.
+     * @param batches Told the page URLs listed a batch at a time.
+     * @param depth The number of sitemap indexes followed to reach this one.
+     */
+    private void read(CrawlUrl sitemapUrl, Consumer<List<String>> batches, int depth) {
+        synchronized (this.sitemapsRead) {
+            if (!this.sitemapsRead.add(sitemapUrl.toString())) {
+                return;
+            }
+        }
+
+        List<String> childSitemaps = new ArrayList<>();
+        try (InputStream content = this.opener.open(sitemapUrl)) {
+            if (content == null) {
+                logger.debug("No sitemap at [{}].", sitemapUrl);
+                return;
+            }
+            this.sitemaps.increment();
+            // A gzipped sitemap may also have been compressed in transit
+            parse(sitemapUrl, decompress(decompress(content)), batches, childSitemaps);
+        } catch (IOException | XMLStreamException | RuntimeException ex) {
+            logger.warn("Unable to read sitemap [{}], skipping the rest of it.", sitemapUrl, ex);
+        }
+
+        if (!childSitemaps.isEmpty() && depth >= MAX_INDEX_DEPTH) {
+            logger.warn("Ignoring sitemaps listed by [{}], which is nested too deeply.", sitemapUrl);
+            return;
+        }
+        for (String childSitemap : childSitemaps) {
+            CrawlUrl.tryParse(childSitemap).ifPresent(child -> read(child, batches, depth + 1));
+        }
+    }
+
+    /**
+     * Reads the locations out of a sitemap or sitemap index, whichever element they appear in and whatever the
+     * namespace.
+     *
+     * @param sitemapUrl The location of the sitemap.
+     * @param content The uncompressed content of the sitemap.
+     * @param batches Told the page URLs, those listed in {@code <url>} elements, a batch at a time.
+     * @param childSitemaps Where the sitemaps listed in {@code <sitemap>} elements are added, up to
+     *     {@value #MAX_SITEMAPS_PER_INDEX}.
+     * @throws XMLStreamException If the sitemap isn't well formed XML.
+     */
+    private void parse(
+        CrawlUrl sitemapUrl,
+        InputStream content,
+        Consumer<List<String>> batches,
+        List<String> childSitemaps) throws XMLStreamException {
+        XMLStreamReader reader = this.xmlInputFactory.createXMLStreamReader(content);
+        List<String> batch = new ArrayList<>(this.batchSize);
+        try {
+            String parent = null;
+            boolean overLimit = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String name = reader.getLocalName();
+                if (name.equals("url") || name.equals("sitemap")) {
+                    parent = name;
+                } else if (name.equals("loc") && parent != null) {
+                    String location = reader.getElementText().trim();
+                    if (parent.equals("sitemap")) {
+                        if (childSitemaps.size() < MAX_SITEMAPS_PER_INDEX) {
+                            childSitemaps.add(location);
+                        } else if (!overLimit) {
+                            logger.warn("Ignoring sitemaps listed by [{}] past the first {}.",
+                                sitemapUrl, MAX_SITEMAPS_PER_INDEX);
+                            overLimit = true;
+                        }
+                    } else {
+                        batch.add(location);
+                        if (batch.size() == this.batchSize) {
+                            handOn(batch, batches);
+                            batch = new ArrayList<>(this.batchSize);
+                        }
+                    }
+                    parent = null;
+                }
+            }
+        } finally {
+            // Pages read before an error are still good
+            if (!batch.isEmpty()) {
+                handOn(batch, batches);
+            }
+            reader.close();
+        }
+    }
+
+    private void handOn(List<String> batch, Consumer<List<String>> batches) {
+        this.pages.add(batch.size());
+        batches.accept(batch);
+    }
+
+    /**
+     * @param content The content of a sitemap, which may be gzipped.
+     * @return The uncompressed content.
+     * @throws IOException If the content couldn't be read.
+     */
+    private static InputStream decompress(InputStream content) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(content);
+        buffered.mark(2);
+        int magic = buffered.read() << 8 | buffered.read();
+        buffered.reset();
+        return magic == GZIP_MAGIC ? new GZIPInputStream(buffered) : buffered;
+    }
+
+    /**
+     * @return An opener which downloads sitemaps with its own client, following redirects and asking for them to be
+     *     gzipped in transit. A sitemap must start arriving within 30 seconds and be read in full within 5 minutes.
+     */
+    public static Opener httpOpener() {
+        return httpOpener(REQUEST_TIMEOUT, READ_TIMEOUT);
+    }
+
+    /**
+     * @param requestTimeout How long connecting, and then waiting for the response to start, may each take.
+     * @param readTimeout How long the whole body may take to read, after which it is closed and reading it fails.
+     * @return An opener which downloads sitemaps with its own client.
+     */
+    static Opener httpOpener(Duration requestTimeout, Duration readTimeout) {
+        HttpClient client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(requestTimeout)
+            .build();
+        return sitemapUrl -> {
+            // Gzip is recognised from the content, so it needn't be told apart from a gzipped sitemap
+            HttpRequest request = HttpRequest.newBuilder(URI.create(sitemapUrl.toString()))
+                .header("User-Agent", HttpPageFetcher.USER_AGENT)
+                .header("Accept-Encoding", "gzip")
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+            try {
+                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    return new DeadlineInputStream(response.body(), readTimeout);
+                }
+                response.body().close();
+                return null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted fetching " + sitemapUrl, ex);
+            }
+        };
+    }
+
+    /**
+     * Closes a body which is still being read once its deadline has passed, which wakes a read blocked waiting for
+     * the server and makes it fail, as the HTTP client has no timeout of its own for reading a body.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+        private final Duration timeout;
+        private final CompletableFuture<Void> deadline;
+        private volatile boolean expired;
+
+        private DeadlineInputStream(InputStream in, Duration timeout) {
+            super(in);
+            this.timeout = timeout;
+            this.deadline = CompletableFuture.runAsync(
+                this::expire, CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException ex) {
+                throw timedOutOr(ex);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException ex) {
+                throw timedOutOr(ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.deadline.cancel(false);
+            super.close();
+        }
+
+        private void expire() {
+            this.expired = true;
+            try {
+                super.close();
+            } catch (IOException ex) {
+                logger.debug("Unable to close sitemap body after its deadline.", ex);
+            }
+        }
+
+        private IOException timedOutOr(IOException ex) {
+            return this.expired ? new IOException("Sitemap took longer than " + this.timeout + " to read", ex) : ex;
+        }
+    }
+
+    /**
+     * Opens the content of a sitemap.
+     */
+    @FunctionalInterface
+    public interface Opener {
+
+        /**
+         * @param sitemapUrl The location of the sitemap.
+         * @return The content, which is read as it arrives and closed once read, or null if there is no sitemap
+         *     there.
+         * @throws IOException If the sitemap couldn't be opened.
+         */
+        InputStream open(CrawlUrl sitemapUrl) throws IOException;
+    }
+}
@@ -0,0 +1,370 @@
+package org.ganderson.webcrawl.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store which keeps a small number of pages from the front and back of the frontier in memory, spilling everything in
+ * between to memory-mapped segment files on disk.
+ *
+ * <p>
+ * Pages are added to the in-memory head until it is full. From then on they're added to the in-memory tail, which is
+ * appended to the newest segment file each time it fills up. When the head runs dry it is refilled from the oldest
+ * segment, and once every segment has been read the remaining tail is moved across. This keeps pages in the order
+ * they were added while heap use is bounded by the head and tail capacities, however large the frontier gets.
+ * </p>
+ *
+ * <p>
+ * Each segment is a fixed size, append-only file of length-prefixed UTF-8 URLs. Once a segment has been fully read it
+ * is reset and kept for reuse, so a long crawl cycles through a handful of files rather than creating new ones. A URL
+ * too long to fit in a segment is kept in memory instead, with a marker in the segment holding its place in the order.
+ * Access is guarded by a single lock, as the time spent under it is dominated by copying bytes to and from the
+ * mapped files rather than contention.
+ * </p>
+ */
+public class SpillingFrontierStore implements FrontierStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillingFrontierStore.class);
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES;
+    private static final int OVERSIZED_RECORD = -1;
+    private static final int MAX_FREE_SEGMENTS = 4;
+
+    private final Path directory;
+    private final int memoryCapacity;
+    private final int segmentBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+
+    private final Deque<CrawlUrl> head = new ArrayDeque<>();
+    private final Deque<CrawlUrl> tail = new ArrayDeque<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    private final Deque<CrawlUrl> oversized = new ArrayDeque<>();
+    private long size;
+    private boolean closed;
+
+    /**
+     * @param directory The directory to create segment files in, which must exist.
+     * @param memoryCapacity The number of pages to keep in memory at each of the head and tail.
+     * @param segmentBytes The size of each segment file.
+     */
+    public SpillingFrontierStore(Path directory, int memoryCapacity, int segmentBytes) {
+        if (memoryCapacity < 1) {
+            throw new IllegalArgumentException("Memory capacity must be at least 1 but was " + memoryCapacity);
+        }
+        if (segmentBytes < 1024) {
+            throw new IllegalArgumentException("Segments must be at least 1024 bytes but were " + segmentBytes);
+        }
+
+        this.directory = directory;
+        this.memoryCapacity = memoryCapacity;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Creates a store which keeps up to 10,000 pages in memory at each end and spills to 16MB segments.
+     *
+     * @param directory The directory to create segment files in, which must exist.
+     */
+    public SpillingFrontierStore(Path directory) {
+        this(directory, 10_000, 16 * 1024 * 1024);
+    }
+
+    @Override
+    public void add(CrawlUrl pageUrl) {
+        this.lock.lock();
+        try {
+            if (this.segments.isEmpty() && this.tail.isEmpty() && this.head.size() < this.memoryCapacity) {
+                this.head.addLast(pageUrl);
+            } else {
+                this.tail.addLast(pageUrl);
+                if (this.tail.size() >= this.memoryCapacity) {
+                    spillTail();
+                }
+            }
+
+            this.size++;
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CrawlUrl poll() {
+        this.lock.lock();
+        try {
+            return takeHead();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public CrawlUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = this.notEmpty.awaitNanos(remainingNanos);
+            }
+            return takeHead();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public long size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of segment files currently open, for monitoring disk use.
+     */
+    public int segmentFileCount() {
+        this.lock.lock();
+        try {
+            return this.segments.size() + this.freeSegments.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes and deletes every segment file, any pages which were spilled to them are lost.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.segments.forEach(Segment::delete);
+            this.freeSegments.forEach(Segment::delete);
+            this.segments.clear();
+            this.freeSegments.clear();
+            this.head.clear();
+            this.tail.clear();
+            this.oversized.clear();
+            this.size = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the page at the front, refilling the head first if needed. Must be called holding the lock.
+     *
+     * @return The next page, or null if there are none.
+     */
+    private CrawlUrl takeHead() {
+        if (this.head.isEmpty()) {
+            refillHead();
+        }
+
+        CrawlUrl next = this.head.pollFirst();
+        if (next != null) {
+            this.size--;
+        }
+        return next;
+    }
+
+    /**
+     * Refills the head from the oldest segments, or from the tail once every segment has been read.
+     */
+    private void refillHead() {
+        while (this.head.size() < this.memoryCapacity && !this.segments.isEmpty()) {
+            Segment oldest = this.segments.peekFirst();
+            CrawlUrl next = oldest.read(this.oversized);
+            if (next != null) {
+                this.head.addLast(next);
+            } else {
+                this.segments.pollFirst();
+                recycle(oldest);
+            }
+        }
+
+        while (this.head.size() < this.memoryCapacity && this.segments.isEmpty() && !this.tail.isEmpty()) {
+            this.head.addLast(this.tail.pollFirst());
+        }
+    }
+
+    /**
+     * Appends every page in the tail to the newest segment, starting new segments as each one fills.
+     */
+    private void spillTail() {
+        if (this.closed) {
+            throw new IllegalStateException("Frontier store has been closed");
+        }
+
+        while (!this.tail.isEmpty()) {
+            CrawlUrl next = this.tail.peekFirst();
+            byte[] record = next.toString().getBytes(StandardCharsets.UTF_8);
+            // A URL too long for any segment is kept in memory, leaving a marker so it is still polled in order
+            boolean fits = RECORD_HEADER_BYTES + record.length <= this.segmentBytes;
+
+            Segment newest = this.segments.peekLast();
+            if (newest == null || !newest.append(fits ? record : null)) {
+                this.segments.addLast(nextFreeSegment());
+                continue;
+            }
+            if (!fits) {
+                this.oversized.addLast(next);
+            }
+            this.tail.pollFirst();
+        }
+    }
+
+    /**
+     * @return A reset segment from the free pool, or a newly created one if the pool is empty.
+     */
+    private Segment nextFreeSegment() {
+        Segment free = this.freeSegments.pollFirst();
+        if (free != null) {
+            return free;
+        }
+
+        try {
+            return new Segment(Files.createTempFile(this.directory, "frontier-", ".seg"), this.segmentBytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to create frontier segment in " + this.directory, ex);
+        }
+    }
+
+    /**
+     * Returns a fully read segment to the free pool, or deletes it if the pool is already full.
+     *
+     * @param segment The segment to recycle.
+     */
+    private void recycle(Segment segment) {
+        if (this.freeSegments.size() < MAX_FREE_SEGMENTS) {
+            segment.reset();
+            this.freeSegments.addLast(segment);
+        } else {
+            segment.delete();
+        }
+    }
+
+    /**
+     * A single fixed size, memory-mapped file of length-prefixed records.
+     */
+    private static class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        /**
+         * @param file The file backing this segment.
+         * @param segmentBytes The size of the segment.
+         * @throws IOException If the file couldn't be mapped.
+         */
+        Segment(Path file, int segmentBytes) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+
+        /**
+         * @param record The encoded URL to append, or null for a marker standing in for a URL kept in memory.
+         * @return True if the record was appended, false if there wasn't room left in this segment.
+         */
+        boolean append(byte[] record) {
+            if (record == null) {
+                if (this.writePosition + RECORD_HEADER_BYTES > this.buffer.capacity()) {
+                    return false;
+                }
+                this.buffer.putInt(this.writePosition, OVERSIZED_RECORD);
+                this.writePosition += RECORD_HEADER_BYTES;
+                return true;
+            }
+            if (this.writePosition + RECORD_HEADER_BYTES + record.length > this.buffer.capacity()) {
+                return false;
+            }
+
+            this.buffer.putInt(this.writePosition, record.length);
+            this.buffer.position(this.writePosition + RECORD_HEADER_BYTES);
+            this.buffer.put(record);
+            this.writePosition += RECORD_HEADER_BYTES + record.length;
+            return true;
+        }
+
+        /**
+         * @param oversized The URLs kept in memory in place of their records, in the order their markers were written.
+         * @return The next URL in this segment, or null if every record has been read.
+         */
+        CrawlUrl read(Deque<CrawlUrl> oversized) {
+            if (this.readPosition >= this.writePosition) {
+                return null;
+            }
+
+            int length = this.buffer.getInt(this.readPosition);
+            if (length == OVERSIZED_RECORD) {
+                this.readPosition += RECORD_HEADER_BYTES;
+                return oversized.pollFirst();
+            }
+            byte[] record = new byte[length];
+            this.buffer.position(this.readPosition + RECORD_HEADER_BYTES);
+            this.buffer.get(record);
+            this.readPosition += RECORD_HEADER_BYTES + length;
+
+            String rawUrl = new String(record, StandardCharsets.UTF_8);
+            try {
+                return CrawlUrl.parse(rawUrl);
+            } catch (MalformedURLException ex) {
+                throw new IllegalStateException("Corrupt frontier segment " + this.file, ex);
+            }
+        }
+
+        /**
+         * Discards every record so the segment can be written from the start again.
+         */
+        void reset() {
+            this.writePosition = 0;
+            this.readPosition = 0;
+        }
+
+        /**
+         * Closes and deletes the backing file. The mapping itself is released once it is garbage collected.
+         */
+        void delete() {
+            try {
+                this.channel.close();
+                Files.deleteIfExists(this.file);
+            } catch (IOException ex) {
+                logger.warn("Unable to delete frontier segment [{}].", this.file, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pulls the links out of an HTML page as it is read, without building a DOM.
+ *
+ * <p>
+ * The page is tokenised just far enough to find start tags and their attributes. Text is skipped a character at a
+ * time, comments and the contents of elements such as {@code <script>} and {@code <style>} are skipped without
+ * being tokenised, and only the {@code href} attribute of {@code <a>} and {@code <base>} tags is ever turned into a
+ * string. Links are entity-decoded and resolved in the same way as jsoup's {@code absUrl("href")}, which resolves
+ * them with {@link URL} as a browser would rather than with the stricter rules of {@link java.net.URI}, except that
+ * any user info of the page's URL is kept, see {@link #resolve(String, String)}.
+ * </p>
+ *
+ * <p>
+ * A {@code <base href>} is honoured if it comes before the first link, which is always the case for a base in the
+ * page's head. Unlike jsoup, a base which only appears after links have been returned is ignored, as those links
+ * can't be taken back.
+ * </p>
+ */
+public class StreamingLinkExtractor {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Elements whose content is raw text rather than markup, so can't contain links.
+     */
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList(
+        "script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes"));
+
+    private static final Pattern LEADING_DOT_SEGMENTS = Pattern.compile("^/((\\.{1,2}/)+)");
+    private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+
+    private String baseUri;
+    private boolean baseUriFixed;
+
+    /**
+     * @param reader The HTML of the page, which is read lazily as links are requested.
+     * @param location The URL the page was served from, which relative links are resolved against.
+     */
+    public StreamingLinkExtractor(Reader reader, String location) {
+        this.reader = reader;
+        this.baseUri = location;
+    }
+
+    /**
+     * Reads until the next link on the page.
+     *
+     * @return The next absolute link, which is empty if it couldn't be resolved, or null if there are no more.
+     * @throws IOException If the page couldn't be read.
+     */
+    public String nextLink() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            if (c != '<') {
+                continue;
+            }
+
+            String link = readMarkup();
+            if (link != null) {
+                return link;
+            }
+        }
+    }
+
+    /**
+     * @return A lazy stream of the links on the page, see {@link #nextLink()}. Read errors are thrown as
+     *     {@link UncheckedIOException}.
+     */
+    public Stream<String> links() {
+        Spliterator<String> spliterator = new Spliterators.AbstractSpliterator<String>(
+            Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                try {
+                    String link = nextLink();
+                    if (link == null) {
+                        return false;
+                    }
+                    action.accept(link);
+                    return true;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Reads whatever follows a "&lt;", which may be a tag, comment, doctype or just text.
+     *
+     * @return The link if this was an anchor with an href, otherwise null.
+     * @throws IOException If the page couldn't be read.
+     */
+    private String readMarkup() throws IOException {
+        int c = peek();
+        if (c == '!') {
+            this.position++;
+            if (peek() == '-' && skipIfNext("--")) {
+                skipComment();
+            } else {
+                skipPast('>');
+            }
+            return null;
+        }
+        if (c == '?') {
+            skipPast('>');
+            return null;
+        }
+        if (c == '/') {
+            this.position++;
+            if (isAsciiLetter(peek())) {
+                readTagName();
+                readAttributes(false);
+            } else {
+                skipPast('>');
+            }
+            return null;
+        }
+        if (!isAsciiLetter(c)) {
+            // A "<" which doesn't start a tag is just text
+            return null;
+        }
+
+        readTagName();
+        boolean isAnchor = "a".contentEquals(this.tagName);
+        boolean isBase = "base".contentEquals(this.tagName);
+        String href = readAttributes(isAnchor || isBase);
+
+        if (isBase) {
+            if (href != null && !this.baseUriFixed) {
+                String resolved = resolve(this.baseUri, href);
+                if (!resolved.isEmpty()) {
+                    this.baseUri = resolved;
+                    this.baseUriFixed = true;
+                }
+            }
+            return null;
+        }
+        if (isAnchor) {
+            if (href == null) {
+                return null;
+            }
+            this.baseUriFixed = true;
+            return resolve(this.baseUri, href);
+        }
+
+        String name = this.tagName.toString();
+        if (RAW_TEXT_ELEMENTS.contains(name)) {
+            skipRawText(name);
+        } else if ("plaintext".equals(name)) {
+            this.position = this.limit;
+            while (fill()) {
+                this.position = this.limit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a tag name into {@link #tagName}, lower-cased.
+     *
+     * @throws IOException If the page couldn't be read.
+     */
+    private void readTagName() throws IOException {
+        this.tagName.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !isWhitespace(c) && c != '/' && c != '>') {
+            this.tagName.append(toLowerCase((char) c));
+            this.position++;
+        }
+    }
+
+    /**
+     * Reads the attributes of a tag up to and including the closing "&gt;".
+     *
+     * @param wantHref True if the value of the first href attribute should be returned.
+     * @return The entity-decoded value of the first href attribute, or null if it isn't wanted or there isn't one.
+     * @throws IOException If the page couldn't be read.
+     */
+    private String readAttributes(boolean wantHref) throws IOException {
+        String href = null;
+        while (true) {
+            int c = read();
+            while (c >= 0 && (isWhitespace(c) || c == '/')) {
+                c = read();
+            }
+            if (c < 0 || c == '>') {
+                return href;
+            }
+
+            // The first character of a name may be anything, including "="
+            this.attributeName.setLength(0);
+            this.attributeName.append(toLowerCase((char) c));
+            while ((c = peek()) >= 0 && !isWhitespace(c) && c != '/' && c != '>' && c != '=') {
+                this.attributeName.append(toLowerCase((char) c));
+                this.position++;
+            }
+
+            boolean capture = wantHref && href == null && "href".contentEquals(this.attributeName);
+            String value = readAttributeValue(capture);
+            if (capture) {
+                href = value;
+            }
+        }
+    }
+
+    /**
+     * Reads the value following an attribute name, if there is one.
+     *
+     * @param capture True if the value should be returned rather than skipped.
+     * @return The entity-decoded value, which is empty if the attribute has no value, or null if not captured.
+     * @throws IOException If the page couldn't be read.
+     */
+    private String readAttributeValue(boolean capture) throws IOException {
+        this.attributeValue.setLength(0);
+        skipWhitespace();
+        if (peek() == '=') {
+            this.position++;
+            skipWhitespace();
+
+            int quote = peek();
+            if (quote == '"' || quote == '\'') {
+                this.position++;
+                int c;
+                while ((c = read()) >= 0 && c != quote) {
+                    if (capture) {
+                        this.attributeValue.append((char) c);
+                    }
+                }
+            } else {
+                int c;
+                while ((c = peek()) >= 0 && !isWhitespace(c) && c != '>') {
+                    if (capture) {
+                        this.attributeValue.append((char) c);
+                    }
+                    this.position++;
+                }
+            }
+        }
+
+        if (!capture) {
+            return null;
+        }
+        String value = this.attributeValue.toString();
+        return value.indexOf('&') < 0 ? value : Parser.unescapeEntities(value, true);
+    }
+
+    /**
+     * Skips the content of a raw text element, up to and including its end tag.
+     *
+     * @param name The lower-case name of the element.
+     * @throws IOException If the page couldn't be read.
+     */
+    private void skipRawText(String name) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c != '<' || peek() != '/') {
+                continue;
+            }
+            this.position++;
+
+            int matched = 0;
+            while (matched < name.length() && toLowerCase((char) peek()) == name.charAt(matched)) {
+                this.position++;
+                matched++;
+            }
+            int next = peek();
+            if (matched == name.length() && (next < 0 || isWhitespace(next) || next == '/' || next == '>')) {
+                readAttributes(false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a comment, having already read the opening "&lt;!--".
+     *
+     * @throws IOException If the page couldn't be read.
+     */
+    private void skipComment() throws IOException {
+        // "<!-->" and "<!--->" are complete, empty comments
+        if (skipIfNext(">") || skipIfNext("->")) {
+            return;
+        }
+
+        int dashes = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    /**
+     * @param expected The characters which might come next.
+     * @return True if they did, in which case they have been consumed.
+     * @throws IOException If the page couldn't be read.
+     */
+    private boolean skipIfNext(String expected) throws IOException {
+        if (this.limit - this.position < expected.length()) {
+            compact(expected.length());
+        }
+        if (this.limit - this.position < expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (this.buffer[this.position + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        this.position += expected.length();
+        return true;
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {
+            // Skip
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && isWhitespace(c)) {
+            this.position++;
+        }
+    }
+
+    /**
+     * @return The next character, or -1 at the end of the page.
+     * @throws IOException If the page couldn't be read.
+     */
+    private int read() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++];
+    }
+
+    /**
+     * @return The next character without consuming it, or -1 at the end of the page.
+     * @throws IOException If the page couldn't be read.
+     */
+    private int peek() throws IOException {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position];
+    }
+
+    /**
+     * Refills the empty buffer.
+     *
+     * @return False if the end of the page has been reached.
+     * @throws IOException If the page couldn't be read.
+     */
+    private boolean fill() throws IOException {
+        this.position = 0;
+        this.limit = 0;
+        int read;
+        do {
+            read = this.reader.read(this.buffer, 0, this.buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        this.limit = read;
+        return true;
+    }
+
+    /**
+     * Moves the unread characters to the start of the buffer and reads more after them, so a short look-ahead can
+     * be made without crossing the end of the buffer.
+     *
+     * @param wanted The number of unread characters wanted, which may not be reached at the end of the page.
+     * @throws IOException If the page couldn't be read.
+     */
+    private void compact(int wanted) throws IOException {
+        int remaining = this.limit - this.position;
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+        this.position = 0;
+        this.limit = remaining;
+
+        while (this.limit < wanted) {
+            int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) {
+                return;
+            }
+            this.limit += read;
+        }
+    }
+
+    /**
+     * Resolves a link against the base URI of the page.
+     *
+     * <p>
+     * A link which is only a query keeps the base's path, and ".." segments which would climb above the root are
+     * dropped, as neither is handled by {@link URL} alone.
+     * </p>
+     *
+     * @param base The base URI.
+     * @param link The link, as written in the page.
+     * @return The absolute link, the link itself if it is absolute with a scheme {@link URL} doesn't know, such as
+     *     "javascript:", or empty if it couldn't be resolved.
+     */
+    static String resolve(String base, String link) {
+        try {
+            URL baseUrl;
+            try {
+                baseUrl = new URL(base);
+            } catch (MalformedURLException ex) {
+                // The link may still be absolute on its own
+                return new URL(link).toExternalForm();
+            }
+
+            String relative = link.startsWith("?") ? baseUrl.getPath() + link : link;
+            URL resolved = new URL(baseUrl, relative);
+            // Only the path is rewritten, so the authority is kept as it was, including any user info
+            String external = resolved.toExternalForm();
+            int fileStart = external.length() - resolved.getFile().length()
+                - (resolved.getRef() == null ? 0 : resolved.getRef().length() + 1);
+            return external.substring(0, fileStart)
+                + LEADING_DOT_SEGMENTS.matcher(external.substring(fileStart)).replaceFirst("/");
+        } catch (MalformedURLException ex) {
+            return SCHEME.matcher(link).find() ? link : "";
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,393 @@
+package org.ganderson.webcrawl.service;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites URLs into a canonical form so that different spellings of the same page are only fetched once.
+ *
+ * <p>
+ * The scheme and host are always lower-case, as {@link CrawlUrl} guarantees that. By default the canonicalizer also
+ * removes explicit default ports, fragments, empty queries and "." or ".." path segments, gives an http or https URL
+ * with an empty path the path "/", and normalises percent-encoding by upper-casing hex digits and decoding characters
+ * which never need encoding. None of these can change which resource the server returns.
+ * </p>
+ *
+ * <p>
+ * Rules which usually, but not always, point at the same page are opt-in: stripping trailing slashes, collapsing
+ * repeated slashes, sorting query parameters and dropping or whitelisting query parameters by name.
+ * </p>
+ *
+ * <p>
+ * Canonicalising a URL which is already canonical returns the same instance rather than re-parsing it.
+ * </p>
+ */
+public class UrlCanonicalizer {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final UrlCanonicalizer DEFAULTS = builder().build();
+
+    private final boolean removeDefaultPort;
+    private final boolean removeFragment;
+    private final boolean normalizePath;
+    private final boolean collapseSlashes;
+    private final boolean removeTrailingSlash;
+    private final boolean sortQueryParameters;
+    private final List<String> removedQueryParameters;
+    private final Set<String> keptQueryParameters;
+
+    /**
+     * @param builder The builder holding the rules.
+     */
+    private UrlCanonicalizer(Builder builder) {
+        this.removeDefaultPort = builder.removeDefaultPort;
+        this.removeFragment = builder.removeFragment;
+        this.normalizePath = builder.normalizePath;
+        this.collapseSlashes = builder.collapseSlashes;
+        this.removeTrailingSlash = builder.removeTrailingSlash;
+        this.sortQueryParameters = builder.sortQueryParameters;
+        this.removedQueryParameters = Collections.unmodifiableList(new ArrayList<>(builder.removedQueryParameters));
+        this.keptQueryParameters = builder.keptQueryParameters == null
+            ? null
+            : Collections.unmodifiableSet(new LinkedHashSet<>(builder.keptQueryParameters));
+    }
+
+    /**
+     * @return A canonicalizer applying only the rules which never change the page being requested.
+     */
+    public static UrlCanonicalizer defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @return A new builder, initialised with the default rules.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Rewrites a URL into its canonical form.
+     *
+     * @param url The URL to canonicalise.
+     * @return The canonical URL, which is the same instance if it was already canonical.
+     */
+    public CrawlUrl canonicalize(CrawlUrl url) {
+        String path = url.getPath();
+        String canonicalPath = canonicalizePath(url.getScheme(), path);
+        String query = url.getQuery();
+        String canonicalQuery = canonicalizeQuery(query);
+        boolean dropPort = this.removeDefaultPort && url.getPort() >= 0 && url.getPort() == url.getDefaultPort();
+        boolean dropFragment = this.removeFragment && url.getFragment() != null;
+
+        if (!dropPort && !dropFragment && path.equals(canonicalPath) && equalsNullable(query, canonicalQuery)) {
+            return url;
+        }
+
+        StringBuilder builder = new StringBuilder(url.toString().length());
+        builder.append(url.getScheme()).append("://");
+        if (url.getUserInfo() != null) {
+            builder.append(url.getUserInfo()).append('@');
+        }
+        builder.append(url.getHost());
+        if (url.getPort() >= 0 && !dropPort) {
+            builder.append(':').append(url.getPort());
+        }
+        builder.append(canonicalPath);
+        if (canonicalQuery != null) {
+            builder.append('?').append(canonicalQuery);
+        }
+        if (url.getFragment() != null && !dropFragment) {
+            builder.append('#').append(url.getFragment());
+        }
+
+        try {
+            return CrawlUrl.parse(builder.toString());
+        } catch (MalformedURLException ex) {
+            // Only the path, query and fragment are rewritten, so a URL which parsed before always parses again
+            throw new IllegalStateException("Canonical form of " + url + " is not a valid URL", ex);
+        }
+    }
+
+    /**
+     * @param scheme The scheme of the URL.
+     * @param path The path to canonicalise.
+     * @return The canonical path.
+     */
+    private String canonicalizePath(String scheme, String path) {
+        String result = path;
+        if (this.normalizePath) {
+            // RFC 3986 section 6.2.3, an empty http(s) path is equivalent to "/"
+            if (result.isEmpty() && ("http".equals(scheme) || "https".equals(scheme))) {
+                return "/";
+            }
+            result = normalizePercentEncoding(result);
+            result = removeDotSegments(result);
+        }
+        if (this.collapseSlashes && result.contains("//")) {
+            StringBuilder builder = new StringBuilder(result.length());
+            for (int i = 0; i < result.length(); i++) {
+                char c = result.charAt(i);
+                if (c != '/' || builder.length() == 0 || builder.charAt(builder.length() - 1) != '/') {
+                    builder.append(c);
+                }
+            }
+            result = builder.toString();
+        }
+        if (this.removeTrailingSlash && result.length() > 1 && result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * @param query The query to canonicalise, possibly null.
+     * @return The canonical query, or null if there shouldn't be one.
+     */
+    private String canonicalizeQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        String result = this.normalizePath ? normalizePercentEncoding(query) : query;
+        if (this.sortQueryParameters || !this.removedQueryParameters.isEmpty() || this.keptQueryParameters != null) {
+            List<String> parameters = new ArrayList<>(Arrays.asList(result.split("&")));
+            parameters.removeIf(parameter -> parameter.isEmpty() || !isKept(parameterName(parameter)));
+            if (this.sortQueryParameters) {
+                // Stable, so repeated parameters keep their relative order
+                parameters.sort((first, second) -> parameterName(first).compareTo(parameterName(second)));
+            }
+            result = String.join("&", parameters);
+        }
+
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * @param name The name of a query parameter.
+     * @return True if the parameter should be kept.
+     */
+    private boolean isKept(String name) {
+        if (this.keptQueryParameters != null && !this.keptQueryParameters.contains(name)) {
+            return false;
+        }
+        for (String removed : this.removedQueryParameters) {
+            boolean matches = removed.endsWith("*")
+                ? name.startsWith(removed.substring(0, removed.length() - 1))
+                : name.equals(removed);
+            if (matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String parameterName(String parameter) {
+        int equals = parameter.indexOf('=');
+        return equals < 0 ? parameter : parameter.substring(0, equals);
+    }
+
+    /**
+     * Upper-cases the hex digits of percent-encoded octets and decodes those which are unreserved characters.
+     *
+     * @param value The path or query.
+     * @return The normalised value, which is the same instance if nothing changed.
+     */
+    static String normalizePercentEncoding(String value) {
+        int percent = value.indexOf('%');
+        if (percent < 0) {
+            return value;
+        }
+
+        StringBuilder builder = new StringBuilder(value.length());
+        builder.append(value, 0, percent);
+        for (int i = percent; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '%' || i + 2 >= value.length() || hexValue(value.charAt(i + 1)) < 0
+                || hexValue(value.charAt(i + 2)) < 0) {
+                builder.append(c);
+                continue;
+            }
+
+            int decoded = hexValue(value.charAt(i + 1)) * 16 + hexValue(value.charAt(i + 2));
+            if (isUnreserved(decoded)) {
+                builder.append((char) decoded);
+            } else {
+                builder.append('%').append(HEX_DIGITS[decoded >> 4]).append(HEX_DIGITS[decoded & 0xF]);
+            }
+            i += 2;
+        }
+
+        String result = builder.toString();
+        return result.equals(value) ? value : result;
+    }
+
+    /**
+     * Removes "." and ".." segments as described in RFC 3986 section 5.2.4.
+     *
+     * @param path The path.
+     * @return The path without dot segments, which is the same instance if there were none.
+     */
+    static String removeDotSegments(String path) {
+        if (!path.contains("/.") && !path.startsWith(".")) {
+            return path;
+        }
+
+        List<String> output = new ArrayList<>();
+        String[] segments = path.split("/", -1);
+        int start = path.startsWith("/") ? 1 : 0;
+        for (int i = start; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (".".equals(segment)) {
+                if (last) {
+                    output.add("");
+                }
+            } else if ("..".equals(segment)) {
+                if (!output.isEmpty()) {
+                    output.remove(output.size() - 1);
+                }
+                if (last) {
+                    output.add("");
+                }
+            } else {
+                output.add(segment);
+            }
+        }
+
+        return (start == 1 ? "/" : "") + String.join("/", output);
+    }
+
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean equalsNullable(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    /**
+     * Builder for {@link UrlCanonicalizer}.
+     */
+    public static class Builder {
+
+        private boolean removeDefaultPort = true;
+        private boolean removeFragment = true;
+        private boolean normalizePath = true;
+        private boolean collapseSlashes = false;
+        private boolean removeTrailingSlash = false;
+        private boolean sortQueryParameters = false;
+        private final List<String> removedQueryParameters = new ArrayList<>();
+        private Set<String> keptQueryParameters;
+
+        /**
+         * Hidden, use {@link UrlCanonicalizer#builder()}.
+         */
+        private Builder() {
+            // No op
+        }
+
+        /**
+         * @param removeDefaultPort True to drop ports which are the default for the scheme, e.g. ":80" on http.
+         * @return This builder.
+         */
+        public Builder removeDefaultPort(boolean removeDefaultPort) {
+            this.removeDefaultPort = removeDefaultPort;
+            return this;
+        }
+
+        /**
+         * @param removeFragment True to drop fragments, which are never sent to the server.
+         * @return This builder.
+         */
+        public Builder removeFragment(boolean removeFragment) {
+            this.removeFragment = removeFragment;
+            return this;
+        }
+
+        /**
+         * @param normalizePath True to remove dot segments and normalise percent-encoding in the path and query, and
+         *     to give an http or https URL with an empty path the path "/".
+         * @return This builder.
+         */
+        public Builder normalizePath(boolean normalizePath) {
+            this.normalizePath = normalizePath;
+            return this;
+        }
+
+        /**
+         * @param collapseSlashes True to replace repeated slashes in the path with a single slash.
+         * @return This builder.
+         */
+        public Builder collapseSlashes(boolean collapseSlashes) {
+            this.collapseSlashes = collapseSlashes;
+            return this;
+        }
+
+        /**
+         * @param removeTrailingSlash True to treat "/a/" as "/a". The root path "/" is left alone.
+         * @return This builder.
+         */
+        public Builder removeTrailingSlash(boolean removeTrailingSlash) {
+            this.removeTrailingSlash = removeTrailingSlash;
+            return this;
+        }
+
+        /**
+         * @param sortQueryParameters True to sort query parameters by name so their order doesn't matter.
+         * @return This builder.
+         */
+        public Builder sortQueryParameters(boolean sortQueryParameters) {
+            this.sortQueryParameters = sortQueryParameters;
+            return this;
+        }
+
+        /**
+         * Drops the named query parameters, such as tracking or session parameters.
+         *
+         * @param names The parameter names, where a trailing "*" matches any name with that prefix, e.g. "utm_*".
+         * @return This builder.
+         */
+        public Builder removeQueryParameters(String... names) {
+            this.removedQueryParameters.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * Drops every query parameter other than those named.
+         *
+         * @param names The names of the parameters to keep.
+         * @return This builder.
+         */
+        public Builder keepOnlyQueryParameters(String... names) {
+            this.keptQueryParameters = new LinkedHashSet<>(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * @return The canonicalizer built from the rules set on this builder.
+         */
+        public UrlCanonicalizer build() {
+            return new UrlCanonicalizer(this);
+        }
+    }
+}
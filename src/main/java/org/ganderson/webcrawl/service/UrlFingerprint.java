@@ -0,0 +1,53 @@
+package org.ganderson.webcrawl.service;
+
+/**
+ * Computes 64-bit fingerprints of URLs.
+ *
+ * <p>
+ * The fingerprint is FNV-1a over the UTF-16 characters of the URL, followed by the MurmurHash3 finaliser so that
+ * URLs which only differ in their last few characters still differ in every bit. Zero is never returned, which lets
+ * tables use it to mark an empty slot.
+ * </p>
+ */
+public final class UrlFingerprint {
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Suppress public constructor.
+     */
+    private UrlFingerprint() {
+        // No op
+    }
+
+    /**
+     * @param url The URL to fingerprint.
+     * @return The non-zero fingerprint of the URL.
+     */
+    public static long of(CharSequence url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * The MurmurHash3 64-bit finaliser.
+     *
+     * @param hash The value to mix.
+     * @return The mixed value.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,32 @@
+package org.ganderson.webcrawl.service;
+
+/**
+ * Records which pages have already been offered to the crawl so that each is only visited once.
+ *
+ * <p>
+ * Implementations must be safe to use from multiple threads at the same time.
+ * </p>
+ */
+public interface VisitedSet {
+
+    /**
+     * Records a page as visited.
+     *
+     * @param pageUrl The URL of the page.
+     * @return True if the page had not been recorded before, false if it had.
+     */
+    boolean add(CrawlUrl pageUrl);
+
+    /**
+     * Checks whether a page has been recorded.
+     *
+     * @param pageUrl The URL of the page.
+     * @return True if the page has been recorded as visited.
+     */
+    boolean contains(CrawlUrl pageUrl);
+
+    /**
+     * @return The number of pages which have been recorded.
+     */
+    long size();
+}
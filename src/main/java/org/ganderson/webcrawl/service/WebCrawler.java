@@ -1,11 +1,32 @@
 package org.ganderson.webcrawl.service;
 
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -19,63 +40,1091 @@ import org.slf4j.Logger;
  */
 public class WebCrawler {
     private static final Logger logger = LoggerFactory.getLogger(WebCrawler.class);
+
+    /**
+     * How long an idle worker waits for a page before checking whether the crawl has finished.
+     */
+    private static final long WORKER_POLL_INTERVAL_MS = 50;
+
+    /**
+     * How many fetched pages each parser thread may have waiting for it in a pipelined crawl.
+     */
+    private static final int FETCHED_PAGES_PER_PARSER = 2;
+
+    /**
+     * How many scraped pages each parser thread may have waiting to be queued in a pipelined crawl.
+     */
+    private static final int SCRAPED_PAGES_PER_PARSER = 4;
+
+    /**
+     * The most scraped pages whose links are added to the frontier in one batch.
+     */
+    private static final int ENQUEUE_BATCH_SIZE = 64;
+
     private final PageScraper pageScraper;
-    private final NonDuplicateQueue queue = new NonDuplicateQueue();
+    private final NonDuplicateQueue queue;
     private final DocumentParser documentParser;
-    private final URL url;
+    private final AsyncDocumentParser asyncDocumentParser;
+    private final AsyncPageFetcher asyncPageFetcher;
+    private final PageFetcher pageFetcher;
+    private final boolean pipelined;
+    private final ResponseCache responseCache;
+    private final NearDuplicateDetector nearDuplicateDetector;
+    private final CrawlBudgetTracker budgetTracker;
+    private final RobotsCache robotsCache;
+    private final SitemapReader sitemapReader;
+    private final CrawlUrl url;
+    private final CrawlConfig config;
+    private final AdaptiveConcurrencyController concurrencyController;
+    private final LinkGraph linkGraph;
+    private final CrawlMetrics metrics;
+
+    /**
+     * Where the results of the current crawl are sent, set at the start of each crawl.
+     */
+    private CrawlResultSink resultSink;
+
+    /**
+     * The number of pages which are either waiting in the queue or being visited by a worker.
+     */
+    private final AtomicInteger pendingPages = new AtomicInteger();
 
     /**
      * @param scraper The page scraper for getting links on pages.
      * @param documentParser The parser which will source our web pages and parse the HTML.
      * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
      */
-    WebCrawler(PageScraper scraper, DocumentParser documentParser, URL url) {
-        this.documentParser = documentParser;
+    WebCrawler(PageScraper scraper, DocumentParser documentParser, CrawlUrl url, CrawlConfig config) {
+        this(
+            scraper,
+            documentParser,
+            null,
+            null,
+            null,
+            false,
+            url,
+            config,
+            config.createConcurrencyController(),
+            new CrawlMetrics());
+    }
+
+    /**
+     * @param scraper The page scraper for getting links on pages.
+     * @param asyncDocumentParser The parser which will fetch our web pages without blocking and parse the HTML.
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     */
+    WebCrawler(PageScraper scraper, AsyncDocumentParser asyncDocumentParser, CrawlUrl url, CrawlConfig config) {
+        this(
+            scraper,
+            null,
+            asyncDocumentParser,
+            null,
+            null,
+            false,
+            url,
+            config,
+            config.createConcurrencyController(),
+            new CrawlMetrics());
+    }
+
+    /**
+     * Creates a crawler which visits pages with a pipeline of separate fetching, parsing and queuing stages.
+     *
+     * @param scraper The page scraper for getting links on pages.
+     * @param pageFetcher The fetcher which will source our web pages, which are then parsed by the crawler.
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     */
+    WebCrawler(PageScraper scraper, PageFetcher pageFetcher, CrawlUrl url, CrawlConfig config) {
+        this(
+            scraper,
+            null,
+            null,
+            null,
+            pageFetcher,
+            true,
+            url,
+            config,
+            config.createConcurrencyController(),
+            new CrawlMetrics());
+    }
+
+    /**
+     * @param scraper The page scraper for getting links on pages.
+     * @param documentParser The blocking parser, or null to block on the asynchronous parser or page fetcher.
+     * @param asyncDocumentParser The asynchronous parser, or null if pages should only be fetched by blocking.
+     * @param asyncPageFetcher The asynchronous fetcher, whose pages are parsed or streamed by the crawler, or null if
+     *     pages should only be fetched by blocking. Only one of the asynchronous parser and fetcher may be given.
+     * @param pageFetcher The fetcher for a pipelined crawl, for revalidating cached pages or for streaming extraction,
+     *     or null if pages are parsed by the document parsers.
+     * @param pipelined True to crawl with a pipeline, which needs a page fetcher.
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     * @param concurrencyController Tunes the number of pages visited at once from each host, or null if that is
+     *     fixed. It must be told the outcome of each fetch by the parsers.
+     * @param metrics Where the crawl records its metrics, which should also be told the outcome of each fetch.
+     */
+    private WebCrawler(
+        PageScraper scraper,
+        DocumentParser documentParser,
+        AsyncDocumentParser asyncDocumentParser,
+        AsyncPageFetcher asyncPageFetcher,
+        PageFetcher pageFetcher,
+        boolean pipelined,
+        CrawlUrl url,
+        CrawlConfig config,
+        AdaptiveConcurrencyController concurrencyController,
+        CrawlMetrics metrics) {
+        if (documentParser != null) {
+            this.documentParser = documentParser;
+        } else if (asyncDocumentParser != null) {
+            this.documentParser = page -> asyncDocumentParser.parseDocumentAsync(page).join();
+        } else if (asyncPageFetcher != null) {
+            this.documentParser = page -> asyncPageFetcher.fetchPageAsync(page).join().map(this::parse);
+        } else {
+            this.documentParser = page -> pageFetcher.fetchPage(page).map(this::parse);
+        }
+        this.asyncDocumentParser = asyncDocumentParser;
+        this.asyncPageFetcher = asyncPageFetcher;
+        this.pageFetcher = pageFetcher;
+        this.pipelined = pipelined;
+        this.responseCache = config.createResponseCache();
+        this.nearDuplicateDetector = config.createNearDuplicateDetector();
+        this.budgetTracker = config.createBudgetTracker();
+        this.sitemapReader = config.createSitemapReader();
         this.pageScraper = scraper;
-        this.url = url;
+        this.url = config.getCanonicalizer().canonicalize(url);
+        this.config = config;
+        this.concurrencyController = concurrencyController;
+        this.linkGraph = config.isLinkGraph() ? new LinkGraph() : null;
+        this.metrics = metrics;
+
+        FrontierStore frontierStore = config.createFrontierStore();
+        if (concurrencyController != null && frontierStore instanceof HostScheduledFrontierStore) {
+            concurrencyController.addListener(((HostScheduledFrontierStore) frontierStore)::setMaxConcurrency);
+        }
+        this.robotsCache = config.createRobotsCache(frontierStore);
+        this.queue = new NonDuplicateQueue(
+            config.createVisitedSet(), frontierStore, config.openJournal(), this.budgetTracker);
+        metrics.setQueueGauges(this.queue::size, this.queue::visitedCount);
+    }
+
+    /**
+     * @param scraper The page scraper for getting links on pages.
+     * @param documentParser The parser which will source our web pages and parse the HTML.
+     * @param url The base url which the crawler will search links for.
+     */
+    WebCrawler(PageScraper scraper, DocumentParser documentParser, CrawlUrl url) {
+        this(scraper, documentParser, url, CrawlConfig.defaults());
     }
 
     /**
      * Creates a new instance, using the default document parser and page scraper.
      *
+     * <p>
+     * If asynchronous fetching is enabled pages are fetched with a {@link HttpPageFetcher} instead. If the crawl is
+     * pipelined the same fetcher is used for the fetching stage, with each fetch waited for on an I/O thread. With
+     * streaming extraction, pages are always fetched without being parsed so their links can be read from the body.
+     * </p>
+     *
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     */
+    public WebCrawler(CrawlUrl url, CrawlConfig config) {
+        this(url, config, config.createConcurrencyController(), new CrawlMetrics());
+    }
+
+    /**
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     * @param concurrencyController Tunes the number of pages visited at once from each host, or null if that is
+     *     fixed.
+     * @param metrics Where the crawl records its metrics.
+     */
+    private WebCrawler(
+        CrawlUrl url,
+        CrawlConfig config,
+        AdaptiveConcurrencyController concurrencyController,
+        CrawlMetrics metrics) {
+        this(
+            url,
+            config,
+            concurrencyController,
+            metrics,
+            config.isAsyncFetching()
+                ? new HttpPageFetcher(
+                    config.getMaxRequestsPerHost(),
+                    listenerFor(concurrencyController, metrics),
+                    config.getContentFilter())
+                : null);
+    }
+
+    /**
+     * @param url The base url which the crawler will search links for.
+     * @param config The settings for this crawl.
+     * @param concurrencyController Tunes the number of pages visited at once from each host, or null if that is
+     *     fixed.
+     * @param metrics Where the crawl records its metrics.
+     * @param httpPageFetcher The fetcher to use if fetching asynchronously, otherwise null to fetch with jsoup.
+     */
+    private WebCrawler(
+        CrawlUrl url,
+        CrawlConfig config,
+        AdaptiveConcurrencyController concurrencyController,
+        CrawlMetrics metrics,
+        HttpPageFetcher httpPageFetcher) {
+        this(
+            new PageScraper(config.scopeFor(url), config.getCanonicalizer()),
+            httpPageFetcher != null
+                ? null
+                : page -> defaultGetDocument(
+                    page, listenerFor(concurrencyController, metrics), config.getContentFilter(), metrics),
+            null,
+            httpPageFetcher == null ? null : httpPageFetcher::fetch,
+            !config.isPipelined() && config.getResponseCacheDirectory() == null && !config.isStreamingExtraction()
+                ? null
+                : httpPageFetcher != null
+                    ? httpPageFetcher
+                    : defaultPageFetcher(listenerFor(concurrencyController, metrics), config.getContentFilter()),
+            config.isPipelined(),
+            url,
+            config,
+            concurrencyController,
+            metrics);
+
+        // The fetcher has its own limit per host, which would otherwise stay fixed while the controller tunes
+        if (concurrencyController != null && httpPageFetcher != null) {
+            concurrencyController.addListener(httpPageFetcher::setMaxConcurrency);
+        }
+    }
+
+    /**
+     * Creates a new instance, using the default document parser, page scraper and settings.
+     *
      * @param url The base url which the crawler will search links for.
      */
-    public WebCrawler(URL url) {
-        this(new PageScraper(url), WebCrawler::defaultGetDocument, url);
+    public WebCrawler(CrawlUrl url) {
+        this(url, CrawlConfig.defaults());
+    }
+
+    /**
+     * @return The controller tuning the number of pages visited at once from each host, which can be asked for the
+     *     current limits, or empty if adaptive concurrency isn't enabled.
+     */
+    public Optional<AdaptiveConcurrencyController> getConcurrencyController() {
+        return Optional.ofNullable(this.concurrencyController);
+    }
+
+    /**
+     * @return The graph of links between the pages crawled so far, which keeps growing while a crawl is running, or
+     *     empty if the link graph isn't enabled.
+     */
+    public Optional<LinkGraph> getLinkGraph() {
+        return Optional.ofNullable(this.linkGraph);
+    }
+
+    /**
+     * @return The tracker of the crawl budget, which counts the pages dropped for being over it, or empty if there
+     *     isn't a budget.
+     */
+    public Optional<CrawlBudgetTracker> getBudgetTracker() {
+        return Optional.ofNullable(this.budgetTracker);
+    }
+
+    /**
+     * @return The cache of each host's robots.txt, which counts the pages they disallowed, or empty if robots.txt
+     *     is ignored.
+     */
+    public Optional<RobotsCache> getRobotsCache() {
+        return Optional.ofNullable(this.robotsCache);
+    }
+
+    /**
+     * @return The reader of the sitemaps the crawl was seeded from, which counts the sitemaps and pages read, or
+     *     empty if the crawl isn't seeded from sitemaps.
+     */
+    public Optional<SitemapReader> getSitemapReader() {
+        return Optional.ofNullable(this.sitemapReader);
     }
 
     /**
-     * Crawl from our base page and print all links encountered to system out.
+     * @return The metrics of the crawl, which can be read at any time while it is running.
+     */
+    public CrawlMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Crawl from our base page and send every page visited, along with the links on it, to the configured
+     * {@link CrawlConfig#getResultSink() result sink}, which prints them to system out by default.
+     *
+     * <p>
+     * With a parallelism of 1 pages are visited in breadth-first order on the calling thread, otherwise they are
+     * shared out between a pool of workers and the result for each page is sent as soon as it has been scraped.
+     * If the crawler has an asynchronous parser or fetcher the parallelism is instead the number of pages fetched at
+     * once, all from the calling thread. A pipelined crawl instead fetches, parses and queues pages in separate
+     * stages, see {@link #crawlPipelined(int, int)}. In every case this only returns once every reachable page has
+     * been visited.
+     * </p>
+     *
+     * <p>
+     * The result sink is flushed before this returns, and any results queued for an asynchronous sink are written
+     * first.
+     * </p>
      */
     public void crawl() {
-        this.queue.offer(url);
-        while (!this.queue.isEmpty()) {
+        this.resultSink = this.config.createResultSink();
+        this.metrics.start();
+        ScheduledExecutorService metricsLogger = startMetrics();
+        try {
+            if (this.pipelined) {
+                crawlPipelined(this.config.getParallelism(), this.config.getParserThreads());
+            } else if (this.asyncDocumentParser != null || this.asyncPageFetcher != null) {
+                crawlAsynchronously(this.config.getParallelism());
+            } else if (this.config.getParallelism() == 1) {
+                crawlSequentially();
+            } else {
+                crawlInParallel(this.config.getParallelism());
+            }
+        } finally {
+            finishResults();
+            stopMetrics(metricsLogger);
+            this.queue.close();
+        }
+    }
 
-            URL next = this.queue.poll();
-            System.out.println(next);
+    /**
+     * Publishes the metrics over JMX and starts logging them periodically, if metrics are enabled.
+     *
+     * @return The thread logging the metrics, or null if they aren't enabled.
+     */
+    private ScheduledExecutorService startMetrics() {
+        if (!this.config.isMetrics()) {
+            return null;
+        }
+
+        this.metrics.register(this.url.toString());
+        ScheduledExecutorService metricsLogger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawler-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = this.config.getMetricsLogInterval().toMillis();
+        metricsLogger.scheduleAtFixedRate(
+            () -> logger.info("Crawl of [{}]: {}", this.url, this.metrics.summary()),
+            intervalMillis,
+            intervalMillis,
+            TimeUnit.MILLISECONDS);
+        return metricsLogger;
+    }
 
-            this.documentParser
-                .parseDocument(next)
-                .ifPresent(doc -> this.pageScraper.scrapeForLinks(doc).forEach(link -> {
-                    System.out.println("- " + link);
-                    this.queue.offer(link);
-                }));
+    /**
+     * @param metricsLogger The thread logging the metrics, or null if metrics aren't enabled.
+     */
+    private void stopMetrics(ScheduledExecutorService metricsLogger) {
+        if (metricsLogger == null) {
+            return;
         }
+        metricsLogger.shutdownNow();
+        this.metrics.unregister();
+        logger.info("Finished crawl of [{}]: {}", this.url, this.metrics.summary());
+    }
+
+    /**
+     * Writes out any results still held back, stopping the writer thread if results are written asynchronously.
+     */
+    private void finishResults() {
+        if (this.resultSink instanceof AsyncResultSink) {
+            this.resultSink.close();
+        }
+        this.config.getResultSink().flush();
+    }
+
+    /**
+     * Visits each page in turn on the calling thread.
+     */
+    private void crawlSequentially() {
+        if (isAllowedByRobots(url)) {
+            this.queue.offer(url);
+        }
+        seedFromSitemaps();
+        try {
+            while (!this.queue.isEmpty()) {
+
+                // Pages may be held back for politeness, in which case wait for the next to become ready
+                CrawlUrl next = this.queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+
+                try {
+                    List<CrawlUrl> links = fetchLinks(next);
+                    addResult(next, links);
+                    long start = System.nanoTime();
+                    for (CrawlUrl link : links) {
+                        if (isAllowedByRobots(link)) {
+                            this.queue.offer(link, next);
+                        }
+                    }
+                    this.queue.markVisited(next);
+                    this.metrics.record(CrawlMetrics.Stage.FRONTIER, System.nanoTime() - start);
+                } finally {
+                    this.queue.release(next);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Visits pages using a fixed pool of workers, each of which takes the next page from the queue once it has
+     * finished with its last one.
+     *
+     * <p>
+     * The crawl is complete once no page is either waiting in the queue or being visited, as only an in-flight page
+     * can add more work to the queue.
+     * </p>
+     *
+     * @param parallelism The number of workers to use.
+     */
+    private void crawlInParallel(int parallelism) {
+        ExecutorService workers = newNamedPool(parallelism, "crawler-worker-");
+
+        // Pages restored from a journal are already waiting
+        this.pendingPages.set((int) this.queue.size());
+        offerPage(url, null);
+        startSitemapSeeding();
+
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(this::runWorker);
+        }
+
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.debug("Crawl of [{}] still in progress.", url);
+            }
+        } catch (InterruptedException ex) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Visits pages using the asynchronous parser or fetcher, dispatching each page from the calling thread as soon as
+     * fewer than the maximum number of pages are in flight.
+     *
+     * <p>
+     * No thread is held while a page is being fetched, the links are scraped and queued on whichever thread
+     * completes the fetch. As with {@link #crawlInParallel(int)} the crawl is complete once no page is pending.
+     * </p>
+     *
+     * @param maxInFlight The maximum number of pages being fetched at once.
+     */
+    private void crawlAsynchronously(int maxInFlight) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        // Pages restored from a journal are already waiting
+        this.pendingPages.set((int) this.queue.size());
+        offerPage(url, null);
+        startSitemapSeeding();
+
+        try {
+            while (this.pendingPages.get() > 0) {
+                inFlight.acquire();
+                CrawlUrl next = this.queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    inFlight.release();
+                    continue;
+                }
+
+                fetchLinksAsync(next)
+                    .thenAccept(links -> report(next, links))
+                    .whenComplete((ignored, ex) -> {
+                        if (ex != null) {
+                            this.metrics.recordError(ex);
+                            logger.warn("Unable to visit page [{}].", next, ex);
+                        }
+                        this.queue.release(next);
+                        this.pendingPages.decrementAndGet();
+                        inFlight.release();
+                    });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Visits pages with a pipeline of three stages connected by bounded queues, so that fetching, which waits on the
+     * network, and parsing, which waits on the CPU, can each be given the threads they need.
+     *
+     * <ol>
+     *     <li>Fetchers on an I/O pool take pages from the frontier and fetch their raw content.</li>
+     *     <li>Parsers on a pool sized to the CPU parse the fetched pages and scrape them for links.</li>
+     *     <li>The calling thread sends each scraped page to the result sink and adds its links to the frontier, a
+     *     batch at a time.</li>
+     * </ol>
+     *
+     * <p>
+     * A fetcher needs a permit before taking a page from the frontier, which is only returned once a parser has
+     * picked up the fetched page, and parsers block once the queue of scraped pages is full. A slow stage therefore
+     * holds back every stage before it, which bounds the number of fetched pages held in memory.
+     * </p>
+     *
+     * @param fetchThreads The number of pages fetched at once.
+     * @param parserThreads The number of pages parsed at once.
+     */
+    private void crawlPipelined(int fetchThreads, int parserThreads) {
+        Semaphore fetchPermits = new Semaphore(fetchThreads + parserThreads * FETCHED_PAGES_PER_PARSER);
+        BlockingQueue<FetchedResult> fetched = new LinkedBlockingQueue<>();
+        BlockingQueue<ScrapedResult> scraped = new ArrayBlockingQueue<>(parserThreads * SCRAPED_PAGES_PER_PARSER);
+        ExecutorService fetchers = newNamedPool(fetchThreads, "crawler-fetcher-");
+        ExecutorService parsers = newNamedPool(parserThreads, "crawler-parser-");
+
+        // Pages restored from a journal are already waiting
+        this.pendingPages.set((int) this.queue.size());
+        offerPage(url, null);
+        startSitemapSeeding();
+
+        for (int i = 0; i < fetchThreads; i++) {
+            fetchers.execute(() -> runFetcher(fetchPermits, fetched));
+        }
+        for (int i = 0; i < parserThreads; i++) {
+            parsers.execute(() -> runParser(fetchPermits, fetched, scraped));
+        }
+
+        try {
+            List<ScrapedResult> batch = new ArrayList<>(ENQUEUE_BATCH_SIZE);
+            while (this.pendingPages.get() > 0) {
+                ScrapedResult first = scraped.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                scraped.drainTo(batch, ENQUEUE_BATCH_SIZE - 1);
+                batch.forEach(result -> addResult(result.page, result.links));
+                long start = System.nanoTime();
+                batch.forEach(result -> offerPages(result.links, result.page));
+                batch.forEach(result -> this.queue.markVisited(result.page));
+                this.metrics.record(CrawlMetrics.Stage.FRONTIER, System.nanoTime() - start);
+                this.pendingPages.addAndGet(-batch.size());
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fetchers.shutdownNow();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * The loop run by each fetcher in a pipelined crawl, fetching pages until there are none left.
+     *
+     * @param fetchPermits Bounds the number of pages being fetched or waiting to be parsed.
+     * @param fetched Where fetched pages are handed to the parsers.
+     */
+    private void runFetcher(Semaphore fetchPermits, BlockingQueue<FetchedResult> fetched) {
+        try {
+            while (this.pendingPages.get() > 0) {
+                fetchPermits.acquire();
+                CrawlUrl next = this.queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    fetchPermits.release();
+                    continue;
+                }
+
+                Optional<FetchedPage> page = Optional.empty();
+                ResponseCache.Entry cached = null;
+                try {
+                    if (this.responseCache != null) {
+                        cached = this.responseCache.get(next).orElse(null);
+                    }
+                    page = this.pageFetcher.fetchPage(next, cached);
+                } catch (RuntimeException ex) {
+                    this.metrics.recordError(ex);
+                    logger.warn("Unable to fetch page [{}].", next, ex);
+                } finally {
+                    this.queue.release(next);
+                }
+                fetched.add(new FetchedResult(next, page, cached));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The loop run by each parser in a pipelined crawl, parsing and scraping fetched pages until there are none
+     * left.
+     *
+     * @param fetchPermits Returned as each fetched page is picked up.
+     * @param fetched Where fetched pages are taken from.
+     * @param scraped Where the links on each page are handed on to be queued.
+     */
+    private void runParser(
+        Semaphore fetchPermits,
+        BlockingQueue<FetchedResult> fetched,
+        BlockingQueue<ScrapedResult> scraped) {
+        try {
+            while (this.pendingPages.get() > 0) {
+                FetchedResult next = fetched.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                fetchPermits.release();
+
+                List<CrawlUrl> links = Collections.emptyList();
+                try {
+                    links = linksOf(next.url, next.page, next.cached);
+                } catch (RuntimeException ex) {
+                    this.metrics.recordError(ex);
+                    logger.warn("Unable to parse page [{}].", next.url, ex);
+                }
+                scraped.put(new ScrapedResult(next.url, links));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param threads The number of threads in the pool.
+     * @param namePrefix The prefix of each thread's name, which is followed by its number.
+     * @return A fixed size pool of threads with the given names.
+     */
+    private static ExecutorService newNamedPool(int threads, String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+            threads,
+            runnable -> new Thread(runnable, namePrefix + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * @param page The page to fetch.
+     * @return The future links on the page, which completes exceptionally rather than throwing if the fetch fails.
+     */
+    private CompletableFuture<List<CrawlUrl>> fetchLinksAsync(CrawlUrl page) {
+        try {
+            if (this.asyncPageFetcher != null) {
+                return this.asyncPageFetcher.fetchPageAsync(page).thenApply(fetched -> linksOf(page, fetched, null));
+            }
+            return this.asyncDocumentParser.parseDocumentAsync(page).thenApply(this::scrape);
+        } catch (RuntimeException ex) {
+            CompletableFuture<List<CrawlUrl>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    /**
+     * The loop run by each worker, visiting pages until there are none left.
+     */
+    private void runWorker() {
+        try {
+            while (this.pendingPages.get() > 0) {
+                CrawlUrl next = this.queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+
+                try {
+                    visit(next);
+                } catch (RuntimeException ex) {
+                    this.metrics.recordError(ex);
+                    logger.warn("Unable to visit page [{}].", next, ex);
+                } finally {
+                    this.queue.release(next);
+                    this.pendingPages.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Offers a page to the queue unless its robots.txt disallows it, counting it as pending if it is new.
+     *
+     * <p>
+     * The count is raised before the offer so that it can never drop to zero while a page is still queued.
+     * </p>
+     *
+     * @param page The page to offer.
+     * @param source The page it was linked from, or null if it is the first page.
+     */
+    private void offerPage(CrawlUrl page, CrawlUrl source) {
+        if (!isAllowedByRobots(page)) {
+            return;
+        }
+        this.pendingPages.incrementAndGet();
+        if (!this.queue.offer(page, source)) {
+            this.pendingPages.decrementAndGet();
+        }
+    }
+
+    /**
+     * Seeds the crawl from sitemaps on a thread of its own, if it is seeded from sitemaps at all.
+     *
+     * <p>
+     * Reading the sitemaps counts as a pending page until it has finished, so the crawl can't finish while there
+     * may be more pages to come, even if every page queued so far has been visited.
+     * </p>
+     */
+    private void startSitemapSeeding() {
+        if (this.sitemapReader == null) {
+            return;
+        }
+        this.pendingPages.incrementAndGet();
+        Thread seeder = new Thread(
+            () -> {
+                try {
+                    seedFromSitemaps();
+                } catch (RuntimeException ex) {
+                    logger.warn("Unable to seed the crawl of [{}] from its sitemaps.", url, ex);
+                } finally {
+                    this.pendingPages.decrementAndGet();
+                }
+            },
+            "crawler-sitemaps");
+        seeder.setDaemon(true);
+        seeder.start();
+    }
+
+    /**
+     * Offers every page listed in the sitemaps of the first page's site, a batch at a time as they are read, as if
+     * each were a first page. The sitemaps are those listed in the site's robots.txt, if it is obeyed, and
+     * "/sitemap.xml", each read once.
+     */
+    private void seedFromSitemaps() {
+        if (this.sitemapReader == null) {
+            return;
+        }
+        Set<String> sitemaps = new LinkedHashSet<>();
+        if (this.robotsCache != null) {
+            sitemaps.addAll(this.robotsCache.getRules(url).getSitemaps());
+        }
+        String authority = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        sitemaps.add(url.getScheme() + "://" + authority + "/sitemap.xml");
+
+        for (String sitemap : sitemaps) {
+            CrawlUrl.tryParse(sitemap).ifPresent(sitemapUrl -> this.sitemapReader.read(
+                sitemapUrl,
+                batch -> offerPages(this.pageScraper.filterLinks(batch).collect(Collectors.toList()), null)));
+        }
+        logger.info(
+            "Read {} pages from {} sitemaps of [{}].",
+            this.sitemapReader.getPageCount(),
+            this.sitemapReader.getSitemapCount(),
+            url);
+    }
+
+    /**
+     * @param page A page about to be offered to the queue.
+     * @return True if robots.txt is ignored or the page's robots.txt allows it, so it may be queued.
+     */
+    private boolean isAllowedByRobots(CrawlUrl page) {
+        return this.robotsCache == null || this.robotsCache.isAllowed(page);
+    }
+
+    /**
+     * Sends a visited page with its links to the result sink, and adds them to the link graph if there is one.
+     *
+     * @param page The page which was visited.
+     * @param links The links on the page.
+     */
+    private void addResult(CrawlUrl page, List<CrawlUrl> links) {
+        if (this.linkGraph != null) {
+            this.linkGraph.addPage(page, links);
+        }
+        this.resultSink.accept(page, links);
+        this.metrics.pageVisited();
+    }
+
+    /**
+     * Offers a batch of pages to the queue, leaving out those their robots.txt disallows, counting those which are
+     * new as pending.
+     *
+     * <p>
+     * As with {@link #offerPage(CrawlUrl, CrawlUrl)} the count is raised before the offer and lowered for those
+     * which weren't new.
+     * </p>
+     *
+     * @param links The pages to offer.
+     * @param source The page they were linked from, or null if they are first pages.
+     */
+    private void offerPages(List<CrawlUrl> links, CrawlUrl source) {
+        List<CrawlUrl> pages = this.robotsCache == null
+            ? links
+            : links.stream().filter(this.robotsCache::isAllowed).collect(Collectors.toList());
+        this.pendingPages.addAndGet(pages.size());
+        int accepted = this.queue.offerAll(pages, source);
+        this.pendingPages.addAndGet(accepted - pages.size());
+    }
+
+    /**
+     * Fetches and scrapes a single page, reporting it with its links and queuing any links we haven't seen before.
+     *
+     * @param page The page to visit.
+     */
+    private void visit(CrawlUrl page) {
+        report(page, fetchLinks(page));
+    }
+
+    /**
+     * Fetches a page and finds the links on it, revalidating the cached copy of the page if there is a response
+     * cache.
+     *
+     * @param page The page to visit.
+     * @return The links on the page.
+     */
+    private List<CrawlUrl> fetchLinks(CrawlUrl page) {
+        if (this.pageFetcher == null || (this.responseCache == null && !this.config.isStreamingExtraction())) {
+            return scrape(this.documentParser.parseDocument(page));
+        }
+
+        ResponseCache.Entry cached = this.responseCache == null ? null : this.responseCache.get(page).orElse(null);
+        return linksOf(page, this.pageFetcher.fetchPage(page, cached), cached);
+    }
+
+    /**
+     * Finds the links on a fetched page, reusing the cached links if the page hasn't changed and otherwise parsing
+     * it, or reading its links from the body with streaming extraction, and caching its links.
+     *
+     * @param url The page which was fetched.
+     * @param page The fetched page, or empty if it couldn't be fetched.
+     * @param cached The cached entry of the page which was revalidated, or null if there wasn't one.
+     * @return The links on the page.
+     */
+    private List<CrawlUrl> linksOf(CrawlUrl url, Optional<FetchedPage> page, ResponseCache.Entry cached) {
+        if (cached != null && page.isPresent() && page.get().isNotModified()) {
+            this.metrics.pageNotModified();
+            return cached.getLinks();
+        }
+
+        List<CrawlUrl> links = this.config.isStreamingExtraction()
+            ? page.map(this::extract).orElseGet(Collections::emptyList)
+            : scrape(page.map(this::parse));
+        if (this.responseCache != null && page.isPresent()) {
+            this.responseCache.put(url, page.get().getETag(), page.get().getLastModified(), links);
+        }
+        return links;
+    }
+
+    /**
+     * @param doc The parsed page, or empty if it couldn't be parsed.
+     * @return The links on the page, or none if it is a near duplicate of a page already crawled.
+     */
+    private List<CrawlUrl> scrape(Optional<Document> doc) {
+        return doc
+            .map(parsed -> this.metrics.time(CrawlMetrics.Stage.SCRAPE, () -> {
+                if (this.nearDuplicateDetector != null && this.nearDuplicateDetector.isNearDuplicate(parsed)) {
+                    this.metrics.pageNearDuplicate();
+                    return Collections.<CrawlUrl>emptyList();
+                }
+                return this.pageScraper.scrapeForLinks(parsed).collect(Collectors.toList());
+            }))
+            .orElseGet(Collections::emptyList);
+    }
+
+    /**
+     * Reads the links on a page straight from its decoded body, without parsing it.
+     *
+     * @param page A fetched page.
+     * @return The links on the page, timed as the scrape stage as there is no separate parse.
+     * @throws UncheckedIOException If the body couldn't be decoded.
+     */
+    private List<CrawlUrl> extract(FetchedPage page) {
+        return this.metrics.time(CrawlMetrics.Stage.SCRAPE, () -> {
+            try (Reader html = page.openReader()) {
+                return this.pageScraper.scrapeForLinks(html, page.getLocation()).collect(Collectors.toList());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * @param page A fetched page.
+     * @return The parsed page, timed as the parse stage.
+     */
+    private Document parse(FetchedPage page) {
+        return this.metrics.time(CrawlMetrics.Stage.PARSE, page::parse);
+    }
+
+    /**
+     * Sends a visited page with its links to the result sink, queues any links we haven't seen before and then marks
+     * the page as visited.
+     *
+     * @param page The page which was visited.
+     * @param links The links on the page.
+     */
+    private void report(CrawlUrl page, List<CrawlUrl> links) {
+        addResult(page, links);
+        long start = System.nanoTime();
+        links.forEach(link -> offerPage(link, page));
+        this.queue.markVisited(page);
+        this.metrics.record(CrawlMetrics.Stage.FRONTIER, System.nanoTime() - start);
+    }
+
+    /**
+     * @param concurrencyController The controller, possibly null.
+     * @param metrics The metrics of the crawl.
+     * @return A listener telling both the controller, if there is one, and the metrics.
+     */
+    private static FetchListener listenerFor(
+        AdaptiveConcurrencyController concurrencyController,
+        CrawlMetrics metrics) {
+        return concurrencyController != null ? FetchListener.all(concurrencyController, metrics) : metrics;
     }
 
     /**
      * The default "getDocument" function to use if no alternative is provided.
      *
      * @param url The url to get the document for.
+     * @param listener Told the outcome of the request.
+     * @param contentFilter Decides whether the page is worth downloading.
+     * @param metrics Where the time taken to parse the page is recorded.
      * @return The document, or empty if the page couldn't be parsed.
      */
-    private static Optional<Document> defaultGetDocument(URL url) {
+    private static Optional<Document> defaultGetDocument(
+        CrawlUrl url,
+        FetchListener listener,
+        ContentFilter contentFilter,
+        CrawlMetrics metrics) {
+        return defaultFetchPage(url, null, listener, contentFilter)
+            .map(page -> metrics.time(CrawlMetrics.Stage.PARSE, page::parse));
+    }
+
+    /**
+     * @param listener Told the outcome of each request.
+     * @param contentFilter Decides which pages are worth downloading.
+     * @return The default fetcher for a pipelined crawl or revalidating cached pages, see
+     *     {@link #defaultFetchPage(CrawlUrl, ResponseCache.Entry, FetchListener, ContentFilter)}.
+     */
+    private static PageFetcher defaultPageFetcher(FetchListener listener, ContentFilter contentFilter) {
+        return new PageFetcher() {
+            @Override
+            public Optional<FetchedPage> fetchPage(CrawlUrl url) {
+                return defaultFetchPage(url, null, listener, contentFilter);
+            }
+
+            @Override
+            public Optional<FetchedPage> fetchPage(CrawlUrl url, ResponseCache.Entry cached) {
+                return defaultFetchPage(url, cached, listener, contentFilter);
+            }
+        };
+    }
+
+    /**
+     * The default "fetchPage" function, fetching the page with jsoup without parsing it.
+     *
+     * <p>
+     * The page is only requested if the content filter accepts its URL, and its body is only read if the filter
+     * accepts its headers. jsoup stops reading a body one byte past the max body size, so an oversized body is
+     * rejected after reading no more than that. jsoup decodes a gzip body as it reads it, so the page holds the
+     * decoded body and the limit applies to its decoded size. Only gzip is asked for, as jsoup can only inflate a raw
+     * deflate stream, while servers send the zlib wrapped stream the spec calls for. A body which still can't be read
+     * or decoded is reported to the listener as a failure.
+     * </p>
+     *
+     * @param url The url to fetch.
+     * @param cached The cached entry of the page whose validators are sent, or null to fetch the page in full.
+     * @param listener Told the outcome of the request.
+     * @param contentFilter Decides whether the page is worth downloading.
+     * @return The fetched page, or empty if it couldn't be fetched or was rejected by the content filter.
+     */
+    private static Optional<FetchedPage> defaultFetchPage(
+        CrawlUrl url,
+        ResponseCache.Entry cached,
+        FetchListener listener,
+        ContentFilter contentFilter) {
+        ContentFilter.Rejection rejection = contentFilter.checkUrl(url);
+        if (rejection != null) {
+            contentFilter.reject(url, rejection, listener);
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        Connection.Response response;
         try {
-            return Optional.of(Jsoup.connect(url.toString()).get());
+            int maxBodySize = contentFilter.getMaxBodySize();
+            Connection connection = Jsoup.connect(url.toString())
+                .maxBodySize(maxBodySize == Integer.MAX_VALUE ? 0 : maxBodySize + 1)
+                .header("Accept-Encoding", "gzip");
+            if (cached != null && cached.getETag() != null) {
+                connection.header("If-None-Match", cached.getETag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                connection.header("If-Modified-Since", cached.getLastModified());
+            }
+            response = connection.execute();
+        } catch (HttpStatusException ex) {
+            listener.onResponse(url, ex.getStatusCode(), Duration.ofNanos(System.nanoTime() - start));
+            logger.warn("Unsuccessful response [{}] for page [{}].", ex.getStatusCode(), url);
+            return Optional.empty();
+        } catch (UnsupportedMimeTypeException ex) {
+            contentFilter.reject(url, ContentFilter.Rejection.CONTENT_TYPE, listener);
+            return Optional.empty();
         } catch (IOException ex) {
-            logger.warn("Non HTML page encountered [{}].", url);
+            listener.onFailure(url, ex, Duration.ofNanos(System.nanoTime() - start));
+            logger.warn("Unable to fetch page [{}].", url, ex);
             return Optional.empty();
         }
+
+        listener.onResponse(url, response.statusCode(), Duration.ofNanos(System.nanoTime() - start));
+        if (cached != null && response.statusCode() == 304) {
+            return Optional.of(FetchedPage.notModified(url));
+        }
+        rejection = contentFilter.checkHeaders(
+            response.contentType(),
+            ContentFilter.parseContentLength(response.header("Content-Length")));
+        if (rejection != null) {
+            closeQuietly(response);
+            contentFilter.reject(url, rejection, listener);
+            return Optional.empty();
+        }
+        // jsoup only reads the body once it's asked for
+        long bodyStart = System.nanoTime();
+        try {
+            byte[] body = response.bodyAsBytes();
+            listener.onBody(url, body.length, Duration.ofNanos(System.nanoTime() - bodyStart));
+            if (body.length > contentFilter.getMaxBodySize()) {
+                contentFilter.reject(url, ContentFilter.Rejection.TOO_LARGE, listener);
+                return Optional.empty();
+            }
+            return Optional.of(new FetchedPage(
+                url,
+                response.url().toString(),
+                response.statusCode(),
+                response.contentType(),
+                body,
+                response.header("ETag"),
+                response.header("Last-Modified")));
+        } catch (UncheckedIOException | org.jsoup.UncheckedIOException ex) {
+            // jsoup throws its own unchecked exception, which doesn't extend the JDK's
+            listener.onFailure(url, ex.getCause(), Duration.ofNanos(System.nanoTime() - bodyStart));
+            logger.warn("Unable to read page [{}].", url, ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Closes the connection of a response whose body won't be read.
+     *
+     * @param response The response.
+     */
+    private static void closeQuietly(Connection.Response response) {
+        try {
+            response.bodyStream().close();
+        } catch (IOException | RuntimeException ex) {
+            logger.debug("Unable to close the response for [{}].", response.url(), ex);
+        }
     }
 
     /**
@@ -88,6 +1137,89 @@ public class WebCrawler {
          * @param url The URL to source the document from.
          * @return The parsed document, or empty if the document could not be parsed.
          */
-        Optional<Document> parseDocument(URL url);
+        Optional<Document> parseDocument(CrawlUrl url);
+    }
+
+    /**
+     * A fetcher which will retrieve the raw content at a given URL without parsing it, used by a pipelined crawl so
+     * that fetching and parsing can happen on different threads.
+     */
+    public interface PageFetcher {
+        /**
+         * Fetches the page at the provided URL.
+         *
+         * @param url The URL to source the page from.
+         * @return The fetched page, or empty if the page could not be fetched or isn't HTML.
+         */
+        Optional<FetchedPage> fetchPage(CrawlUrl url);
+
+        /**
+         * Fetches the page at the provided URL with a conditional request, so that it is only sent in full if it
+         * has changed since it was cached. By default the page is always fetched in full.
+         *
+         * @param url The URL to source the page from.
+         * @param cached The cached entry of the page whose validators should be sent, or null if it isn't cached.
+         * @return The fetched page, which is {@link FetchedPage#isNotModified() not modified} if the cached entry is
+         *     still current, or empty if the page could not be fetched or isn't HTML.
+         */
+        default Optional<FetchedPage> fetchPage(CrawlUrl url, ResponseCache.Entry cached) {
+            return fetchPage(url);
+        }
+    }
+
+    /**
+     * A fetched page handed from the fetching to the parsing stage of a pipelined crawl.
+     */
+    private static final class FetchedResult {
+        private final CrawlUrl url;
+        private final Optional<FetchedPage> page;
+        private final ResponseCache.Entry cached;
+
+        private FetchedResult(CrawlUrl url, Optional<FetchedPage> page, ResponseCache.Entry cached) {
+            this.url = url;
+            this.page = page;
+            this.cached = cached;
+        }
+    }
+
+    /**
+     * A scraped page handed from the parsing to the queuing stage of a pipelined crawl.
+     */
+    private static final class ScrapedResult {
+        private final CrawlUrl page;
+        private final List<CrawlUrl> links;
+
+        private ScrapedResult(CrawlUrl page, List<CrawlUrl> links) {
+            this.page = page;
+            this.links = links;
+        }
+    }
+
+    /**
+     * A fetcher which will retrieve the raw content at a given URL without parsing it or blocking the calling thread,
+     * leaving the crawler to parse the page or stream its links.
+     */
+    public interface AsyncPageFetcher {
+        /**
+         * Fetches the page at the provided URL.
+         *
+         * @param url The URL to source the page from.
+         * @return A future of the fetched page, which is empty if the page could not be fetched or isn't HTML.
+         */
+        CompletableFuture<Optional<FetchedPage>> fetchPageAsync(CrawlUrl url);
+    }
+
+    /**
+     * A parser which will fetch a document at a given URL and parse the HTML found at the location, without blocking
+     * the calling thread while the document is being fetched.
+     */
+    public interface AsyncDocumentParser {
+        /**
+         * Parses the document at the provided URL.
+         *
+         * @param url The URL to source the document from.
+         * @return A future of the parsed document, which is empty if the document could not be parsed.
+         */
+        CompletableFuture<Optional<Document>> parseDocumentAsync(CrawlUrl url);
     }
-}
\ No newline at end of file
+}
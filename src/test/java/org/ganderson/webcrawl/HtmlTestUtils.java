@@ -24,6 +24,15 @@ public class HtmlTestUtils {
      * @param references The hrefs to use.
      */
     public static Document buildAnchorWithReferences(URL baseUrl, String... references) {
+        return Jsoup.parse(buildHtmlWithReferences(references), baseUrl.toString());
+    }
+
+    /**
+     * Builds the HTML of a document with anchors using the provided href, without parsing it.
+     *
+     * @param references The hrefs to use.
+     */
+    public static String buildHtmlWithReferences(String... references) {
 
         StringBuilder builder = new StringBuilder();
 
@@ -50,6 +59,6 @@ public class HtmlTestUtils {
         builder.append("</html>");
 
 
-        return Jsoup.parse(builder.toString(), baseUrl.toString());
+        return builder.toString();
     }
 }
@@ -0,0 +1,178 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link AdaptiveConcurrencyController}.
+ */
+@DisplayName("Test suite for AdaptiveConcurrencyController")
+public class AdaptiveConcurrencyControllerTest {
+
+    private static final String ORIGIN = "http://some-host.com:80";
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    @DisplayName("When hosts respond promptly")
+    @Nested
+    public class IncreaseTest {
+
+        @Test
+        @DisplayName(
+            "Given a host which hasn't been seen"
+                + " Then it starts at a single request")
+        public void givenNewHost_StartsAtOne() {
+            assertEquals(1, new AdaptiveConcurrencyController(8).getLimit(ORIGIN));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a window of prompt responses"
+                + " Then the limit rises by about one per window up to the maximum")
+        public void givenPromptResponses_LimitRisesAdditively() throws Exception {
+            // Given
+            AdaptiveConcurrencyController controllerUnderTest = new AdaptiveConcurrencyController(4);
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/page");
+
+            // When / Then
+            controllerUnderTest.onResponse(page, 200, FAST);
+            assertEquals(2, controllerUnderTest.getLimit(ORIGIN));
+            controllerUnderTest.onResponse(page, 200, FAST);
+            assertEquals(2, controllerUnderTest.getLimit(ORIGIN));
+            controllerUnderTest.onResponse(page, 404, FAST);
+            assertEquals(2, controllerUnderTest.getLimit(ORIGIN));
+            controllerUnderTest.onResponse(page, 200, FAST);
+            assertEquals(3, controllerUnderTest.getLimit(ORIGIN));
+
+            for (int i = 0; i < 100; i++) {
+                controllerUnderTest.onResponse(page, 200, FAST);
+            }
+            assertEquals(4, controllerUnderTest.getLimit(ORIGIN));
+        }
+
+        @Test
+        @DisplayName(
+            "Given responses from several hosts"
+                + " Then each host has its own limit and every change is passed to listeners")
+        public void givenSeveralHosts_LimitsIndependentAndPublished() throws Exception {
+            // Given
+            AdaptiveConcurrencyController controllerUnderTest = new AdaptiveConcurrencyController(8);
+            List<String> changes = new ArrayList<>();
+            controllerUnderTest.addListener((origin, limit) -> changes.add(origin + " " + limit));
+
+            // When
+            controllerUnderTest.onResponse(CrawlUrl.parse("http://some-host.com/a"), 200, FAST);
+            controllerUnderTest.onResponse(CrawlUrl.parse("https://other-host.com/a"), 200, FAST);
+            controllerUnderTest.onResponse(CrawlUrl.parse("https://other-host.com/b"), 503, FAST);
+
+            // Then
+            assertEquals(Map.of(ORIGIN, 2, "https://other-host.com:443", 1), controllerUnderTest.getLimits());
+            assertEquals(
+                List.of(ORIGIN + " 2", "https://other-host.com:443 2", "https://other-host.com:443 1"),
+                changes);
+        }
+    }
+
+    @DisplayName("When hosts are overloaded")
+    @Nested
+    public class DecreaseTest {
+
+        @Test
+        @DisplayName(
+            "Given a burst of 429 responses"
+                + " Then the limit is halved once per window rather than once per response")
+        public void givenTooManyRequests_HalvedOncePerWindow() throws Exception {
+            // Given
+            AdaptiveConcurrencyController controllerUnderTest = raisedTo(8);
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/page");
+
+            // When / Then
+            controllerUnderTest.onResponse(page, 429, FAST);
+            assertEquals(4, controllerUnderTest.getLimit(ORIGIN));
+            controllerUnderTest.onResponse(page, 429, FAST);
+            controllerUnderTest.onResponse(page, 429, FAST);
+            controllerUnderTest.onResponse(page, 429, FAST);
+            assertEquals(4, controllerUnderTest.getLimit(ORIGIN));
+            controllerUnderTest.onResponse(page, 429, FAST);
+            assertEquals(2, controllerUnderTest.getLimit(ORIGIN));
+
+            for (int i = 0; i < 100; i++) {
+                controllerUnderTest.onResponse(page, 503, FAST);
+            }
+            assertEquals(1, controllerUnderTest.getLimit(ORIGIN));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a request which timed out"
+                + " Then the limit is halved, while other failures leave it alone")
+        public void givenTimeout_Halved() throws Exception {
+            // Given
+            AdaptiveConcurrencyController controllerUnderTest = raisedTo(8);
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/page");
+
+            // When
+            controllerUnderTest.onFailure(page, new IOException("Connection reset"), FAST);
+            int afterReset = controllerUnderTest.getLimit(ORIGIN);
+            controllerUnderTest.onFailure(
+                page, new CompletionException(new HttpTimeoutException("request timed out")), FAST);
+
+            // Then
+            assertEquals(8, afterReset);
+            assertEquals(4, controllerUnderTest.getLimit(ORIGIN));
+            assertTrue(AdaptiveConcurrencyController.isTimeout(new SocketTimeoutException("Read timed out")));
+        }
+
+        @Test
+        @DisplayName(
+            "Given responses which become much slower than the host's baseline"
+                + " Then the limit is reduced")
+        public void givenSlowResponses_Reduced() throws Exception {
+            // Given
+            AdaptiveConcurrencyController controllerUnderTest = raisedTo(8);
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/page");
+
+            // When
+            for (int i = 0; i < 20; i++) {
+                controllerUnderTest.onResponse(page, 200, FAST.multipliedBy(20));
+            }
+
+            // Then
+            assertTrue(controllerUnderTest.getLimit(ORIGIN) < 8, "Limit " + controllerUnderTest.getLimit(ORIGIN));
+        }
+
+        @Test
+        @DisplayName(
+            "Given an invalid maximum"
+                + " Then the controller refuses it")
+        public void givenInvalidMax_Rejected() {
+            assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyController(0));
+        }
+    }
+
+    /**
+     * @param limit The limit to raise the host to.
+     * @return A controller with the test host at the given limit, which is also its maximum.
+     */
+    private static AdaptiveConcurrencyController raisedTo(int limit) throws Exception {
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(limit);
+        CrawlUrl page = CrawlUrl.parse("http://some-host.com/page");
+        while (controller.getLimit(ORIGIN) < limit) {
+            controller.onResponse(page, 200, FAST);
+        }
+        return controller;
+    }
+}
@@ -0,0 +1,158 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link AsyncResultSink}.
+ */
+@DisplayName("Test suite for AsyncResultSink")
+public class AsyncResultSinkTest {
+
+    @DisplayName("When results are written")
+    @Nested
+    public class WriteTest {
+
+        @Test
+        @DisplayName(
+            "Given results from several threads"
+                + " Then every result reaches the delegate on a single writer thread by the time the sink is closed")
+        public void givenManyThreads_AllWrittenOnOneThread() throws Exception {
+            // Given
+            RecordingSink delegate = new RecordingSink();
+            AsyncResultSink sinkUnderTest = new AsyncResultSink(delegate, 4);
+            ExecutorService workers = Executors.newFixedThreadPool(4);
+
+            // When
+            for (int i = 0; i < 1000; i++) {
+                int page = i;
+                workers.execute(() -> sinkUnderTest.accept(page(page), List.of(page(page + 1))));
+            }
+            workers.shutdown();
+            assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+            sinkUnderTest.close();
+
+            // Then
+            assertEquals(1000, delegate.pages.size());
+            assertEquals(1, delegate.threads.size());
+            assertFalse(delegate.threads.contains(Thread.currentThread()));
+            assertTrue(delegate.flushes > 0);
+            assertEquals(0, delegate.closes);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a delegate which is stalled and a full queue"
+                + " Then callers wait for room rather than queueing without limit")
+        public void givenStalledDelegate_CallersWait() throws Exception {
+            // Given
+            CountDownLatch stalled = new CountDownLatch(1);
+            RecordingSink delegate = new RecordingSink() {
+                @Override
+                public void accept(CrawlUrl page, List<CrawlUrl> links) {
+                    try {
+                        stalled.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.accept(page, links);
+                }
+            };
+            AsyncResultSink sinkUnderTest = new AsyncResultSink(delegate, 2);
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    sinkUnderTest.accept(page(i), List.of());
+                }
+            });
+
+            // When
+            producer.start();
+            producer.join(200);
+            boolean heldUp = producer.isAlive();
+            stalled.countDown();
+            producer.join();
+            sinkUnderTest.close();
+
+            // Then
+            assertTrue(heldUp);
+            assertEquals(10, delegate.pages.size());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a delegate which fails"
+                + " Then the failure is thrown to the caller")
+        public void givenFailingDelegate_FailureThrown() {
+            // Given
+            RuntimeException failure = new IllegalStateException("Disk full");
+            AsyncResultSink sinkUnderTest = new AsyncResultSink(new CrawlResultSink() {
+                @Override
+                public void accept(CrawlUrl page, List<CrawlUrl> links) {
+                    throw failure;
+                }
+            }, 2);
+
+            // When
+            sinkUnderTest.accept(page(0), List.of());
+            IllegalStateException thrown = assertThrows(IllegalStateException.class, sinkUnderTest::flush);
+
+            // Then
+            assertSame(failure, thrown.getCause());
+        }
+
+        @Test
+        @DisplayName(
+            "Given an invalid capacity"
+                + " Then the sink refuses it")
+        public void givenInvalidCapacity_Rejected() {
+            assertThrows(IllegalArgumentException.class, () -> new AsyncResultSink(new RecordingSink(), 0));
+        }
+    }
+
+    private static CrawlUrl page(int i) {
+        return CrawlUrl.tryParse("http://some-host.com/page/" + i).orElseThrow();
+    }
+
+    /**
+     * Records everything it's given, along with the threads it was called on.
+     */
+    private static class RecordingSink implements CrawlResultSink {
+        private final List<CrawlUrl> pages = Collections.synchronizedList(new ArrayList<>());
+        private final List<Thread> threads = new ArrayList<>();
+        private volatile int flushes;
+        private volatile int closes;
+
+        @Override
+        public void accept(CrawlUrl page, List<CrawlUrl> links) {
+            this.pages.add(page);
+            if (!this.threads.contains(Thread.currentThread())) {
+                this.threads.add(Thread.currentThread());
+            }
+        }
+
+        @Override
+        public void flush() {
+            this.flushes++;
+        }
+
+        @Override
+        public void close() {
+            this.closes++;
+        }
+    }
+}
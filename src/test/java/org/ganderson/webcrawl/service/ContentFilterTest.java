@@ -0,0 +1,93 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ContentFilter}.
+ */
+@DisplayName("Test suite for ContentFilter")
+public class ContentFilterTest {
+
+    private final ContentFilter filterUnderTest = new ContentFilter(1000, true);
+
+    @DisplayName("When a URL is checked")
+    @Nested
+    public class CheckUrlTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://example.com/report.pdf, EXTENSION",
+            "http://example.com/images/Photo.JPG, EXTENSION",
+            "http://example.com/archive.tar.gz?version=2, EXTENSION",
+            "http://example.com/page.html, ",
+            "http://example.com/v1.2/page, ",
+            "http://example.com/search?file=report.pdf, ",
+            "http://example.com/, ",
+            "http://example.com, "
+        })
+        @DisplayName(
+            "Given URLs with and without a binary extension on their path"
+                + " Then only those with one are rejected")
+        public void givenUrls_BinaryExtensionsRejected(String url, ContentFilter.Rejection expected) {
+            assertEquals(expected, filterUnderTest.checkUrl(CrawlUrl.tryParse(url).orElseThrow()));
+        }
+
+        @Test
+        @DisplayName(
+            "Given extensions aren't skipped"
+                + " Then no URL is rejected")
+        public void givenExtensionsNotSkipped_NothingRejected() {
+            ContentFilter filter = new ContentFilter(1000, false);
+
+            assertNull(filter.checkUrl(CrawlUrl.tryParse("http://example.com/report.pdf").orElseThrow()));
+        }
+    }
+
+    @DisplayName("When headers are checked")
+    @Nested
+    public class CheckHeadersTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "text/html; charset=UTF-8, 100, ",
+            "application/xhtml+xml, -1, ",
+            ", -1, ",
+            "text/html, 1000, ",
+            "text/html, 1001, TOO_LARGE",
+            "application/pdf, 100, CONTENT_TYPE",
+            "text/plain, -1, CONTENT_TYPE"
+        })
+        @DisplayName(
+            "Given different content types and lengths"
+                + " Then responses which aren't HTML or are too large are rejected")
+        public void givenHeaders_Checked(String contentType, long contentLength, ContentFilter.Rejection expected) {
+            assertEquals(expected, filterUnderTest.checkHeaders(contentType, contentLength));
+        }
+
+        @Test
+        @DisplayName(
+            "Given Content-Length values which aren't valid"
+                + " Then they are treated as missing")
+        public void givenInvalidContentLength_Missing() {
+            assertEquals(-1, ContentFilter.parseContentLength(null));
+            assertEquals(-1, ContentFilter.parseContentLength("lots"));
+            assertEquals(42, ContentFilter.parseContentLength(" 42 "));
+        }
+    }
+
+    @Test
+    @DisplayName(
+        "Given a max body size which isn't positive"
+            + " Then an IllegalArgumentException is thrown")
+    public void givenNonPositiveMaxBodySize_Thrown() {
+        assertThrows(IllegalArgumentException.class, () -> new ContentFilter(0, true));
+    }
+}
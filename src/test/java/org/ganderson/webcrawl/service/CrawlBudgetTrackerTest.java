@@ -0,0 +1,216 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CrawlBudgetTracker}.
+ */
+@DisplayName("Test suite for CrawlBudgetTracker")
+public class CrawlBudgetTrackerTest {
+
+    @DisplayName("When a page is admitted")
+    @Nested
+    public class BudgetTest {
+
+        @Test
+        @DisplayName(
+            "Given a max depth"
+                + " Then pages more links than that from the first page are dropped")
+        public void givenMaxDepth_DeeperPagesDropped() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest = new CrawlBudgetTracker(CrawlBudget.builder().maxDepth(2).build());
+            CrawlUrl root = page("/");
+            CrawlUrl one = page("/1");
+            CrawlUrl two = page("/2");
+
+            // When
+            boolean rootAdmitted = trackerUnderTest.admit(root, null);
+            boolean oneAdmitted = trackerUnderTest.admit(one, root);
+            boolean twoAdmitted = trackerUnderTest.admit(two, one);
+            boolean threeAdmitted = trackerUnderTest.admit(page("/3"), two);
+
+            // Then
+            assertTrue(rootAdmitted);
+            assertTrue(oneAdmitted);
+            assertTrue(twoAdmitted);
+            assertFalse(threeAdmitted);
+            assertEquals(Map.of("DEPTH", 1L), trackerUnderTest.getRejections());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a queued page is found again along a shorter path"
+                + " Then the pages it links to are held to the shorter depth")
+        public void givenShorterPath_DepthLowered() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest = new CrawlBudgetTracker(CrawlBudget.builder().maxDepth(2).build());
+            CrawlUrl root = page("/");
+            CrawlUrl one = page("/1");
+            CrawlUrl two = page("/2");
+            trackerUnderTest.admit(root, null);
+            trackerUnderTest.admit(one, root);
+            trackerUnderTest.admit(two, one);
+            boolean tooDeepBefore = !trackerUnderTest.isWithinDepth(two);
+
+            // When
+            trackerUnderTest.reachedAgain(two, root);
+
+            // Then
+            assertTrue(tooDeepBefore);
+            assertTrue(trackerUnderTest.isWithinDepth(two));
+            assertTrue(trackerUnderTest.admit(page("/3"), two));
+            assertTrue(trackerUnderTest.getRejections().isEmpty());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a max pages per host"
+                + " Then each host is counted separately")
+        public void givenMaxPagesPerHost_CountedPerHost() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest =
+                new CrawlBudgetTracker(CrawlBudget.builder().maxPagesPerHost(1).build());
+
+            // When
+            boolean first = trackerUnderTest.admit(page("/a"), null);
+            boolean second = trackerUnderTest.admit(page("/b"), null);
+            boolean otherHost = trackerUnderTest.admit(url("http://other-host.com/a"), null);
+
+            // Then
+            assertTrue(first);
+            assertFalse(second);
+            assertTrue(otherHost);
+            assertEquals(Map.of("HOST", 1L), trackerUnderTest.getRejections());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a max pages per path prefix"
+                + " Then each top level directory is counted separately, with root pages sharing one budget")
+        public void givenMaxPagesPerPathPrefix_CountedPerDirectory() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest =
+                new CrawlBudgetTracker(CrawlBudget.builder().maxPagesPerPathPrefix(2).build());
+
+            // When
+            trackerUnderTest.admit(page("/calendar/2024/01"), null);
+            trackerUnderTest.admit(page("/calendar/2024/02"), null);
+            boolean thirdMonth = trackerUnderTest.admit(page("/calendar/2024/03"), null);
+            boolean otherDirectory = trackerUnderTest.admit(page("/news/1"), null);
+            trackerUnderTest.admit(page("/about"), null);
+            trackerUnderTest.admit(page("/contact"), null);
+            boolean thirdRootPage = trackerUnderTest.admit(page("/jobs"), null);
+
+            // Then
+            assertFalse(thirdMonth);
+            assertTrue(otherDirectory);
+            assertFalse(thirdRootPage);
+            assertEquals(Map.of("PATH_PREFIX", 2L), trackerUnderTest.getRejections());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a max query variants"
+                + " Then each path only has that many queries queued, and its page without a query is not counted")
+        public void givenMaxQueryVariants_CountedPerPath() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest =
+                new CrawlBudgetTracker(CrawlBudget.builder().maxQueryVariants(2).build());
+
+            // When
+            boolean plain = trackerUnderTest.admit(page("/search"), null);
+            trackerUnderTest.admit(page("/search?colour=red"), null);
+            trackerUnderTest.admit(page("/search?colour=red&size=m"), null);
+            boolean third = trackerUnderTest.admit(page("/search?size=m"), null);
+            boolean otherPath = trackerUnderTest.admit(page("/shop?size=m"), null);
+
+            // Then
+            assertTrue(plain);
+            assertFalse(third);
+            assertTrue(otherPath);
+            assertEquals(1, trackerUnderTest.getRejectedCount());
+        }
+    }
+
+    @DisplayName("When a trap is offered")
+    @Nested
+    public class TrapTest {
+
+        @Test
+        @DisplayName(
+            "Given a path which keeps repeating a segment"
+                + " Then it is dropped, while a path repeating it no more than the max is not")
+        public void givenRepeatedSegments_Dropped() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest = new CrawlBudgetTracker(CrawlBudget.builder().build());
+
+            // When
+            boolean within = trackerUnderTest.admit(page("/a/b/a/b/a/b/"), null);
+            boolean over = trackerUnderTest.admit(page("/a/b/a/b/a/b/a/"), null);
+
+            // Then
+            assertTrue(within);
+            assertFalse(over);
+            assertEquals(Map.of("REPEATED_SEGMENTS", 1L), trackerUnderTest.getRejections());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a URL longer than the max"
+                + " Then it is dropped")
+        public void givenLongUrl_Dropped() {
+            // Given
+            CrawlBudgetTracker trackerUnderTest =
+                new CrawlBudgetTracker(CrawlBudget.builder().maxUrlLength(30).build());
+
+            // When
+            boolean result = trackerUnderTest.admit(page("/a-path-long-enough-to-go-over"), null);
+
+            // Then
+            assertFalse(result);
+            assertEquals(Map.of("URL_LENGTH", 1L), trackerUnderTest.getRejections());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a non-positive limit"
+                + " Then the budget can't be built")
+        public void givenNonPositiveLimit_Throws() {
+            assertThrows(IllegalArgumentException.class, () -> CrawlBudget.builder().maxPagesPerHost(0));
+            assertThrows(IllegalArgumentException.class, () -> CrawlBudget.builder().maxDepth(-1));
+        }
+    }
+
+    @DisplayName("When a path is split")
+    @Nested
+    public class PathTest {
+
+        @Test
+        @DisplayName(
+            "Given paths at different depths"
+                + " Then the prefix is the top level directory")
+        public void givenPaths_PrefixIsTopLevelDirectory() {
+            assertEquals("/calendar/", CrawlBudgetTracker.pathPrefixOf("/calendar/2024/01"));
+            assertEquals("/calendar/", CrawlBudgetTracker.pathPrefixOf("/calendar/"));
+            assertEquals("/", CrawlBudgetTracker.pathPrefixOf("/about"));
+            assertEquals("/", CrawlBudgetTracker.pathPrefixOf(""));
+        }
+    }
+
+    private static CrawlUrl page(String path) {
+        return url("http://some-host.com" + path);
+    }
+
+    private static CrawlUrl url(String value) {
+        return CrawlUrl.tryParse(value).orElseThrow();
+    }
+}
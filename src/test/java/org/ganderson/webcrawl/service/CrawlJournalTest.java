@@ -0,0 +1,253 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CrawlJournal}.
+ */
+@DisplayName("Test suite for CrawlJournal")
+public class CrawlJournalTest {
+
+    private static final Duration NEVER = Duration.ofDays(1);
+
+    @TempDir
+    Path directory;
+
+    @DisplayName("When a journal is restored")
+    @Nested
+    public class RestoreTest {
+
+        @Test
+        @DisplayName(
+            "Given discovered and visited pages"
+                + " Then every page is seen again and only unvisited pages are queued, in the order discovered")
+        public void givenRecords_StateRebuilt() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                journal.discovered(page(0));
+                journal.discoveredAll(List.of(page(1), page(2), page(3)));
+                journal.visited(page(0));
+                journal.visited(page(2));
+            }
+
+            // When
+            ExactVisitedSet visited = new ExactVisitedSet();
+            InMemoryFrontierStore frontier = new InMemoryFrontierStore();
+            long queued;
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, true)) {
+                queued = journal.restore(visited, frontier);
+            }
+
+            // Then
+            assertEquals(2, queued);
+            assertEquals(4, visited.size());
+            assertFalse(visited.add(page(2)));
+            assertEquals(List.of(page(1), page(3)), drain(frontier));
+        }
+
+        @Test
+        @DisplayName(
+            "Given resume isn't asked for"
+                + " Then the existing records are discarded")
+        public void givenNoResume_Discarded() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                journal.discovered(page(0));
+            }
+
+            // When
+            InMemoryFrontierStore frontier = new InMemoryFrontierStore();
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                journal.restore(new ExactVisitedSet(), frontier);
+            }
+
+            // Then
+            assertTrue(frontier.isEmpty());
+        }
+
+        @Test
+        @DisplayName(
+            "Given the last record was only partly written"
+                + " Then it is dropped and new records can still be appended and restored")
+        public void givenPartialRecord_Dropped() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                journal.discovered(page(0));
+                journal.discovered(page(1));
+            }
+            // A discovered record claiming 50 bytes of URL with only three of them written
+            Files.write(file, new byte[] {1, 50, 'h', 't', 't'}, StandardOpenOption.APPEND);
+
+            // When
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, true)) {
+                journal.restore(new ExactVisitedSet(), new InMemoryFrontierStore());
+                journal.visited(page(0));
+                journal.discovered(page(2));
+            }
+            InMemoryFrontierStore frontier = new InMemoryFrontierStore();
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, true)) {
+                journal.restore(new ExactVisitedSet(), frontier);
+            }
+
+            // Then
+            assertEquals(List.of(page(1), page(2)), drain(frontier));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a file which isn't a journal"
+                + " Then resuming from it fails rather than losing it")
+        public void givenNotAJournal_Refused() throws Exception {
+            // Given
+            Path file = directory.resolve("not-a-journal.txt");
+            Files.writeString(file, "some other file");
+
+            // When / Then
+            assertThrows(IOException.class, () -> CrawlJournal.open(file, NEVER, true));
+            assertEquals("some other file", Files.readString(file));
+        }
+
+        @Test
+        @DisplayName(
+            "Given many pages"
+                + " Then each discovered page costs little more than its URL")
+        public void givenManyPages_Compact() throws Exception {
+            // Given
+            int pages = 10_000;
+            Path file = directory.resolve("crawl.journal");
+            long urlBytes = 0;
+
+            // When
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                for (int i = 0; i < pages; i++) {
+                    journal.discovered(page(i));
+                    journal.visited(page(i));
+                    urlBytes += page(i).toString().length();
+                }
+            }
+
+            // Then
+            long overheadPerPage = (Files.size(file) - urlBytes) / pages;
+            assertTrue(overheadPerPage <= 11, "Overhead per page was " + overheadPerPage);
+
+            ExactVisitedSet visited = new ExactVisitedSet();
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, true)) {
+                assertEquals(0, journal.restore(visited, new InMemoryFrontierStore()));
+            }
+            assertEquals(pages, visited.size());
+        }
+    }
+
+    @DisplayName("When records are checkpointed")
+    @Nested
+    public class CheckpointTest {
+
+        @Test
+        @DisplayName(
+            "Given the interval hasn't passed"
+                + " Then records are only written to the file at a checkpoint")
+        public void givenLongInterval_WrittenAtCheckpoint() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, false)) {
+                long emptySize = Files.size(file);
+
+                // When
+                journal.discovered(page(0));
+                long beforeCheckpoint = Files.size(file);
+                journal.checkpoint();
+
+                // Then
+                assertEquals(emptySize, beforeCheckpoint);
+                assertTrue(Files.size(file) > emptySize);
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given a zero interval"
+                + " Then every record is written straight away")
+        public void givenZeroInterval_WrittenImmediately() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            try (CrawlJournal journal = CrawlJournal.open(file, Duration.ZERO, false)) {
+                long emptySize = Files.size(file);
+
+                // When
+                journal.discovered(page(0));
+
+                // Then
+                assertTrue(Files.size(file) > emptySize);
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given pages recorded from many threads with a zero interval"
+                + " Then every record is written in the order it was recorded")
+        public void givenConcurrentRecords_AllWrittenInOrder() throws Exception {
+            // Given
+            Path file = directory.resolve("crawl.journal");
+            int threads = 8;
+            int pagesPerThread = 2_000;
+
+            // When
+            try (CrawlJournal journal = CrawlJournal.open(file, Duration.ZERO, false)) {
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int first = t * pagesPerThread;
+                    Thread writer = new Thread(() -> {
+                        for (int i = first; i < first + pagesPerThread; i++) {
+                            journal.discovered(page(i));
+                            journal.visited(page(i));
+                        }
+                    });
+                    writer.start();
+                    writers.add(writer);
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            }
+
+            // Then
+            ExactVisitedSet visited = new ExactVisitedSet();
+            try (CrawlJournal journal = CrawlJournal.open(file, NEVER, true)) {
+                assertEquals(0, journal.restore(visited, new InMemoryFrontierStore()));
+            }
+            assertEquals(threads * pagesPerThread, visited.size());
+        }
+    }
+
+    private static CrawlUrl page(int i) {
+        return CrawlUrl.tryParse("http://some-host.com/page/" + i).orElseThrow();
+    }
+
+    private static List<CrawlUrl> drain(FrontierStore frontier) {
+        List<CrawlUrl> pages = new ArrayList<>();
+        CrawlUrl next;
+        while ((next = frontier.poll()) != null) {
+            pages.add(next);
+        }
+        return pages;
+    }
+}
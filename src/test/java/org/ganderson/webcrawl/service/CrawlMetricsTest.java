@@ -0,0 +1,142 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CrawlMetrics}.
+ */
+@DisplayName("Test suite for CrawlMetrics")
+public class CrawlMetricsTest {
+
+    private static final Duration FETCH_TIME = Duration.ofMillis(20);
+
+    @DisplayName("When fetches are recorded")
+    @Nested
+    public class FetchTest {
+
+        @Test
+        @DisplayName(
+            "Given responses and failures from several hosts"
+                + " Then they are counted per host, errors are counted by kind and fetches are timed")
+        public void givenFetches_CountedPerHostAndKind() throws Exception {
+            // Given
+            CrawlMetrics metricsUnderTest = new CrawlMetrics();
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/a");
+            CrawlUrl otherPage = CrawlUrl.parse("https://other-host.com/a");
+
+            // When
+            metricsUnderTest.onResponse(page, 200, FETCH_TIME);
+            metricsUnderTest.onBody(page, 1000, Duration.ofMillis(2));
+            metricsUnderTest.onResponse(page, 404, FETCH_TIME);
+            metricsUnderTest.onFailure(otherPage, new CompletionException(new SocketTimeoutException()), FETCH_TIME);
+            metricsUnderTest.onFailure(otherPage, new IOException("Connection reset"), FETCH_TIME);
+
+            // Then
+            assertEquals(
+                Map.of("HTTP 404", 1L, "SocketTimeoutException", 1L, "IOException", 1L),
+                metricsUnderTest.getErrors());
+            assertEquals(3, metricsUnderTest.getErrorCount());
+            assertEquals(1000, metricsUnderTest.getBytes());
+
+            CrawlMetrics.HostStatistics host = metricsUnderTest.getHosts().get("http://some-host.com:80");
+            assertEquals(2, host.getRequests());
+            assertEquals(1, host.getErrors());
+            assertEquals(1000, host.getBytes());
+            assertEquals(20, host.getMeanFetchMillis(), 0.001);
+            assertEquals(2, metricsUnderTest.getHosts().get("https://other-host.com:443").getErrors());
+
+            assertEquals(4, metricsUnderTest.getHistogram(CrawlMetrics.Stage.FETCH).getCount());
+            assertEquals(1, metricsUnderTest.getHistogram(CrawlMetrics.Stage.DOWNLOAD).getCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a body which was read along with its response"
+                + " Then its bytes are counted without timing a download")
+        public void givenBodyReadWithResponse_NotTimed() throws Exception {
+            // Given
+            CrawlMetrics metricsUnderTest = new CrawlMetrics();
+
+            // When
+            metricsUnderTest.onBody(CrawlUrl.parse("http://some-host.com/a"), 500, Duration.ZERO);
+
+            // Then
+            assertEquals(500, metricsUnderTest.getBytes());
+            assertEquals(0, metricsUnderTest.getHistogram(CrawlMetrics.Stage.DOWNLOAD).getCount());
+        }
+    }
+
+    @DisplayName("When metrics are published")
+    @Nested
+    public class PublishTest {
+
+        @Test
+        @DisplayName(
+            "Given metrics registered over JMX"
+                + " Then their counters, stages and hosts can be read until they are unregistered")
+        public void givenRegistered_ReadableOverJmx() throws Exception {
+            // Given
+            CrawlMetrics metricsUnderTest = new CrawlMetrics();
+            metricsUnderTest.setQueueGauges(() -> 7, () -> 12);
+            metricsUnderTest.pageVisited();
+            metricsUnderTest.onResponse(CrawlUrl.parse("http://some-host.com/a"), 200, FETCH_TIME);
+            metricsUnderTest.time(CrawlMetrics.Stage.PARSE, () -> "parsed");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.ganderson.webcrawl:type=CrawlMetrics,name=\"test crawl\"");
+
+            // When
+            metricsUnderTest.register("test crawl");
+
+            // Then
+            assertEquals(1L, server.getAttribute(name, "Pages"));
+            assertEquals(7L, server.getAttribute(name, "FrontierSize"));
+            assertEquals(12L, server.getAttribute(name, "VisitedSetSize"));
+            TabularData stages = (TabularData) server.getAttribute(name, "Stages");
+            CompositeData parse = (CompositeData) stages.get(new Object[] {"PARSE"}).get("value");
+            assertEquals(1L, parse.get("count"));
+            TabularData hosts = (TabularData) server.getAttribute(name, "Hosts");
+            assertEquals(1, hosts.size());
+
+            metricsUnderTest.unregister();
+            assertFalse(server.isRegistered(name));
+        }
+
+        @Test
+        @DisplayName(
+            "Given some activity"
+                + " Then the summary line gives the totals and the latency of every stage")
+        public void givenActivity_Summarised() {
+            // Given
+            CrawlMetrics metricsUnderTest = new CrawlMetrics();
+            metricsUnderTest.pageVisited();
+            metricsUnderTest.record(CrawlMetrics.Stage.SCRAPE, Duration.ofMillis(3).toNanos());
+
+            // When
+            String summary = metricsUnderTest.summary();
+
+            // Then
+            assertTrue(summary.startsWith("1 pages ("), summary);
+            assertTrue(summary.contains(" scrape 3.00/3.00"), summary);
+            for (CrawlMetrics.Stage stage : CrawlMetrics.Stage.values()) {
+                assertTrue(summary.contains(" " + stage.name().toLowerCase() + " "), summary);
+            }
+        }
+    }
+}
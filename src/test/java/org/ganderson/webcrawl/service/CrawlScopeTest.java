@@ -0,0 +1,165 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link CrawlScope}.
+ */
+@DisplayName("Test suite for CrawlScope")
+public class CrawlScopeTest {
+
+    @DisplayName("When the default scope of a page used")
+    @Nested
+    public class DefaultScopeTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://example.com/docs/page, true",
+            "https://example.com/docs/, true",
+            "http://example.com:8080/docs/page, true",
+            "http://example.com/blog/, false",
+            "http://sub.example.com/docs/, false",
+            "http://example.com.evil.org/docs/, false",
+            "http://example.community/docs/, false"
+        })
+        @DisplayName(
+            "Given links on and off the first page's host and path"
+                + " Then only those on its host and under its path are in scope")
+        public void givenLinks_OnlySameHostAndPathInScope(String link, boolean expected) {
+            // Given
+            CrawlScope scopeUnderTest = CrawlScope.of(url("http://example.com/docs/"));
+
+            // When
+            boolean result = scopeUnderTest.contains(url(link));
+
+            // Then
+            assertEquals(expected, result);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a first page with an explicit port"
+                + " Then only that port is in scope")
+        public void givenExplicitPort_OnlyThatPortInScope() {
+            // Given
+            CrawlScope scopeUnderTest = CrawlScope.of(url("http://localhost:8080"));
+
+            // When / Then
+            assertTrue(scopeUnderTest.contains(url("http://localhost:8080/a")));
+            assertFalse(scopeUnderTest.contains(url("http://localhost:9090/a")));
+        }
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://[::1]:8080/docs/, http://[::1]:8080/docs/page, true",
+            "http://[::1]:8080/docs/, http://[::1]:9090/docs/page, false",
+            "http://[::1]:8080/docs/, http://[::2]:8080/docs/page, false",
+            "http://[::1]/docs/, http://[::1]/docs/page, true",
+            "http://[::1]/docs/, http://[::1]:8080/docs/page, true",
+            "http://[::1]/docs/, http://[::1]/blog/, false",
+            "http://[::ffff:10.0.0.1]/, http://[::ffff:10.0.0.1]/page, true",
+            "http://[::ffff:10.0.0.1]/, http://[::ffff:10.0.0.2]/page, false"
+        })
+        @DisplayName(
+            "Given a first page on an IPv6 address, with or without a port"
+                + " Then only that address, and port if given, is in scope")
+        public void givenIpv6FirstPage_OnlyThatAddressInScope(String base, String link, boolean expected) {
+            // Given
+            CrawlScope scopeUnderTest = CrawlScope.of(url(base));
+
+            // When
+            boolean result = scopeUnderTest.contains(url(link));
+
+            // Then
+            assertEquals(expected, result);
+        }
+    }
+
+    @DisplayName("When a scope with many rules used")
+    @Nested
+    public class RulesTest {
+
+        private final CrawlScope scopeUnderTest = CrawlScope.builder()
+            .allowHost("example.com")
+            .allowHost("*.example.com")
+            .exclude("*.example.com", "/private/")
+            .allow("*.example.com", "/private/press/")
+            .exclude("admin.example.com", "")
+            .allow("shop.example.org", "/products/")
+            .allowHost("localhost:8080")
+            .excludeContaining("/print/")
+            .excludeContaining("sessionid=")
+            .build();
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://example.com/, true",
+            "http://www.example.com/, true",
+            "http://a.b.example.com/page, true",
+            "http://www.example.com/private/page, false",
+            "http://www.example.com/private/press/release, true",
+            "http://admin.example.com/, false",
+            "http://shop.example.org/products/1, true",
+            "http://shop.example.org/basket, false",
+            "http://example.org/products/1, false",
+            "http://localhost:8080/, true",
+            "http://localhost/, false",
+            "http://www.example.com/news/print/1, false",
+            "http://www.example.com/news?sessionid=1, false",
+            "http://notexample.com/, false"
+        })
+        @DisplayName(
+            "Given links matching different rules"
+                + " Then the most specific host pattern and longest path prefix decide, and excluded text always"
+                + " excludes")
+        public void givenLinks_MostSpecificRuleDecides(String link, boolean expected) {
+            assertEquals(expected, scopeUnderTest.contains(url(link)));
+        }
+
+        @Test
+        @DisplayName(
+            "Given excluded texts which overlap"
+                + " Then any of them occurring excludes the URL")
+        public void givenOverlappingExcludedText_AnyExcludes() {
+            // Given
+            CrawlScope overlapping = CrawlScope.builder()
+                .allowHost("example.com")
+                .excludeContaining("abcd")
+                .excludeContaining("bc")
+                .excludeContaining("xyz")
+                .build();
+
+            // When / Then
+            assertFalse(overlapping.contains(url("http://example.com/abce")));
+            assertFalse(overlapping.contains(url("http://example.com/axyz")));
+            assertTrue(overlapping.contains(url("http://example.com/abxy")));
+        }
+
+        @Test
+        @DisplayName(
+            "Given invalid rules"
+                + " Then the scope can't be built")
+        public void givenInvalidRules_Throws() {
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("a.*.com"));
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("example..com"));
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("example.com:http"));
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("[::1"));
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("[::1]8080"));
+            assertThrows(IllegalArgumentException.class, () -> CrawlScope.builder().allowHost("*.[::1]"));
+            assertThrows(IllegalStateException.class, () -> CrawlScope.builder().excludeContaining("x").build());
+        }
+    }
+
+    private static CrawlUrl url(String value) {
+        return CrawlUrl.tryParse(value).orElseThrow();
+    }
+}
@@ -0,0 +1,100 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link EdgeListResultSink}.
+ */
+@DisplayName("Test suite for EdgeListResultSink")
+public class EdgeListResultSinkTest {
+
+    @DisplayName("When an edge list is read back")
+    @Nested
+    public class ReadTest {
+
+        @Test
+        @DisplayName(
+            "Given pages which link to each other"
+                + " Then every page is read back with its links in the order written")
+        public void givenPages_ReadBackInOrder() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (EdgeListResultSink sinkUnderTest = new EdgeListResultSink(out)) {
+                sinkUnderTest.accept(page(0), List.of(page(0), page(1), page(2)));
+                sinkUnderTest.accept(page(1), List.of(page(0)));
+                sinkUnderTest.accept(page(2), List.of());
+            }
+
+            // When
+            Map<String, List<String>> linksByPage = new LinkedHashMap<>();
+            EdgeListResultSink.read(new ByteArrayInputStream(out.toByteArray()), linksByPage::put);
+
+            // Then
+            Map<String, List<String>> expected = new LinkedHashMap<>();
+            expected.put(page(0).toString(), List.of(page(0).toString(), page(1).toString(), page(2).toString()));
+            expected.put(page(1).toString(), List.of(page(0).toString()));
+            expected.put(page(2).toString(), List.of());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(linksByPage.entrySet()));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page linking to pages which have already been written"
+                + " Then each of those links costs a single byte")
+        public void givenKnownLinks_OneByteEach() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            EdgeListResultSink sinkUnderTest = new EdgeListResultSink(out);
+            List<CrawlUrl> links = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                links.add(page(i));
+            }
+            sinkUnderTest.accept(page(0), links);
+            sinkUnderTest.flush();
+            int firstSize = out.size();
+
+            // When
+            sinkUnderTest.accept(page(1), links);
+            sinkUnderTest.flush();
+
+            // Then
+            // Type, page id and count followed by a byte per link
+            assertEquals(3 + links.size(), out.size() - firstSize);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a stream which isn't an edge list"
+                + " Then reading it fails")
+        public void givenNotAnEdgeList_Refused() {
+            // Given
+            byte[] notAnEdgeList = "some other file".getBytes(UTF_8);
+
+            // When / Then
+            IOException ex = assertThrows(
+                IOException.class,
+                () -> EdgeListResultSink.read(new ByteArrayInputStream(notAnEdgeList), (page, links) -> {
+                }));
+            assertTrue(ex.getMessage().contains("edge list"), ex.getMessage());
+        }
+    }
+
+    private static CrawlUrl page(int i) {
+        return CrawlUrl.tryParse("http://some-host.com/page/" + i).orElseThrow();
+    }
+}
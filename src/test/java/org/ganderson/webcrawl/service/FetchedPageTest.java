@@ -0,0 +1,266 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link FetchedPage}.
+ */
+@DisplayName("Test suite for FetchedPage")
+public class FetchedPageTest {
+
+    private static final CrawlUrl URL = CrawlUrl.tryParse("http://example.com/page").orElseThrow();
+    private static final String HTML = "<html><body><p>Café</p><a href=\"/other\">other</a></body></html>";
+
+    @DisplayName("When an encoded page is parsed")
+    @Nested
+    public class ContentEncodingTest {
+
+        @ParameterizedTest
+        @ValueSource(strings = {"gzip", "x-gzip", "deflate", "raw deflate", "identity"})
+        @DisplayName(
+            "Given a body in each supported content encoding"
+                + " Then it is decoded while it is parsed")
+        public void givenEncodedBody_Decoded(String encoding) throws IOException {
+            // Given
+            byte[] html = HTML.getBytes(UTF_8);
+            byte[] body;
+            String contentEncoding = encoding;
+            if (encoding.contains("gzip")) {
+                body = gzip(html);
+            } else if (encoding.equals("deflate")) {
+                body = deflate(html, false);
+            } else if (encoding.equals("raw deflate")) {
+                body = deflate(html, true);
+                contentEncoding = "deflate";
+            } else {
+                body = html;
+            }
+            FetchedPage page = page("text/html; charset=UTF-8", body, contentEncoding);
+
+            // When
+            Document result = page.parse();
+
+            // Then
+            assertEquals("Café", result.select("p").text());
+            assertEquals("http://example.com/other", result.select("a").attr("abs:href"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a content encoding which isn't supported"
+                + " Then parsing fails")
+        public void givenUnsupportedEncoding_Fails() {
+            FetchedPage page = page("text/html", HTML.getBytes(UTF_8), "br");
+
+            assertThrows(UncheckedIOException.class, page::parse);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a small body which decodes into a huge one"
+                + " Then parsing fails once it passes the limit")
+        public void givenCompressionBomb_Fails() throws IOException {
+            // Given
+            byte[] huge = new byte[10 * 1024 * 1024];
+            FetchedPage page = page("text/html", gzip(huge), "gzip");
+
+            // When / Then
+            assertThrows(UncheckedIOException.class, page::parse);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a compressed body which decodes into more than the max decoded size"
+                + " Then parsing fails once it passes the max decoded size")
+        public void givenDecodedBodyOverMaxSize_Fails() throws IOException {
+            // Given
+            StringBuilder html = new StringBuilder(HTML);
+            for (int i = 0; i < 2_000; i++) {
+                html.append("<p>").append(i).append("</p>");
+            }
+            byte[] decoded = html.toString().getBytes(UTF_8);
+            byte[] body = gzip(decoded);
+            FetchedPage withinLimit = new FetchedPage(
+                URL, URL.toString(), 200, "text/html", body, null, null, "gzip", decoded.length);
+            FetchedPage overLimit = new FetchedPage(
+                URL, URL.toString(), 200, "text/html", body, null, null, "gzip", decoded.length / 2);
+
+            // When / Then
+            assertEquals(2_001, withinLimit.parse().select("p").size());
+            assertThrows(UncheckedIOException.class, overLimit::parse);
+        }
+    }
+
+    @DisplayName("When the charset is detected")
+    @Nested
+    public class CharsetTest {
+
+        @Test
+        @DisplayName(
+            "Given a charset in the Content-Type header"
+                + " Then it is used")
+        public void givenHeaderCharset_Used() {
+            FetchedPage page = page("text/html; charset=\"ISO-8859-1\"", HTML.getBytes(ISO_8859_1), null);
+
+            assertEquals("Café", page.parse().select("p").text());
+        }
+
+        @Test
+        @DisplayName(
+            "Given no charset in the headers"
+                + " Then it is detected from a meta tag")
+        public void givenMetaCharset_Used() {
+            // Given
+            String html = "<html><head><meta charset=\"ISO-8859-1\"></head>" + HTML.substring("<html>".length());
+            FetchedPage page = page("text/html", html.getBytes(ISO_8859_1), null);
+
+            // When / Then
+            assertEquals("Café", page.parse().select("p").text());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a byte order mark"
+                + " Then it takes precedence over the header")
+        public void givenBom_TakesPrecedence() {
+            // Given
+            byte[] html = HTML.getBytes(Charset.forName("UTF-16LE"));
+            byte[] body = new byte[html.length + 2];
+            body[0] = (byte) 0xFF;
+            body[1] = (byte) 0xFE;
+            System.arraycopy(html, 0, body, 2, html.length);
+            FetchedPage page = page("text/html; charset=ISO-8859-1", body, null);
+
+            // When / Then
+            assertEquals("Café", page.parse().select("p").text());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a charset in the header which isn't supported"
+                + " Then it is ignored in favour of detecting it")
+        public void givenUnsupportedCharset_Ignored() {
+            // Given
+            FetchedPage page = page("text/html; charset=not-a-charset", HTML.getBytes(UTF_8), null);
+
+            // When / Then
+            assertNull(page.getCharset());
+            assertEquals("Café", page.parse().select("p").text());
+        }
+    }
+
+    @DisplayName("When a page is opened as text")
+    @Nested
+    public class ReaderTest {
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+            "<meta charset=\"ISO-8859-1\">",
+            "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=iso-8859-1\">",
+            "<?xml version=\"1.0\" encoding='ISO-8859-1'?>",
+        })
+        @DisplayName(
+            "Given a charset declared in the page"
+                + " Then the body is decoded with it")
+        public void givenDeclaredCharset_Used(String declaration) throws Exception {
+            // Given
+            String html = declaration + HTML;
+            FetchedPage page = page("text/html", gzip(html.getBytes(ISO_8859_1)), "gzip");
+
+            // When / Then
+            assertEquals(html, read(page));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a charset in the header and no declaration"
+                + " Then the header is used, and UTF-8 without either")
+        public void givenHeaderOrNothing_HeaderOrUtf8Used() throws Exception {
+            assertEquals(HTML, read(page("text/html; charset=ISO-8859-1", HTML.getBytes(ISO_8859_1), null)));
+            assertEquals(HTML, read(page("text/html", HTML.getBytes(UTF_8), null)));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a byte order mark"
+                + " Then it takes precedence over the header and isn't part of the text")
+        public void givenBom_TakesPrecedence() throws Exception {
+            // Given
+            byte[] html = HTML.getBytes(Charset.forName("UTF-16LE"));
+            byte[] body = new byte[html.length + 2];
+            body[0] = (byte) 0xFF;
+            body[1] = (byte) 0xFE;
+            System.arraycopy(html, 0, body, 2, html.length);
+
+            // When / Then
+            assertEquals(HTML, read(page("text/html; charset=ISO-8859-1", body, null)));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page longer than the part searched for a declaration"
+                + " Then the whole page is read")
+        public void givenLongPage_WhollyRead() throws Exception {
+            // Given
+            String html = HTML + "<p>Filler</p>".repeat(2_000);
+
+            // When
+            String result = read(page("text/html", html.getBytes(UTF_8), null));
+
+            // Then
+            assertEquals(html.length(), result.length());
+            assertTrue(result.endsWith("<p>Filler</p>"));
+        }
+
+        private String read(FetchedPage page) throws IOException {
+            StringWriter text = new StringWriter();
+            try (Reader reader = page.openReader()) {
+                reader.transferTo(text);
+            }
+            return text.toString();
+        }
+    }
+
+    private static FetchedPage page(String contentType, byte[] body, String contentEncoding) {
+        return new FetchedPage(URL, URL.toString(), 200, contentType, body, null, null, contentEncoding);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+            deflate.write(content);
+        }
+        return out.toByteArray();
+    }
+}
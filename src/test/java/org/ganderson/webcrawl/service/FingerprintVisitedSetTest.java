@@ -0,0 +1,155 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link FingerprintVisitedSet}.
+ */
+@DisplayName("Test suite for FingerprintVisitedSet")
+public class FingerprintVisitedSetTest {
+
+    @DisplayName("When add called")
+    @Nested
+    public class AddTest {
+
+        @ParameterizedTest
+        @ValueSource(booleans = {false, true})
+        @DisplayName(
+            "Given a page which hasn't been added before"
+                + " Then true is returned and the page is recorded")
+        public void givenNewPage_ReturnsTrue(boolean offHeap) throws Exception {
+            // Given
+            FingerprintVisitedSet setUnderTest = new FingerprintVisitedSet(0, offHeap);
+
+            // When
+            boolean result = setUnderTest.add(CrawlUrl.parse("http://some-value/"));
+
+            // Then
+            assertTrue(result);
+            assertTrue(setUnderTest.contains(CrawlUrl.parse("http://some-value/")));
+            assertEquals(1, setUnderTest.size());
+        }
+
+        @ParameterizedTest
+        @ValueSource(booleans = {false, true})
+        @DisplayName(
+            "Given a page which has been added before"
+                + " Then false is returned and the size is unchanged")
+        public void givenVisitedPage_ReturnsFalse(boolean offHeap) throws Exception {
+            // Given
+            FingerprintVisitedSet setUnderTest = new FingerprintVisitedSet(0, offHeap);
+            setUnderTest.add(CrawlUrl.parse("http://some-value/"));
+
+            // When
+            boolean result = setUnderTest.add(CrawlUrl.parse("http://some-value/"));
+
+            // Then
+            assertFalse(result);
+            assertEquals(1, setUnderTest.size());
+        }
+
+        @ParameterizedTest
+        @ValueSource(booleans = {false, true})
+        @DisplayName(
+            "Given many more pages than the initial capacity"
+                + " Then every page is still recorded")
+        public void givenManyPages_AllRecorded(boolean offHeap) throws Exception {
+            // Given
+            int pages = 100_000;
+            FingerprintVisitedSet setUnderTest = new FingerprintVisitedSet(0, offHeap);
+
+            // When
+            for (int i = 0; i < pages; i++) {
+                assertTrue(setUnderTest.add(CrawlUrl.parse("http://some-value/page/" + i)));
+            }
+
+            // Then
+            assertEquals(pages, setUnderTest.size());
+            for (int i = 0; i < pages; i++) {
+                assertTrue(setUnderTest.contains(CrawlUrl.parse("http://some-value/page/" + i)));
+            }
+            assertFalse(setUnderTest.contains(CrawlUrl.parse("http://some-value/page/" + pages)));
+
+            // Every entry costs at most 16 bytes once the tables have grown to fit
+            assertTrue(setUnderTest.capacityInBytes() <= 16L * pages + 64 * 16 * Long.BYTES);
+        }
+
+        @Test
+        @DisplayName(
+            "Given many threads adding overlapping pages"
+                + " Then each page is reported as new exactly once")
+        public void givenConcurrentAdds_EachPageNewOnce() throws Exception {
+            // Given
+            int threads = 8;
+            int pages = 20_000;
+            FingerprintVisitedSet setUnderTest = new FingerprintVisitedSet();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            AtomicInteger added = new AtomicInteger();
+
+            try {
+                // When
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < pages; i++) {
+                            if (setUnderTest.add(CrawlUrl.parse("http://some-value/" + i))) {
+                                added.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+
+                // Then
+                assertEquals(pages, added.get());
+                assertEquals(pages, setUnderTest.size());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @DisplayName("When a fingerprint is computed")
+    @Nested
+    public class UrlFingerprintTest {
+
+        @Test
+        @DisplayName(
+            "Given URLs which differ only in their last character"
+                + " Then the fingerprints differ")
+        public void givenSimilarUrls_FingerprintsDiffer() throws Exception {
+            assertNotEquals(UrlFingerprint.of("http://some-value/a"), UrlFingerprint.of("http://some-value/b"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given the same URL"
+                + " Then the same non-zero fingerprint is returned")
+        public void givenSameUrl_FingerprintStable() throws Exception {
+            long fingerprint = UrlFingerprint.of("http://some-value/");
+
+            assertEquals(fingerprint, UrlFingerprint.of(new StringBuilder("http://some-value/")));
+            assertNotEquals(0, fingerprint);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link HostScheduledFrontierStore}.
+ */
+@DisplayName("Test suite for HostScheduledFrontierStore")
+public class HostScheduledFrontierStoreTest {
+
+    private static final String HOST_A = "http://host-a.com";
+    private static final String HOST_B = "http://host-b.com";
+
+    @DisplayName("When hosts take turns")
+    @Nested
+    public class SchedulingTest {
+
+        @Test
+        @DisplayName(
+            "Given one host with many pages and another with few"
+                + " Then the hosts alternate rather than the busy host going first")
+        public void givenUnevenHosts_HostsAlternate() throws Exception {
+            // Given
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, 10);
+            for (int i = 0; i < 5; i++) {
+                storeUnderTest.add(CrawlUrl.parse(HOST_A + "/" + i));
+            }
+            storeUnderTest.add(CrawlUrl.parse(HOST_B + "/0"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_B + "/1"));
+
+            // When
+            List<CrawlUrl> polled = new ArrayList<>();
+            CrawlUrl next;
+            while ((next = storeUnderTest.poll()) != null) {
+                polled.add(next);
+            }
+
+            // Then
+            assertEquals(
+                List.of(
+                    CrawlUrl.parse(HOST_A + "/0"),
+                    CrawlUrl.parse(HOST_B + "/0"),
+                    CrawlUrl.parse(HOST_A + "/1"),
+                    CrawlUrl.parse(HOST_B + "/1"),
+                    CrawlUrl.parse(HOST_A + "/2"),
+                    CrawlUrl.parse(HOST_A + "/3"),
+                    CrawlUrl.parse(HOST_A + "/4")),
+                polled);
+            assertTrue(storeUnderTest.isEmpty());
+            assertEquals(2, storeUnderTest.hostCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a host at its maximum concurrency"
+                + " Then its pages are held back while other hosts are still handed out")
+        public void givenHostAtMaxConcurrency_OtherHostsStillPolled() throws Exception {
+            // Given
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, 1);
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/0"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/1"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_B + "/0"));
+
+            // When
+            CrawlUrl first = storeUnderTest.poll();
+            CrawlUrl second = storeUnderTest.poll();
+            CrawlUrl held = storeUnderTest.poll();
+
+            // Then
+            assertEquals(CrawlUrl.parse(HOST_A + "/0"), first);
+            assertEquals(CrawlUrl.parse(HOST_B + "/0"), second);
+            assertNull(held);
+            assertFalse(storeUnderTest.isEmpty());
+            assertEquals(1, storeUnderTest.inFlight("http://host-a.com:80"));
+
+            storeUnderTest.release(first);
+            assertEquals(CrawlUrl.parse(HOST_A + "/1"), storeUnderTest.poll());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a host's concurrency is raised while it is busy"
+                + " Then its next page is handed out straight away")
+        public void givenConcurrencyRaised_HostReady() throws Exception {
+            // Given
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, 1);
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/0"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/1"));
+            storeUnderTest.poll();
+            assertNull(storeUnderTest.poll());
+
+            // When
+            storeUnderTest.setMaxConcurrency("http://host-a.com:80", 2);
+
+            // Then
+            assertEquals(CrawlUrl.parse(HOST_A + "/1"), storeUnderTest.poll());
+            assertEquals(2, storeUnderTest.inFlight("http://host-a.com:80"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given invalid limits"
+                + " Then the store refuses them")
+        public void givenInvalidLimits_Rejected() {
+            // Given
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, 1);
+
+            // When / Then
+            assertThrows(IllegalArgumentException.class, () -> new HostScheduledFrontierStore(Duration.ZERO, 0));
+            assertThrows(
+                IllegalArgumentException.class,
+                () -> new HostScheduledFrontierStore(Duration.ofMillis(-1), 1));
+            assertThrows(IllegalArgumentException.class, () -> storeUnderTest.setMaxConcurrency(HOST_A, 0));
+        }
+    }
+
+    @DisplayName("When hosts have a crawl delay")
+    @Nested
+    public class CrawlDelayTest {
+
+        @Test
+        @DisplayName(
+            "Given a crawl delay"
+                + " Then pages from the same host are handed out no faster than the delay")
+        public void givenCrawlDelay_PagesSpacedOut() throws Exception {
+            // Given
+            long delayMillis = 100;
+            HostScheduledFrontierStore storeUnderTest =
+                new HostScheduledFrontierStore(Duration.ofMillis(delayMillis), 10);
+            for (int i = 0; i < 3; i++) {
+                storeUnderTest.add(CrawlUrl.parse(HOST_A + "/" + i));
+            }
+
+            // When
+            long start = System.nanoTime();
+            assertNotNull(storeUnderTest.poll());
+            assertNull(storeUnderTest.poll());
+            assertNotNull(storeUnderTest.poll(5, TimeUnit.SECONDS));
+            assertNotNull(storeUnderTest.poll(5, TimeUnit.SECONDS));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Then
+            assertTrue(elapsedMillis >= 2 * delayMillis, "Pages handed out after only " + elapsedMillis + "ms");
+            assertTrue(storeUnderTest.isEmpty());
+        }
+
+        @Test
+        @DisplayName(
+            "Given one host within its crawl delay"
+                + " Then pages from another host are handed out without waiting")
+        public void givenDelayedHost_OtherHostNotDelayed() throws Exception {
+            // Given
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, 10);
+            storeUnderTest.setCrawlDelay("http://host-a.com:80", Duration.ofMinutes(1));
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/0"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_A + "/1"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_B + "/0"));
+            storeUnderTest.add(CrawlUrl.parse(HOST_B + "/1"));
+
+            // When
+            List<CrawlUrl> polled = new ArrayList<>();
+            CrawlUrl next;
+            while ((next = storeUnderTest.poll(50, TimeUnit.MILLISECONDS)) != null) {
+                polled.add(next);
+            }
+
+            // Then
+            assertEquals(
+                List.of(CrawlUrl.parse(HOST_A + "/0"), CrawlUrl.parse(HOST_B + "/0"), CrawlUrl.parse(HOST_B + "/1")),
+                polled);
+            assertEquals(1, storeUnderTest.size());
+        }
+    }
+
+    @DisplayName("When used from many threads")
+    @Nested
+    public class ConcurrencyTest {
+
+        @Test
+        @DisplayName(
+            "Given many workers polling and releasing"
+                + " Then every page is handed out once and no host exceeds its maximum concurrency")
+        public void givenManyWorkers_LimitsRespected() throws Exception {
+            // Given
+            int hosts = 4;
+            int pagesPerHost = 500;
+            int maxConcurrency = 2;
+            HostScheduledFrontierStore storeUnderTest = new HostScheduledFrontierStore(Duration.ZERO, maxConcurrency);
+            for (int i = 0; i < pagesPerHost; i++) {
+                for (int host = 0; host < hosts; host++) {
+                    storeUnderTest.add(CrawlUrl.parse("http://host-" + host + ".com/" + i));
+                }
+            }
+
+            AtomicInteger[] inFlight = new AtomicInteger[hosts];
+            for (int host = 0; host < hosts; host++) {
+                inFlight[host] = new AtomicInteger();
+            }
+            AtomicInteger polled = new AtomicInteger();
+            AtomicInteger exceeded = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(16);
+
+            // When
+            List<Future<?>> results = new ArrayList<>();
+            for (int worker = 0; worker < 16; worker++) {
+                results.add(workers.submit(() -> {
+                    CrawlUrl next;
+                    while ((next = storeUnderTest.poll(100, TimeUnit.MILLISECONDS)) != null) {
+                        int host = next.getHost().charAt("host-".length()) - '0';
+                        if (inFlight[host].incrementAndGet() > maxConcurrency) {
+                            exceeded.incrementAndGet();
+                        }
+                        polled.incrementAndGet();
+                        Thread.yield();
+                        inFlight[host].decrementAndGet();
+                        storeUnderTest.release(next);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+            workers.shutdown();
+
+            // Then
+            assertEquals(hosts * pagesPerHost, polled.get());
+            assertEquals(0, exceeded.get());
+            assertTrue(storeUnderTest.isEmpty());
+        }
+    }
+}
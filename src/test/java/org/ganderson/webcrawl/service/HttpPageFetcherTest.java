@@ -0,0 +1,476 @@
+package org.ganderson.webcrawl.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link HttpPageFetcher}.
+ */
+@DisplayName("Test suite for HttpPageFetcher")
+public class HttpPageFetcherTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/page", exchange -> respond(
+            exchange, 200, "text/html; charset=UTF-8", "<html><body><a href=\"/other\">other</a></body></html>"));
+        server.createContext("/image", exchange -> respond(exchange, 200, "image/png", "not really a png"));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "text/html", "gone"));
+        server.createContext("/files", exchange -> {
+            requestedPaths.add(exchange.getRequestURI().getPath());
+            respond(exchange, 200, "text/html", "<html></html>");
+        });
+        server.createContext("/compressed", exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] html = "<html><body><a href=\"/other\">other</a></body></html>".getBytes(StandardCharsets.UTF_8);
+            if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+                respond(exchange, 200, "text/html", new String(html, StandardCharsets.UTF_8));
+                return;
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(html);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                compressed.writeTo(out);
+            }
+        });
+        server.createContext("/big", exchange -> respond(exchange, 200, "text/html", "x".repeat(2000)));
+        server.createContext("/chunked", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 20; i++) {
+                    out.write("x".repeat(100).getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException ex) {
+                // The client may hang up once it has read enough
+            }
+        });
+        server.createContext("/cached", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            exchange.getResponseHeaders().set("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+            respond(exchange, 200, "text/html", "<html></html>");
+        });
+        server.createContext("/slow", exchange -> {
+            int current = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            concurrentRequests.decrementAndGet();
+            respond(exchange, 200, "text/html", "<html></html>");
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @DisplayName("When fetch called")
+    @Nested
+    public class FetchTest {
+
+        @Test
+        @DisplayName(
+            "Given an HTML page"
+                + " Then it is parsed with links resolved against the page")
+        public void givenHtmlPage_Parsed() throws Exception {
+            // Given
+            HttpPageFetcher fetcherUnderTest = new HttpPageFetcher(2);
+
+            // When
+            Optional<Document> result = fetcherUnderTest.parseDocumentAsync(CrawlUrl.parse(baseUrl + "/page")).get();
+
+            // Then
+            assertTrue(result.isPresent());
+            assertEquals(baseUrl + "/other", result.get().select("a").first().absUrl("href"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page with validators"
+                + " Then they are kept on the fetched page")
+        public void givenValidators_Kept() throws Exception {
+            // When
+            Optional<FetchedPage> result = new HttpPageFetcher(2).fetchPage(CrawlUrl.parse(baseUrl + "/cached"));
+
+            // Then
+            assertTrue(result.isPresent());
+            assertFalse(result.get().isNotModified());
+            assertEquals("\"v1\"", result.get().getETag());
+            assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", result.get().getLastModified());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a cached entry which is still current"
+                + " Then the page is not modified")
+        public void givenCurrentEntry_NotModified() throws Exception {
+            // Given
+            ResponseCache.Entry cached = new ResponseCache.Entry("\"v1\"", null, Collections.emptyList());
+
+            // When
+            Optional<FetchedPage> result =
+                new HttpPageFetcher(2).fetchPage(CrawlUrl.parse(baseUrl + "/cached"), cached);
+
+            // Then
+            assertTrue(result.isPresent());
+            assertTrue(result.get().isNotModified());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a cached entry which is stale"
+                + " Then the page is fetched in full")
+        public void givenStaleEntry_FetchedInFull() throws Exception {
+            // Given
+            ResponseCache.Entry cached = new ResponseCache.Entry("\"v0\"", null, Collections.emptyList());
+
+            // When
+            Optional<FetchedPage> result =
+                new HttpPageFetcher(2).fetchPage(CrawlUrl.parse(baseUrl + "/cached"), cached);
+
+            // Then
+            assertTrue(result.isPresent());
+            assertFalse(result.get().isNotModified());
+            assertEquals("\"v1\"", result.get().getETag());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page which isn't HTML"
+                + " Then the result is empty")
+        public void givenNonHtml_Empty() throws Exception {
+            assertFalse(new HttpPageFetcher(2).parseDocument(CrawlUrl.parse(baseUrl + "/image")).isPresent());
+        }
+
+        @Test
+        @DisplayName(
+            "Given an unsuccessful response"
+                + " Then the result is empty")
+        public void givenNotFound_Empty() throws Exception {
+            assertFalse(new HttpPageFetcher(2).parseDocument(CrawlUrl.parse(baseUrl + "/missing")).isPresent());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a host which can't be reached"
+                + " Then the future completes with an empty result")
+        public void givenUnreachableHost_Empty() throws Exception {
+            HttpServer stopped = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            int port = stopped.getAddress().getPort();
+            stopped.stop(0);
+
+            assertFalse(new HttpPageFetcher(2).parseDocument(CrawlUrl.parse("http://localhost:" + port)).isPresent());
+        }
+
+        @Test
+        @DisplayName(
+            "Given more requests than the per host limit"
+                + " Then no more than the limit are in flight at once")
+        public void givenManyRequests_PerHostLimitRespected() throws Exception {
+            // Given
+            HttpPageFetcher fetcherUnderTest = new HttpPageFetcher(2);
+
+            // When
+            List<CompletableFuture<Optional<FetchedPage>>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(fetcherUnderTest.fetch(CrawlUrl.parse(baseUrl + "/slow?n=" + i)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+            // Then
+            for (CompletableFuture<Optional<FetchedPage>> future : futures) {
+                assertEquals(200, future.get().get().getStatusCode());
+            }
+            assertTrue(maxConcurrentRequests.get() <= 2, "Max concurrent was " + maxConcurrentRequests.get());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a listener"
+                + " Then it is told the status of each response and about each failed request")
+        public void givenListener_ToldOutcomes() throws Exception {
+            // Given
+            HttpServer stopped = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            int port = stopped.getAddress().getPort();
+            stopped.stop(0);
+
+            List<String> outcomes = Collections.synchronizedList(new ArrayList<>());
+            HttpPageFetcher fetcherUnderTest = new HttpPageFetcher(2, new FetchListener() {
+                @Override
+                public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+                    outcomes.add(url.getPath() + " " + statusCode);
+                }
+
+                @Override
+                public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+                    outcomes.add(url.getPath() + " failed");
+                }
+            });
+
+            // When
+            fetcherUnderTest.parseDocument(CrawlUrl.parse(baseUrl + "/page"));
+            fetcherUnderTest.parseDocument(CrawlUrl.parse(baseUrl + "/missing"));
+            fetcherUnderTest.parseDocument(CrawlUrl.parse("http://localhost:" + port + "/down"));
+
+            // Then
+            assertEquals(List.of("/page 200", "/missing 404", "/down failed"), outcomes);
+        }
+    }
+
+    @DisplayName("When a page is compressed")
+    @Nested
+    public class CompressionTest {
+
+        @Test
+        @DisplayName(
+            "Given a server which compresses pages when asked"
+                + " Then the page is kept compressed until it is parsed")
+        public void givenCompressingServer_KeptCompressed() throws Exception {
+            // When
+            FetchedPage result =
+                new HttpPageFetcher(2).fetchPage(CrawlUrl.parse(baseUrl + "/compressed")).orElseThrow();
+
+            // Then
+            assertEquals("gzip", result.getContentEncoding());
+            assertEquals(0x1f, result.getBody()[0] & 0xFF);
+            assertEquals(baseUrl + "/other", result.parse().select("a").attr("abs:href"));
+        }
+    }
+
+    @DisplayName("When a content filter is used")
+    @Nested
+    public class ContentFilterTest {
+
+        private final List<String> rejections = Collections.synchronizedList(new ArrayList<>());
+
+        private HttpPageFetcher fetcherWithMaxBodySize(int maxBodySize) {
+            return new HttpPageFetcher(
+                2,
+                new FetchListener() {
+                    @Override
+                    public void onResponse(CrawlUrl url, int statusCode, Duration elapsed) {
+                        // Not needed
+                    }
+
+                    @Override
+                    public void onFailure(CrawlUrl url, Throwable cause, Duration elapsed) {
+                        // Not needed
+                    }
+
+                    @Override
+                    public void onRejected(CrawlUrl url, ContentFilter.Rejection rejection) {
+                        rejections.add(url.getPath() + " " + rejection);
+                    }
+                },
+                new ContentFilter(maxBodySize, true));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a URL with the extension of a format which is never HTML"
+                + " Then it is never requested")
+        public void givenBinaryExtension_NotRequested() throws Exception {
+            // Given
+            HttpPageFetcher fetcherUnderTest = fetcherWithMaxBodySize(1000);
+
+            // When
+            Optional<FetchedPage> pdf = fetcherUnderTest.fetchPage(CrawlUrl.parse(baseUrl + "/files/report.PDF"));
+            Optional<FetchedPage> page = fetcherUnderTest.fetchPage(CrawlUrl.parse(baseUrl + "/files/page.html"));
+
+            // Then
+            assertFalse(pdf.isPresent());
+            assertTrue(page.isPresent());
+            assertEquals(List.of("/files/page.html"), requestedPaths);
+            assertEquals(List.of("/files/report.PDF EXTENSION"), rejections);
+        }
+
+        @Test
+        @DisplayName(
+            "Given responses which aren't HTML or are over the max body size"
+                + " Then they are rejected, whether or not the size is declared up front")
+        public void givenRejectedResponses_Empty() throws Exception {
+            // Given
+            HttpPageFetcher fetcherUnderTest = fetcherWithMaxBodySize(1000);
+
+            // When
+            Optional<FetchedPage> image = fetcherUnderTest.fetchPage(CrawlUrl.parse(baseUrl + "/image"));
+            Optional<FetchedPage> big = fetcherUnderTest.fetchPage(CrawlUrl.parse(baseUrl + "/big"));
+            Optional<FetchedPage> chunked = fetcherUnderTest.fetchPage(CrawlUrl.parse(baseUrl + "/chunked"));
+
+            // Then
+            assertFalse(image.isPresent());
+            assertFalse(big.isPresent());
+            assertFalse(chunked.isPresent());
+            assertEquals(List.of("/image CONTENT_TYPE", "/big TOO_LARGE", "/chunked TOO_LARGE"), rejections);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a body within the max body size"
+                + " Then it is read in full")
+        public void givenBodyWithinLimit_ReadInFull() throws Exception {
+            // When
+            Optional<FetchedPage> result = fetcherWithMaxBodySize(2000).fetchPage(CrawlUrl.parse(baseUrl + "/chunked"));
+
+            // Then
+            assertEquals(2000, result.orElseThrow().getBody().length);
+            assertEquals(List.of(), rejections);
+        }
+    }
+
+    @DisplayName("When the host concurrency limiter used")
+    @Nested
+    public class HostConcurrencyLimiterTest {
+
+        @Test
+        @DisplayName(
+            "Given all permits for a host are in use"
+                + " Then waiters are granted permits in order as they are released")
+        public void givenPermitsInUse_WaitersServedInOrder() throws Exception {
+            // Given
+            HostConcurrencyLimiter limiterUnderTest = new HostConcurrencyLimiter(1);
+            List<Integer> granted = new ArrayList<>();
+
+            // When
+            assertTrue(limiterUnderTest.acquire("a").isDone());
+            limiterUnderTest.acquire("a").thenRun(() -> granted.add(1));
+            limiterUnderTest.acquire("a").thenRun(() -> granted.add(2));
+            CompletableFuture<Void> otherHost = limiterUnderTest.acquire("b");
+
+            // Then
+            assertTrue(otherHost.isDone());
+            assertTrue(granted.isEmpty());
+            limiterUnderTest.release("a");
+            assertEquals(List.of(1), granted);
+            limiterUnderTest.release("a");
+            assertEquals(List.of(1, 2), granted);
+            assertEquals(1, limiterUnderTest.inUse("a"));
+            limiterUnderTest.release("a");
+            assertEquals(0, limiterUnderTest.inUse("a"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given permits acquired and released from many threads"
+                + " Then every acquire is eventually granted")
+        public void givenConcurrentUse_AllGranted() throws Exception {
+            // Given
+            HostConcurrencyLimiter limiterUnderTest = new HostConcurrencyLimiter(3);
+            int requests = 1_000;
+            CountDownLatch done = new CountDownLatch(requests);
+
+            // When
+            for (int i = 0; i < requests; i++) {
+                limiterUnderTest.acquire("a").thenRunAsync(() -> {
+                    limiterUnderTest.release("a");
+                    done.countDown();
+                });
+            }
+
+            // Then
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, limiterUnderTest.inUse("a"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given the limit of a host is lowered then raised"
+                + " Then permits are held to the new limit, which never goes over the maximum")
+        public void givenLimitChanged_NewLimitRespected() throws Exception {
+            // Given
+            HostConcurrencyLimiter limiterUnderTest = new HostConcurrencyLimiter(3);
+            assertTrue(limiterUnderTest.acquire("a").isDone());
+            assertTrue(limiterUnderTest.acquire("a").isDone());
+
+            // When
+            limiterUnderTest.setLimit("a", 1);
+            CompletableFuture<Void> first = limiterUnderTest.acquire("a");
+            CompletableFuture<Void> second = limiterUnderTest.acquire("a");
+            CompletableFuture<Void> third = limiterUnderTest.acquire("a");
+            CompletableFuture<Void> otherHost = limiterUnderTest.acquire("b");
+
+            // Then
+            assertTrue(otherHost.isDone());
+            assertFalse(first.isDone());
+            limiterUnderTest.release("a");
+            assertFalse(first.isDone());
+            assertEquals(1, limiterUnderTest.inUse("a"));
+            limiterUnderTest.release("a");
+            assertTrue(first.isDone());
+            assertEquals(1, limiterUnderTest.inUse("a"));
+
+            limiterUnderTest.setLimit("a", 10);
+            assertTrue(second.isDone());
+            assertTrue(third.isDone());
+            assertEquals(3, limiterUnderTest.inUse("a"));
+            assertFalse(limiterUnderTest.acquire("a").isDone());
+        }
+    }
+
+    /**
+     * Writes a complete response to the exchange.
+     */
+    private static void respond(
+        HttpExchange exchange,
+        int status,
+        String contentType,
+        String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link JsonLinesResultSink}.
+ */
+@DisplayName("Test suite for JsonLinesResultSink")
+public class JsonLinesResultSinkTest {
+
+    @DisplayName("When pages are written")
+    @Nested
+    public class WriteTest {
+
+        @Test
+        @DisplayName(
+            "Given pages with and without links"
+                + " Then each page is written as a line of JSON once the sink is flushed")
+        public void givenPages_OneLineEach() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonLinesResultSink sinkUnderTest = new JsonLinesResultSink(out);
+
+            // When
+            sinkUnderTest.accept(
+                CrawlUrl.parse("http://some-host.com"),
+                List.of(CrawlUrl.parse("http://some-host.com/a"), CrawlUrl.parse("http://some-host.com/b")));
+            sinkUnderTest.accept(CrawlUrl.parse("http://some-host.com/a"), List.of());
+            int unflushedSize = out.size();
+            sinkUnderTest.flush();
+
+            // Then
+            assertEquals(0, unflushedSize);
+            assertEquals(
+                "{\"page\":\"http://some-host.com\","
+                    + "\"links\":[\"http://some-host.com/a\",\"http://some-host.com/b\"]}\n"
+                    + "{\"page\":\"http://some-host.com/a\",\"links\":[]}\n",
+                out.toString(UTF_8));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a URL with characters which are special in JSON"
+                + " Then they are escaped")
+        public void givenSpecialCharacters_Escaped() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CrawlUrl page = CrawlUrl.parse("http://some-host.com/a\"b\\c");
+
+            // When
+            try (JsonLinesResultSink sinkUnderTest = new JsonLinesResultSink(out)) {
+                sinkUnderTest.accept(page, List.of());
+            }
+
+            // Then
+            String expectedUrl = page.toString().replace("\\", "\\\\").replace("\"", "\\\"");
+            assertEquals("{\"page\":\"" + expectedUrl + "\",\"links\":[]}\n", out.toString(UTF_8));
+        }
+    }
+}
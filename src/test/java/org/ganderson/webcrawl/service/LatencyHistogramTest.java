@@ -0,0 +1,73 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+@DisplayName("Test suite for LatencyHistogram")
+public class LatencyHistogramTest {
+
+    @DisplayName("When percentiles are read")
+    @Nested
+    public class PercentileTest {
+
+        @Test
+        @DisplayName(
+            "Given a uniform spread of latencies"
+                + " Then each percentile is within an eighth of its true value")
+        public void givenUniformLatencies_PercentilesAccurate() {
+            // Given
+            LatencyHistogram histogramUnderTest = new LatencyHistogram();
+
+            // When
+            for (int millis = 1; millis <= 1000; millis++) {
+                histogramUnderTest.record(Duration.ofMillis(millis));
+            }
+
+            // Then
+            for (int percentile : new int[] {1, 50, 90, 99, 100}) {
+                long expected = Duration.ofMillis(percentile * 10L).toNanos();
+                long actual = histogramUnderTest.getPercentileNanos(percentile);
+                assertTrue(actual >= expected && actual <= expected * 9 / 8, percentile + "th was " + actual);
+            }
+            assertEquals(1000, histogramUnderTest.getCount());
+            assertEquals(Duration.ofMillis(1000).toNanos(), histogramUnderTest.getMaxNanos());
+            assertEquals(Duration.ofMillis(500).toNanos() + 500_000, histogramUnderTest.getMeanNanos(), 1);
+        }
+
+        @Test
+        @DisplayName(
+            "Given nothing has been recorded"
+                + " Then every statistic is zero")
+        public void givenEmpty_Zero() {
+            // Given
+            LatencyHistogram histogramUnderTest = new LatencyHistogram();
+
+            // When / Then
+            assertEquals(0, histogramUnderTest.getPercentileNanos(99));
+            assertEquals(0, histogramUnderTest.getMeanNanos());
+            assertThrows(IllegalArgumentException.class, () -> histogramUnderTest.getPercentileNanos(101));
+        }
+
+        @Test
+        @DisplayName(
+            "Given values across the whole range"
+                + " Then every value falls in a bucket whose bounds contain it")
+        public void givenAnyValue_BucketContainsIt() {
+            for (long value : new long[] {0, 1, 7, 8, 9, 15, 16, 1000, 123_456_789, Long.MAX_VALUE}) {
+                int bucket = LatencyHistogram.bucketOf(value);
+                assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value, "Upper bound of " + value);
+                assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < value, "Lower bound " + value);
+            }
+        }
+    }
+}
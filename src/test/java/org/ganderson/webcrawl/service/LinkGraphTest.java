@@ -0,0 +1,106 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LinkGraph}.
+ */
+@DisplayName("Test suite for LinkGraph")
+public class LinkGraphTest {
+
+    @DisplayName("When the graph is queried")
+    @Nested
+    public class QueryTest {
+
+        @Test
+        @DisplayName(
+            "Given pages which link to each other"
+                + " Then each page's out-links and in-links are returned without duplicates")
+        public void givenPages_LinksReturned() {
+            // Given
+            LinkGraph graphUnderTest = new LinkGraph();
+
+            // When
+            graphUnderTest.addPage(page(0), List.of(page(0), page(1), page(2), page(1)));
+            graphUnderTest.addPage(page(1), List.of(page(0), page(3)));
+            graphUnderTest.addPage(page(2), List.of(page(3)));
+
+            // Then
+            assertEquals(List.of(page(0), page(1), page(2)), graphUnderTest.getOutLinks(page(0)));
+            assertEquals(List.of(page(0), page(3)), graphUnderTest.getOutLinks(page(1)));
+            assertEquals(List.of(), graphUnderTest.getOutLinks(page(3)));
+            assertEquals(List.of(page(0), page(1)), graphUnderTest.getInLinks(page(0)));
+            assertEquals(List.of(page(1), page(2)), graphUnderTest.getInLinks(page(3)));
+            assertEquals(4, graphUnderTest.getNodeCount());
+            assertEquals(6, graphUnderTest.getEdgeCount());
+            assertTrue(graphUnderTest.isVisited(page(2)));
+            assertFalse(graphUnderTest.isVisited(page(3)));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a chain of pages and a shortcut"
+                + " Then click depth is the shortest path from the first page added")
+        public void givenShortcut_ShortestClickDepth() {
+            // Given
+            LinkGraph graphUnderTest = new LinkGraph();
+            graphUnderTest.addPage(page(0), List.of(page(1)));
+            graphUnderTest.addPage(page(1), List.of(page(2)));
+            graphUnderTest.addPage(page(2), List.of(page(3)));
+            assertEquals(OptionalInt.of(3), graphUnderTest.getClickDepth(page(3)));
+
+            // When
+            graphUnderTest.addPage(page(1), List.of(page(2), page(3)));
+
+            // Then
+            assertEquals(OptionalInt.of(0), graphUnderTest.getClickDepth(page(0)));
+            assertEquals(OptionalInt.of(2), graphUnderTest.getClickDepth(page(3)));
+            assertEquals(OptionalInt.empty(), graphUnderTest.getClickDepth(page(4)));
+            assertEquals(4, graphUnderTest.getEdgeCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a large crawl-like graph"
+                + " Then it is stored in under two bytes per edge")
+        public void givenManyEdges_Compact() {
+            // Given
+            int pages = 50_000;
+            LinkGraph graphUnderTest = new LinkGraph();
+
+            // When
+            for (int i = 0; i < pages; i++) {
+                List<CrawlUrl> links = new ArrayList<>();
+                links.add(page(0));
+                for (int child = i * 4 + 1; child <= i * 4 + 4 && child < pages; child++) {
+                    links.add(page(child));
+                }
+                links.add(page(Math.max(0, i - 1)));
+                graphUnderTest.addPage(page(i), links);
+            }
+
+            // Then
+            assertEquals(pages, graphUnderTest.getNodeCount());
+            double bytesPerEdge = graphUnderTest.getEdgeBytes() / (double) graphUnderTest.getEdgeCount();
+            assertTrue(bytesPerEdge < 2, "Bytes per edge was " + bytesPerEdge);
+            // 49999 is reached through 12499, 3124, 780, 194, 48, 11 and 2
+            assertEquals(OptionalInt.of(8), graphUnderTest.getClickDepth(page(pages - 1)));
+            assertEquals(List.of(page(12499)), graphUnderTest.getInLinks(page(pages - 1)));
+            assertEquals(List.of(page(0), page(3)), graphUnderTest.getInLinks(page(2)));
+        }
+    }
+
+    private static CrawlUrl page(int i) {
+        return CrawlUrl.tryParse("http://some-host.com/page/" + i).orElseThrow();
+    }
+}
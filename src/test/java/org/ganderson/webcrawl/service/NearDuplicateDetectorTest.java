@@ -0,0 +1,157 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link NearDuplicateDetector}.
+ */
+@DisplayName("Test suite for NearDuplicateDetector")
+public class NearDuplicateDetectorTest {
+
+    private static final String ARTICLE =
+        "The quick brown fox jumps over the lazy dog while the farmer watches from the old wooden gate";
+
+    @DisplayName("When a page is checked")
+    @Nested
+    public class PageTest {
+
+        @Test
+        @DisplayName(
+            "Given the same text under different markup, case and punctuation"
+                + " Then the second page is a near duplicate")
+        public void givenSameText_NearDuplicate() {
+            // Given
+            NearDuplicateDetector detectorUnderTest = new NearDuplicateDetector(0);
+            detectorUnderTest.isNearDuplicate(Jsoup.parse("<html><body><p>" + ARTICLE + "</p></body></html>"));
+
+            // When
+            boolean result = detectorUnderTest.isNearDuplicate(Jsoup.parse(
+                "<html><head><title>Print view</title></head><body><div><b>"
+                    + ARTICLE.toUpperCase().replace(" THE ", ", THE ")
+                    + "!</b></div><a href=\"/other\"></a></body></html>"));
+
+            // Then
+            assertTrue(result);
+            assertEquals(1, detectorUnderTest.size());
+        }
+
+        @Test
+        @DisplayName(
+            "Given pages with different text"
+                + " Then neither is a near duplicate")
+        public void givenDifferentText_NotNearDuplicate() {
+            // Given
+            NearDuplicateDetector detectorUnderTest = new NearDuplicateDetector(3);
+            detectorUnderTest.isNearDuplicate(Jsoup.parse("<p>" + ARTICLE + "</p>"));
+
+            // When
+            boolean result = detectorUnderTest.isNearDuplicate(Jsoup.parse(
+                "<p>Pages about entirely different things share hardly any runs of three words with it</p>"));
+
+            // Then
+            assertFalse(result);
+            assertEquals(2, detectorUnderTest.size());
+        }
+
+        @Test
+        @DisplayName(
+            "Given pages with too little text to tell apart"
+                + " Then they are never near duplicates")
+        public void givenLittleText_NotNearDuplicate() {
+            // Given
+            NearDuplicateDetector detectorUnderTest = new NearDuplicateDetector(3);
+            detectorUnderTest.isNearDuplicate(Jsoup.parse("<a href=\"/a\">Home</a> <a href=\"/b\">About</a>"));
+
+            // When
+            boolean result =
+                detectorUnderTest.isNearDuplicate(Jsoup.parse("<a href=\"/c\">Home</a> <a href=\"/d\">About</a>"));
+
+            // Then
+            assertFalse(result);
+            assertEquals(0, detectorUnderTest.size());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a long page with one word added"
+                + " Then its fingerprint is within the max distance")
+        public void givenOneWordAdded_WithinMaxDistance() {
+            // Given
+            Random random = new Random(42);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                text.append("word").append(random.nextInt(2000)).append(' ');
+            }
+
+            // When
+            long original = NearDuplicateDetector.fingerprint(text);
+            long edited = NearDuplicateDetector.fingerprint(text.insert(text.length() / 2, "session "));
+
+            // Then
+            assertTrue(Long.bitCount(original ^ edited) <= NearDuplicateDetector.MAX_DISTANCE);
+        }
+    }
+
+    @DisplayName("When a fingerprint is checked")
+    @Nested
+    public class FingerprintTest {
+
+        @Test
+        @DisplayName(
+            "Given fingerprints differing in up to the max distance in any quarter"
+                + " Then they are near duplicates, and one further away is not")
+        public void givenDistances_OnlyThoseWithinMaxAreNearDuplicates() {
+            // Given
+            NearDuplicateDetector detectorUnderTest = new NearDuplicateDetector(3);
+            long fingerprint = 0x123456789abcdef0L;
+            detectorUnderTest.isNearDuplicate(fingerprint);
+
+            // When / Then
+            assertTrue(detectorUnderTest.isNearDuplicate(fingerprint ^ 0b111));
+            assertTrue(detectorUnderTest.isNearDuplicate(fingerprint ^ (1L | 1L << 20 | 1L << 63)));
+            assertFalse(detectorUnderTest.isNearDuplicate(fingerprint ^ (1L | 1L << 20 | 1L << 40 | 1L << 63)));
+        }
+
+        @Test
+        @DisplayName(
+            "Given more fingerprints than the initial capacity"
+                + " Then each is remembered")
+        public void givenManyFingerprints_AllRemembered() {
+            // Given
+            NearDuplicateDetector detectorUnderTest = new NearDuplicateDetector(3);
+            Random random = new Random(7);
+            long[] fingerprints = new long[5000];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = random.nextLong();
+                detectorUnderTest.isNearDuplicate(fingerprints[i]);
+            }
+
+            // When
+            int size = detectorUnderTest.size();
+
+            // Then
+            assertEquals(fingerprints.length, size);
+            for (long fingerprint : fingerprints) {
+                assertTrue(detectorUnderTest.isNearDuplicate(fingerprint));
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given a max distance beyond what the index can find"
+                + " Then an exception is thrown")
+        public void givenDistanceTooLarge_Throws() {
+            assertThrows(IllegalArgumentException.class, () -> new NearDuplicateDetector(4));
+        }
+    }
+}
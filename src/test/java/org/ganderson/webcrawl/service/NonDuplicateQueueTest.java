@@ -4,7 +4,17 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -25,27 +35,27 @@ public class NonDuplicateQueueTest {
         @Test
         @DisplayName(
             "Given a page which hasn't been visited before"
-                + " Then the URL is enqueued")
+                + " Then the CrawlUrl is enqueued")
         public void givenNewValue_OfferQueuesPage() throws Exception {
             // Given
-            URL unvisitedUrl = new URL("http://some-value/");
+            CrawlUrl unvisitedUrl = CrawlUrl.parse("http://some-value/");
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
             // When
             cacheUnderTest.offer(unvisitedUrl);
 
             // Then
-            URL polledValue = cacheUnderTest.poll();
+            CrawlUrl polledValue = cacheUnderTest.poll();
             assertEquals(unvisitedUrl, polledValue);
         }
 
         @Test
         @DisplayName(
             "Given a page which has been visited before"
-                + " Then the URL is not enqueued")
+                + " Then the CrawlUrl is not enqueued")
         public void givenVisitedValue_OfferDoesNotQueuePage() throws Exception {
             // Given
-            URL unvisitedUrl = new URL("http://some-value/");
+            CrawlUrl unvisitedUrl = CrawlUrl.parse("http://some-value/");
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
             // The page has previously been visited
@@ -65,10 +75,10 @@ public class NonDuplicateQueueTest {
         @DisplayName(
             "Given a page which has been visited before"
                 + " And is still on the queue"
-                + " Then the URL is not enqueued again")
+                + " Then the CrawlUrl is not enqueued again")
         public void givenVisitedValueAndCurrentlyInQueue_OfferDoesNotQueuePage() throws Exception {
             // Given
-            URL unvisitedUrl = new URL("http://some-value/");
+            CrawlUrl unvisitedUrl = CrawlUrl.parse("http://some-value/");
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
             // The page has previously been visited
@@ -81,6 +91,30 @@ public class NonDuplicateQueueTest {
             assertNotNull(cacheUnderTest.poll());
             assertNull(cacheUnderTest.poll());
         }
+
+        @Test
+        @DisplayName(
+            "Given a crawl budget"
+                + " Then only new pages within it are enqueued, singly or in a batch")
+        public void givenBudget_OnlyPagesWithinItQueued() throws Exception {
+            // Given
+            CrawlBudgetTracker tracker = new CrawlBudgetTracker(CrawlBudget.builder().maxPagesPerHost(2).build());
+            NonDuplicateQueue cacheUnderTest =
+                new NonDuplicateQueue(new ExactVisitedSet(), new InMemoryFrontierStore(), null, tracker);
+            CrawlUrl first = CrawlUrl.parse("http://some-value/");
+
+            // When
+            boolean firstQueued = cacheUnderTest.offer(first, null);
+            int batchQueued = cacheUnderTest.offerAll(
+                List.of(first, CrawlUrl.parse("http://some-value/a"), CrawlUrl.parse("http://some-value/b")),
+                first);
+
+            // Then
+            assertTrue(firstQueued);
+            assertEquals(1, batchQueued);
+            assertEquals(2, cacheUnderTest.size());
+            assertEquals(1, tracker.getRejectedCount());
+        }
     }
 
     @DisplayName("When isEmpty called")
@@ -111,7 +145,7 @@ public class NonDuplicateQueueTest {
 
             // Given
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
-            cacheUnderTest.offer(new URL("http://www.google.com"));
+            cacheUnderTest.offer(CrawlUrl.parse("http://www.google.com"));
 
             // When
             boolean result = cacheUnderTest.isEmpty();
@@ -135,7 +169,7 @@ public class NonDuplicateQueueTest {
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
             // When
-            URL result = cacheUnderTest.poll();
+            CrawlUrl result = cacheUnderTest.poll();
 
             // Then
             assertNull(result);
@@ -149,11 +183,11 @@ public class NonDuplicateQueueTest {
             // Given
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
-            URL urlOfInterest = new URL("http://some-value/");
-            cacheUnderTest.offer(new URL("http://some-value/"));
+            CrawlUrl urlOfInterest = CrawlUrl.parse("http://some-value/");
+            cacheUnderTest.offer(CrawlUrl.parse("http://some-value/"));
 
             // When
-            URL result = cacheUnderTest.poll();
+            CrawlUrl result = cacheUnderTest.poll();
 
             // Then
             assertEquals(urlOfInterest, result);
@@ -166,7 +200,7 @@ public class NonDuplicateQueueTest {
         public void givenQueuedValue_ValueDequeud() throws Exception {
             // Given
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
-            cacheUnderTest.offer(new URL("http://some-value/"));
+            cacheUnderTest.offer(CrawlUrl.parse("http://some-value/"));
 
             // When
             cacheUnderTest.poll();
@@ -182,8 +216,8 @@ public class NonDuplicateQueueTest {
         public void givenMultipleQueuedValues_ValueDequeud() throws Exception {
             // Given
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
-            cacheUnderTest.offer(new URL("http://some-value/"));
-            cacheUnderTest.offer(new URL("http://some-other-value/"));
+            cacheUnderTest.offer(CrawlUrl.parse("http://some-value/"));
+            cacheUnderTest.offer(CrawlUrl.parse("http://some-other-value/"));
 
             // When
             cacheUnderTest.poll();
@@ -194,6 +228,114 @@ public class NonDuplicateQueueTest {
         }
     }
 
+    @DisplayName("When poll with a timeout called")
+    @Nested
+    public class BlockingPollTest {
+
+        @Test
+        @DisplayName(
+            "Given no value enqueued"
+                + " Then null is returned once the timeout elapses")
+        public void givenNoQueuedValue_ReturnsNullAfterTimeout() throws Exception {
+            // Given
+            NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
+
+            // When
+            CrawlUrl result = cacheUnderTest.poll(10, TimeUnit.MILLISECONDS);
+
+            // Then
+            assertNull(result);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a value is offered while waiting"
+                + " Then that value is returned")
+        public void givenValueOfferedWhileWaiting_ReturnsThatValue() throws Exception {
+            // Given
+            NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
+            CrawlUrl urlOfInterest = CrawlUrl.parse("http://some-value/");
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+
+            try {
+                // When
+                Future<CrawlUrl> result = executor.submit(() -> cacheUnderTest.poll(10, TimeUnit.SECONDS));
+                cacheUnderTest.offer(urlOfInterest);
+
+                // Then
+                assertEquals(urlOfInterest, result.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @DisplayName("When used from multiple threads")
+    @Nested
+    public class ConcurrencyTest {
+
+        @Test
+        @DisplayName(
+            "Given many threads offering overlapping pages while others poll"
+                + " Then each page is queued exactly once")
+        public void givenConcurrentProducersAndConsumers_EachPageQueuedOnce() throws Exception {
+            // Given
+            int threads = 8;
+            int pages = 2_000;
+            NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
+            ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger accepted = new AtomicInteger();
+            Set<String> polled = ConcurrentHashMap.newKeySet();
+            AtomicInteger duplicatePolls = new AtomicInteger();
+            AtomicBoolean producersDone = new AtomicBoolean();
+
+            try {
+                List<Future<?>> producers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    producers.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < pages; i++) {
+                            if (cacheUnderTest.offer(CrawlUrl.parse("http://some-value/" + i))) {
+                                accepted.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+
+                for (int t = 0; t < threads; t++) {
+                    executor.submit(() -> {
+                        start.await();
+                        while (!producersDone.get() || !cacheUnderTest.isEmpty()) {
+                            CrawlUrl next = cacheUnderTest.poll(10, TimeUnit.MILLISECONDS);
+                            if (next != null && !polled.add(next.toString())) {
+                                duplicatePolls.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+
+                // When
+                start.countDown();
+                for (Future<?> producer : producers) {
+                    producer.get(30, TimeUnit.SECONDS);
+                }
+                producersDone.set(true);
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+                // Then
+                assertEquals(pages, accepted.get());
+                assertEquals(pages, polled.size());
+                assertEquals(0, duplicatePolls.get());
+                assertTrue(cacheUnderTest.isEmpty());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
 
     @DisplayName("End to end functional tests")
     @Nested
@@ -205,9 +347,9 @@ public class NonDuplicateQueueTest {
         public void endToEndTest() throws Exception {
             NonDuplicateQueue cacheUnderTest = new NonDuplicateQueue();
 
-            URL urlA = new URL("http://some-value/");
-            URL urlB = new URL("http://some-value/a");
-            URL urlC = new URL("http://some-value/a/b/");
+            CrawlUrl urlA = CrawlUrl.parse("http://some-value/");
+            CrawlUrl urlB = CrawlUrl.parse("http://some-value/a");
+            CrawlUrl urlC = CrawlUrl.parse("http://some-value/a/b/");
 
             // The queue is initially empty
             assertTrue(cacheUnderTest.isEmpty());
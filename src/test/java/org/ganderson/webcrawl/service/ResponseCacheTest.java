@@ -0,0 +1,141 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ResponseCache}.
+ */
+@DisplayName("Test suite for ResponseCache")
+public class ResponseCacheTest {
+
+    private static final CrawlUrl PAGE = CrawlUrl.tryParse("https://example.com/page").orElseThrow();
+
+    @TempDir
+    Path directory;
+
+    @DisplayName("When a page is cached")
+    @Nested
+    public class PutTest {
+
+        @Test
+        @DisplayName(
+            "Given a page with validators"
+                + " Then its validators and links are read back, also by a new cache on the same directory")
+        public void givenValidators_RoundTrip() {
+            // Given
+            List<CrawlUrl> links = List.of(
+                CrawlUrl.tryParse("https://example.com/a").orElseThrow(),
+                CrawlUrl.tryParse("https://b.com/").orElseThrow());
+
+            // When
+            new ResponseCache(directory).put(PAGE, "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT", links);
+            Optional<ResponseCache.Entry> result = new ResponseCache(directory).get(PAGE);
+
+            // Then
+            assertTrue(result.isPresent());
+            assertEquals("\"v1\"", result.get().getETag());
+            assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", result.get().getLastModified());
+            assertEquals(links, result.get().getLinks());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page with only an ETag"
+                + " Then the missing date is read back as null")
+        public void givenOnlyETag_DateNull() {
+            // Given
+            ResponseCache cacheUnderTest = new ResponseCache(directory);
+
+            // When
+            cacheUnderTest.put(PAGE, "\"v1\"", null, Collections.emptyList());
+
+            // Then
+            ResponseCache.Entry result = cacheUnderTest.get(PAGE).orElseThrow();
+            assertEquals("\"v1\"", result.getETag());
+            assertNull(result.getLastModified());
+            assertTrue(result.getLinks().isEmpty());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page is cached again"
+                + " Then the new entry replaces the old one and no temporary files are left")
+        public void givenCachedAgain_Replaced() throws Exception {
+            // Given
+            ResponseCache cacheUnderTest = new ResponseCache(directory);
+            cacheUnderTest.put(PAGE, "\"v1\"", null, List.of(CrawlUrl.tryParse("https://example.com/a").orElseThrow()));
+
+            // When
+            cacheUnderTest.put(PAGE, "\"v2\"", null, Collections.emptyList());
+
+            // Then
+            assertEquals("\"v2\"", cacheUnderTest.get(PAGE).orElseThrow().getETag());
+            try (Stream<Path> files = Files.walk(directory)) {
+                assertEquals(1, files.filter(Files::isRegularFile).count());
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page without validators"
+                + " Then it isn't cached")
+        public void givenNoValidators_NotCached() {
+            // Given
+            ResponseCache cacheUnderTest = new ResponseCache(directory);
+
+            // When
+            cacheUnderTest.put(PAGE, null, null, List.of(CrawlUrl.tryParse("https://example.com/a").orElseThrow()));
+
+            // Then
+            assertFalse(cacheUnderTest.get(PAGE).isPresent());
+        }
+    }
+
+    @DisplayName("When a page is looked up")
+    @Nested
+    public class GetTest {
+
+        @Test
+        @DisplayName(
+            "Given the page was never cached"
+                + " Then the result is empty")
+        public void givenNotCached_Empty() {
+            assertFalse(new ResponseCache(directory).get(PAGE).isPresent());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a corrupt entry"
+                + " Then the result is empty")
+        public void givenCorruptEntry_Empty() throws Exception {
+            // Given
+            ResponseCache cacheUnderTest = new ResponseCache(directory);
+            cacheUnderTest.put(PAGE, "\"v1\"", null, Collections.emptyList());
+            try (Stream<Path> files = Files.walk(directory)) {
+                Path entry = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+                Files.write(entry, new byte[] {1, 2});
+            }
+
+            // When
+            Optional<ResponseCache.Entry> result = cacheUnderTest.get(PAGE);
+
+            // Then
+            assertFalse(result.isPresent());
+        }
+    }
+}
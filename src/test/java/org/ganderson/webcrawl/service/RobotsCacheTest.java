@@ -0,0 +1,137 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RobotsCache}.
+ */
+@DisplayName("Test suite for RobotsCache")
+public class RobotsCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<String> requested = new ArrayList<>();
+    private final Map<String, Integer> statuses = new HashMap<>();
+
+    private final RobotsCache.Fetcher fetcher = robotsUrl -> {
+        requested.add(robotsUrl.toString());
+        int status = statuses.getOrDefault(robotsUrl.getHost(), 200);
+        if (status < 0) {
+            throw new IOException("Unreachable");
+        }
+        byte[] body = "User-agent: *\nDisallow: /private/\nCrawl-delay: 3\n".getBytes(StandardCharsets.UTF_8);
+        return new FetchedPage(robotsUrl, robotsUrl.toString(), status, "text/plain", body);
+    };
+
+    @DisplayName("When a page is checked")
+    @Nested
+    public class IsAllowedTest {
+
+        @Test
+        @DisplayName(
+            "Given several pages on a host"
+                + " Then its robots.txt is fetched once and its crawl-delay passed on")
+        public void givenSameHost_FetchedOnce() {
+            // Given
+            Map<String, Duration> delays = new HashMap<>();
+            RobotsCache cacheUnderTest = new RobotsCache(fetcher, Duration.ofHours(1), delays::put, clock::get);
+
+            // When
+            boolean first = cacheUnderTest.isAllowed(url("http://example.com/a"));
+            boolean second = cacheUnderTest.isAllowed(url("http://example.com/private/b"));
+
+            // Then
+            assertTrue(first);
+            assertFalse(second);
+            assertEquals(List.of("http://example.com/robots.txt"), requested);
+            assertEquals(Map.of("http://example.com:80", Duration.ofSeconds(3)), delays);
+            assertEquals(1, cacheUnderTest.getDisallowedCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given the rules have expired"
+                + " Then the robots.txt is fetched again")
+        public void givenExpired_FetchedAgain() {
+            // Given
+            RobotsCache cacheUnderTest = new RobotsCache(fetcher, Duration.ofHours(1), null, clock::get);
+            cacheUnderTest.isAllowed(url("http://example.com/a"));
+
+            // When
+            clock.set(Duration.ofHours(1).toNanos());
+            cacheUnderTest.isAllowed(url("http://example.com/a"));
+
+            // Then
+            assertEquals(2, cacheUnderTest.getFetchCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a missing robots.txt"
+                + " Then every page on the host is allowed")
+        public void givenMissing_AllAllowed() {
+            // Given
+            statuses.put("example.com", 404);
+            RobotsCache cacheUnderTest = new RobotsCache(fetcher, Duration.ofHours(1), null, clock::get);
+
+            // When / Then
+            assertTrue(cacheUnderTest.isAllowed(url("http://example.com/private/a")));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a server error or unreachable host"
+                + " Then every page is disallowed until the robots.txt is retried a few minutes later")
+        public void givenFailure_AllDisallowedUntilRetried() {
+            // Given
+            statuses.put("example.com", 503);
+            statuses.put("down.com", -1);
+            RobotsCache cacheUnderTest = new RobotsCache(fetcher, Duration.ofHours(1), null, clock::get);
+
+            // When
+            boolean serverError = cacheUnderTest.isAllowed(url("http://example.com/a"));
+            boolean unreachable = cacheUnderTest.isAllowed(url("http://down.com/a"));
+            statuses.clear();
+            clock.set(Duration.ofMinutes(5).toNanos());
+            boolean retried = cacheUnderTest.isAllowed(url("http://example.com/a"));
+
+            // Then
+            assertFalse(serverError);
+            assertFalse(unreachable);
+            assertTrue(retried);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page with an explicit port"
+                + " Then the robots.txt is fetched from the same port")
+        public void givenExplicitPort_SamePortUsed() {
+            // Given
+            RobotsCache cacheUnderTest = new RobotsCache(fetcher, Duration.ofHours(1), null, clock::get);
+
+            // When
+            cacheUnderTest.isAllowed(url("https://example.com:8443/a?b=c"));
+
+            // Then
+            assertEquals(List.of("https://example.com:8443/robots.txt"), requested);
+        }
+    }
+
+    private static CrawlUrl url(String value) {
+        return CrawlUrl.tryParse(value).orElseThrow();
+    }
+}
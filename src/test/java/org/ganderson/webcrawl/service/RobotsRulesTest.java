@@ -0,0 +1,140 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RobotsRules}.
+ */
+@DisplayName("Test suite for RobotsRules")
+public class RobotsRulesTest {
+
+    private static final String ROBOTS_TXT = String.join(
+        "\n",
+        "# A comment",
+        "User-agent: other-bot",
+        "Disallow: /",
+        "",
+        "User-agent: *",
+        "Disallow: /private/",
+        "Allow: /private/public/",
+        "Disallow: /*.pdf$",
+        "Disallow: /search?*sort=",
+        "Disallow: /exact$",
+        "Allow: /tie",
+        "Disallow: /tie",
+        "Crawl-delay: 2.5",
+        "Disallow:",
+        "Sitemap: https://example.com/sitemap.xml");
+
+    @DisplayName("When a path is checked")
+    @Nested
+    public class IsAllowedTest {
+
+        private final RobotsRules rulesUnderTest = RobotsRules.parse(ROBOTS_TXT, "webcrawler");
+
+        @ParameterizedTest
+        @CsvSource({
+            "/, true",
+            "/private/, false",
+            "/private/page, false",
+            "/private/public/page, true",
+            "/docs/report.pdf, false",
+            "/docs/report.pdf?download=1, true",
+            "/search?q=a, true",
+            "/search?q=a&sort=date, false",
+            "/exact, false",
+            "/exact/page, true",
+            "/tie, true"
+        })
+        @DisplayName(
+            "Given paths matching different rules"
+                + " Then the longest matching rule decides, with allow winning a tie")
+        public void givenPaths_LongestRuleDecides(String path, boolean expected) {
+            assertEquals(expected, rulesUnderTest.isAllowed(path));
+        }
+
+        @Test
+        @DisplayName(
+            "Given a URL without a path"
+                + " Then it is checked as the root path")
+        public void givenNoPath_CheckedAsRoot() {
+            assertTrue(rulesUnderTest.isAllowed(CrawlUrl.tryParse("http://example.com").orElseThrow()));
+        }
+    }
+
+    @DisplayName("When a robots.txt is parsed")
+    @Nested
+    public class ParseTest {
+
+        @Test
+        @DisplayName(
+            "Given a group for the crawler"
+                + " Then only that group is obeyed, matching the product token case-insensitively")
+        public void givenOwnGroup_OnlyItObeyed() {
+            // Given
+            String content = "User-agent: *\nDisallow: /\n\nUser-agent: WebCrawler\nUser-agent: other\nDisallow: /a\n";
+
+            // When
+            RobotsRules result = RobotsRules.parse(content, "webcrawler");
+
+            // Then
+            assertTrue(result.isAllowed("/b"));
+            assertFalse(result.isAllowed("/a"));
+            assertNull(result.getCrawlDelay());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a crawl-delay in the group obeyed"
+                + " Then it is kept")
+        public void givenCrawlDelay_Kept() {
+            assertEquals(Duration.ofMillis(2500), RobotsRules.parse(ROBOTS_TXT, "webcrawler").getCrawlDelay());
+        }
+
+        @Test
+        @DisplayName(
+            "Given sitemaps listed between the lines of a group"
+                + " Then they are kept in order without splitting the group")
+        public void givenSitemaps_KeptWithoutSplittingGroup() {
+            // Given
+            String content = "User-agent: other\nSitemap: https://example.com/a.xml\nUser-agent: *\nDisallow: /b\n"
+                + "Sitemap: https://example.com/b.xml.gz\n";
+
+            // When
+            RobotsRules result = RobotsRules.parse(content, "webcrawler");
+
+            // Then
+            assertEquals(List.of("https://example.com/a.xml", "https://example.com/b.xml.gz"), result.getSitemaps());
+            assertFalse(result.isAllowed("/b"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given no group applies"
+                + " Then everything is allowed")
+        public void givenNoGroup_AllAllowed() {
+            assertTrue(RobotsRules.parse("User-agent: other\nDisallow: /\n", "webcrawler").isAllowed("/"));
+        }
+
+        @Test
+        @DisplayName(
+            "Given the rules used for missing and unreachable robots.txt"
+                + " Then they allow and disallow everything")
+        public void givenFixedRules_AllowAndDisallowAll() {
+            assertTrue(RobotsRules.allowAll().isAllowed("/anything"));
+            assertFalse(RobotsRules.disallowAll().isAllowed("/anything"));
+        }
+    }
+}
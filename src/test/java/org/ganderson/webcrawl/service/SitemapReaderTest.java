@@ -0,0 +1,271 @@
+package org.ganderson.webcrawl.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SitemapReader}.
+ */
+@DisplayName("Test suite for SitemapReader")
+public class SitemapReaderTest {
+
+    private static final String NAMESPACE = "http://www.sitemaps.org/schemas/sitemap/0.9";
+
+    private final Map<String, byte[]> sitemaps = new HashMap<>();
+    private final List<String> opened = new ArrayList<>();
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private final SitemapReader.Opener opener = sitemapUrl -> {
+        opened.add(sitemapUrl.toString());
+        byte[] content = sitemaps.get(sitemapUrl.toString());
+        return content == null ? null : new ByteArrayInputStream(content);
+    };
+
+    @DisplayName("When a sitemap is read")
+    @Nested
+    public class ReadTest {
+
+        @Test
+        @DisplayName(
+            "Given a sitemap with more pages than a batch"
+                + " Then every page is handed on in order, a batch at a time")
+        public void givenManyPages_HandedOnInBatches() {
+            // Given
+            List<String> pages = IntStream.range(0, 5)
+                .mapToObj(i -> "http://example.com/" + i)
+                .collect(Collectors.toList());
+            sitemaps.put("http://example.com/sitemap.xml", urlset(pages).getBytes(UTF_8));
+            SitemapReader readerUnderTest = new SitemapReader(opener, 2);
+
+            // When
+            readerUnderTest.read(url("http://example.com/sitemap.xml"), batches::add);
+
+            // Then
+            assertEquals(List.of(pages.subList(0, 2), pages.subList(2, 4), pages.subList(4, 5)), batches);
+            assertEquals(5, readerUnderTest.getPageCount());
+            assertEquals(1, readerUnderTest.getSitemapCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a gzipped sitemap index listing gzipped sitemaps"
+                + " Then the pages of every sitemap are handed on, each sitemap read once")
+        public void givenGzippedIndex_EverySitemapRead() throws IOException {
+            // Given
+            sitemaps.put("http://example.com/index.xml.gz", gzip(index(
+                "http://example.com/a.xml.gz", "http://example.com/b.xml", "http://example.com/a.xml.gz")));
+            sitemaps.put("http://example.com/a.xml.gz", gzip(urlset(List.of("http://example.com/a"))));
+            sitemaps.put("http://example.com/b.xml", urlset(List.of("http://example.com/b")).getBytes(UTF_8));
+            SitemapReader readerUnderTest = new SitemapReader(opener);
+
+            // When
+            readerUnderTest.read(url("http://example.com/index.xml.gz"), batches::add);
+
+            // Then
+            assertEquals(List.of(List.of("http://example.com/a"), List.of("http://example.com/b")), batches);
+            assertEquals(
+                List.of("http://example.com/index.xml.gz", "http://example.com/a.xml.gz", "http://example.com/b.xml"),
+                opened);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a gzipped sitemap which was gzipped again in transit"
+                + " Then both layers are decompressed")
+        public void givenDoublyGzipped_Decompressed() throws IOException {
+            // Given
+            byte[] gzipped = gzip(urlset(List.of("http://example.com/a")));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(gzipped);
+            }
+            sitemaps.put("http://example.com/sitemap.xml.gz", out.toByteArray());
+
+            // When
+            new SitemapReader(opener).read(url("http://example.com/sitemap.xml.gz"), batches::add);
+
+            // Then
+            assertEquals(List.of(List.of("http://example.com/a")), batches);
+        }
+
+        @Test
+        @DisplayName(
+            "Given sitemap indexes which list each other"
+                + " Then they are only followed a couple of levels deep")
+        public void givenNestedIndexes_FollowedTwoLevels() {
+            // Given
+            for (int i = 0; i < 5; i++) {
+                sitemaps.put(
+                    "http://example.com/index" + i + ".xml",
+                    index("http://example.com/index" + (i + 1) + ".xml").getBytes(UTF_8));
+            }
+            SitemapReader readerUnderTest = new SitemapReader(opener);
+
+            // When
+            readerUnderTest.read(url("http://example.com/index0.xml"), batches::add);
+
+            // Then
+            assertEquals(3, opened.size());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a sitemap which is missing or broken part way"
+                + " Then it is skipped, keeping the pages read before the error")
+        public void givenBrokenSitemap_PagesBeforeErrorKept() {
+            // Given
+            String broken = urlset(List.of("http://example.com/a")).replace("</urlset>", "<url><loc>unclosed");
+            sitemaps.put("http://example.com/broken.xml", broken.getBytes(UTF_8));
+            SitemapReader readerUnderTest = new SitemapReader(opener, 10);
+
+            // When
+            readerUnderTest.read(url("http://example.com/missing.xml"), batches::add);
+            readerUnderTest.read(url("http://example.com/broken.xml"), batches::add);
+
+            // Then
+            assertEquals(List.of(List.of("http://example.com/a")), batches);
+            assertEquals(1, readerUnderTest.getSitemapCount());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a sitemap with a DTD declaring an external entity"
+                + " Then the entity is never read")
+        public void givenExternalEntity_NotRead() {
+            // Given
+            String xml = "<?xml version=\"1.0\"?><!DOCTYPE urlset [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>"
+                + "<urlset xmlns=\"" + NAMESPACE + "\"><url><loc>http://example.com/&secret;</loc></url></urlset>";
+            sitemaps.put("http://example.com/sitemap.xml", xml.getBytes(UTF_8));
+            SitemapReader readerUnderTest = new SitemapReader(opener);
+
+            // When
+            readerUnderTest.read(url("http://example.com/sitemap.xml"), batches::add);
+
+            // Then
+            assertEquals(List.of(), batches);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a sitemap index listing more sitemaps than the sitemap protocol allows"
+                + " Then only the first 50,000 are read")
+        public void givenIndexOverLimit_ExtraSitemapsIgnored() {
+            // Given
+            String[] children = IntStream.rangeClosed(0, SitemapReader.MAX_SITEMAPS_PER_INDEX)
+                .mapToObj(i -> "http://example.com/sitemap" + i + ".xml")
+                .toArray(String[]::new);
+            sitemaps.put("http://example.com/index.xml", index(children).getBytes(UTF_8));
+            SitemapReader readerUnderTest = new SitemapReader(opener);
+
+            // When
+            readerUnderTest.read(url("http://example.com/index.xml"), batches::add);
+
+            // Then
+            assertEquals(1 + SitemapReader.MAX_SITEMAPS_PER_INDEX, opened.size());
+            assertFalse(opened.contains(children[SitemapReader.MAX_SITEMAPS_PER_INDEX]));
+        }
+    }
+
+    @DisplayName("When a sitemap is downloaded")
+    @Nested
+    public class HttpOpenerTest {
+
+        @Test
+        @DisplayName(
+            "Given a server which stops sending a sitemap part way"
+                + " Then reading it fails once the read timeout has passed, keeping the pages read before")
+        public void givenStalledSitemap_TimesOut() throws Exception {
+            // Given
+            CountDownLatch released = new CountDownLatch(1);
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/sitemap.xml", exchange -> {
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(urlset(List.of("http://example.com/a")).replace("</urlset>", "").getBytes(UTF_8));
+                    body.flush();
+                    released.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            server.start();
+            SitemapReader readerUnderTest = new SitemapReader(
+                SitemapReader.httpOpener(Duration.ofSeconds(5), Duration.ofMillis(500)));
+
+            try {
+                // When
+                long start = System.nanoTime();
+                readerUnderTest.read(
+                    url("http://localhost:" + server.getAddress().getPort() + "/sitemap.xml"), batches::add);
+                long elapsed = System.nanoTime() - start;
+
+                // Then
+                assertEquals(List.of(List.of("http://example.com/a")), batches);
+                assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5), "Took " + elapsed + "ns");
+            } finally {
+                released.countDown();
+                server.stop(0);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName(
+        "Given a batch size which isn't positive"
+            + " Then an IllegalArgumentException is thrown")
+    public void givenNonPositiveBatchSize_Thrown() {
+        assertThrows(IllegalArgumentException.class, () -> new SitemapReader(opener, 0));
+    }
+
+    private static String urlset(List<String> pages) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><urlset xmlns=\"" + NAMESPACE + "\">"
+            + pages.stream()
+                .map(page -> "<url><loc> " + page + " </loc><lastmod>2024-01-01</lastmod></url>")
+                .collect(Collectors.joining("\n"))
+            + "</urlset>";
+    }
+
+    private static String index(String... sitemapUrls) {
+        StringBuilder xml = new StringBuilder("<sitemapindex xmlns=\"" + NAMESPACE + "\">");
+        for (String sitemapUrl : sitemapUrls) {
+            xml.append("<sitemap><loc>").append(sitemapUrl).append("</loc></sitemap>");
+        }
+        return xml.append("</sitemapindex>").toString();
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content.getBytes(UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static CrawlUrl url(String value) {
+        return CrawlUrl.tryParse(value).orElseThrow();
+    }
+}
@@ -0,0 +1,209 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SpillingFrontierStore}.
+ */
+@DisplayName("Test suite for SpillingFrontierStore")
+public class SpillingFrontierStoreTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    @DisplayName("When pages added and polled")
+    @Nested
+    public class OrderingTest {
+
+        @Test
+        @DisplayName(
+            "Given more pages than fit in memory"
+                + " Then pages are polled in the order they were added")
+        public void givenSpilledPages_PolledInOrder() throws Exception {
+            // Given
+            int pages = 5_000;
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 10, 1024);
+
+            // When
+            for (int i = 0; i < pages; i++) {
+                storeUnderTest.add(CrawlUrl.parse("http://some-value/" + i));
+            }
+
+            // Then
+            assertEquals(pages, storeUnderTest.size());
+            assertTrue(storeUnderTest.segmentFileCount() > 1);
+            for (int i = 0; i < pages; i++) {
+                assertEquals(CrawlUrl.parse("http://some-value/" + i), storeUnderTest.poll());
+            }
+            assertNull(storeUnderTest.poll());
+            assertTrue(storeUnderTest.isEmpty());
+        }
+
+        @Test
+        @DisplayName(
+            "Given adds and polls are interleaved while pages are spilled"
+                + " Then pages are still polled in the order they were added")
+        public void givenInterleavedAddsAndPolls_PolledInOrder() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 7, 1024);
+            int added = 0;
+            int polled = 0;
+
+            // When
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < 13; i++) {
+                    storeUnderTest.add(CrawlUrl.parse("http://some-value/" + added++));
+                }
+                for (int i = 0; i < 11; i++) {
+                    // Then
+                    assertEquals(CrawlUrl.parse("http://some-value/" + polled++), storeUnderTest.poll());
+                }
+            }
+
+            while (polled < added) {
+                assertEquals(CrawlUrl.parse("http://some-value/" + polled++), storeUnderTest.poll());
+            }
+            assertNull(storeUnderTest.poll());
+        }
+
+        @Test
+        @DisplayName(
+            "Given pages with URLs longer than a segment"
+                + " Then they are kept and polled in the order they were added")
+        public void givenUrlsLongerThanSegment_PolledInOrder() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 5, 1024);
+            String longPath = "x".repeat(2048);
+            List<CrawlUrl> pages = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                pages.add(CrawlUrl.parse("http://some-value/" + i + (i % 7 == 0 ? longPath : "")));
+            }
+
+            // When
+            pages.forEach(storeUnderTest::add);
+
+            // Then
+            assertEquals(pages.size(), storeUnderTest.size());
+            for (CrawlUrl page : pages) {
+                assertEquals(page, storeUnderTest.poll());
+            }
+            assertNull(storeUnderTest.poll());
+            assertTrue(storeUnderTest.isEmpty());
+        }
+    }
+
+    @DisplayName("When segments are consumed")
+    @Nested
+    public class RecyclingTest {
+
+        @Test
+        @DisplayName(
+            "Given pages are continually added and polled"
+                + " Then segment files are reused rather than created")
+        public void givenSteadyStateCrawl_SegmentsReused() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 10, 1024);
+            for (int i = 0; i < 500; i++) {
+                storeUnderTest.add(CrawlUrl.parse("http://some-value/" + i));
+            }
+            int initialSegments = storeUnderTest.segmentFileCount();
+
+            // When
+            for (int i = 500; i < 50_000; i++) {
+                storeUnderTest.add(CrawlUrl.parse("http://some-value/" + i));
+                storeUnderTest.poll();
+            }
+
+            // Then
+            assertTrue(storeUnderTest.segmentFileCount() <= initialSegments + 4);
+            assertEquals(storeUnderTest.segmentFileCount(), countSegmentFiles());
+        }
+
+        @Test
+        @DisplayName(
+            "Given the store is closed"
+                + " Then every segment file is deleted")
+        public void givenClosed_SegmentFilesDeleted() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 10, 1024);
+            for (int i = 0; i < 500; i++) {
+                storeUnderTest.add(CrawlUrl.parse("http://some-value/" + i));
+            }
+
+            // When
+            storeUnderTest.close();
+
+            // Then
+            assertEquals(0, countSegmentFiles());
+            assertTrue(storeUnderTest.isEmpty());
+        }
+
+        /**
+         * @return The number of files in the spill directory.
+         */
+        private long countSegmentFiles() throws Exception {
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                return files.count();
+            }
+        }
+    }
+
+    @DisplayName("When poll with a timeout called")
+    @Nested
+    public class BlockingPollTest {
+
+        @Test
+        @DisplayName(
+            "Given a page is added while waiting"
+                + " Then that page is returned")
+        public void givenPageAddedWhileWaiting_ReturnsThatPage() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 10, 1024);
+            CrawlUrl pageOfInterest = CrawlUrl.parse("http://some-value/");
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+
+            try {
+                // When
+                Future<CrawlUrl> result = executor.submit(() -> storeUnderTest.poll(10, TimeUnit.SECONDS));
+                storeUnderTest.add(pageOfInterest);
+
+                // Then
+                assertEquals(pageOfInterest, result.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given no page is added"
+                + " Then null is returned once the timeout elapses")
+        public void givenNoPage_ReturnsNull() throws Exception {
+            // Given
+            SpillingFrontierStore storeUnderTest = new SpillingFrontierStore(spillDirectory, 10, 1024);
+
+            // When
+            CrawlUrl result = storeUnderTest.poll(10, TimeUnit.MILLISECONDS);
+
+            // Then
+            assertNull(result);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.ganderson.webcrawl.service;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for {@link StreamingLinkExtractor}.
+ */
+@DisplayName("Test suite for StreamingLinkExtractor")
+public class StreamingLinkExtractorTest {
+
+    private static final String LOCATION = "http://my-domain.com/a/b";
+
+    @DisplayName("When links called")
+    @Nested
+    public class LinksTest {
+
+        @ParameterizedTest
+        @ValueSource(strings = {
+            "<a href=\"/x\">x</a><A HREF='y'>y</A><a href=z>z</a>",
+            "<a class=\"c\" href = \"/x\" data-href=\"/not-this\">x</a>",
+            "<a href=\"/x\" href=\"/second\">x</a>",
+            "<a href=\"/x?a=1&amp;b=2&lt;\">x</a><a href=\"/&#x79;&#122;\">yz</a>",
+            "<a href>empty</a><a name=\"no-href\">none</a>",
+            "<!-- <a href=\"/commented\"> --><a href=\"/x\">x</a><!--><a href=\"/y\">y</a>",
+            "<script>var s = '<a href=\"/script\">';</script><a href=\"/x\">x</a>",
+            "<script>document.write('</scr' + 'ipt>')</script><a href=\"/x\">x</a>",
+            "<STYLE>a[href=\"/style\"] {}</STYLE><a href=\"/x\">x</a>",
+            "<title><a href=\"/title\"></title><textarea><a href=\"/textarea\"></textarea><a href=\"/x\">x</a>",
+            "<!DOCTYPE html><?xml version=\"1.0\"?><a href=\"/x\">x</a> 1 < 2 <a href=\"/y\">y</a>",
+            "<abbr href=\"/abbr\">no</abbr><area href=\"/area\"><a\nhref\n=\n\"/x\"\n>x</a>",
+            "<base href=\"/base/\"><a href=\"x\">x</a><a href=\"../y\">y</a>",
+            "<base target=\"_top\"><base href=\"http://other-domain.com/c/\"><base href=\"/ignored/\">"
+                + "<a href=\"x\">x</a>",
+            "<a href=\"mailto:someone@my-domain.com\">mail</a><a href=\"javascript:void(0)\">js</a>",
+            "<a href=\"  /padded  \">x</a><a href=\"#fragment\">f</a><a href=\"?query\">q</a>",
+            "<a href=\"../../../x\">x</a><a href=\"//other-domain.com/y\">y</a><a href=\"/t\tab\">t</a>",
+            "<a href=\"HTTPS://My-Domain.com/x\">x</a><a href=\"tel:+44\">t</a><a href=\"a b|c\">s</a>",
+        })
+        @DisplayName(
+            "Given a page"
+                + " Then the links match those jsoup finds in the parsed document")
+        public void givenPage_SameLinksAsDocument(String html) {
+            // When
+            List<String> results = extract(new StringReader(html));
+
+            // Then
+            assertEquals(documentLinks(html), results);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page which is read a character at a time"
+                + " Then tags split across reads are still found")
+        public void givenOneCharacterReads_LinksFound() {
+            // Given
+            String html = "<html><head><base href=\"/base/\"><!-- a comment --></head>"
+                + "<body><script>'</script '</script><a href=\"x&amp;y\">x</a></body></html>";
+
+            // When
+            List<String> results = extract(new OneCharacterReader(new StringReader(html)));
+
+            // Then
+            assertEquals(Arrays.asList("http://my-domain.com/base/x&y"), results);
+            assertEquals(documentLinks(html), results);
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page larger than the read buffer"
+                + " Then every link is found")
+        public void givenLargePage_AllLinksFound() {
+            // Given
+            StringBuilder html = new StringBuilder("<html><body>");
+            for (int i = 0; i < 5_000; i++) {
+                html.append("<div class=\"item\"><a href=\"/page/").append(i).append("\">")
+                    .append(i)
+                    .append("</a></div>");
+            }
+            html.append("</body></html>");
+
+            // When
+            List<String> results = extract(new StringReader(html.toString()));
+
+            // Then
+            assertEquals(5_000, results.size());
+            assertEquals(documentLinks(html.toString()), results);
+        }
+    }
+
+    private static List<String> extract(Reader html) {
+        return new StreamingLinkExtractor(html, LOCATION).links().collect(Collectors.toList());
+    }
+
+    private static List<String> documentLinks(String html) {
+        return Jsoup.parse(html, LOCATION)
+            .select("a[href]")
+            .stream()
+            .map(anchor -> anchor.absUrl("href"))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Hands out a single character per read, as a slow network connection might.
+     */
+    private static class OneCharacterReader extends FilterReader {
+
+        OneCharacterReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.ganderson.webcrawl.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for {@link UrlCanonicalizer}.
+ */
+@DisplayName("Test suite for UrlCanonicalizer")
+public class UrlCanonicalizerTest {
+
+    @DisplayName("When canonicalize called with the default rules")
+    @Nested
+    public class DefaultRulesTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://site/a, http://site/a",
+            "http://site/a#top, http://site/a",
+            "HTTP://SITE:80/a, http://site/a",
+            "https://site:443/a, https://site/a",
+            "http://site:8080/a, http://site:8080/a",
+            "https://site:80/a, https://site:80/a",
+            "http://site/a/./b/../c, http://site/a/c",
+            "http://site/a/.., http://site/",
+            "http://site/../../a, http://site/a",
+            "http://site/a/.hidden, http://site/a/.hidden",
+            "http://site/%7euser/%2fpath, http://site/~user/%2Fpath",
+            "http://site/a?, http://site/a",
+            "http://site/a?b=2&a=1, http://site/a?b=2&a=1",
+            "http://site/a/, http://site/a/",
+            "http://user@site:80/a#b, http://user@site/a",
+            "HTTP://SITE:80, http://site/",
+            "http://site, http://site/",
+            "http://site/, http://site/",
+            "http://site?a=1, http://site/?a=1",
+        })
+        @DisplayName(
+            "Given a URL"
+                + " Then only the spelling is changed, never the page")
+        public void givenUrl_CanonicalFormReturned(String rawUrl, String expected) throws Exception {
+            // When
+            CrawlUrl result = UrlCanonicalizer.defaults().canonicalize(CrawlUrl.parse(rawUrl));
+
+            // Then
+            assertEquals(expected, result.toString());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a URL which is already canonical"
+                + " Then the same instance is returned")
+        public void givenCanonicalUrl_SameInstanceReturned() throws Exception {
+            // Given
+            CrawlUrl url = CrawlUrl.parse("http://site/a/b?c=d");
+
+            // When
+            CrawlUrl result = UrlCanonicalizer.defaults().canonicalize(url);
+
+            // Then
+            assertSame(url, result);
+        }
+    }
+
+    @DisplayName("When canonicalize called with opt-in rules")
+    @Nested
+    public class OptInRulesTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "http://site/a/, http://site/a",
+            "http://site/, http://site/",
+            "http://site//a///b, http://site/a/b",
+            "http://site/a?z=1&b=2&a=3, http://site/a?a=3&b=2&z=1",
+            "http://site/a?utm_source=x&id=1&utm_medium=y, http://site/a?id=1",
+            "http://site/a?sessionid=abc, http://site/a",
+        })
+        @DisplayName(
+            "Given every opt-in rule enabled"
+                + " Then the URL is rewritten accordingly")
+        public void givenOptInRules_UrlRewritten(String rawUrl, String expected) throws Exception {
+            // Given
+            UrlCanonicalizer canonicalizerUnderTest = UrlCanonicalizer.builder()
+                .removeTrailingSlash(true)
+                .collapseSlashes(true)
+                .sortQueryParameters(true)
+                .removeQueryParameters("utm_*", "sessionid")
+                .build();
+
+            // When
+            CrawlUrl result = canonicalizerUnderTest.canonicalize(CrawlUrl.parse(rawUrl));
+
+            // Then
+            assertEquals(expected, result.toString());
+        }
+
+        @Test
+        @DisplayName(
+            "Given a whitelist of query parameters"
+                + " Then every other parameter is dropped")
+        public void givenWhitelist_OtherParametersDropped() throws Exception {
+            // Given
+            UrlCanonicalizer canonicalizerUnderTest = UrlCanonicalizer.builder()
+                .keepOnlyQueryParameters("page", "id")
+                .build();
+
+            // When
+            CrawlUrl result = canonicalizerUnderTest.canonicalize(
+                CrawlUrl.parse("http://site/a?id=1&ref=home&page=2"));
+
+            // Then
+            assertEquals("http://site/a?id=1&page=2", result.toString());
+        }
+
+        @Test
+        @DisplayName(
+            "Given fragment removal disabled"
+                + " Then the fragment is kept")
+        public void givenFragmentRemovalDisabled_FragmentKept() throws Exception {
+            // Given
+            UrlCanonicalizer canonicalizerUnderTest = UrlCanonicalizer.builder().removeFragment(false).build();
+
+            // When
+            CrawlUrl result = canonicalizerUnderTest.canonicalize(CrawlUrl.parse("http://site:80/a#top"));
+
+            // Then
+            assertEquals("http://site/a#top", result.toString());
+        }
+    }
+}
@@ -1,23 +1,58 @@
 package org.ganderson.webcrawl.service;
 
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ganderson.webcrawl.synthetic.SyntheticSite;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
+import javax.management.ObjectName;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.ganderson.webcrawl.HtmlTestUtils.buildAnchorWithReferences;
+import static org.ganderson.webcrawl.HtmlTestUtils.buildHtmlWithReferences;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -26,33 +61,34 @@ import static org.junit.jupiter.api.Assertions.fail;
 @DisplayName("Test suite for WebCrawler")
 public class WebCrawlerTest {
 
-    private static final String HOMEPAGE_URL = "http://my-homepage.com";
-    private static final String A_URL = HOMEPAGE_URL + "/a";
-    private static final String B_URL = HOMEPAGE_URL + "/b";
-    private static final String C_URL = HOMEPAGE_URL + "/c";
-    private static final String AB_URL = HOMEPAGE_URL + "/a/b";
+    private static final String SITE_URL = "http://my-homepage.com";
+    private static final String HOMEPAGE_URL = SITE_URL + "/";
+    private static final String A_URL = SITE_URL + "/a";
+    private static final String B_URL = SITE_URL + "/b";
+    private static final String C_URL = SITE_URL + "/c";
+    private static final String AB_URL = SITE_URL + "/a/b";
     private static final Map<String, Document> pages = new HashMap<>();
 
     /**
      * This pags are setup as:
      * <p>
-     * http://my-homepage.com
+     * http://my-homepage.com/
      * - http://my-homepage.com/
      * - http://my-homepage.com/a
      * <p>
      * http://my-homepage.com/a
-     * - http://my-homepage.com
+     * - http://my-homepage.com/
      * - http://my-homepage.com/a/b
      * - http://my-homepage.com/b
      * <p>
      * http://my-homepage.com/b
-     * - http://my-homepage.com
+     * - http://my-homepage.com/
      * - http://my-homepage.com/a
      * - http://my-homepage.com/c
      * - http://my-homepage.com/a/b
      * <p>
      * http://my-homepage.com/c
-     * - http://my-homepage.com
+     * - http://my-homepage.com/
      * - http://my-homepage.com/a
      * - http://my-homepage.com/a
      * - http://off-domain/
@@ -78,7 +114,7 @@ public class WebCrawlerTest {
                     A_URL,
                     "http://off-domain.com",
                     AB_URL,
-                    HOMEPAGE_URL + "/another-page"));
+                    SITE_URL + "/another-page"));
             pages.put(AB_URL, buildAnchorWithReferences(new URL(AB_URL), "../a"));
         } catch (MalformedURLException e) {
             fail("Unable to setup pages for tests", e);
@@ -95,7 +131,7 @@ public class WebCrawlerTest {
             ByteArrayOutputStream out = new ByteArrayOutputStream();
             System.setOut(new PrintStream(out));
 
-            URL homepageUrl = new URL(HOMEPAGE_URL);
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
             WebCrawler crawlerUnderTest = new WebCrawler(
                 new PageScraper(homepageUrl),
                 WebCrawlerTest::getDocument,
@@ -107,22 +143,22 @@ public class WebCrawlerTest {
             // Then
             String lineSeperator = System.lineSeparator();
             assertEquals(
-                "http://my-homepage.com" + lineSeperator +
-                    "- http://my-homepage.com" + lineSeperator +
+                "http://my-homepage.com/" + lineSeperator +
+                    "- http://my-homepage.com/" + lineSeperator +
                     "- http://my-homepage.com/a" + lineSeperator +
                     "http://my-homepage.com/a" + lineSeperator +
-                    "- http://my-homepage.com" + lineSeperator +
+                    "- http://my-homepage.com/" + lineSeperator +
                     "- http://my-homepage.com/a/b" + lineSeperator +
                     "- http://my-homepage.com/b" + lineSeperator +
                     "http://my-homepage.com/a/b" + lineSeperator +
                     "- http://my-homepage.com/a" + lineSeperator +
                     "http://my-homepage.com/b" + lineSeperator +
-                    "- http://my-homepage.com" + lineSeperator +
+                    "- http://my-homepage.com/" + lineSeperator +
                     "- http://my-homepage.com/a" + lineSeperator +
                     "- http://my-homepage.com/c" + lineSeperator +
                     "- http://my-homepage.com/a/b" + lineSeperator +
                     "http://my-homepage.com/c" + lineSeperator +
-                    "- http://my-homepage.com" + lineSeperator +
+                    "- http://my-homepage.com/" + lineSeperator +
                     "- http://my-homepage.com/a" + lineSeperator +
                     "- http://my-homepage.com/a/b" + lineSeperator +
                     "- http://my-homepage.com/another-page" + lineSeperator +
@@ -131,13 +167,932 @@ public class WebCrawlerTest {
         }
     }
 
+    @DisplayName("Parallel crawl tests")
+    @Nested
+    public class ParallelCrawlTest {
+        @DisplayName(
+            "Given a parallelism greater than one"
+                + " Then every page is printed once along with its links")
+        @Test
+        public void givenParallelism_EachPagePrintedOnceWithLinks() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                WebCrawlerTest::getDocument,
+                homepageUrl,
+                CrawlConfig.builder().parallelism(4).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(expectedLinksByPage(), linksByPage(out.toString()));
+        }
+    }
+
+    @DisplayName("Pipelined crawl tests")
+    @Nested
+    public class PipelinedCrawlTest {
+        @DisplayName(
+            "Given a pipelined crawl"
+                + " Then every page is printed once along with its links")
+        @Test
+        public void givenPipeline_EachPagePrintedOnceWithLinks() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.PageFetcher) url -> getDocument(url).map(doc -> toFetchedPage(url, doc)),
+                homepageUrl,
+                CrawlConfig.builder().parallelism(3).parserThreads(2).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(expectedLinksByPage(), linksByPage(out.toString()));
+        }
+
+        @DisplayName(
+            "Given parsing is slower than fetching"
+                + " Then fetching is held back so only a bounded number of pages wait to be parsed")
+        @Test
+        public void givenSlowParser_FetchingHeldBack() throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            int pageCount = 300;
+            int fetchThreads = 4;
+            int parserThreads = 1;
+            AtomicInteger fetched = new AtomicInteger();
+            AtomicInteger parsed = new AtomicInteger();
+            AtomicInteger maxWaiting = new AtomicInteger();
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(SITE_URL + "/0");
+            PageScraper slowScraper = new PageScraper(CrawlUrl.parse(HOMEPAGE_URL)) {
+                @Override
+                public Stream<CrawlUrl> scrapeForLinks(Element document) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    parsed.incrementAndGet();
+                    return super.scrapeForLinks(document);
+                }
+            };
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                slowScraper,
+                (WebCrawler.PageFetcher) url -> {
+                    maxWaiting.accumulateAndGet(fetched.incrementAndGet() - parsed.get(), Math::max);
+                    int page = Integer.parseInt(url.getPath().substring(1));
+                    List<String> links = new ArrayList<>();
+                    for (int child = page * 2 + 1; child <= page * 2 + 2 && child < pageCount; child++) {
+                        links.add(SITE_URL + "/" + child);
+                    }
+                    return Optional.of(toFetchedPage(url, buildHtmlWithReferences(links.toArray(new String[0]))));
+                },
+                homepageUrl,
+                CrawlConfig.builder().parallelism(fetchThreads).parserThreads(parserThreads).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(pageCount, fetched.get());
+            assertEquals(pageCount, parsed.get());
+            // Fetching or fetched, waiting for a parser, and being parsed
+            int bound = fetchThreads + parserThreads * 2 + parserThreads;
+            assertTrue(maxWaiting.get() <= bound, "Max waiting was " + maxWaiting.get());
+        }
+    }
+
+    @DisplayName("Polite crawl tests")
+    @Nested
+    public class PoliteCrawlTest {
+        @DisplayName(
+            "Given politeness limits one page per host at a time"
+                + " Then every page is still visited but never more than one at once")
+        @Test
+        public void givenPoliteness_OnePageAtATime() throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            Set<CrawlUrl> visited = ConcurrentHashMap.newKeySet();
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                        visited.add(url);
+                        return getDocument(url);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return Optional.empty();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                },
+                homepageUrl,
+                CrawlConfig.builder().parallelism(4).politeness(Duration.ZERO, 1).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(6, visited.size());
+            assertEquals(1, maxInFlight.get());
+        }
+
+        @DisplayName(
+            "Given adaptive concurrency and pages which respond promptly"
+                + " Then every page is visited and the host's limit is raised")
+        @Test
+        public void givenAdaptiveConcurrency_LimitRaised() throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            Set<CrawlUrl> visited = ConcurrentHashMap.newKeySet();
+            AtomicReference<AdaptiveConcurrencyController> controller = new AtomicReference<>();
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    visited.add(url);
+                    controller.get().onResponse(url, 200, Duration.ofMillis(1));
+                    return getDocument(url);
+                },
+                homepageUrl,
+                CrawlConfig.builder().parallelism(4).adaptiveConcurrency(8).build());
+            controller.set(crawlerUnderTest.getConcurrencyController().orElseThrow());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(6, visited.size());
+            assertTrue(controller.get().getLimit(homepageUrl.getOrigin()) > 1);
+        }
+    }
+
+    @DisplayName("Asynchronous crawl tests")
+    @Nested
+    public class AsyncCrawlTest {
+        @DisplayName(
+            "Given an asynchronous parser whose pages complete on other threads"
+                + " Then every page is printed once along with its links")
+        @Test
+        public void givenAsyncParser_EachPagePrintedOnceWithLinks() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.AsyncDocumentParser) url -> CompletableFuture.supplyAsync(() -> getDocument(url)),
+                homepageUrl,
+                CrawlConfig.builder().parallelism(3).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            List<String> printedPages = new ArrayList<>();
+            for (String line : out.toString().split(System.lineSeparator())) {
+                if (!line.startsWith("- ")) {
+                    printedPages.add(line);
+                }
+            }
+            printedPages.sort(null);
+            assertEquals(
+                Arrays.asList(HOMEPAGE_URL, A_URL, AB_URL, SITE_URL + "/another-page", B_URL, C_URL),
+                printedPages);
+        }
+    }
+
+    @DisplayName("Result sink tests")
+    @Nested
+    public class ResultSinkTest {
+        @DisplayName(
+            "Given a parallel crawl writing an edge list asynchronously"
+                + " Then every page is written once along with its links by the time the crawl returns")
+        @Test
+        public void givenAsyncEdgeList_EachPageWrittenOnceWithLinks() throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            EdgeListResultSink sink = new EdgeListResultSink(out);
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                WebCrawlerTest::getDocument,
+                homepageUrl,
+                CrawlConfig.builder().parallelism(4).resultSink(sink).asyncResults(true).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            Map<String, List<String>> linksByPage = new HashMap<>();
+            EdgeListResultSink.read(
+                new ByteArrayInputStream(out.toByteArray()),
+                (page, links) -> assertEquals(null, linksByPage.put(page, links), "Page written more than once"));
+            assertEquals(expectedLinksByPage(), linksByPage);
+        }
+
+        @DisplayName(
+            "Given the link graph is kept"
+                + " Then it can be queried for the links between the crawled pages")
+        @Test
+        public void givenLinkGraph_Queryable() throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                WebCrawlerTest::getDocument,
+                homepageUrl,
+                CrawlConfig.builder().parallelism(2).linkGraph(true).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            LinkGraph graph = crawlerUnderTest.getLinkGraph().orElseThrow();
+            assertEquals(6, graph.getNodeCount());
+            assertEquals(
+                Set.of(CrawlUrl.parse(A_URL), CrawlUrl.parse(B_URL), CrawlUrl.parse(C_URL)),
+                new HashSet<>(graph.getInLinks(CrawlUrl.parse(AB_URL))));
+            assertEquals(OptionalInt.of(3), graph.getClickDepth(CrawlUrl.parse(C_URL)));
+        }
+    }
+
+    @DisplayName("Metrics tests")
+    @Nested
+    public class MetricsTest {
+        @DisplayName(
+            "Given metrics are enabled"
+                + " Then every page is counted and timed, and the metrics are only published while crawling")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenMetrics_PagesCountedAndTimed(int parallelism) throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            ObjectName name = new ObjectName(
+                "org.ganderson.webcrawl:type=CrawlMetrics,name=" + ObjectName.quote(homepageUrl.toString()));
+            AtomicReference<Boolean> publishedWhileCrawling = new AtomicReference<>(false);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    publishedWhileCrawling.set(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+                    return getDocument(url);
+                },
+                homepageUrl,
+                CrawlConfig.builder().parallelism(parallelism).metrics(Duration.ofMinutes(1)).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            CrawlMetrics metrics = crawlerUnderTest.getMetrics();
+            assertEquals(6, metrics.getPages());
+            // The page which couldn't be fetched has nothing to scrape
+            assertEquals(5, metrics.getHistogram(CrawlMetrics.Stage.SCRAPE).getCount());
+            assertEquals(6, metrics.getHistogram(CrawlMetrics.Stage.FRONTIER).getCount());
+            assertEquals(0, metrics.getFrontierSize());
+            assertEquals(6, metrics.getVisitedSetSize());
+            assertTrue(publishedWhileCrawling.get());
+            assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        }
+    }
+
+    @DisplayName("Resumed crawl tests")
+    @Nested
+    public class ResumeTest {
+        @TempDir
+        Path directory;
+
+        @DisplayName(
+            "Given a crawl which was interrupted part way through"
+                + " Then resuming it visits only the pages which weren't visited before")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenInterruptedCrawl_ResumedWithoutRevisiting(int parallelism) throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            Path checkpointFile = directory.resolve("crawl.journal");
+            CrawlConfig.Builder config = CrawlConfig.builder()
+                .parallelism(parallelism)
+                .checkpoint(checkpointFile, Duration.ofMinutes(1));
+
+            List<CrawlUrl> firstVisits = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger fetches = new AtomicInteger();
+            WebCrawler interrupted = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    if (fetches.incrementAndGet() > 2) {
+                        throw new IllegalStateException("Interrupted");
+                    }
+                    firstVisits.add(url);
+                    return getDocument(url);
+                },
+                homepageUrl,
+                config.build());
+            try {
+                interrupted.crawl();
+            } catch (IllegalStateException ex) {
+                // The sequential crawl stops at the first failure, the parallel crawl carries on without the page
+            }
+
+            // When
+            List<CrawlUrl> resumedVisits = Collections.synchronizedList(new ArrayList<>());
+            new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    resumedVisits.add(url);
+                    return getDocument(url);
+                },
+                homepageUrl,
+                config.resume(true).build()).crawl();
+
+            // Then
+            assertEquals(List.of(homepageUrl, CrawlUrl.parse(A_URL)), firstVisits);
+            assertFalse(resumedVisits.contains(homepageUrl));
+            assertFalse(resumedVisits.contains(CrawlUrl.parse(A_URL)));
+            assertEquals(new HashSet<>(resumedVisits).size(), resumedVisits.size());
+            assertTrue(resumedVisits.contains(CrawlUrl.parse(B_URL)));
+            assertTrue(resumedVisits.contains(CrawlUrl.parse(SITE_URL + "/another-page")));
+        }
+    }
+
+    @DisplayName("Response cache tests")
+    @Nested
+    public class ResponseCacheTest {
+        @TempDir
+        Path directory;
+
+        @DisplayName(
+            "Given a site is crawled again with a response cache"
+                + " Then unchanged pages are revalidated and their cached links reused without parsing them")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenRecrawl_CachedLinksReused(int parallelism) throws Exception {
+            // Given
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            CrawlConfig config = CrawlConfig.builder().parallelism(parallelism).responseCache(directory).build();
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.PageFetcher) url -> getDocument(url).map(doc -> toFetchedPage(url, doc, "\"v1\"")),
+                homepageUrl,
+                config).crawl();
+
+            AtomicInteger scraped = new AtomicInteger();
+            PageScraper countingScraper = new PageScraper(homepageUrl) {
+                @Override
+                public Stream<CrawlUrl> scrapeForLinks(Element document) {
+                    scraped.incrementAndGet();
+                    return super.scrapeForLinks(document);
+                }
+            };
+            WebCrawler.PageFetcher revalidatingFetcher = new WebCrawler.PageFetcher() {
+                @Override
+                public Optional<FetchedPage> fetchPage(CrawlUrl url) {
+                    return fail("Cached pages should be revalidated");
+                }
+
+                @Override
+                public Optional<FetchedPage> fetchPage(CrawlUrl url, ResponseCache.Entry cached) {
+                    if (cached != null && "\"v1\"".equals(cached.getETag())) {
+                        return Optional.of(FetchedPage.notModified(url));
+                    }
+                    return getDocument(url).map(doc -> toFetchedPage(url, doc, "\"v1\""));
+                }
+            };
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+            WebCrawler crawlerUnderTest = new WebCrawler(countingScraper, revalidatingFetcher, homepageUrl, config);
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(expectedLinksByPage(), linksByPage(out.toString()));
+            assertEquals(0, scraped.get());
+            // The page which couldn't be fetched was never cached
+            assertEquals(5, crawlerUnderTest.getMetrics().getNotModifiedPages());
+        }
+    }
+
+    @DisplayName("Near duplicate tests")
+    @Nested
+    public class NearDuplicateTest {
+        @DisplayName(
+            "Given two copies of a page under different URLs"
+                + " Then both are reported but only the links of the first are followed")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenDuplicatePage_LinksNotFollowed(int parallelism) throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+            String text = "<p>An article long enough to fingerprint, served both normally and as a print view</p>";
+            Map<String, String> site = new HashMap<>();
+            site.put(HOMEPAGE_URL, "<a href=\"/article\"></a>");
+            site.put(SITE_URL + "/article", text + "<a href=\"/print\"></a><a href=\"/more\"></a>");
+            site.put(SITE_URL + "/print", text + "<a href=\"/print/more\"></a>");
+            site.put(SITE_URL + "/more", "<p>More</p>");
+            site.put(SITE_URL + "/print/more", "<p>More</p>");
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> Optional.ofNullable(site.get(url.toString()))
+                    .map(html -> Jsoup.parse(html, url.toString())),
+                homepageUrl,
+                CrawlConfig.builder().parallelism(parallelism).nearDuplicateDistance(3).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            Map<String, List<String>> linksByPage = linksByPage(out.toString());
+            assertEquals(
+                Set.of(HOMEPAGE_URL, SITE_URL + "/article", SITE_URL + "/print", SITE_URL + "/more"),
+                linksByPage.keySet());
+            assertEquals(List.of(), linksByPage.get(SITE_URL + "/print"));
+            assertEquals(1, crawlerUnderTest.getMetrics().getNearDuplicatePages());
+        }
+    }
+
+    @DisplayName("Streaming extraction tests")
+    @Nested
+    public class StreamingExtractionTest {
+        @DisplayName(
+            "Given streaming extraction"
+                + " Then every kind of crawl finds the same links as parsing pages, without parsing any")
+        @ParameterizedTest
+        @CsvSource({"1, false, false", "3, false, false", "3, true, false", "3, false, true", "3, true, true"})
+        public void givenStreamingExtraction_SameLinksWithoutParsing(
+            int parallelism,
+            boolean asyncFetching,
+            boolean pipelined) throws Exception {
+            try (SyntheticSite site = SyntheticSite.builder().pageCount(300).fanOut(4).crossLinks(3).start()) {
+                // Given
+                CrawlUrl homepageUrl = CrawlUrl.parse(site.homePage());
+                CrawlConfig.Builder config = CrawlConfig.builder()
+                    .parallelism(parallelism)
+                    .asyncFetching(asyncFetching)
+                    .pipelined(pipelined);
+                ByteArrayOutputStream parsedOut = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(parsedOut));
+                new WebCrawler(homepageUrl, config.build()).crawl();
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(out));
+                WebCrawler crawlerUnderTest = new WebCrawler(homepageUrl, config.streamingExtraction(true).build());
+
+                // When
+                crawlerUnderTest.crawl();
+
+                // Then
+                Map<String, List<String>> linksByPage = linksByPage(out.toString());
+                assertEquals(site.pageCount(), linksByPage.size());
+                assertEquals(linksByPage(parsedOut.toString()), linksByPage);
+                CrawlMetrics metrics = crawlerUnderTest.getMetrics();
+                assertEquals(0, metrics.getHistogram(CrawlMetrics.Stage.PARSE).getCount());
+                assertEquals(site.pageCount(), metrics.getHistogram(CrawlMetrics.Stage.SCRAPE).getCount());
+            }
+        }
+    }
+
+    @DisplayName("Compression tests")
+    @Nested
+    public class CompressionTest {
+        @DisplayName(
+            "Given a server which sends zlib wrapped deflate whenever it is asked for"
+                + " Then pages fetched with jsoup are still read")
+        @Test
+        public void givenDeflateServer_PagesRead() throws Exception {
+            // Given
+            HttpServer server = startCompressingServer(false);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(out));
+                String homepage = "http://localhost:" + server.getAddress().getPort() + "/";
+                WebCrawler crawlerUnderTest = new WebCrawler(
+                    CrawlUrl.parse(homepage), CrawlConfig.builder().parallelism(1).build());
+
+                // When
+                crawlerUnderTest.crawl();
+
+                // Then
+                assertEquals(
+                    Map.of(homepage, List.of(homepage + "next"), homepage + "next", List.of()),
+                    linksByPage(out.toString()));
+                assertEquals(0, crawlerUnderTest.getMetrics().getErrorCount());
+            } finally {
+                server.stop(0);
+            }
+        }
+
+        @DisplayName(
+            "Given a server which sends zlib wrapped deflate without being asked for it"
+                + " Then the page is counted as an error rather than silently dropped")
+        @Test
+        public void givenUnaskedDeflate_CountedAsError() throws Exception {
+            // Given
+            HttpServer server = startCompressingServer(true);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(out));
+                String homepage = "http://localhost:" + server.getAddress().getPort() + "/";
+                WebCrawler crawlerUnderTest = new WebCrawler(
+                    CrawlUrl.parse(homepage), CrawlConfig.builder().parallelism(1).build());
+
+                // When
+                crawlerUnderTest.crawl();
+
+                // Then
+                assertEquals(1, crawlerUnderTest.getMetrics().getErrorCount());
+                assertEquals(Map.of("ZipException", 1L), crawlerUnderTest.getMetrics().getErrors());
+            } finally {
+                server.stop(0);
+            }
+        }
+
+        /**
+         * @param alwaysDeflate True to always send zlib wrapped deflate, false to send whichever of deflate, gzip or
+         *     no compression the request asks for first.
+         * @return A started server with a home page linking to "/next".
+         */
+        private HttpServer startCompressingServer(boolean alwaysDeflate) throws IOException {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", exchange -> {
+                String html = exchange.getRequestURI().getPath().equals("/")
+                    ? "<html><body><a href=\"/next\">next</a></body></html>"
+                    : "<html><body>The end</body></html>";
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                String encoding = alwaysDeflate || (accepted != null && accepted.contains("deflate"))
+                    ? "deflate"
+                    : accepted != null && accepted.contains("gzip") ? "gzip" : null;
+
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (OutputStream encoder = encoding == null
+                    ? body
+                    : encoding.equals("gzip") ? new GZIPOutputStream(body) : new DeflaterOutputStream(body)) {
+                    encoder.write(html.getBytes(UTF_8));
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                if (encoding != null) {
+                    exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                }
+                exchange.sendResponseHeaders(200, body.size());
+                try (OutputStream response = exchange.getResponseBody()) {
+                    body.writeTo(response);
+                }
+            });
+            server.start();
+            return server;
+        }
+    }
+
+    @DisplayName("Canonical seed tests")
+    @Nested
+    public class CanonicalSeedTest {
+        @DisplayName(
+            "Given a seed without a path and links to \"/\""
+                + " Then the home page is fetched once")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenSeedWithoutPath_HomepageFetchedOnce(int parallelism) throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl seedUrl = CrawlUrl.parse(SITE_URL);
+            List<CrawlUrl> visits = Collections.synchronizedList(new ArrayList<>());
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(seedUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    visits.add(url);
+                    return getDocument(url);
+                },
+                seedUrl,
+                CrawlConfig.builder().parallelism(parallelism).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(1, visits.stream().filter(url -> url.toString().equals(HOMEPAGE_URL)).count());
+            assertEquals(expectedLinksByPage().size(), visits.size());
+        }
+    }
+
+    @DisplayName("Crawl budget tests")
+    @Nested
+    public class BudgetTest {
+        @DisplayName(
+            "Given a max depth of one"
+                + " Then only the first page and the pages it links to are visited")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenMaxDepth_DeeperPagesNotVisited(int parallelism) throws Exception {
+            // Given
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(out));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            List<CrawlUrl> visits = Collections.synchronizedList(new ArrayList<>());
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    visits.add(url);
+                    return getDocument(url);
+                },
+                homepageUrl,
+                CrawlConfig.builder()
+                    .parallelism(parallelism)
+                    .budget(CrawlBudget.builder().maxDepth(1).build())
+                    .build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(Set.of(homepageUrl, CrawlUrl.parse(A_URL)), new HashSet<>(visits));
+            assertEquals(2, visits.size());
+            assertEquals(
+                Map.of("DEPTH", 2L),
+                crawlerUnderTest.getBudgetTracker().orElseThrow().getRejections());
+        }
+
+        @DisplayName(
+            "Given a pipelined crawl with a max depth of one"
+                + " Then only the first page and the pages it links to are fetched")
+        @Test
+        public void givenPipelinedMaxDepth_DeeperPagesNotFetched() throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            List<CrawlUrl> fetches = Collections.synchronizedList(new ArrayList<>());
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.PageFetcher) url -> {
+                    fetches.add(url);
+                    return getDocument(url).map(doc -> toFetchedPage(url, doc));
+                },
+                homepageUrl,
+                CrawlConfig.builder().parallelism(3).budget(CrawlBudget.builder().maxDepth(1).build()).build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(Set.of(homepageUrl, CrawlUrl.parse(A_URL)), new HashSet<>(fetches));
+            assertEquals(2, fetches.size());
+        }
+
+        @DisplayName(
+            "Given a max depth and a page first found along a path which is too long"
+                + " Then it is still visited once found along a shorter path, as in a sequential crawl")
+        @Test
+        public void givenMaxDepth_SameResultsInParallel() throws Exception {
+            // When
+            Set<String> sequential = crawlWithMaxDepth(1);
+            Set<String> parallel = crawlWithMaxDepth(4);
+
+            // Then
+            assertEquals(
+                Set.of(HOMEPAGE_URL, SITE_URL + "/slow", SITE_URL + "/fast", SITE_URL + "/fast/next",
+                    SITE_URL + "/target"),
+                sequential);
+            assertEquals(sequential, parallel);
+        }
+
+        /**
+         * Crawls a site with a max depth of two where "/target" is two links from the first page through a slow
+         * page, but found first three links away through fast ones when pages are visited in parallel.
+         *
+         * @return The pages which were visited.
+         */
+        private Set<String> crawlWithMaxDepth(int parallelism) throws Exception {
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            Map<String, String> site = new HashMap<>();
+            site.put(HOMEPAGE_URL, "<a href=\"/slow\"></a><a href=\"/fast\"></a>");
+            site.put(SITE_URL + "/slow", "<a href=\"/target\"></a>");
+            site.put(SITE_URL + "/fast", "<a href=\"/fast/next\"></a>");
+            site.put(SITE_URL + "/fast/next", "<a href=\"/target\"></a>");
+            site.put(SITE_URL + "/target", "<a href=\"/target/child\"></a>");
+            site.put(SITE_URL + "/target/child", "<p>Too deep</p>");
+
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            Set<String> visits = ConcurrentHashMap.newKeySet();
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    visits.add(url.toString());
+                    if (url.getPath().equals("/slow")) {
+                        try {
+                            Thread.sleep(300);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return Optional.ofNullable(site.get(url.toString()))
+                        .map(html -> Jsoup.parse(html, url.toString()));
+                },
+                homepageUrl,
+                CrawlConfig.builder()
+                    .parallelism(parallelism)
+                    .budget(CrawlBudget.builder().maxDepth(2).build())
+                    .build());
+
+            crawlerUnderTest.crawl();
+            return visits;
+        }
+    }
+
+    /**
+     * @param output The printed output of a crawl.
+     * @return The links printed for each page, failing if any page was printed more than once.
+     */
+    private static Map<String, List<String>> linksByPage(String output) {
+        Map<String, List<String>> linksByPage = new HashMap<>();
+        List<String> currentLinks = null;
+        for (String line : output.split(System.lineSeparator())) {
+            if (line.startsWith("- ")) {
+                currentLinks.add(line.substring(2));
+            } else {
+                assertFalse(linksByPage.containsKey(line), "Page printed more than once " + line);
+                currentLinks = new ArrayList<>();
+                linksByPage.put(line, currentLinks);
+            }
+        }
+        return linksByPage;
+    }
+
+    /**
+     * @return The links which should be printed for each of the test pages.
+     */
+    private static Map<String, List<String>> expectedLinksByPage() {
+        Map<String, List<String>> expected = new HashMap<>();
+        expected.put(HOMEPAGE_URL, Arrays.asList(HOMEPAGE_URL, A_URL));
+        expected.put(A_URL, Arrays.asList(HOMEPAGE_URL, AB_URL, B_URL));
+        expected.put(AB_URL, Arrays.asList(A_URL));
+        expected.put(B_URL, Arrays.asList(HOMEPAGE_URL, A_URL, C_URL, AB_URL));
+        expected.put(C_URL, Arrays.asList(HOMEPAGE_URL, A_URL, AB_URL, SITE_URL + "/another-page"));
+        expected.put(SITE_URL + "/another-page", new ArrayList<>());
+        return expected;
+    }
+
+    /**
+     * @param url The URL the page was fetched from.
+     * @param html The HTML of the page.
+     * @return The page as if it had been fetched.
+     */
+    private static FetchedPage toFetchedPage(CrawlUrl url, String html) {
+        return new FetchedPage(url, url.toString(), 200, "text/html; charset=UTF-8", html.getBytes(UTF_8));
+    }
+
+    /**
+     * @param url The URL the page was fetched from.
+     * @param doc The page.
+     * @return The page as if it had been fetched.
+     */
+    private static FetchedPage toFetchedPage(CrawlUrl url, Document doc) {
+        return toFetchedPage(url, doc.outerHtml());
+    }
+
+    /**
+     * @param url The URL the page was fetched from.
+     * @param doc The page.
+     * @param eTag The ETag of the page.
+     * @return The page as if it had been fetched with an ETag.
+     */
+    private static FetchedPage toFetchedPage(CrawlUrl url, Document doc, String eTag) {
+        return new FetchedPage(
+            url, url.toString(), 200, "text/html; charset=UTF-8", doc.outerHtml().getBytes(UTF_8), eTag, null);
+    }
+
+    @DisplayName("When robots.txt is obeyed")
+    @Nested
+    public class RobotsTest {
+        @DisplayName(
+            "Given a robots.txt disallowing a page"
+                + " Then the page, and the pages only it links to, are never fetched")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenDisallowedPage_NotFetched(int parallelism) throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            List<CrawlUrl> fetches = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger robotsFetches = new AtomicInteger();
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    fetches.add(url);
+                    return getDocument(url);
+                },
+                homepageUrl,
+                CrawlConfig.builder()
+                    .parallelism(parallelism)
+                    .robotsTxt(Duration.ofHours(1))
+                    .robotsFetcher(robotsUrl -> {
+                        robotsFetches.incrementAndGet();
+                        byte[] body = "User-agent: *\nDisallow: /b\n".getBytes(UTF_8);
+                        return new FetchedPage(robotsUrl, robotsUrl.toString(), 200, "text/plain", body);
+                    })
+                    .build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            assertEquals(
+                Set.of(homepageUrl, CrawlUrl.parse(A_URL), CrawlUrl.parse(AB_URL)),
+                new HashSet<>(fetches));
+            assertEquals(3, fetches.size());
+            assertEquals(1, robotsFetches.get());
+            assertTrue(crawlerUnderTest.getRobotsCache().orElseThrow().getDisallowedCount() > 0);
+        }
+    }
+
+    @DisplayName("When the crawl is seeded from sitemaps")
+    @Nested
+    public class SitemapTest {
+        @DisplayName(
+            "Given sitemaps listed by robots.txt and at the default location"
+                + " Then their pages in scope are visited along with those linked")
+        @ParameterizedTest
+        @ValueSource(ints = {1, 3})
+        public void givenSitemaps_PagesVisited(int parallelism) throws Exception {
+            // Given
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            CrawlUrl homepageUrl = CrawlUrl.parse(HOMEPAGE_URL);
+            String orphanUrl = SITE_URL + "/orphan";
+            String listedUrl = SITE_URL + "/listed";
+            String anotherUrl = SITE_URL + "/another-page";
+            Map<String, String> sitemaps = Map.of(
+                SITE_URL + "/sitemap.xml",
+                "<urlset><url><loc>" + orphanUrl + "</loc></url><url><loc>http://other.com/x</loc></url></urlset>",
+                SITE_URL + "/listed.xml",
+                "<urlset><url><loc>" + listedUrl + "</loc></url><url><loc>" + C_URL + "</loc></url></urlset>");
+            List<CrawlUrl> fetches = Collections.synchronizedList(new ArrayList<>());
+            WebCrawler crawlerUnderTest = new WebCrawler(
+                new PageScraper(homepageUrl),
+                (WebCrawler.DocumentParser) url -> {
+                    fetches.add(url);
+                    return getDocument(url);
+                },
+                homepageUrl,
+                CrawlConfig.builder()
+                    .parallelism(parallelism)
+                    .robotsTxt(Duration.ofHours(1))
+                    .robotsFetcher(robotsUrl -> {
+                        byte[] body = ("Sitemap: " + SITE_URL + "/listed.xml\n").getBytes(UTF_8);
+                        return new FetchedPage(robotsUrl, robotsUrl.toString(), 200, "text/plain", body);
+                    })
+                    .sitemaps(true)
+                    .sitemapOpener(sitemapUrl -> Optional.ofNullable(sitemaps.get(sitemapUrl.toString()))
+                        .map(content -> new ByteArrayInputStream(content.getBytes(UTF_8)))
+                        .orElse(null))
+                    .build());
+
+            // When
+            crawlerUnderTest.crawl();
+
+            // Then
+            Set<CrawlUrl> expected = new HashSet<>();
+            for (String page : List.of(HOMEPAGE_URL, A_URL, B_URL, C_URL, AB_URL, anotherUrl, orphanUrl, listedUrl)) {
+                expected.add(CrawlUrl.parse(page));
+            }
+            assertEquals(expected, new HashSet<>(fetches));
+            assertEquals(expected.size(), fetches.size());
+            assertEquals(4, crawlerUnderTest.getSitemapReader().orElseThrow().getPageCount());
+            assertEquals(2, crawlerUnderTest.getSitemapReader().orElseThrow().getSitemapCount());
+        }
+    }
+
     /**
      * Simple mock of our getDocument function.
      *
      * @param url The url of the document to get.
      * @return An associated mock, or empty if none exist.
      */
-    private static Optional<Document> getDocument(URL url) {
+    private static Optional<Document> getDocument(CrawlUrl url) {
         return Optional.ofNullable(pages.get(url.toString()));
     }
 }
@@ -0,0 +1,531 @@
+package org.ganderson.webcrawl.synthetic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A website generated on the fly and served from this process, for testing the crawler against sites far larger
+ * than could be mocked by hand without touching the network.
+ *
+ * <p>
+ * Pages are numbered from 0, the home page at "/", with page {@code i} at "/p/{i}". They form a tree, breadth
+ * first, where each page links to up to {@code fanOut} children, so every page is reachable from the home page.
+ * Once the tree is {@code maxDepth} levels deep the deepest level takes all of the remaining pages. Each page also
+ * has a number of cross links, which point to nearby pages with a probability of {@code locality} and to any page
+ * on the site otherwise, so most links found during a crawl are to pages which have already been seen.
+ * </p>
+ *
+ * <p>
+ * Everything about a page, from its links to whether it fails, is derived from the seed and its number, so a site
+ * with a million pages uses no more memory than one with ten and every request for a page gets the same response.
+ * Only the latency, drawn from a log-normal distribution, varies between requests. Delayed responses are sent from
+ * a scheduler rather than holding a server thread.
+ * </p>
+ */
+public class SyntheticSite implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticSite.class);
+    private static final String PAGE_PREFIX = "/p/";
+
+    /**
+     * The z-score of the 99th percentile of a normal distribution.
+     */
+    private static final double Z_99 = 2.326;
+
+    private static final String FILLER = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod "
+        + "tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation. ";
+
+    static {
+        // Otherwise the headers and body go out as separate packets and each response waits on a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final int pageCount;
+    private final int fanOut;
+    private final int crossLinks;
+    private final double locality;
+    private final int pageBytes;
+    private final double medianLatencyMillis;
+    private final double latencySigma;
+    private final double errorRate;
+    private final long seed;
+
+    /**
+     * The index of the first page on each level of the tree, followed by the page count.
+     */
+    private final int[] levelStarts;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final SplittableRandom latencyRandom;
+
+    /**
+     * @param builder The builder holding the shape of the site.
+     * @throws IOException If the server couldn't be started.
+     */
+    private SyntheticSite(Builder builder) throws IOException {
+        this.pageCount = builder.pageCount;
+        this.fanOut = builder.fanOut;
+        this.crossLinks = builder.crossLinks;
+        this.locality = builder.locality;
+        this.pageBytes = builder.pageBytes;
+        this.medianLatencyMillis = builder.medianLatency.toNanos() / 1e6;
+        this.latencySigma = builder.medianLatency.isZero()
+            ? 0
+            : Math.log((double) builder.p99Latency.toNanos() / builder.medianLatency.toNanos()) / Z_99;
+        this.errorRate = builder.errorRate;
+        this.seed = builder.seed;
+        this.levelStarts = levelStarts(builder.pageCount, builder.fanOut, builder.maxDepth);
+        this.latencyRandom = new SplittableRandom(builder.seed);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+            builder.serverThreads,
+            runnable -> daemon(runnable, "synthetic-site-" + threadCount.incrementAndGet()));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> daemon(runnable, "synthetic-site-latency"));
+        this.server = HttpServer.create(new InetSocketAddress("localhost", builder.port), 1024);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * @return A new builder, initialised with a small, fast and error free site.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The URL of the home page, e.g. "http://localhost:1234/".
+     */
+    public String homePage() {
+        return "http://localhost:" + this.server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * @param page The number of the page.
+     * @return The full URL of the page.
+     */
+    public String urlOf(int page) {
+        return "http://localhost:" + this.server.getAddress().getPort() + pathOf(page);
+    }
+
+    /**
+     * @return The number of pages on the site.
+     */
+    public int pageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * @return The number of levels in the tree of pages, including the home page.
+     */
+    public int depth() {
+        return this.levelStarts.length - 1;
+    }
+
+    /**
+     * @return The number of requests served so far, including those for pages which don't exist.
+     */
+    public long requestCount() {
+        return this.requestCount.get();
+    }
+
+    /**
+     * @param page The number of the page.
+     * @return True if requests for the page fail with a server error. The home page never fails.
+     */
+    public boolean isError(int page) {
+        return page != 0 && this.errorRate > 0 && randomFor(page, 0xE44L).nextDouble() < this.errorRate;
+    }
+
+    /**
+     * Gives the pages a page links to, in the order they appear on the page, which may include duplicates.
+     *
+     * @param page The number of the page.
+     * @return The numbers of the pages linked to, children first and then cross links.
+     */
+    public int[] linksOf(int page) {
+        int level = levelOf(page);
+        int childStart = 0;
+        int childEnd = 0;
+        if (level + 1 < depth()) {
+            long parentsOnLevel = this.levelStarts[level + 1] - this.levelStarts[level];
+            long childrenOnLevel = this.levelStarts[level + 2] - this.levelStarts[level + 1];
+            long indexOnLevel = page - this.levelStarts[level];
+            childStart = this.levelStarts[level + 1] + (int) (indexOnLevel * childrenOnLevel / parentsOnLevel);
+            childEnd = this.levelStarts[level + 1] + (int) ((indexOnLevel + 1) * childrenOnLevel / parentsOnLevel);
+        }
+
+        int[] links = new int[childEnd - childStart + this.crossLinks];
+        int count = 0;
+        for (int child = childStart; child < childEnd; child++) {
+            links[count++] = child;
+        }
+
+        SplittableRandom random = randomFor(page, 0x11AL);
+        int window = Math.max(16, this.fanOut * this.fanOut);
+        for (int i = 0; i < this.crossLinks; i++) {
+            if (random.nextDouble() < this.locality) {
+                int offset = random.nextInt(2 * window + 1) - window;
+                links[count++] = Math.floorMod(page + offset, this.pageCount);
+            } else {
+                links[count++] = random.nextInt(this.pageCount);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Renders a page, padded with text until it is at least the configured size.
+     *
+     * @param page The number of the page.
+     * @return The HTML of the page.
+     */
+    public String render(int page) {
+        int[] links = linksOf(page);
+        StringBuilder html = new StringBuilder(Math.max(this.pageBytes, links.length * 48) + 256);
+        html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n<meta charset=\"utf-8\">\n<title>Page ")
+            .append(page)
+            .append("</title>\n</head>\n<body>\n<h1>Page ")
+            .append(page)
+            .append("</h1>\n<ul>\n");
+        for (int link : links) {
+            html.append("<li><a href=\"").append(pathOf(link)).append("\">Page ").append(link).append("</a></li>\n");
+        }
+        html.append("</ul>\n");
+
+        while (html.length() < this.pageBytes) {
+            html.append("<p>").append(FILLER).append("</p>\n");
+        }
+        return html.append("</body>\n</html>\n").toString();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.scheduler.shutdownNow();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Works out the page requested and sends it, after the latency for this request if there is one.
+     *
+     * @param exchange The request.
+     */
+    private void handle(HttpExchange exchange) {
+        this.requestCount.incrementAndGet();
+        int page = pageOf(exchange.getRequestURI().getPath());
+
+        long delayMicros = sampleLatencyMicros();
+        if (delayMicros <= 0) {
+            respond(exchange, page);
+        } else {
+            this.scheduler.schedule(
+                () -> this.executor.execute(() -> respond(exchange, page)),
+                delayMicros,
+                TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * @param exchange The request.
+     * @param page The number of the page requested, or -1 if it doesn't exist.
+     */
+    private void respond(HttpExchange exchange, int page) {
+        try (OutputStream body = exchange.getResponseBody()) {
+            if (page < 0) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (isError(page)) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                byte[] html = render(page).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, html.length);
+                body.write(html);
+            }
+        } catch (IOException ex) {
+            logger.debug("Unable to respond to [{}].", exchange.getRequestURI(), ex);
+        }
+    }
+
+    /**
+     * @return The latency for a request, or zero if responses should be sent immediately.
+     */
+    private long sampleLatencyMicros() {
+        if (this.medianLatencyMillis <= 0) {
+            return 0;
+        }
+        double gaussian;
+        synchronized (this.latencyRandom) {
+            // Box-Muller, as SplittableRandom has no nextGaussian
+            gaussian = Math.sqrt(-2 * Math.log(1 - this.latencyRandom.nextDouble()))
+                * Math.cos(2 * Math.PI * this.latencyRandom.nextDouble());
+        }
+        return (long) (this.medianLatencyMillis * Math.exp(this.latencySigma * gaussian) * 1000);
+    }
+
+    /**
+     * @param path The path requested.
+     * @return The number of the page, or -1 if the path isn't a page on this site.
+     */
+    private int pageOf(String path) {
+        if ("/".equals(path)) {
+            return 0;
+        }
+        if (!path.startsWith(PAGE_PREFIX)) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(path.substring(PAGE_PREFIX.length()));
+            return page > 0 && page < this.pageCount ? page : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param page The number of the page.
+     * @return The level of the tree the page is on, where the home page is on level 0.
+     */
+    private int levelOf(int page) {
+        int level = 0;
+        while (this.levelStarts[level + 1] <= page) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @param page The number of the page.
+     * @param purpose Distinguishes the random numbers used for different properties of the same page.
+     * @return A generator which gives the same numbers every time for the same page and purpose.
+     */
+    private SplittableRandom randomFor(int page, long purpose) {
+        return new SplittableRandom(this.seed ^ (page * 0x9E3779B97F4A7C15L) ^ (purpose << 48));
+    }
+
+    private static String pathOf(int page) {
+        return page == 0 ? "/" : PAGE_PREFIX + page;
+    }
+
+    /**
+     * @param pageCount The number of pages.
+     * @param fanOut The number of children of each page.
+     * @param maxDepth The maximum number of levels.
+     * @return The index of the first page on each level, followed by the page count.
+     */
+    private static int[] levelStarts(int pageCount, int fanOut, int maxDepth) {
+        int[] starts = new int[8];
+        int levels = 0;
+        long start = 0;
+        long size = 1;
+        while (start < pageCount) {
+            if (levels + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[levels++] = (int) start;
+            start += size;
+            size = levels == maxDepth - 1 ? pageCount : Math.min(size * fanOut, pageCount);
+        }
+        starts[levels] = pageCount;
+        return Arrays.copyOf(starts, levels + 1);
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Builder for {@link SyntheticSite}.
+     */
+    public static class Builder {
+
+        private int pageCount = 1_000;
+        private int fanOut = 10;
+        private int maxDepth = Integer.MAX_VALUE;
+        private int crossLinks = 5;
+        private double locality = 0.8;
+        private int pageBytes = 0;
+        private Duration medianLatency = Duration.ZERO;
+        private Duration p99Latency = Duration.ZERO;
+        private double errorRate = 0;
+        private long seed = 42;
+        private int serverThreads = 16;
+        private int port = 0;
+
+        /**
+         * Hidden, use {@link SyntheticSite#builder()}.
+         */
+        private Builder() {
+            // No op
+        }
+
+        /**
+         * @param pageCount The number of pages on the site, at least 1.
+         * @return This builder.
+         */
+        public Builder pageCount(int pageCount) {
+            if (pageCount < 1) {
+                throw new IllegalArgumentException("Page count must be at least 1 but was " + pageCount);
+            }
+            this.pageCount = pageCount;
+            return this;
+        }
+
+        /**
+         * @param fanOut The number of child pages each page links to, at least 1.
+         * @return This builder.
+         */
+        public Builder fanOut(int fanOut) {
+            if (fanOut < 1) {
+                throw new IllegalArgumentException("Fan out must be at least 1 but was " + fanOut);
+            }
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * @param maxDepth The maximum number of levels in the tree of pages, including the home page. The deepest
+         *     level takes every page which doesn't fit on the levels above, so must be at least 2 unless the site only
+         *     has one page.
+         * @return This builder.
+         */
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth < 2) {
+                throw new IllegalArgumentException("Max depth must be at least 2 but was " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * @param crossLinks The number of links on each page in addition to those to its children.
+         * @return This builder.
+         */
+        public Builder crossLinks(int crossLinks) {
+            if (crossLinks < 0) {
+                throw new IllegalArgumentException("Cross links must not be negative but was " + crossLinks);
+            }
+            this.crossLinks = crossLinks;
+            return this;
+        }
+
+        /**
+         * @param locality The probability, from 0 to 1, that a cross link points to a page near the page it is on
+         *     rather than anywhere on the site.
+         * @return This builder.
+         */
+        public Builder locality(double locality) {
+            if (locality < 0 || locality > 1) {
+                throw new IllegalArgumentException("Locality must be between 0 and 1 but was " + locality);
+            }
+            this.locality = locality;
+            return this;
+        }
+
+        /**
+         * @param pageBytes The minimum size of each page, which is padded with text to reach it.
+         * @return This builder.
+         */
+        public Builder pageBytes(int pageBytes) {
+            if (pageBytes < 0) {
+                throw new IllegalArgumentException("Page size must not be negative but was " + pageBytes);
+            }
+            this.pageBytes = pageBytes;
+            return this;
+        }
+
+        /**
+         * Delays each response by a latency drawn from a log-normal distribution, as real response times have a
+         * long tail.
+         *
+         * @param median The median latency.
+         * @param p99 The 99th percentile latency, at least the median. Equal to the median for a fixed latency.
+         * @return This builder.
+         */
+        public Builder latency(Duration median, Duration p99) {
+            if (median.isNegative() || p99.compareTo(median) < 0) {
+                throw new IllegalArgumentException(
+                    "Latency must satisfy 0 <= median <= p99 but was " + median + " and " + p99);
+            }
+            this.medianLatency = median;
+            this.p99Latency = p99;
+            return this;
+        }
+
+        /**
+         * @param errorRate The fraction of pages, from 0 to 1, which fail with a server error on every request.
+         * @return This builder.
+         */
+        public Builder errorRate(double errorRate) {
+            if (errorRate < 0 || errorRate > 1) {
+                throw new IllegalArgumentException("Error rate must be between 0 and 1 but was " + errorRate);
+            }
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param seed The seed from which every page is generated, so the same seed always gives the same site.
+         * @return This builder.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param serverThreads The number of threads rendering and sending pages.
+         * @return This builder.
+         */
+        public Builder serverThreads(int serverThreads) {
+            if (serverThreads < 1) {
+                throw new IllegalArgumentException("Server threads must be at least 1 but was " + serverThreads);
+            }
+            this.serverThreads = serverThreads;
+            return this;
+        }
+
+        /**
+         * @param port The port to listen on, or 0 to pick any free port.
+         * @return This builder.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Starts serving the site on localhost.
+         *
+         * @return The running site, which must be closed to stop the server.
+         * @throws IOException If the server couldn't be started.
+         */
+        public SyntheticSite start() throws IOException {
+            return new SyntheticSite(this);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.ganderson.webcrawl.synthetic;
+
+import org.ganderson.webcrawl.service.CrawlConfig;
+import org.ganderson.webcrawl.service.CrawlUrl;
+import org.ganderson.webcrawl.service.WebCrawler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SyntheticSite}.
+ */
+@DisplayName("Test suite for SyntheticSite")
+public class SyntheticSiteTest {
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    @DisplayName("When the site is generated")
+    @Nested
+    public class StructureTest {
+
+        @ParameterizedTest
+        @CsvSource({
+            "1, 10, 2147483647, 3",
+            "100, 10, 2147483647, 3",
+            "10000, 10, 2147483647, 5",
+            "10000, 10, 2, 2",
+            "10000, 3, 4, 4",
+            "500, 1, 2147483647, 500",
+        })
+        @DisplayName(
+            "Given a page count, fan out and max depth"
+                + " Then every page is reachable from the home page through the tree")
+        public void givenShape_EveryPageReachable(int pageCount, int fanOut, int maxDepth, int expectedDepth)
+            throws Exception {
+            // Given
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder()
+                .pageCount(pageCount)
+                .fanOut(fanOut)
+                .maxDepth(maxDepth)
+                .crossLinks(0)
+                .start()) {
+
+                // When
+                BitSet reachable = reachableFromHome(siteUnderTest);
+
+                // Then
+                assertEquals(pageCount, reachable.cardinality());
+                assertEquals(Math.min(expectedDepth, pageCount), siteUnderTest.depth());
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given the same seed"
+                + " Then the same site is generated, and a different seed gives a different site")
+        public void givenSeed_SiteIsDeterministic() throws Exception {
+            try (SyntheticSite first = SyntheticSite.builder().seed(1).errorRate(0.2).start();
+                 SyntheticSite second = SyntheticSite.builder().seed(1).errorRate(0.2).start();
+                 SyntheticSite other = SyntheticSite.builder().seed(2).errorRate(0.2).start()) {
+
+                Set<Integer> firstErrors = new HashSet<>();
+                Set<Integer> otherErrors = new HashSet<>();
+                for (int page = 0; page < first.pageCount(); page++) {
+                    assertEquals(first.render(page), second.render(page));
+                    assertEquals(first.isError(page), second.isError(page));
+                    if (first.isError(page)) {
+                        firstErrors.add(page);
+                    }
+                    if (other.isError(page)) {
+                        otherErrors.add(page);
+                    }
+                }
+                assertNotEquals(first.render(1), other.render(1));
+                assertNotEquals(firstErrors, otherErrors);
+            }
+        }
+
+        @ParameterizedTest
+        @ValueSource(doubles = {0.0, 0.5, 1.0})
+        @DisplayName(
+            "Given a locality"
+                + " Then that fraction of cross links point near the page")
+        public void givenLocality_CrossLinksNearby(double locality) throws Exception {
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder()
+                .pageCount(100_000)
+                .fanOut(4)
+                .crossLinks(10)
+                .locality(locality)
+                .start()) {
+
+                int nearby = 0;
+                int total = 0;
+                for (int page = 50_000; page < 51_000; page++) {
+                    int[] links = siteUnderTest.linksOf(page);
+                    for (int i = links.length - 10; i < links.length; i++) {
+                        total++;
+                        if (Math.abs(links[i] - page) <= 16) {
+                            nearby++;
+                        }
+                    }
+                }
+
+                // Random links land nearby with a probability of about 33 in 100,000
+                assertEquals(locality, (double) nearby / total, 0.03);
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given a page size"
+                + " Then every page is at least that large")
+        public void givenPageSize_PagesPadded() throws Exception {
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder().pageBytes(20_000).start()) {
+                for (int page = 0; page < 50; page++) {
+                    int size = siteUnderTest.render(page).getBytes(StandardCharsets.UTF_8).length;
+                    assertTrue(size >= 20_000 && size < 21_000, "Page size was " + size);
+                }
+            }
+        }
+    }
+
+    @DisplayName("When pages are requested")
+    @Nested
+    public class ServingTest {
+
+        @Test
+        @DisplayName(
+            "Given an error rate"
+                + " Then roughly that fraction of pages fail with a server error and unknown pages aren't found")
+        public void givenErrorRate_PagesFail() throws Exception {
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder().pageCount(10_000).errorRate(0.1).start()) {
+                int errors = 0;
+                int errorPage = -1;
+                int okPage = -1;
+                for (int page = 0; page < siteUnderTest.pageCount(); page++) {
+                    if (siteUnderTest.isError(page)) {
+                        errors++;
+                        errorPage = page;
+                    } else {
+                        okPage = page;
+                    }
+                }
+
+                assertEquals(0.1, errors / 10_000.0, 0.02);
+                assertEquals(500, get(siteUnderTest.urlOf(errorPage)).statusCode());
+
+                HttpResponse<String> ok = get(siteUnderTest.urlOf(okPage));
+                assertEquals(200, ok.statusCode());
+                assertEquals(siteUnderTest.render(okPage), ok.body());
+                assertEquals(404, get(siteUnderTest.homePage() + "p/10000").statusCode());
+                assertEquals(404, get(siteUnderTest.homePage() + "elsewhere").statusCode());
+                assertEquals(4, siteUnderTest.requestCount());
+            }
+        }
+
+        @Test
+        @DisplayName(
+            "Given a fixed latency"
+                + " Then responses are delayed by it without holding up other requests")
+        public void givenLatency_ResponsesDelayed() throws Exception {
+            Duration latency = Duration.ofMillis(200);
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder()
+                .latency(latency, latency)
+                .serverThreads(1)
+                .start()) {
+
+                long start = System.nanoTime();
+                HttpRequest request = HttpRequest.newBuilder(URI.create(siteUnderTest.homePage())).build();
+                CompletableFuture<HttpResponse<String>> first =
+                    client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+                CompletableFuture<HttpResponse<String>> second =
+                    client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, first.get().statusCode());
+                assertEquals(200, second.get().statusCode());
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+                // With a single server thread, the two requests only overlap if the delay doesn't block it
+                assertTrue(elapsedMillis >= 200 && elapsedMillis < 390, "Elapsed " + elapsedMillis + "ms");
+            }
+        }
+    }
+
+    @DisplayName("When the site is crawled")
+    @Nested
+    public class CrawlTest {
+
+        @ParameterizedTest
+        @CsvSource({"false, false", "true, false", "false, true", "true, true"})
+        @DisplayName(
+            "Given a site with failing pages"
+                + " Then every reachable page is visited exactly once")
+        public void givenSite_EveryReachablePageVisitedOnce(boolean asyncFetching, boolean pipelined)
+            throws Exception {
+            PrintStream originalOut = System.out;
+            try (SyntheticSite siteUnderTest = SyntheticSite.builder()
+                .pageCount(2_000)
+                .fanOut(8)
+                .errorRate(0.05)
+                .latency(Duration.ofMillis(1), Duration.ofMillis(5))
+                .start()) {
+
+                // Given
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(out));
+                CrawlConfig config = CrawlConfig.builder()
+                    .parallelism(8)
+                    .asyncFetching(asyncFetching)
+                    .pipelined(pipelined)
+                    .build();
+
+                // When
+                new WebCrawler(CrawlUrl.parse(siteUnderTest.homePage()), config).crawl();
+
+                // Then
+                Set<String> printedPages = new HashSet<>();
+                for (String line : out.toString().split(System.lineSeparator())) {
+                    if (!line.startsWith("- ")) {
+                        assertTrue(printedPages.add(line), "Page printed more than once " + line);
+                    }
+                }
+                BitSet expected = reachableFromHome(siteUnderTest);
+                assertEquals(expected.cardinality(), printedPages.size());
+                assertEquals(expected.cardinality(), siteUnderTest.requestCount());
+                expected.stream().forEach(page -> assertTrue(printedPages.contains(siteUnderTest.urlOf(page))));
+            } finally {
+                System.setOut(originalOut);
+            }
+        }
+    }
+
+    /**
+     * @param site The site.
+     * @return The pages which can be found by following links from the home page, including pages which fail but
+     *     not the links on them.
+     */
+    private static BitSet reachableFromHome(SyntheticSite site) {
+        BitSet reachable = new BitSet(site.pageCount());
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        reachable.set(0);
+        toVisit.add(0);
+        while (!toVisit.isEmpty()) {
+            int page = toVisit.poll();
+            if (site.isError(page)) {
+                continue;
+            }
+            for (int link : site.linksOf(page)) {
+                if (!reachable.get(link)) {
+                    reachable.set(link);
+                    toVisit.add(link);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private static HttpResponse<String> get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}